@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.optimizers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read access to the entries of a ZIP file as they are stored, without
+ * inflating them. The entries are read from the central directory, which holds
+ * their name, size and CRC, and their compressed data can be copied as is into
+ * a {@link RawZipWriter}.
+ * <p>
+ * Only plain ZIP files are supported. {@link #open(File)} returns
+ * <code>null</code> for ZIP64 files, encrypted entries or files with leading
+ * data, callers fall back to {@link java.util.zip.ZipFile} for those.
+ * </p>
+ */
+public class RawZipFile implements Closeable {
+	static final int LOCAL_HEADER = 0x04034b50;
+	static final int CENTRAL_HEADER = 0x02014b50;
+	static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+	private static final int FLAG_ENCRYPTED = 1;
+	private static final long MAX_32 = 0xFFFFFFFFL;
+	private static final int MAX_16 = 0xFFFF;
+
+	/**
+	 * An entry as described by the central directory.
+	 */
+	public static class Entry {
+		final String name;
+		final byte[] rawName;
+		final int versionMadeBy;
+		final int versionNeeded;
+		final int flags;
+		final int method;
+		final int dosTime;
+		final long crc;
+		final long compressedSize;
+		final long size;
+		final byte[] extra;
+		final byte[] comment;
+		final int internalAttributes;
+		final long externalAttributes;
+		final long localHeaderOffset;
+
+		Entry(String name, byte[] rawName, int versionMadeBy, int versionNeeded, int flags, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra, byte[] comment, int internalAttributes, long externalAttributes, long localHeaderOffset) {
+			this.name = name;
+			this.rawName = rawName;
+			this.versionMadeBy = versionMadeBy;
+			this.versionNeeded = versionNeeded;
+			this.flags = flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.extra = extra;
+			this.comment = comment;
+			this.internalAttributes = internalAttributes;
+			this.externalAttributes = externalAttributes;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/"); //$NON-NLS-1$
+		}
+
+		public long getCrc() {
+			return crc;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Returns the modification time in MS-DOS format.
+		 */
+		public int getDosTime() {
+			return dosTime;
+		}
+
+		/**
+		 * Returns whether the content of the given entry is the same as the content of
+		 * this entry, judging by the central directory only.
+		 */
+		public boolean hasSameContent(Entry other) {
+			return size == other.size && crc == other.crc && isDirectory() == other.isDirectory();
+		}
+	}
+
+	private final FileChannel channel;
+	private final List<Entry> entries;
+	private final Map<String, Entry> entriesByName;
+
+	/**
+	 * Opens the given ZIP file, or returns <code>null</code> if its entries cannot
+	 * be read raw.
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	public static RawZipFile open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			List<Entry> entries = readCentralDirectory(channel);
+			if (entries != null)
+				return new RawZipFile(channel, entries);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e instanceof IOException ? (IOException) e : new IOException(e);
+		}
+		channel.close();
+		return null;
+	}
+
+	private RawZipFile(FileChannel channel, List<Entry> entries) {
+		this.channel = channel;
+		this.entries = entries;
+		this.entriesByName = new HashMap<>(entries.size());
+		for (Entry entry : entries)
+			entriesByName.putIfAbsent(entry.name, entry);
+	}
+
+	/**
+	 * Returns the entries in the order of the central directory.
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	public Entry getEntry(String name) {
+		return entriesByName.get(name);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the extra field of the local header of the given entry.
+	 */
+	byte[] readLocalExtra(Entry entry) throws IOException {
+		ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER)
+			throw new IOException("Invalid local header for " + entry.name); //$NON-NLS-1$
+		int nameLength = header.getShort(26) & MAX_16;
+		int extraLength = header.getShort(28) & MAX_16;
+		return read(entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength, extraLength).array();
+	}
+
+	/**
+	 * Copies the compressed data of the given entry to the given channel.
+	 */
+	void transferData(Entry entry, FileChannel target) throws IOException {
+		ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		long start = entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & MAX_16) + (header.getShort(28) & MAX_16);
+		long position = start;
+		long end = start + entry.compressedSize;
+		while (position < end) {
+			long transferred = channel.transferTo(position, end - position, target);
+			if (transferred <= 0)
+				throw new EOFException(entry.name);
+			position += transferred;
+		}
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		return read(channel, position, length);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/*
+	 * Read the entries of the central directory, or return null if the file uses
+	 * features this class does not support.
+	 */
+	private static List<Entry> readCentralDirectory(FileChannel channel) throws IOException {
+		long length = channel.size();
+		if (length < END_OF_CENTRAL_DIRECTORY_SIZE)
+			return null;
+		// the end record is followed by a comment of at most 64k
+		int tailLength = (int) Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_16);
+		ByteBuffer tail = read(channel, length - tailLength, tailLength);
+		int end = -1;
+		for (int i = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0 && end < 0; i--) {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY && i + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(i + 20) & MAX_16) == tailLength)
+				end = i;
+		}
+		if (end < 0 || (end >= 20 && tail.getInt(end - 20) == ZIP64_LOCATOR))
+			return null;
+		int count = tail.getShort(end + 10) & MAX_16;
+		long directorySize = tail.getInt(end + 12) & MAX_32;
+		long directoryOffset = tail.getInt(end + 16) & MAX_32;
+		long endOffset = length - tailLength + end;
+		if (tail.getShort(end + 4) != 0 || count == MAX_16 || directoryOffset == MAX_32 || directoryOffset + directorySize != endOffset)
+			return null;
+
+		ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+		List<Entry> entries = new ArrayList<>(count);
+		int position = 0;
+		for (int i = 0; i < count; i++) {
+			if (directory.getInt(position) != CENTRAL_HEADER)
+				return null;
+			int flags = directory.getShort(position + 8) & MAX_16;
+			long compressedSize = directory.getInt(position + 20) & MAX_32;
+			long size = directory.getInt(position + 24) & MAX_32;
+			int nameLength = directory.getShort(position + 28) & MAX_16;
+			int extraLength = directory.getShort(position + 30) & MAX_16;
+			int commentLength = directory.getShort(position + 32) & MAX_16;
+			long localHeaderOffset = directory.getInt(position + 42) & MAX_32;
+			if ((flags & FLAG_ENCRYPTED) != 0 || compressedSize == MAX_32 || size == MAX_32 || localHeaderOffset == MAX_32)
+				return null;
+			byte[] rawName = bytes(directory, position + CENTRAL_HEADER_SIZE, nameLength);
+			entries.add(new Entry(new String(rawName, StandardCharsets.UTF_8), rawName, //
+					directory.getShort(position + 4) & MAX_16, //
+					directory.getShort(position + 6) & MAX_16, //
+					flags, //
+					directory.getShort(position + 10) & MAX_16, //
+					directory.getInt(position + 12), //
+					directory.getInt(position + 16) & MAX_32, //
+					compressedSize, size, //
+					bytes(directory, position + CENTRAL_HEADER_SIZE + nameLength, extraLength), //
+					bytes(directory, position + CENTRAL_HEADER_SIZE + nameLength + extraLength, commentLength), //
+					directory.getShort(position + 36) & MAX_16, //
+					directory.getInt(position + 38) & MAX_32, //
+					localHeaderOffset));
+			position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	private static byte[] bytes(ByteBuffer buffer, int position, int length) {
+		byte[] result = new byte[length];
+		for (int i = 0; i < length; i++)
+			result[i] = buffer.get(position + i);
+		return result;
+	}
+}
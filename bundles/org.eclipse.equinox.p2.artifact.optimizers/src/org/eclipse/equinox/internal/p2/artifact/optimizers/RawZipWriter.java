@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.optimizers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.ZipException;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.RawZipFile.Entry;
+
+/**
+ * Writes a ZIP file from entries of {@link RawZipFile}s, copying their
+ * compressed data as is instead of inflating and deflating it again.
+ */
+public class RawZipWriter implements Closeable {
+	// flags describing the data written after the entry and the name encoding
+	private static final int FLAG_DATA_DESCRIPTOR = 8;
+	private static final int FLAG_UTF8 = 0x800;
+	private static final int VERSION_NEEDED = 20;
+	private static final int MAX_ENTRIES = 0xFFFF;
+
+	private final FileChannel channel;
+	private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+	private final Set<String> names = new HashSet<>();
+
+	public RawZipWriter(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Copies the given entry of the given file, without inflating it.
+	 *
+	 * @throws ZipException if an entry with the same name has already been written
+	 */
+	public void copy(RawZipFile source, Entry entry) throws IOException {
+		addName(entry.name);
+		int flags = entry.flags & ~FLAG_DATA_DESCRIPTOR;
+		long offset = writeLocalHeader(entry.rawName, flags, entry.versionNeeded, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, source.readLocalExtra(entry));
+		source.transferData(entry, channel);
+		addCentralHeader(entry.rawName, entry.versionMadeBy, entry.versionNeeded, flags, entry.method, entry.dosTime, entry.crc, entry.compressedSize, entry.size, entry.extra, entry.comment, entry.internalAttributes, entry.externalAttributes, offset);
+	}
+
+	/**
+	 * Writes an entry without content.
+	 *
+	 * @throws ZipException if an entry with the same name has already been written
+	 */
+	public void addEmpty(String name) throws IOException {
+		addName(name);
+		byte[] rawName = name.getBytes(StandardCharsets.UTF_8);
+		int dosTime = toDosTime(LocalDateTime.now());
+		byte[] none = new byte[0];
+		long offset = writeLocalHeader(rawName, FLAG_UTF8, VERSION_NEEDED, 0, dosTime, 0, 0, 0, none);
+		addCentralHeader(rawName, VERSION_NEEDED, VERSION_NEEDED, FLAG_UTF8, 0, dosTime, 0, 0, 0, none, none, 0, 0, offset);
+	}
+
+	private void addName(String name) throws ZipException {
+		if (!names.add(name))
+			throw new ZipException("duplicate entry: " + name); //$NON-NLS-1$
+		if (names.size() > MAX_ENTRIES)
+			throw new ZipException("too many entries"); //$NON-NLS-1$
+	}
+
+	private long writeLocalHeader(byte[] name, int flags, int versionNeeded, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra) throws IOException {
+		long offset = channel.position();
+		ByteBuffer header = ByteBuffer.allocate(RawZipFile.LOCAL_HEADER_SIZE + name.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RawZipFile.LOCAL_HEADER);
+		header.putShort((short) versionNeeded);
+		header.putShort((short) flags);
+		header.putShort((short) method);
+		header.putInt(dosTime);
+		header.putInt((int) crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) name.length);
+		header.putShort((short) extra.length);
+		header.put(name);
+		header.put(extra);
+		write(header);
+		return offset;
+	}
+
+	private void addCentralHeader(byte[] name, int versionMadeBy, int versionNeeded, int flags, int method, int dosTime, long crc, long compressedSize, long size, byte[] extra, byte[] comment, int internalAttributes, long externalAttributes, long offset) throws IOException {
+		if (offset > 0xFFFFFFFFL)
+			throw new ZipException("ZIP file too large"); //$NON-NLS-1$
+		ByteBuffer header = ByteBuffer.allocate(RawZipFile.CENTRAL_HEADER_SIZE + name.length + extra.length + comment.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RawZipFile.CENTRAL_HEADER);
+		header.putShort((short) versionMadeBy);
+		header.putShort((short) versionNeeded);
+		header.putShort((short) flags);
+		header.putShort((short) method);
+		header.putInt(dosTime);
+		header.putInt((int) crc);
+		header.putInt((int) compressedSize);
+		header.putInt((int) size);
+		header.putShort((short) name.length);
+		header.putShort((short) extra.length);
+		header.putShort((short) comment.length);
+		header.putShort((short) 0); // disk number
+		header.putShort((short) internalAttributes);
+		header.putInt((int) externalAttributes);
+		header.putInt((int) offset);
+		header.put(name);
+		header.put(extra);
+		header.put(comment);
+		centralDirectory.write(header.array());
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	/**
+	 * Writes the central directory and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			long offset = channel.position();
+			if (offset > 0xFFFFFFFFL)
+				throw new ZipException("ZIP file too large"); //$NON-NLS-1$
+			write(ByteBuffer.allocate(centralDirectory.size()).put(centralDirectory.toByteArray()));
+			ByteBuffer end = ByteBuffer.allocate(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(RawZipFile.END_OF_CENTRAL_DIRECTORY);
+			end.putShort((short) 0); // disk number
+			end.putShort((short) 0); // disk of the central directory
+			end.putShort((short) names.size());
+			end.putShort((short) names.size());
+			end.putInt(centralDirectory.size());
+			end.putInt((int) offset);
+			end.putShort((short) 0); // comment length
+			write(end);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static int toDosTime(LocalDateTime time) {
+		if (time.getYear() < 1980)
+			return (1 << 21) | (1 << 16);
+		return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+	}
+}
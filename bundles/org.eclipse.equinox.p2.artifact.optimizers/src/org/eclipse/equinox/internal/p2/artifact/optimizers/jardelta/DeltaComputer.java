@@ -16,8 +16,22 @@ package org.eclipse.equinox.internal.p2.artifact.optimizers.jardelta;
 import java.io.*;
 import java.util.*;
 import java.util.zip.*;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.RawZipFile;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.RawZipWriter;
 
+/**
+ * Computes the delta between two JARs. The delta contains the entries of the
+ * target which are new or changed, and an empty "<name>.delete" entry for each
+ * entry of the base which is removed.
+ * <p>
+ * Entries are compared by the size, CRC and time in the central directory, and
+ * copied into the delta still compressed. JARs which cannot be read raw (see
+ * {@link RawZipFile}) are processed entry by entry with {@link ZipFile}.
+ * </p>
+ */
 public class DeltaComputer {
+	private static final String MANIFEST_ENTRY_NAME = "META-INF/MANIFEST.MF"; //$NON-NLS-1$
+	private static final String DELETE_SUFFIX = ".delete"; //$NON-NLS-1$
 	private final File target;
 	private final File base;
 	private final File destination;
@@ -35,6 +49,8 @@ public class DeltaComputer {
 	}
 
 	public void run() throws IOException {
+		if (runRaw())
+			return;
 		try {
 			if (!openJars())
 				return;
@@ -45,6 +61,48 @@ public class DeltaComputer {
 		}
 	}
 
+	/*
+	 * Compute and write the delta without inflating any entry. Returns false if
+	 * the JARs have to be processed with ZipFile instead.
+	 */
+	private boolean runRaw() {
+		try (RawZipFile rawBase = RawZipFile.open(base); RawZipFile rawTarget = RawZipFile.open(target)) {
+			if (rawBase == null || rawTarget == null)
+				return false;
+			// start out assuming that all the base entries are being removed
+			Set<String> removals = new LinkedHashSet<>();
+			for (RawZipFile.Entry entry : rawBase.getEntries())
+				removals.add(entry.getName());
+			List<RawZipFile.Entry> changed = new ArrayList<>();
+			for (RawZipFile.Entry entry : rawTarget.getEntries()) {
+				RawZipFile.Entry baseEntry = rawBase.getEntry(entry.getName());
+				// as below, the times of directories do not matter
+				if (baseEntry == null || !entry.hasSameContent(baseEntry) || (!entry.isDirectory() && entry.getDosTime() != baseEntry.getDosTime()))
+					changed.add(entry);
+				removals.remove(entry.getName());
+			}
+			try (RawZipWriter result = new RawZipWriter(destination)) {
+				// if the delta includes the manifest, be sure to write it first
+				RawZipFile.Entry manifest = rawTarget.getEntry(MANIFEST_ENTRY_NAME);
+				if (manifest != null)
+					result.copy(rawTarget, manifest);
+				else if ((manifest = rawBase.getEntry(MANIFEST_ENTRY_NAME)) != null)
+					result.copy(rawBase, manifest);
+				// signal the removals to the delta processor by empty entries
+				for (String removal : removals)
+					result.addEmpty(removal + DELETE_SUFFIX);
+				for (RawZipFile.Entry entry : changed) {
+					if (!entry.getName().equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+						result.copy(rawTarget, entry);
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			// the destination is rewritten entry by entry
+			return false;
+		}
+	}
+
 	private void writeDelta() {
 		try {
 			try (ZipOutputStream result = new ZipOutputStream(new FileOutputStream(destination))) {
@@ -16,7 +16,17 @@ package org.eclipse.equinox.internal.p2.artifact.processors.jardelta;
 import java.io.*;
 import java.util.*;
 import java.util.zip.*;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.RawZipFile;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.RawZipWriter;
 
+/**
+ * Rebuilds a JAR from its base and a delta computed by the JAR delta optimizer.
+ * <p>
+ * The entries of the base and the delta are copied into the result still
+ * compressed. JARs which cannot be read raw (see {@link RawZipFile}) are
+ * processed entry by entry with {@link ZipFile}.
+ * </p>
+ */
 public class DeltaApplier {
 	private static final String DELETE_SUFFIX = ".delete"; //$NON-NLS-1$
 	private static final String MANIFEST_ENTRY_NAME = "META-INF/MANIFEST.MF"; //$NON-NLS-1$
@@ -35,6 +45,8 @@ public class DeltaApplier {
 	}
 
 	public void run() {
+		if (runRaw())
+			return;
 		try {
 			if (!openJars())
 				return;
@@ -63,6 +75,58 @@ public class DeltaApplier {
 		}
 	}
 
+	/*
+	 * Apply the delta without inflating any entry. Returns false if the JARs have
+	 * to be processed with ZipFile instead.
+	 */
+	private boolean runRaw() {
+		try (RawZipFile rawBase = RawZipFile.open(base); RawZipFile rawDelta = RawZipFile.open(delta)) {
+			if (rawBase == null || rawDelta == null)
+				return false;
+			// start out assuming that all the base entries will be moved over, and
+			// remove all the entries that appear in the delta
+			Set<String> kept = new HashSet<>();
+			RawZipFile manifestSource = null;
+			for (RawZipFile.Entry entry : rawBase.getEntries()) {
+				kept.add(entry.getName());
+				if (entry.getName().equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+					manifestSource = rawBase;
+			}
+			for (RawZipFile.Entry entry : rawDelta.getEntries()) {
+				String name = entry.getName();
+				if (name.equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+					manifestSource = rawDelta;
+				if (name.endsWith(DELETE_SUFFIX)) {
+					name = name.substring(0, name.length() - DELETE_SUFFIX.length());
+					// if the manifest is being deleted, forget anyone who might have a manifest
+					if (name.equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+						manifestSource = null;
+				}
+				kept.remove(name);
+			}
+			try (RawZipWriter result = new RawZipWriter(destination)) {
+				// if the delta includes the manifest, be sure to write it first
+				RawZipFile.Entry manifest = manifestSource == null ? null : manifestSource.getEntry(MANIFEST_ENTRY_NAME);
+				if (manifest != null)
+					result.copy(manifestSource, manifest);
+				// write out the things we know are staying from the base JAR
+				for (RawZipFile.Entry entry : rawBase.getEntries()) {
+					if (kept.contains(entry.getName()) && !entry.getName().equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+						result.copy(rawBase, entry);
+				}
+				// write out the changes/additions from the delta.
+				for (RawZipFile.Entry entry : rawDelta.getEntries()) {
+					if (!entry.getName().endsWith(DELETE_SUFFIX) && !entry.getName().equalsIgnoreCase(MANIFEST_ENTRY_NAME))
+						result.copy(rawDelta, entry);
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			// the destination is rewritten entry by entry
+			return false;
+		}
+	}
+
 	private void writeResult() {
 		ZipOutputStream result = null;
 		try {
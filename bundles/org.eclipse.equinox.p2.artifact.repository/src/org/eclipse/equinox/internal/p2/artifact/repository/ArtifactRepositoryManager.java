@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2017 IBM Corporation and others.
+ *  Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -24,6 +24,7 @@ import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryMana
 import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactRepositoryFactory;
@@ -136,6 +137,14 @@ public class ArtifactRepositoryManager extends AbstractRepositoryManager<IArtifa
 		return (IArtifactRepository) basicRefreshRepository(location, monitor);
 	}
 
+	@Override
+	protected long getRepositoryWeight(IRepository<IArtifactKey> repository) {
+		// the children of a composite repository are cached and weighed by themselves
+		if (repository instanceof ICompositeRepository<?> || !(repository instanceof IArtifactRepository))
+			return 1;
+		return ((IArtifactRepository) repository).descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).toUnmodifiableSet().size();
+	}
+
 	@Override
 	protected String[] getPreferredRepositorySearchOrder(LocationProperties properties) {
 		return properties.getArtifactFactorySearchOrder();
@@ -18,6 +18,7 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
@@ -43,6 +44,12 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 	public static final String PI_REPOSITORY_TYPE = "compositeArtifactRepository"; //$NON-NLS-1$
 	static final public String PROP_ATOMIC_LOADING = "p2.atomic.composite.loading"; //$NON-NLS-1$
 
+	/**
+	 * The number of children artifacts are fetched from concurrently. With one
+	 * thread, the default, the children are asked one after the other.
+	 */
+	static final public String PROP_FETCH_THREADS = "eclipse.p2.composite.fetchThreads"; //$NON-NLS-1$
+
 	static final public boolean ATOMIC_LOADING_DEFAULT = Boolean.parseBoolean(Activator.getContext().getProperty("eclipse.p2.atomic.composite.loading.default")); //$NON-NLS-1$
 
 	// keep a list of the child URIs. they can be absolute or relative. they may or may not point
@@ -352,6 +359,9 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 
 	@Override
 	public IStatus getArtifacts(IArtifactRequest[] requests, IProgressMonitor monitor) {
+		int threads = Math.min(getFetchThreads(), loadedRepos.size());
+		if (threads > 1 && requests.length > 1)
+			return getArtifactsConcurrently(requests, threads, monitor);
 		SubMonitor subMonitor = SubMonitor.convert(monitor, requests.length);
 		MultiStatus multiStatus = new MultiStatus(Activator.ID, IStatus.OK, Messages.message_artifactsFromChildRepos, null);
 		for (ChildInfo childInfo : loadedRepos) {
@@ -372,6 +382,121 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		return multiStatus;
 	}
 
+	/*
+	 * Fetch the requests from the children concurrently. Every request is
+	 * fetched from the first child containing it, like in the sequential case,
+	 * and when that fails from the next child containing it. The children
+	 * share the given number of threads.
+	 */
+	private IStatus getArtifactsConcurrently(IArtifactRequest[] requests, int threads, IProgressMonitor monitor) {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, requests.length);
+		MultiStatus multiStatus = new MultiStatus(Activator.ID, IStatus.OK, Messages.message_artifactsFromChildRepos, null);
+		List<ChildInfo> children = new ArrayList<>(loadedRepos);
+		// progress monitors are not thread safe, the workers only check for cancellation
+		IProgressMonitor workerMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return super.isCanceled() || subMonitor.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Composite artifact fetch"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<ChildFetch> completion = new ExecutorCompletionService<>(executor);
+		try {
+			int running = submitFetches(completion, children, Arrays.asList(requests), 0, workerMonitor);
+			while (running > 0) {
+				ChildFetch fetch;
+				try {
+					fetch = completion.take().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					workerMonitor.setCanceled(true);
+					return Status.CANCEL_STATUS;
+				} catch (ExecutionException e) {
+					// the fetches catch their exceptions
+					running--;
+					continue;
+				}
+				running--;
+				multiStatus.add(fetch.status);
+				if (fetch.status.getSeverity() == IStatus.CANCEL || subMonitor.isCanceled()) {
+					// let the running children notice and finish before returning
+					workerMonitor.setCanceled(true);
+					continue;
+				}
+				IArtifactRequest[] unfetched = filterUnfetched(fetch.requests);
+				subMonitor.worked(fetch.requests.length - unfetched.length);
+				running += submitFetches(completion, children, Arrays.asList(unfetched), fetch.child + 1, workerMonitor);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		if (workerMonitor.isCanceled())
+			return Status.CANCEL_STATUS;
+		return multiStatus;
+	}
+
+	/*
+	 * Assign each request to the first child from the given index on that
+	 * contains it and submit one fetch per child. Returns the number of
+	 * submitted fetches.
+	 */
+	private int submitFetches(CompletionService<ChildFetch> completion, List<ChildInfo> children, List<IArtifactRequest> requests, int from, IProgressMonitor monitor) {
+		Map<Integer, List<IArtifactRequest>> byChild = new TreeMap<>();
+		for (IArtifactRequest request : requests) {
+			for (int i = from; i < children.size(); i++) {
+				if (children.get(i).repo.contains(request.getArtifactKey())) {
+					byChild.computeIfAbsent(i, c -> new ArrayList<>()).add(request);
+					break;
+				}
+			}
+		}
+		for (Map.Entry<Integer, List<IArtifactRequest>> entry : byChild.entrySet()) {
+			int child = entry.getKey();
+			IArtifactRequest[] applicable = entry.getValue().toArray(new IArtifactRequest[entry.getValue().size()]);
+			completion.submit(() -> {
+				IStatus status;
+				try {
+					status = children.get(child).repo.getArtifacts(applicable, monitor);
+				} catch (RuntimeException e) {
+					// treat it like a failed download, the next child is asked
+					status = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+				}
+				return new ChildFetch(child, applicable, status);
+			});
+		}
+		return byChild.size();
+	}
+
+	/*
+	 * The requests a child was asked for, and the status it returned
+	 */
+	private static class ChildFetch {
+		final int child;
+		final IArtifactRequest[] requests;
+		final IStatus status;
+
+		ChildFetch(int child, IArtifactRequest[] requests, IStatus status) {
+			this.child = child;
+			this.requests = requests;
+			this.status = status;
+		}
+	}
+
+	private static int getFetchThreads() {
+		try {
+			String threads = Activator.getContext().getProperty(PROP_FETCH_THREADS);
+			if (threads != null)
+				return Math.max(1, Integer.parseInt(threads));
+		} catch (NumberFormatException e) {
+			// use the default
+		}
+		return 1;
+	}
+
 	@Override
 	public IStatus getArtifact(IArtifactDescriptor descriptor, OutputStream destination, IProgressMonitor monitor) {
 		return getRawOrNormalArtifact(descriptor, destination, monitor, false);
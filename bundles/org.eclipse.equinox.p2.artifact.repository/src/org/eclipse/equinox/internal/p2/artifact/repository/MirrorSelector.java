@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2018 IBM Corporation and others.
+ * Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
 import javax.xml.parsers.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
@@ -42,11 +43,19 @@ import org.xml.sax.SAXException;
  * containing a list of <mirror> elements. The mirrors are assumed to be already 
  * sorted geographically with closer mirrors first.
  * <br><br>
+ * The mirror list and the performance of the mirrors are kept in the
+ * {@link MirrorStatistics} of the agent, so that a new session starts with the
+ * mirrors which were fast in earlier sessions. Before the first download, the
+ * best mirrors not known yet are probed in parallel for their latency.
+ * <br><br>
  * Always use {@link MirrorSelector.MirrorInfoComparator} for comparison.
  *
  */
 public class MirrorSelector {
 	private static final double LOG2 = Math.log(2);
+	// how many of the best mirrors are probed, and how long to wait for them
+	private static final int PROBE_COUNT = 4;
+	private static final long PROBE_TIMEOUT = 5000;
 
 	/**
 	 * Encapsulates information about a single mirror
@@ -56,8 +65,10 @@ public class MirrorSelector {
 		private static final long SECONDARY_FAILURE_LINGER_TIME = 300000; // Wait 5 minutes
 		private static final int ACCEPTABLE_FILE_NOT_FOUND_COUNT = 5; // Given an established connection, those are generally quick
 		private static final Timer resetFailure = new Timer(true);
+		public static final long UNKNOWN_LATENCY = -1;
 
 		long bytesPerSecond;
+		long latency = UNKNOWN_LATENCY;
 		int failureCount;
 		int fileNotFoundCount;
 		int totalFailureCount;
@@ -76,7 +87,7 @@ public class MirrorSelector {
 
 		@Override
 		public synchronized String toString() {
-			return "Mirror(" + locationString + ',' + failureCount + ',' + bytesPerSecond + ')'; //$NON-NLS-1$
+			return "Mirror(" + locationString + ',' + failureCount + ',' + bytesPerSecond + ',' + latency + ')'; //$NON-NLS-1$
 		}
 
 		public synchronized void decrementFailureCount() {
@@ -112,6 +123,17 @@ public class MirrorSelector {
 			return bytesPerSecond;
 		}
 
+		/**
+		 * Sets the time in milliseconds the mirror took to answer a request.
+		 */
+		public synchronized void setLatency(long newValue) {
+			latency = newValue < 0 ? UNKNOWN_LATENCY : newValue;
+		}
+
+		public synchronized long getLatency() {
+			return latency;
+		}
+
 		public synchronized void incrementFileNotFoundCount() {
 			if (++fileNotFoundCount > ACCEPTABLE_FILE_NOT_FOUND_COUNT) {
 				incrementFailureCount();
@@ -133,6 +155,10 @@ public class MirrorSelector {
 
 	private final Transport transport;
 
+	private final MirrorStatistics statistics;
+
+	private boolean probed;
+
 	/**
 	 * Constructs a mirror support class for the given repository. Mirrors are
 	 * not contacted and the mirrorsURL document is not parsed until a
@@ -141,6 +167,7 @@ public class MirrorSelector {
 	public MirrorSelector(IRepository<?> repository, Transport transport) {
 		this.repository = repository;
 		this.transport = transport;
+		this.statistics = MirrorStatistics.forAgent(repository.getProvisioningAgent());
 		try {
 			String base = repository.getProperties().get(IRepository.PROP_MIRRORS_BASE_URL);
 			if (base != null) {
@@ -159,8 +186,9 @@ public class MirrorSelector {
 	 * This {@link Comparator} uses a vector space classification algorithm
 	 * and implements some kind of Rocchio Classification.
 	 * In theory, when sorting multiple mirrors, we want to know which one
-	 * is the best in terms of its attributes 'bytesPerSecons', 'failureCount'
-	 * and 'initialRank'.
+	 * is the best in terms of its attributes 'bytesPerSecons', 'failureCount',
+	 * 'latency' and 'initialRank'. A mirror whose latency is not known yet is taken to
+	 * answer in the average latency of the measured mirrors.
 	 * This {@link Comparator} needs three initial query attributes, which mean
 	 * to search for the fastest mirror, with lowest failure and nearest to the
 	 * initial rank.
@@ -214,18 +242,56 @@ public class MirrorSelector {
 		 * Value was calculated by empirical tests. 
 		 */
 		static final double WEIGHT_FAILURECOUNT = 1.75d;
+		/**
+		 * This weight is used to treat latency in 100ms steps.
+		 */
+		static final double WEIGHT_LATENCY = 1d / 100d;
 
 		final double qBytesPerSeconds;
 		final double qFailureCount;
 		final double qRank;
 		final double qel; // euclidean length
+		// the latency assumed for mirrors which were not measured yet
+		final long unknownLatency;
 
 		public MirrorInfoComparator(long qBytesPerSeconds, int qFailureCount, int qRank) {
+			this(qBytesPerSeconds, qFailureCount, qRank, 0);
+		}
+
+		/**
+		 * Creates a comparator which takes mirrors whose latency is unknown to
+		 * answer in the given time, in milliseconds.
+		 */
+		public MirrorInfoComparator(long qBytesPerSeconds, int qFailureCount, int qRank, long unknownLatency) {
 			// Query: bytesPerSecondond=max + 10%, failureCountr=0, rank=1
 			this.qBytesPerSeconds = (qBytesPerSeconds + qBytesPerSeconds / 10) * WEIGHT_BYTESPERSECOND;
 			this.qFailureCount = qFailureCount;
 			this.qRank = qRank;
 			this.qel = sqrt(qBytesPerSeconds * qBytesPerSeconds + (qFailureCount * 1d) * (qFailureCount * 1d) + qRank * qRank);
+			this.unknownLatency = max(0, unknownLatency);
+		}
+
+		/**
+		 * Returns the comparator for the given mirrors: the query asks for the
+		 * fastest transfer rate among them, no failures and the first rank. A
+		 * mirror whose latency was not measured is taken to answer in the average
+		 * latency of the measured ones, so that measuring a mirror neither
+		 * promotes nor demotes it by itself.
+		 */
+		public static MirrorInfoComparator forMirrors(MirrorInfo[] mirrors) {
+			long maxBytesPerSecond = 0;
+			long totalLatency = 0;
+			int measured = 0;
+			if (mirrors != null) {
+				for (MirrorInfo mi : mirrors) {
+					maxBytesPerSecond = max(maxBytesPerSecond, mi.bytesPerSecond);
+					if (mi.latency != MirrorInfo.UNKNOWN_LATENCY) {
+						totalLatency += mi.latency;
+						measured++;
+					}
+				}
+			}
+			return new MirrorInfoComparator(maxBytesPerSecond, 0, 1, measured == 0 ? 0 : totalLatency / measured);
 		}
 
 		@Override
@@ -233,9 +299,12 @@ public class MirrorSelector {
 			if (o1 == o2) {
 				return 0; // shortest way
 			}
+			// the query asks for no latency, it only adds to the euclidean lengths
+			double o1_latency = (o1.latency == MirrorInfo.UNKNOWN_LATENCY ? unknownLatency : o1.latency) * WEIGHT_LATENCY;
+			double o2_latency = (o2.latency == MirrorInfo.UNKNOWN_LATENCY ? unknownLatency : o2.latency) * WEIGHT_LATENCY;
 			// euclidean lengths
-			double o1_el = sqrt(abs(o1.bytesPerSecond * WEIGHT_BYTESPERSECOND) * abs(o1.bytesPerSecond * WEIGHT_BYTESPERSECOND) + (o1.failureCount * WEIGHT_FAILURECOUNT) * (o1.failureCount * WEIGHT_FAILURECOUNT) + o1.initialRank * o1.initialRank);
-			double o2_el = sqrt(abs(o2.bytesPerSecond * WEIGHT_BYTESPERSECOND) * abs(o2.bytesPerSecond * WEIGHT_BYTESPERSECOND) + (o2.failureCount * WEIGHT_FAILURECOUNT) * (o2.failureCount * WEIGHT_FAILURECOUNT) + o2.initialRank * o2.initialRank);
+			double o1_el = sqrt(abs(o1.bytesPerSecond * WEIGHT_BYTESPERSECOND) * abs(o1.bytesPerSecond * WEIGHT_BYTESPERSECOND) + (o1.failureCount * WEIGHT_FAILURECOUNT) * (o1.failureCount * WEIGHT_FAILURECOUNT) + o1_latency * o1_latency + o1.initialRank * o1.initialRank);
+			double o2_el = sqrt(abs(o2.bytesPerSecond * WEIGHT_BYTESPERSECOND) * abs(o2.bytesPerSecond * WEIGHT_BYTESPERSECOND) + (o2.failureCount * WEIGHT_FAILURECOUNT) * (o2.failureCount * WEIGHT_FAILURECOUNT) + o2_latency * o2_latency + o2.initialRank * o2.initialRank);
 			// vector dot products
 			double dp_1 = (qBytesPerSeconds * abs(o1.bytesPerSecond * WEIGHT_BYTESPERSECOND) + qFailureCount * (o1.failureCount * WEIGHT_FAILURECOUNT) + qRank * o1.initialRank);
 			double dp_2 = (qBytesPerSeconds * abs(o2.bytesPerSecond * WEIGHT_BYTESPERSECOND) + qFailureCount * (o2.failureCount * WEIGHT_FAILURECOUNT) + qRank * o2.initialRank);
@@ -254,12 +323,19 @@ public class MirrorSelector {
 	 * Originally copied from DefaultSiteParser.getMirrors in org.eclipse.update.core
 	 */
 	private MirrorInfo[] computeMirrors(String mirrorsURL, IProgressMonitor monitor) {
+		String[] locations = statistics == null ? null : statistics.getMirrors(mirrorsURL);
+		if (locations != null)
+			return buildMirrorInfos(locations);
+		String key = mirrorsURL;
 		try {
 			mirrorsURL = enrichWithClientLocation(mirrorsURL);
 			Document document = getMirrorsDocument(mirrorsURL, monitor);
 			if (document == null)
 				return null;
-			return buildMirrorInfos(document);
+			locations = getMirrorLocations(document);
+			if (statistics != null)
+				statistics.setMirrors(key, locations);
+			return buildMirrorInfos(locations);
 		} catch (Exception e) {
 			// log if absolute url
 			if (mirrorsURL != null && (mirrorsURL.startsWith("http://") //$NON-NLS-1$
@@ -272,17 +348,27 @@ public class MirrorSelector {
 		}
 	}
 
-	private MirrorInfo[] buildMirrorInfos(Document document) {
+	private String[] getMirrorLocations(Document document) {
 		NodeList mirrorNodes = document.getElementsByTagName("mirror"); //$NON-NLS-1$
-		int mirrorCount = mirrorNodes.getLength();
-		MirrorInfo[] infos = new MirrorInfo[mirrorCount + 1];
-		for (int i = 0; i < mirrorCount; i++) {
+		String[] locations = new String[mirrorNodes.getLength()];
+		for (int i = 0; i < locations.length; i++) {
 			Element mirrorNode = (Element) mirrorNodes.item(i);
-			String infoURL = mirrorNode.getAttribute("url"); //$NON-NLS-1$
-			infos[i] = new MirrorInfo(infoURL, i);
+			locations[i] = mirrorNode.getAttribute("url"); //$NON-NLS-1$
 		}
+		return locations;
+	}
+
+	private MirrorInfo[] buildMirrorInfos(String[] locations) {
+		int mirrorCount = locations.length;
+		MirrorInfo[] infos = new MirrorInfo[mirrorCount + 1];
+		for (int i = 0; i < mirrorCount; i++)
+			infos[i] = new MirrorInfo(locations[i], i);
 		//p2: add the base site as the last resort mirror so we can track download speed and failure rate
 		infos[mirrorCount] = new MirrorInfo(baseURI.toString(), mirrorCount);
+		if (statistics != null) {
+			for (MirrorInfo info : infos)
+				statistics.apply(info);
+		}
 		return infos;
 	}
 
@@ -324,7 +410,7 @@ public class MirrorSelector {
 		//if we failed to relativize the location, we can't select a mirror
 		if (relativeLocation == null || relativeLocation.isAbsolute())
 			return inputLocation;
-		MirrorInfo selectedMirror = selectMirror(monitor);
+		MirrorInfo selectedMirror = selectMirror(relativeLocation, monitor);
 		if (selectedMirror == null)
 			return inputLocation;
 		if (Tracing.DEBUG_MIRRORS)
@@ -350,14 +436,7 @@ public class MirrorSelector {
 	}
 
 	private MirrorInfoComparator getComparator() {
-		long maxBytesPerSecond = 0;
-		if (mirrors != null) {
-			for (MirrorInfo mi : mirrors) {
-				maxBytesPerSecond = max(maxBytesPerSecond, mi.bytesPerSecond);
-			}
-		}
-		// Use the fastest mirror, with 0 failures and initial rank 1 as base query
-		return new MirrorInfoComparator(maxBytesPerSecond, 0, 1);
+		return MirrorInfoComparator.forMirrors(mirrors);
 	}
 
 	private void log(String message, Throwable exception) {
@@ -390,6 +469,8 @@ public class MirrorSelector {
 						newRate = (oldRate + newRate) / 2;
 					mirror.setBytesPerSecond(newRate);
 				}
+				if (statistics != null)
+					statistics.record(mirror);
 				if (Tracing.DEBUG_MIRRORS)
 					Tracing.debug("Updated mirror " + mirror); //$NON-NLS-1$
 				return;
@@ -413,11 +494,15 @@ public class MirrorSelector {
 	 * Selects a mirror from the given list of mirrors. Returns null if a mirror
 	 * could not be found.
 	 */
-	private MirrorInfo selectMirror(IProgressMonitor monitor) {
+	private MirrorInfo selectMirror(URI relativeLocation, IProgressMonitor monitor) {
 		initMirrors(monitor);
 		final int mirrorCount;
 		if (mirrors == null || (mirrorCount = mirrors.length) == 0)
 			return null;
+		if (!probed) {
+			probed = true;
+			probeMirrors(relativeLocation);
+		}
 
 		MirrorInfo selected;
 		if (mirrorCount == 1)
@@ -452,4 +537,64 @@ public class MirrorSelector {
 		return selected;
 	}
 
+	/**
+	 * Measures the latency of the best mirrors whose performance is not known yet,
+	 * by asking them in parallel for the given artifact. Mirrors which cannot be
+	 * reached are counted as failed. Probes which take longer than
+	 * {@link #PROBE_TIMEOUT} are not waited for, their results are recorded when
+	 * they complete.
+	 */
+	private void probeMirrors(URI relativeLocation) {
+		if (mirrors.length < 2)
+			return;
+		Arrays.sort(mirrors, getComparator());
+		List<MirrorInfo> unknown = new ArrayList<>(PROBE_COUNT);
+		for (int i = 0; i < min(PROBE_COUNT, mirrors.length); i++) {
+			if (mirrors[i].getBytesPerSecond() <= 0 && mirrors[i].getLatency() == MirrorInfo.UNKNOWN_LATENCY)
+				unknown.add(mirrors[i]);
+		}
+		if (unknown.isEmpty())
+			return;
+		ExecutorService executor = Executors.newFixedThreadPool(unknown.size(), runnable -> {
+			Thread thread = new Thread(runnable, "Mirror probe"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			List<Future<?>> probes = new ArrayList<>(unknown.size());
+			for (MirrorInfo mirror : unknown)
+				probes.add(executor.submit(() -> probe(mirror, relativeLocation)));
+			long deadline = System.currentTimeMillis() + PROBE_TIMEOUT;
+			for (Future<?> probe : probes) {
+				try {
+					probe.get(max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				} catch (TimeoutException | ExecutionException e) {
+					// the probe records its result when it completes
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private void probe(MirrorInfo mirror, URI relativeLocation) {
+		long start = System.nanoTime();
+		try {
+			transport.getLastModified(new URI(mirror.locationString + relativeLocation.getPath()), new NullProgressMonitor());
+			mirror.setLatency((System.nanoTime() - start) / 1000000);
+		} catch (FileNotFoundException e) {
+			// the mirror answered, it may just not have this artifact
+			mirror.setLatency((System.nanoTime() - start) / 1000000);
+		} catch (Exception e) {
+			mirror.incrementFailureCount();
+		}
+		if (statistics != null)
+			statistics.record(mirror);
+		if (Tracing.DEBUG_MIRRORS)
+			Tracing.debug("Probed mirror " + mirror); //$NON-NLS-1$
+	}
+
 }
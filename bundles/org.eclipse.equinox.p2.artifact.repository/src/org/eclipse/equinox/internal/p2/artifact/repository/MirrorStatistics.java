@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector.MirrorInfo;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+
+/**
+ * The performance of mirrors and the mirror lists of repositories, kept in the
+ * data area of an agent so that a new session starts with the mirrors which
+ * were fast before, instead of discovering them again.
+ * <p>
+ * All selectors of an agent share one instance. Changes are written to disk
+ * shortly after they are made, entries which have not been updated for
+ * {@link #ENTRY_MAX_AGE} are dropped.
+ * </p>
+ */
+public class MirrorStatistics {
+	private static final String FILE_NAME = "mirrors.properties"; //$NON-NLS-1$
+	private static final String MIRROR_PREFIX = "mirror."; //$NON-NLS-1$
+	private static final String LIST_PREFIX = "list."; //$NON-NLS-1$
+	// mirror lists are fetched again after a day
+	private static final long LIST_MAX_AGE = 24 * 60 * 60 * 1000L;
+	static final long ENTRY_MAX_AGE = 30 * 24 * 60 * 60 * 1000L;
+	private static final long SAVE_DELAY = 5000;
+
+	private static final Map<File, MirrorStatistics> instances = new HashMap<>();
+	private static final Timer saver = new Timer("Mirror statistics", true); //$NON-NLS-1$
+
+	private final File file;
+	private final Properties properties = new Properties();
+	private boolean saveScheduled;
+
+	/**
+	 * Returns the statistics of the given agent, or <code>null</code> if the
+	 * agent has no location to keep them in.
+	 */
+	public static MirrorStatistics forAgent(IProvisioningAgent agent) {
+		IAgentLocation location = agent == null ? null : agent.getService(IAgentLocation.class);
+		URI dataArea = location == null ? null : location.getDataArea(Activator.ID);
+		if (dataArea == null || !"file".equals(dataArea.getScheme())) //$NON-NLS-1$
+			return null;
+		File file = new File(new File(dataArea), FILE_NAME);
+		synchronized (instances) {
+			return instances.computeIfAbsent(file, MirrorStatistics::new);
+		}
+	}
+
+	public MirrorStatistics(File file) {
+		this.file = file;
+		if (!file.isFile())
+			return;
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			properties.load(input);
+		} catch (IOException | IllegalArgumentException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read mirror statistics from " + file, e)); //$NON-NLS-1$
+			properties.clear();
+		}
+		long oldest = System.currentTimeMillis() - ENTRY_MAX_AGE;
+		properties.entrySet().removeIf(entry -> timestamp((String) entry.getValue()) < oldest);
+	}
+
+	/**
+	 * Returns the mirrors recorded for the given mirrors URL, or
+	 * <code>null</code> if they are not known or too old.
+	 */
+	public synchronized String[] getMirrors(String mirrorsURL) {
+		String value = properties.getProperty(LIST_PREFIX + mirrorsURL);
+		if (value == null || timestamp(value) < System.currentTimeMillis() - LIST_MAX_AGE)
+			return null;
+		String[] fields = value.split(" "); //$NON-NLS-1$
+		return Arrays.copyOfRange(fields, 1, fields.length);
+	}
+
+	public synchronized void setMirrors(String mirrorsURL, String[] locations) {
+		StringBuilder value = new StringBuilder().append(System.currentTimeMillis());
+		for (String location : locations)
+			value.append(' ').append(location.replace(" ", "%20")); //$NON-NLS-1$ //$NON-NLS-2$
+		properties.setProperty(LIST_PREFIX + mirrorsURL, value.toString());
+		scheduleSave();
+	}
+
+	/**
+	 * Initializes the given mirror with its recorded transfer rate and latency. A
+	 * mirror which failed after its last successful download starts with a
+	 * failure, so that it is ranked below mirrors which did not fail until the
+	 * failure wears off like a new one.
+	 */
+	public synchronized void apply(MirrorInfo mirror) {
+		String value = properties.getProperty(MIRROR_PREFIX + mirror.locationString);
+		if (value == null)
+			return;
+		String[] fields = value.split(","); //$NON-NLS-1$
+		if (fields.length < 4)
+			return;
+		try {
+			long bytesPerSecond = Long.parseLong(fields[1]);
+			long latency = Long.parseLong(fields[2]);
+			boolean failed = Integer.parseInt(fields[3]) > 0;
+			synchronized (mirror) {
+				if (bytesPerSecond > 0)
+					mirror.bytesPerSecond = bytesPerSecond;
+				if (latency >= 0)
+					mirror.latency = latency;
+				// counted like a new failure, so that it wears off as one
+				if (failed && mirror.failureCount == 0)
+					mirror.incrementFailureCount();
+			}
+		} catch (NumberFormatException e) {
+			// ignore the entry
+		}
+	}
+
+	/**
+	 * Records the current transfer rate, latency and failure state of the given
+	 * mirror.
+	 */
+	public synchronized void record(MirrorInfo mirror) {
+		long bytesPerSecond;
+		long latency;
+		int failed;
+		synchronized (mirror) {
+			bytesPerSecond = mirror.bytesPerSecond;
+			latency = mirror.latency;
+			failed = mirror.failureCount > 0 ? 1 : 0;
+		}
+		properties.setProperty(MIRROR_PREFIX + mirror.locationString, System.currentTimeMillis() + "," + bytesPerSecond + ',' + latency + ',' + failed); //$NON-NLS-1$
+		scheduleSave();
+	}
+
+	private void scheduleSave() {
+		if (saveScheduled)
+			return;
+		saveScheduled = true;
+		saver.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				save();
+			}
+		}, SAVE_DELAY);
+	}
+
+	/**
+	 * Writes the statistics to disk.
+	 */
+	public synchronized void save() {
+		saveScheduled = false;
+		try {
+			file.getParentFile().mkdirs();
+			File temp = new File(file.getParentFile(), FILE_NAME + ".tmp"); //$NON-NLS-1$
+			try (OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+				properties.store(output, null);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to write mirror statistics to " + file, e)); //$NON-NLS-1$
+		}
+	}
+
+	// every value starts with the time it was recorded
+	private static long timestamp(String value) {
+		int separator = -1;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ' ' || c == ',') {
+				separator = i;
+				break;
+			}
+		}
+		try {
+			return Long.parseLong(separator < 0 ? value : value.substring(0, separator));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
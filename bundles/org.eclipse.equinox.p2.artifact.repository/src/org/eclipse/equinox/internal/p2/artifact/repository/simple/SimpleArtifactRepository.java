@@ -1453,6 +1453,51 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		return result;
 	}
 
+	/**
+	 * Executes the runnable like {@link #executeBatch(IRunnableWithProgress, IProgressMonitor)}
+	 * but without holding the monitor of this repository while it runs, so that the
+	 * runnable may add artifacts from several threads. The repository is still only
+	 * saved once, at the end.
+	 */
+	public IStatus executeConcurrentBatch(IRunnableWithProgress runnable, IProgressMonitor monitor) {
+		IStatus result = null;
+
+		boolean lockAcquired = false;
+		synchronized (this) {
+			if (canLock()) {
+				lockAcquired = lockAndLoad(false, monitor);
+				if (!lockAcquired)
+					return new Status(IStatus.ERROR, Activator.ID, "Could not lock artifact repository for writing", null); //$NON-NLS-1$
+			}
+			disableSave = true;
+		}
+		try {
+			runnable.run(monitor);
+		} catch (OperationCanceledException oce) {
+			result = new Status(IStatus.CANCEL, Activator.ID, oce.getMessage(), oce);
+		} catch (Throwable e) {
+			result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+		} finally {
+			synchronized (this) {
+				disableSave = false;
+				try {
+					save();
+				} catch (Exception e) {
+					if (result != null)
+						result = new MultiStatus(Activator.ID, IStatus.ERROR, new IStatus[] {result}, e.getMessage(), e);
+					else
+						result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+				} finally {
+					if (lockAcquired)
+						unlock();
+				}
+			}
+		}
+		if (result == null)
+			result = Status.OK_STATUS;
+		return result;
+	}
+
 	@Override
 	public synchronized IIndex<IArtifactKey> getIndex(String memberName) {
 		if (!holdsLock() && URIUtil.isFileURI(getLocation())) {
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+
+/**
+ * A provisioning context which queries the metadata of another context once
+ * and answers all following metadata queries from that snapshot. Flows which
+ * call the planner several times for the same repositories, like the request
+ * flexer or the reconciler, use it so that the available installable units are
+ * gathered only once.
+ * <p>
+ * The snapshot is taken on the first call to {@link #getMetadata}. It is the
+ * metadata of the original context, which is the merged and indexed snapshot
+ * the agent shares between contexts over the same repositories. The planner
+ * additionally gets the units picked by id and version from it. The context
+ * copies the properties and extra installable units of the original context
+ * and never changes the original. Artifacts are taken from the original
+ * context until other artifact repositories are set. Setting the metadata
+ * repositories starts a new snapshot. Copies made with
+ * {@link #MetadataSnapshotContext(MetadataSnapshotContext)} share the snapshot
+ * but have their own state.
+ * </p>
+ */
+public class MetadataSnapshotContext extends ProvisioningContext {
+	/*
+	 * The metadata of a context, taken once. The queryable is the metadata of the
+	 * context, which is the shared snapshot of the agent when it has one. The
+	 * units picked by id and version are only gathered when the planner asks.
+	 */
+	private static final class Snapshot {
+		private final ProvisioningContext source;
+		private IQueryable<IInstallableUnit> queryable;
+		private Map<String, IInstallableUnit> units;
+
+		Snapshot(ProvisioningContext source) {
+			this.source = source;
+		}
+
+		synchronized IQueryable<IInstallableUnit> getQueryable(IProgressMonitor monitor) {
+			if (queryable == null)
+				queryable = source.getMetadata(monitor);
+			return queryable;
+		}
+
+		synchronized Map<String, IInstallableUnit> getUnits(IProgressMonitor monitor) {
+			if (units == null) {
+				SubMonitor sub = SubMonitor.convert(monitor, 1000);
+				IQueryResult<IInstallableUnit> matches = getQueryable(sub.newChild(500)).query(QueryUtil.createIUQuery(null, VersionRange.emptyRange), sub.newChild(500));
+				Map<String, IInstallableUnit> result = new HashMap<>();
+				for (IInstallableUnit iu : matches) {
+					String key = iu.getId() + '_' + iu.getVersion().toString();
+					IInstallableUnit currentIU = result.get(key);
+					if (currentIU == null || SimplePlanner.hasHigherFidelity(iu, currentIU))
+						result.put(key, iu);
+				}
+				units = Collections.unmodifiableMap(result);
+			}
+			return units;
+		}
+	}
+
+	private final IProvisioningAgent agent;
+	// answers the artifact queries as long as no artifact repositories are set here
+	private final ProvisioningContext original;
+	private boolean ownArtifactRepositories;
+	private URI[] artifactRepositories;
+	private Snapshot snapshot;
+
+	/**
+	 * Creates a context taking its metadata from a snapshot of the given context.
+	 *
+	 * @param agent the agent which loads the repositories set on this context
+	 * @param original the context to take a snapshot of
+	 */
+	public MetadataSnapshotContext(IProvisioningAgent agent, ProvisioningContext original) {
+		super(agent);
+		this.agent = agent;
+		this.original = original;
+		this.snapshot = new Snapshot(original);
+		getProperties().clear();
+		getProperties().putAll(original.getProperties());
+		setExtraInstallableUnits(original.getExtraInstallableUnits());
+	}
+
+	/**
+	 * Creates a copy of the given snapshot context which shares its snapshot.
+	 */
+	public MetadataSnapshotContext(MetadataSnapshotContext original) {
+		this(original.agent, original.original);
+		this.snapshot = original.snapshot;
+		getProperties().clear();
+		getProperties().putAll(original.getProperties());
+		setExtraInstallableUnits(original.getExtraInstallableUnits());
+		if (original.ownArtifactRepositories)
+			setArtifactRepositories(original.artifactRepositories);
+	}
+
+	/**
+	 * Returns the available installable units, keyed by id and version.
+	 */
+	Map<String, IInstallableUnit> getAvailableUnits(IProgressMonitor monitor) {
+		return snapshot.getUnits(monitor);
+	}
+
+	@Override
+	public IQueryable<IInstallableUnit> getMetadata(IProgressMonitor monitor) {
+		return snapshot.getQueryable(monitor);
+	}
+
+	@Override
+	public void setMetadataRepositories(URI... metadataRepositories) {
+		super.setMetadataRepositories(metadataRepositories);
+		// copies made so far keep the snapshot of the former repositories
+		ProvisioningContext source = new ProvisioningContext(agent);
+		source.getProperties().clear();
+		source.getProperties().putAll(getProperties());
+		source.setMetadataRepositories(metadataRepositories);
+		snapshot = new Snapshot(source);
+	}
+
+	@Override
+	public IQueryable<IArtifactKey> getArtifactKeys(IProgressMonitor monitor) {
+		return ownArtifactRepositories ? super.getArtifactKeys(monitor) : original.getArtifactKeys(monitor);
+	}
+
+	@Override
+	public IQueryable<IArtifactDescriptor> getArtifactDescriptors(IProgressMonitor monitor) {
+		return ownArtifactRepositories ? super.getArtifactDescriptors(monitor) : original.getArtifactDescriptors(monitor);
+	}
+
+	@Override
+	public IQueryable<IArtifactRepository> getArtifactRepositories(IProgressMonitor monitor) {
+		return ownArtifactRepositories ? super.getArtifactRepositories(monitor) : original.getArtifactRepositories(monitor);
+	}
+
+	@Override
+	public void setArtifactRepositories(URI... artifactRepositories) {
+		super.setArtifactRepositories(artifactRepositories);
+		this.artifactRepositories = artifactRepositories;
+		ownArtifactRepositories = true;
+	}
+
+	@Override
+	public String toString() {
+		return "{snapshot of " + original + ", properties=" + getProperties() + "}"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  * This
  * program and the accompanying materials are made available under the terms of
@@ -353,6 +353,18 @@ public class SimplePlanner implements IPlanner {
 				resultsMap.put(key, iu);
 			}
 		}
+		if (context instanceof MetadataSnapshotContext) {
+			// the snapshot is already reduced to one unit per id and version, only the
+			// units given here need to be merged in
+			Map<String, IInstallableUnit> available = ((MetadataSnapshotContext) context).getAvailableUnits(monitor);
+			Map<String, IInstallableUnit> results = new HashMap<>(available);
+			for (Map.Entry<String, IInstallableUnit> entry : resultsMap.entrySet()) {
+				IInstallableUnit iu = available.get(entry.getKey());
+				if (iu == null || !hasHigherFidelity(iu, entry.getValue()))
+					results.put(entry.getKey(), entry.getValue());
+			}
+			return results.values().toArray(new IInstallableUnit[results.size()]);
+		}
 		SubMonitor sub = SubMonitor.convert(monitor, 1000);
 		IQueryable<IInstallableUnit> queryable = context.getMetadata(sub.newChild(500));
 		IQueryResult<IInstallableUnit> matches = queryable.query(QueryUtil.createIUQuery(null, VersionRange.emptyRange),
@@ -368,7 +380,7 @@ public class SimplePlanner implements IPlanner {
 		return results.toArray(new IInstallableUnit[results.size()]);
 	}
 
-	private static boolean hasHigherFidelity(IInstallableUnit iu, IInstallableUnit currentIU) {
+	static boolean hasHigherFidelity(IInstallableUnit iu, IInstallableUnit currentIU) {
 		if (Boolean.parseBoolean(currentIU.getProperty(IInstallableUnit.PROP_PARTIAL_IU))
 				&& !Boolean.parseBoolean(iu.getProperty(IInstallableUnit.PROP_PARTIAL_IU)))
 			return true;
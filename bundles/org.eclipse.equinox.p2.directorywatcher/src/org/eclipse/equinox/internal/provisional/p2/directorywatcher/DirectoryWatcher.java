@@ -15,7 +15,10 @@
 package org.eclipse.equinox.internal.provisional.p2.directorywatcher;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.BundleContext;
 
@@ -25,7 +28,7 @@ public class DirectoryWatcher {
 	public class WatcherThread extends Thread {
 
 		private final long pollFrequency;
-		private boolean done = false;
+		volatile boolean done = false;
 
 		public WatcherThread(long pollFrequency) {
 			super("Directory Watcher"); //$NON-NLS-1$
@@ -55,9 +58,161 @@ public class DirectoryWatcher {
 		}
 	}
 
+	/*
+	 * Watcher thread that is driven by file system events instead of polling. The
+	 * watched directories and their sub-directories (a bundle or feature directory
+	 * changes when its direct entries change) are registered with a WatchService.
+	 * Events are collected until no new event arrived for the debounce delay, then
+	 * the whole batch is delivered to the listeners in a single poll cycle.
+	 *
+	 * If the directories can not be watched, the thread falls back to polling.
+	 */
+	private class EventWatcherThread extends WatcherThread {
+		private final long debounce;
+		private final Set<File> topDirectories = new HashSet<>(Arrays.asList(directories));
+		private final Map<WatchKey, File> watchedDirectories = new HashMap<>();
+		private final Set<File> registered = new HashSet<>();
+		private volatile WatchService service;
+
+		EventWatcherThread(long pollFrequency, long debounce) {
+			super(pollFrequency);
+			this.debounce = debounce;
+		}
+
+		@Override
+		public void run() {
+			try {
+				service = FileSystems.getDefault().newWatchService();
+			} catch (IOException | UnsupportedOperationException e) {
+				log(NLS.bind(Messages.error_watch_service, Arrays.toString(directories)), e);
+				super.run();
+				return;
+			}
+			try {
+				for (File directory : directories)
+					register(directory);
+				registerSubdirectories(scan(null));
+				while (!done)
+					processEvents();
+			} catch (ClosedWatchServiceException | InterruptedException e) {
+				// stopped
+			} catch (IOException e) {
+				closeService();
+				if (!done) {
+					log(NLS.bind(Messages.error_watch_service, Arrays.toString(directories)), e);
+					super.run();
+				}
+			} catch (Throwable e) {
+				closeService();
+				log(Messages.error_main_loop, e);
+			}
+		}
+
+		private void processEvents() throws IOException, InterruptedException {
+			Set<File> changed = new HashSet<>();
+			boolean overflow = false;
+			WatchKey key = service.take();
+			do {
+				overflow |= collect(key, changed);
+				key = service.poll(debounce, TimeUnit.MILLISECONDS);
+			} while (key != null && !done);
+			if (done)
+				return;
+
+			Set<File> known = scan(overflow ? null : changed);
+			registerSubdirectories(overflow ? known : changed);
+		}
+
+		/*
+		 * Scans the directories, or only the given changed files, and returns the files seen.
+		 */
+		private Set<File> scan(Set<File> changed) {
+			synchronized (DirectoryWatcher.this) {
+				if (changed == null)
+					poll();
+				else
+					poll(changed);
+				return new HashSet<>(scannedFiles);
+			}
+		}
+
+		/*
+		 * Adds the files affected by the events of the key to the given set.
+		 *
+		 * @return whether events were lost and the directories have to be scanned
+		 */
+		private boolean collect(WatchKey key, Set<File> changed) throws IOException {
+			File directory = watchedDirectories.get(key);
+			if (directory == null)
+				return false;
+			boolean overflow = false;
+			boolean top = topDirectories.contains(directory);
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+					overflow = true;
+				else if (top)
+					changed.add(new File(directory, event.context().toString()));
+				else
+					changed.add(directory);
+			}
+			if (!key.reset()) {
+				watchedDirectories.remove(key);
+				registered.remove(directory);
+				if (top)
+					throw new IOException(NLS.bind(Messages.error_watch_service, directory));
+			}
+			return overflow;
+		}
+
+		private void registerSubdirectories(Set<File> files) throws IOException {
+			Set<File> added = new HashSet<>();
+			for (File file : files) {
+				if (!registered.contains(file) && topDirectories.contains(file.getParentFile()) && file.isDirectory()) {
+					register(file);
+					added.add(file);
+				}
+			}
+			// the directories may have changed between the scan and their registration
+			if (!added.isEmpty())
+				scan(added);
+		}
+
+		private void register(File directory) throws IOException {
+			WatchKey key = directory.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+			watchedDirectories.put(key, directory);
+			registered.add(directory);
+		}
+
+		private void closeService() {
+			try {
+				service.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		@Override
+		public synchronized void done() {
+			super.done();
+			if (service != null)
+				closeService();
+		}
+	}
+
 	public final static String POLL = "eclipse.p2.directory.watcher.poll"; //$NON-NLS-1$
 	public final static String DIR = "eclipse.p2.directory.watcher.dir"; //$NON-NLS-1$
+	/**
+	 * System property to disable the event based watcher and always poll, e.g. for
+	 * file systems that do not report changes.
+	 */
+	public final static String EVENTS = "eclipse.p2.directory.watcher.events"; //$NON-NLS-1$
+	/**
+	 * System property for the delay in ms without new events after which a batch of
+	 * changes is delivered to the listeners.
+	 */
+	public final static String DEBOUNCE = "eclipse.p2.directory.watcher.debounce"; //$NON-NLS-1$
 	private static final long DEFAULT_POLL_FREQUENCY = 2000;
+	private static final long DEFAULT_DEBOUNCE = 500;
 
 	public static void log(String string, Throwable e) {
 		System.err.println(string + ": " + e); //$NON-NLS-1$
@@ -113,11 +268,40 @@ public class DirectoryWatcher {
 		stopPoll();
 	}
 
+	/**
+	 * Delivers a batch of changes to the listeners. Only the given files are read
+	 * from disk, the other files seen by the previous poll are assumed unchanged.
+	 *
+	 * @param changed the files that were created, modified or deleted since the last poll
+	 */
+	synchronized void poll(Set<File> changed) {
+		startPoll();
+		Set<File> markers = new HashSet<>();
+		Set<File> candidates = new LinkedHashSet<>(removals);
+		candidates.addAll(changed);
+		for (File file : candidates) {
+			boolean mayHaveChanged = changed.contains(file);
+			if (mayHaveChanged && !file.exists())
+				continue;
+			if (file.getPath().endsWith(DEL_EXT))
+				markers.add(file);
+			else
+				processScannedFile(file, mayHaveChanged);
+		}
+		// handle deletion markers last so that their targets get removed by this batch
+		for (File marker : markers)
+			processDeletionMarker(marker);
+		stopPoll();
+	}
+
 	public synchronized void start(final long pollFrequency) {
 		if (watcher != null)
 			throw new IllegalStateException(Messages.thread_started);
 
-		watcher = new WatcherThread(pollFrequency);
+		if (Boolean.parseBoolean(System.getProperty(EVENTS, Boolean.TRUE.toString())))
+			watcher = new EventWatcherThread(pollFrequency, Long.getLong(DEBOUNCE, DEFAULT_DEBOUNCE));
+		else
+			watcher = new WatcherThread(pollFrequency);
 		watcher.start();
 	}
 
@@ -148,24 +332,31 @@ public class DirectoryWatcher {
 				continue;
 			for (File file : list) {
 				// if this is a deletion marker then add to the list of pending deletions.
-				if (file.getPath().endsWith(DEL_EXT)) {
-					File target = new File(file.getPath().substring(0, file.getPath().length() - 4));
-					removals.add(target);
-					pendingDeletions.add(target);
-				} else {
-					// else remember that we saw the file and remove it from this list of files to be 
-					// removed at the end.  Then notify all the listeners as needed.
-					scannedFiles.add(file);
-					removals.remove(file);
-					for (DirectoryChangeListener listener : listeners) {
-						if (isInterested(listener, file))
-							processFile(file, listener);
-					}
-				}
+				if (file.getPath().endsWith(DEL_EXT))
+					processDeletionMarker(file);
+				else
+					processScannedFile(file, true);
 			}
 		}
 	}
 
+	private void processDeletionMarker(File marker) {
+		File target = new File(marker.getPath().substring(0, marker.getPath().length() - 4));
+		removals.add(target);
+		pendingDeletions.add(target);
+	}
+
+	private void processScannedFile(File file, boolean mayHaveChanged) {
+		// remember that we saw the file and remove it from this list of files to be 
+		// removed at the end.  Then notify all the listeners as needed.
+		scannedFiles.add(file);
+		removals.remove(file);
+		for (DirectoryChangeListener listener : listeners) {
+			if (isInterested(listener, file))
+				processFile(file, listener, mayHaveChanged);
+		}
+	}
+
 	private void stopPoll() {
 		notifyRemovals();
 		removals = scannedFiles;
@@ -191,13 +382,13 @@ public class DirectoryWatcher {
 		}
 	}
 
-	private void processFile(File file, DirectoryChangeListener listener) {
+	private void processFile(File file, DirectoryChangeListener listener, boolean mayHaveChanged) {
 		try {
 			Long oldTimestamp = listener.getSeenFile(file);
 			if (oldTimestamp == null) {
 				// The file is new
 				listener.added(file);
-			} else {
+			} else if (mayHaveChanged) {
 				// The file is not new but may have changed
 				long lastModified = file.lastModified();
 				if (oldTimestamp.longValue() != lastModified)
@@ -20,6 +20,7 @@ public class Messages extends NLS {
 	public static String artifact_repo_manager_not_registered;
 	public static String error_main_loop;
 	public static String error_processing;
+	public static String error_watch_service;
 	public static String failed_create_artifact_repo;
 	public static String failed_create_metadata_repo;
 	public static String filename_missing;
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.p2.metadata.TranslationSupport;
+import org.eclipse.equinox.internal.p2.metadata.index.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.KeyWithLocale;
+import org.eclipse.equinox.p2.metadata.index.IIndex;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * The installable units of several metadata repositories merged into one
+ * queryable, with an id and a capability index over all of them. Like a
+ * compound queryable of the repositories, it holds one unit per id and
+ * version. Translated properties are looked up in the snapshot as well.
+ */
+public class MetadataSnapshot extends IndexProvider<IInstallableUnit> {
+	private final List<IInstallableUnit> units;
+	private final IIndex<IInstallableUnit> idIndex;
+	private final IIndex<IInstallableUnit> capabilityIndex;
+	private TranslationSupport translationSupport;
+
+	public MetadataSnapshot(Collection<IMetadataRepository> repositories) {
+		Set<IInstallableUnit> merged = new LinkedHashSet<>();
+		for (IMetadataRepository repository : repositories)
+			merged.addAll(repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet());
+		units = Collections.unmodifiableList(new ArrayList<>(merged));
+		idIndex = new IdIndex(units.iterator());
+		capabilityIndex = new CapabilityIndex(units.iterator());
+	}
+
+	/**
+	 * Returns the number of installable units in this snapshot.
+	 */
+	public int size() {
+		return units.size();
+	}
+
+	@Override
+	public Iterator<IInstallableUnit> everything() {
+		return units.iterator();
+	}
+
+	@Override
+	public IIndex<IInstallableUnit> getIndex(String memberName) {
+		if (InstallableUnit.MEMBER_PROVIDED_CAPABILITIES.equals(memberName))
+			return capabilityIndex;
+		if (InstallableUnit.MEMBER_ID.equals(memberName))
+			return idIndex;
+		return null;
+	}
+
+	/**
+	 * Returns the translation support which takes the translation fragments from
+	 * this snapshot. It is shared by all users of the snapshot, so that the
+	 * fragments of a locale are only looked up once.
+	 */
+	public synchronized TranslationSupport getTranslationSupport() {
+		if (translationSupport == null)
+			translationSupport = new TranslationSupport(this);
+		return translationSupport;
+	}
+
+	@Override
+	public synchronized Object getManagedProperty(Object client, String memberName, Object key) {
+		if (!(client instanceof IInstallableUnit))
+			return null;
+		IInstallableUnit iu = (IInstallableUnit) client;
+		if (InstallableUnit.MEMBER_TRANSLATED_PROPERTIES.equals(memberName)) {
+			TranslationSupport translations = getTranslationSupport();
+			return key instanceof KeyWithLocale ? translations.getIUProperty(iu, (KeyWithLocale) key) : translations.getIUProperty(iu, key.toString());
+		}
+		return null;
+	}
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
+import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+
+/**
+ * The metadata snapshots of an agent, so that provisioning contexts over the
+ * same repositories share one merged and indexed view of their installable
+ * units instead of querying each repository.
+ * <p>
+ * A snapshot is kept for a set of loaded repository instances. A repository
+ * loaded again, for instance after a refresh, is a new instance and leads to a
+ * new snapshot. The snapshots are dropped when a metadata repository is added,
+ * removed or changed, and are only held softly. Modifiable repositories may
+ * change without notice and are never part of a snapshot, they are queried
+ * next to it. The snapshots are kept in memory for the life of the agent and
+ * are not persisted, the repositories they are made of are cached on disk
+ * already.
+ * </p>
+ */
+public class MetadataSnapshotCache {
+	private static final int MAX_SNAPSHOTS = 4;
+
+	private static final Map<IProvisioningAgent, MetadataSnapshotCache> instances = new WeakHashMap<>();
+
+	/*
+	 * A snapshot with the repositories it was made of. The repositories are only
+	 * referenced weakly, so that the cache does not keep them loaded.
+	 */
+	private static final class Entry {
+		final List<WeakReference<IMetadataRepository>> repositories;
+		final SoftReference<MetadataSnapshot> snapshot;
+
+		Entry(Set<IMetadataRepository> repositories, MetadataSnapshot snapshot) {
+			this.repositories = new ArrayList<>(repositories.size());
+			for (IMetadataRepository repository : repositories)
+				this.repositories.add(new WeakReference<>(repository));
+			this.snapshot = new SoftReference<>(snapshot);
+		}
+
+		boolean isFor(Set<IMetadataRepository> others) {
+			if (repositories.size() != others.size())
+				return false;
+			for (WeakReference<IMetadataRepository> repository : repositories) {
+				if (!others.contains(repository.get()))
+					return false;
+			}
+			return true;
+		}
+	}
+
+	// the most recently used first
+	private final LinkedList<Entry> snapshots = new LinkedList<>();
+	// incremented when the snapshots are dropped, so that a snapshot made meanwhile is not kept
+	private int generation;
+
+	/**
+	 * Returns the snapshots of the given agent, or <code>null</code> if the agent
+	 * has no event bus to tell when they become stale.
+	 */
+	public static MetadataSnapshotCache forAgent(IProvisioningAgent agent) {
+		if (agent == null)
+			return null;
+		synchronized (instances) {
+			MetadataSnapshotCache cache = instances.get(agent);
+			if (cache == null) {
+				IProvisioningEventBus bus = agent.getService(IProvisioningEventBus.class);
+				if (bus == null)
+					return null;
+				cache = new MetadataSnapshotCache();
+				bus.addListener(cache.listener);
+				instances.put(agent, cache);
+			}
+			return cache;
+		}
+	}
+
+	private final ProvisioningListener listener = event -> {
+		if (event instanceof RepositoryEvent) {
+			RepositoryEvent repositoryEvent = (RepositoryEvent) event;
+			if (repositoryEvent.getRepositoryType() != IRepository.TYPE_METADATA)
+				return;
+			int kind = repositoryEvent.getKind();
+			if (kind == RepositoryEvent.ADDED || kind == RepositoryEvent.REMOVED || kind == RepositoryEvent.CHANGED)
+				clear();
+		}
+	};
+
+	/**
+	 * Returns a queryable over the installable units of the given repositories,
+	 * made of a snapshot of the ones which cannot be modified and the modifiable
+	 * ones.
+	 */
+	public IQueryable<IInstallableUnit> getMetadata(Collection<IMetadataRepository> repositories) {
+		Set<IMetadataRepository> fixed = Collections.newSetFromMap(new IdentityHashMap<>());
+		List<IQueryable<IInstallableUnit>> queryables = new ArrayList<>();
+		for (IMetadataRepository repository : repositories) {
+			if (repository.isModifiable())
+				queryables.add(repository);
+			else
+				fixed.add(repository);
+		}
+		// a single repository is indexed already
+		if (fixed.size() < 2)
+			return QueryUtil.compoundQueryable(repositories);
+		MetadataSnapshot snapshot = getSnapshot(fixed);
+		if (queryables.isEmpty())
+			return snapshot;
+		queryables.add(0, snapshot);
+		return QueryUtil.compoundQueryable(queryables);
+	}
+
+	private MetadataSnapshot getSnapshot(Set<IMetadataRepository> repositories) {
+		int buildGeneration;
+		synchronized (snapshots) {
+			buildGeneration = generation;
+			for (Iterator<Entry> iterator = snapshots.iterator(); iterator.hasNext();) {
+				Entry entry = iterator.next();
+				if (!entry.isFor(repositories))
+					continue;
+				iterator.remove();
+				MetadataSnapshot snapshot = entry.snapshot.get();
+				if (snapshot != null) {
+					snapshots.addFirst(entry);
+					return snapshot;
+				}
+			}
+		}
+		// build the snapshot without holding the lock, a concurrent build for the same repositories only costs time
+		MetadataSnapshot snapshot = new MetadataSnapshot(repositories);
+		if (DebugHelper.DEBUG_ENGINE)
+			DebugHelper.debug("MetadataSnapshotCache", "Created snapshot of " + repositories.size() + " repositories with " + snapshot.size() + " units"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		synchronized (snapshots) {
+			if (buildGeneration != generation)
+				return snapshot;
+			snapshots.removeIf(entry -> entry.isFor(repositories));
+			snapshots.addFirst(new Entry(repositories, snapshot));
+			while (snapshots.size() > MAX_SNAPSHOTS)
+				snapshots.removeLast();
+		}
+		return snapshot;
+	}
+
+	public void clear() {
+		synchronized (snapshots) {
+			generation++;
+			snapshots.clear();
+		}
+	}
+}
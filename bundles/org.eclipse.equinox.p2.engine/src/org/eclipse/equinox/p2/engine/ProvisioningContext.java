@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2017 IBM Corporation and others.
+ *  Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -20,6 +20,8 @@ import java.net.URI;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.engine.DebugHelper;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshotCache;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -188,6 +190,7 @@ public class ProvisioningContext {
 			if (repository == null) {
 				repository = repoManager.loadRepository(location, monitor.newChild(100));
 				loadedArtifactRepositories.put(location, repository);
+				pin(repoManager, location);
 			}
 			repos.add(repository);
 		} catch (ProvisionException e) {
@@ -196,6 +199,15 @@ public class ProvisioningContext {
 		}
 	}
 
+	/*
+	 * Keep the repository from being evicted from the cache of the manager while this
+	 * context is in use.
+	 */
+	private void pin(IRepositoryManager<?> manager, URI location) {
+		if (manager instanceof AbstractRepositoryManager<?>)
+			((AbstractRepositoryManager<?>) manager).pin(location, this);
+	}
+
 	private Set<IMetadataRepository> getLoadedMetadataRepositories(IProgressMonitor monitor) {
 		IMetadataRepositoryManager repoManager = agent.getService(IMetadataRepositoryManager.class);
 		URI[] repositories = metadataRepositories == null ? repoManager.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL) : metadataRepositories;
@@ -232,6 +244,7 @@ public class ProvisioningContext {
 			try {
 				repository = manager.loadRepository(location, sub.newChild(500));
 				loadedMetadataRepositories.put(location, repository);
+				pin(manager, location);
 			} catch (ProvisionException e) {
 				failedMetadataRepositories.add(location);
 				return;
@@ -296,7 +309,11 @@ public class ProvisioningContext {
 	 * @see #FOLLOW_REPOSITORY_REFERENCES
 	 */
 	public IQueryable<IInstallableUnit> getMetadata(IProgressMonitor monitor) {
-		return QueryUtil.compoundQueryable(getLoadedMetadataRepositories(monitor));
+		Set<IMetadataRepository> repositories = getLoadedMetadataRepositories(monitor);
+		MetadataSnapshotCache snapshots = MetadataSnapshotCache.forAgent(agent);
+		if (snapshots == null)
+			return QueryUtil.compoundQueryable(repositories);
+		return snapshots.getMetadata(repositories);
 	}
 
 	/**
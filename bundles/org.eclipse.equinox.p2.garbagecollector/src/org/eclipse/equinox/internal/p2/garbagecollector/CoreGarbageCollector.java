@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,10 +14,11 @@
 package org.eclipse.equinox.internal.p2.garbagecollector;
 
 import java.util.*;
+import java.util.function.Predicate;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
-import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 
 /**
@@ -36,16 +37,36 @@ public class CoreGarbageCollector {
 	 */
 	public synchronized void clean(IArtifactKey[] markSet, final IArtifactRepository aRepository) {
 		Set<IArtifactKey> set = new HashSet<>(Arrays.asList(markSet));
-		//this query will match all artifact keys that are not in the given set
-		IQuery<IArtifactKey> query = QueryUtil.createQuery(IArtifactKey.class, "unique($0)", set); //$NON-NLS-1$
+		clean(set::contains, aRepository);
+	}
+
+	/**
+	 * Removes all artifacts in aRepository whose key is not marked.
+	 */
+	public synchronized void clean(Predicate<IArtifactKey> marked, final IArtifactRepository aRepository) {
 		aRepository.executeBatch(monitor -> {
-			for (IArtifactKey key : aRepository.query(query, null)) {
-				aRepository.removeDescriptor(key, new NullProgressMonitor());
-				if (DEBUG) {
-					Tracing.debug("Key removed:" + key); //$NON-NLS-1$
-				}
+			for (IArtifactKey key : aRepository.query(ArtifactKeyQuery.ALL_KEYS, null)) {
+				if (!marked.test(key))
+					remove(key, aRepository);
 			}
 		}, new NullProgressMonitor());
 	}
 
+	/**
+	 * Removes the artifacts with the given keys from aRepository.
+	 */
+	public synchronized void remove(Collection<IArtifactKey> keys, final IArtifactRepository aRepository) {
+		aRepository.executeBatch(monitor -> {
+			for (IArtifactKey key : keys)
+				remove(key, aRepository);
+		}, new NullProgressMonitor());
+	}
+
+	private void remove(IArtifactKey key, IArtifactRepository aRepository) {
+		aRepository.removeDescriptor(key, new NullProgressMonitor());
+		if (DEBUG) {
+			Tracing.debug("Key removed:" + key); //$NON-NLS-1$
+		}
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2019 IBM Corporation and others.
+ *  Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -13,6 +13,8 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.garbagecollector;
 
+import java.io.File;
+import java.net.URI;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.*;
@@ -20,11 +22,13 @@ import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.engine.*;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProvisioningListener;
+import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.spi.IAgentService;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.engine.IProfileRegistry;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.osgi.service.prefs.Preferences;
 
@@ -38,6 +42,11 @@ import org.osgi.service.prefs.Preferences;
  * Then, the MarkSets are obtained for every other registered Profile in a similar fashion.  Each MarkSet is
  * checked to see if its artifact repository is already a key in markSet.  If so, that MarkSet's artifact keys
  * are added to the list that is mapped to by the artifact repository.
+ *
+ * The keys of the profiles are kept in a {@link MarkSetIndex} in the data area of the agent. The entry of a
+ * profile is updated on each of its commits, so the keys it drops are released even if no collection ran
+ * then, and other profiles are only traversed again if they changed since. Usually only the keys which lost
+ * their last reference are removed. Once a day, all keys of the repositories are checked.
  */
 public class GarbageCollector implements SynchronousProvisioningListener, IAgentService {
 	/**
@@ -78,6 +87,9 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	private static final String ATTRIBUTE_CLASS = "class"; //$NON-NLS-1$
 
 	private static final String PT_MARKSET = GarbageCollectorHelper.ID + ".marksetproviders"; //$NON-NLS-1$
+	private static final String INDEX_FILE = "markset.index"; //$NON-NLS-1$
+	// the interval in which all keys of a repository are checked, not only the released ones
+	private static final long FULL_CLEAN_INTERVAL = 24 * 60 * 60 * 1000L;
 	final IProvisioningAgent agent;
 
 	//The GC is triggered when an uninstall event occurred during a "transaction" and the transaction is committed.
@@ -88,6 +100,8 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	 */
 	private Map<IArtifactRepository, Collection<IArtifactKey>> markSet;
 
+	private MarkSetIndex index;
+
 	public GarbageCollector(IProvisioningAgent agent) {
 		this.agent = agent;
 	}
@@ -97,7 +111,7 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 			keyList.add(element);
 	}
 
-	private void contributeMarkSets(IConfigurationElement runAttribute, IProfile profile, boolean addRepositories) {
+	private void contributeMarkSets(IConfigurationElement runAttribute, IProfile profile, Map<IArtifactRepository, Collection<IArtifactKey>> target) {
 		ParameterizedSafeRunnable providerExecutor = new ParameterizedSafeRunnable(runAttribute, profile);
 		SafeRunner.run(providerExecutor);
 		MarkSet[] aProfileMarkSets = providerExecutor.getResult();
@@ -108,16 +122,8 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 			if (aProfileMarkSet == null) {
 				continue;
 			}
-			Collection<IArtifactKey> keys = markSet.get(aProfileMarkSet.getRepo());
-			if (keys == null) {
-				if (addRepositories) {
-					keys = new HashSet<>();
-					markSet.put(aProfileMarkSet.getRepo(), keys);
-					addKeys(keys, aProfileMarkSet.getKeys());
-				}
-			} else {
-				addKeys(keys, aProfileMarkSet.getKeys());
-			}
+			Collection<IArtifactKey> keys = target.computeIfAbsent(aProfileMarkSet.getRepo(), repo -> new HashSet<>());
+			addKeys(keys, aProfileMarkSet.getKeys());
 		}
 	}
 
@@ -133,11 +139,62 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	}
 
 	private void invokeCoreGC() {
+		long now = System.currentTimeMillis();
+		boolean full = now - index.getLastFullClean() >= FULL_CLEAN_INTERVAL;
 		for (IArtifactRepository nextRepo : markSet.keySet()) {
-			IArtifactKey[] keys = markSet.get(nextRepo).toArray(new IArtifactKey[0]);
-			MarkSet aMarkSet = new MarkSet(keys, nextRepo);
-			new CoreGarbageCollector().clean(aMarkSet.getKeys(), aMarkSet.getRepo());
+			String location = nextRepo.getLocation().toString();
+			Set<String> released = index.takeReleasedKeys(location);
+			if (full) {
+				Set<String> referenced = index.getReferencedKeys(location);
+				new CoreGarbageCollector().clean(key -> referenced.contains(key.toExternalForm()), nextRepo);
+				continue;
+			}
+			List<IArtifactKey> unreferenced = new ArrayList<>();
+			for (String key : released) {
+				if (!index.isReferenced(location, key)) {
+					IArtifactKey artifactKey = parseKey(key, nextRepo);
+					if (artifactKey != null)
+						unreferenced.add(artifactKey);
+				}
+			}
+			if (!unreferenced.isEmpty())
+				new CoreGarbageCollector().remove(unreferenced, nextRepo);
 		}
+		if (full)
+			index.setLastFullClean(now);
+	}
+
+	private static IArtifactKey parseKey(String key, IArtifactRepository repository) {
+		// the external form is classifier,id,version
+		int first = key.indexOf(',');
+		int last = key.lastIndexOf(',');
+		if (first < 0 || first == last)
+			return null;
+		try {
+			return repository.createArtifactKey(key.substring(0, first), key.substring(first + 1, last), Version.create(key.substring(last + 1)));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private MarkSetIndex getIndex() {
+		if (index == null) {
+			IAgentLocation location = agent.getService(IAgentLocation.class);
+			URI dataArea = location == null ? null : location.getDataArea(GarbageCollectorHelper.ID);
+			File file = dataArea == null || !"file".equals(dataArea.getScheme()) ? null : new File(new File(dataArea), INDEX_FILE); //$NON-NLS-1$
+			index = new MarkSetIndex(file);
+		}
+		return index;
+	}
+
+	private static Map<String, Set<String>> toReferences(Map<IArtifactRepository, Collection<IArtifactKey>> marks) {
+		Map<String, Set<String>> references = new HashMap<>();
+		marks.forEach((repository, keys) -> {
+			Set<String> externalForms = references.computeIfAbsent(repository.getLocation().toString(), r -> new HashSet<>());
+			for (IArtifactKey key : keys)
+				externalForms.add(key.toExternalForm());
+		});
+		return references;
 	}
 
 	@Override
@@ -148,28 +205,42 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 				uninstallEventProfileId = event.getProfile().getProfileId();
 			}
 		} else if (o instanceof CommitOperationEvent) {
-			if (uninstallEventProfileId != null) {
-				CommitOperationEvent event = (CommitOperationEvent) o;
-				if (uninstallEventProfileId.equals(event.getProfile().getProfileId()) && getBooleanPreference(GarbageCollectorHelper.GC_ENABLED, true))
-					runGC(event.getProfile());
-				uninstallEventProfileId = null;
-			}
+			IProfile profile = ((CommitOperationEvent) o).getProfile();
+			boolean uninstalled = uninstallEventProfileId != null && uninstallEventProfileId.equals(profile.getProfileId());
+			uninstallEventProfileId = null;
+			if (!getBooleanPreference(GarbageCollectorHelper.GC_ENABLED, true))
+				return;
+			if (uninstalled)
+				runGC(profile);
+			else
+				updateIndex(profile);
 		} else if (o instanceof RollbackOperationEvent) {
 			if (uninstallEventProfileId != null && uninstallEventProfileId.equals(((RollbackOperationEvent) o).getProfile().getProfileId()))
 				uninstallEventProfileId = null;
 		}
 	}
 
-	public void runGC(IProfile profile) {
+	public synchronized void runGC(IProfile profile) {
 		markSet = new HashMap<>();
 		if (!traverseMainProfile(profile))
 			return;
 
-		//Complete each MarkSet with the MarkSets provided by all of the other registered Profiles
-		traverseRegisteredProfiles();
+		getIndex().update(profile.getProfileId(), profile.getTimestamp(), toReferences(markSet));
+		//Complete the index with the MarkSets provided by all of the other registered Profiles
+		traverseRegisteredProfiles(profile);
 
 		//Run the GC on each MarkSet
 		invokeCoreGC();
+		index.save();
+	}
+
+	/**
+	 * Records the keys the given profile references after a commit which did not
+	 * uninstall anything, so that the keys it drops later are released.
+	 */
+	private synchronized void updateIndex(IProfile profile) {
+		getIndex().update(profile.getProfileId(), profile.getTimestamp(), toReferences(traverse(profile)));
+		index.save();
 	}
 
 	@Override
@@ -188,33 +259,46 @@ public class GarbageCollector implements SynchronousProvisioningListener, IAgent
 	}
 
 	private boolean traverseMainProfile(IProfile profile) {
+		markSet = traverse(profile);
+		return true;
+	}
+
+	private Map<IArtifactRepository, Collection<IArtifactKey>> traverse(IProfile profile) {
 		IExtensionRegistry registry = RegistryFactory.getRegistry();
 		IConfigurationElement[] configElts = registry.getConfigurationElementsFor(PT_MARKSET);
 
-		//First we collect all repos and keys for the profile being GC'ed
+		Map<IArtifactRepository, Collection<IArtifactKey>> result = new HashMap<>();
 		for (IConfigurationElement configElt : configElts) {
 			if (configElt == null || !(configElt.getName().equals("run"))) { //$NON-NLS-1$
 				continue;
 			}
-			contributeMarkSets(configElt, profile, true);
+			contributeMarkSets(configElt, profile, result);
 		}
-		return true;
+		return result;
 	}
 
-	private void traverseRegisteredProfiles() {
-		IExtensionRegistry registry = RegistryFactory.getRegistry();
-		IConfigurationElement[] configElts = registry.getConfigurationElementsFor(PT_MARKSET);
-		for (IConfigurationElement configElt : configElts) {
-			if (configElt == null || !(configElt.getName().equals("run"))) { //$NON-NLS-1$
+	private void traverseRegisteredProfiles(IProfile mainProfile) {
+		IProfileRegistry profileRegistry = agent.getService(IProfileRegistry.class);
+		if (profileRegistry == null)
+			return;
+		IProfile[] registeredProfiles = profileRegistry.getProfiles();
+		// the running profile also marks what is running, which is not recorded in its timestamp
+		String runningProfileId = getRunningProfileId(profileRegistry);
+		List<String> profileIds = new ArrayList<>();
+		profileIds.add(mainProfile.getProfileId());
+		for (IProfile registeredProfile : registeredProfiles) {
+			String profileId = registeredProfile.getProfileId();
+			if (profileId.equals(mainProfile.getProfileId()))
 				continue;
-			}
-			IProfileRegistry profileRegistry = agent.getService(IProfileRegistry.class);
-			if (profileRegistry == null)
-				return;
-			IProfile[] registeredProfiles = profileRegistry.getProfiles();
-			for (IProfile registeredProfile : registeredProfiles) {
-				contributeMarkSets(configElt, registeredProfile, false);
-			}
+			profileIds.add(profileId);
+			if (profileId.equals(runningProfileId) || index.getReferences(profileId, registeredProfile.getTimestamp()) == null)
+				index.update(profileId, registeredProfile.getTimestamp(), toReferences(traverse(registeredProfile)));
 		}
+		index.retain(profileIds);
+	}
+
+	private static String getRunningProfileId(IProfileRegistry profileRegistry) {
+		IProfile self = profileRegistry.getProfile(IProfileRegistry.SELF);
+		return self == null ? null : self.getProfileId();
 	}
 }
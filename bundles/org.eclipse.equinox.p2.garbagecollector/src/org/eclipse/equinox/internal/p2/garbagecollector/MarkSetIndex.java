@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.garbagecollector;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+
+/**
+ * The artifact keys each profile references, by the location of the repository
+ * holding them, together with the timestamp of the profile they were computed
+ * for. The garbage collector only asks the mark set providers again for
+ * profiles which changed since.
+ * <p>
+ * The index counts the references to each key. Keys which are no longer
+ * referenced by any profile are remembered as released until the repository
+ * holding them has been cleaned, so that a collection only needs to look at
+ * them instead of at every key of the repository.
+ * </p>
+ * <p>
+ * Keys are kept in their external form, repositories by their location.
+ * </p>
+ */
+public class MarkSetIndex {
+	private static final int VERSION = 1;
+
+	private static class ProfileEntry {
+		final long timestamp;
+		final Map<String, Set<String>> references;
+
+		ProfileEntry(long timestamp, Map<String, Set<String>> references) {
+			this.timestamp = timestamp;
+			this.references = references;
+		}
+	}
+
+	private final File file;
+	private final Map<String, ProfileEntry> profiles = new HashMap<>();
+	// repository -> key -> number of profiles referencing it
+	private final Map<String, Map<String, Integer>> counts = new HashMap<>();
+	// repository -> keys which lost their last reference since the repository was last cleaned
+	private final Map<String, Set<String>> released = new HashMap<>();
+	private long lastFullClean;
+
+	/**
+	 * Creates an index kept in the given file, reading it if it exists. A
+	 * <code>null</code> file keeps the index in memory only.
+	 */
+	public MarkSetIndex(File file) {
+		this.file = file;
+		if (file == null || !file.isFile())
+			return;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+			if (input.readInt() != VERSION)
+				return;
+			lastFullClean = input.readLong();
+			for (int i = input.readInt(); i > 0; i--) {
+				String profileId = input.readUTF();
+				long timestamp = input.readLong();
+				update(profileId, timestamp, readReferences(input));
+			}
+			Map<String, Set<String>> releasedKeys = readReferences(input);
+			releasedKeys.forEach((repository, keys) -> {
+				for (String key : keys) {
+					if (!isReferenced(repository, key))
+						released.computeIfAbsent(repository, r -> new HashSet<>()).add(key);
+				}
+			});
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, GarbageCollectorHelper.ID, "Unable to read the garbage collector index " + file, e)); //$NON-NLS-1$
+			profiles.clear();
+			counts.clear();
+			released.clear();
+			lastFullClean = 0;
+		}
+	}
+
+	/**
+	 * Returns the references of the given profile, or <code>null</code> if they
+	 * are not known for the given timestamp of the profile.
+	 */
+	public synchronized Map<String, Set<String>> getReferences(String profileId, long timestamp) {
+		ProfileEntry entry = profiles.get(profileId);
+		return entry == null || entry.timestamp != timestamp ? null : entry.references;
+	}
+
+	/**
+	 * Sets the references of the given profile.
+	 */
+	public synchronized void update(String profileId, long timestamp, Map<String, Set<String>> references) {
+		remove(profileId);
+		profiles.put(profileId, new ProfileEntry(timestamp, references));
+		references.forEach((repository, keys) -> {
+			Map<String, Integer> repositoryCounts = counts.computeIfAbsent(repository, r -> new HashMap<>());
+			Set<String> repositoryReleased = released.get(repository);
+			for (String key : keys) {
+				repositoryCounts.merge(key, 1, Integer::sum);
+				if (repositoryReleased != null)
+					repositoryReleased.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * Removes the references of all profiles but the given ones.
+	 */
+	public synchronized void retain(Collection<String> profileIds) {
+		for (String profileId : new ArrayList<>(profiles.keySet())) {
+			if (!profileIds.contains(profileId))
+				remove(profileId);
+		}
+	}
+
+	private void remove(String profileId) {
+		ProfileEntry entry = profiles.remove(profileId);
+		if (entry == null)
+			return;
+		entry.references.forEach((repository, keys) -> {
+			Map<String, Integer> repositoryCounts = counts.get(repository);
+			for (String key : keys) {
+				if (repositoryCounts.merge(key, -1, Integer::sum) <= 0) {
+					repositoryCounts.remove(key);
+					released.computeIfAbsent(repository, r -> new HashSet<>()).add(key);
+				}
+			}
+		});
+	}
+
+	public synchronized boolean isReferenced(String repository, String key) {
+		Map<String, Integer> repositoryCounts = counts.get(repository);
+		return repositoryCounts != null && repositoryCounts.containsKey(key);
+	}
+
+	/**
+	 * Returns the keys of the given repository which are referenced by any profile.
+	 */
+	public synchronized Set<String> getReferencedKeys(String repository) {
+		Map<String, Integer> repositoryCounts = counts.get(repository);
+		return repositoryCounts == null ? Collections.emptySet() : new HashSet<>(repositoryCounts.keySet());
+	}
+
+	/**
+	 * Returns the keys of the given repository which lost their last reference
+	 * since the repository was last cleaned, and forgets them.
+	 */
+	public synchronized Set<String> takeReleasedKeys(String repository) {
+		Set<String> keys = released.remove(repository);
+		return keys == null ? Collections.emptySet() : keys;
+	}
+
+	public synchronized long getLastFullClean() {
+		return lastFullClean;
+	}
+
+	public synchronized void setLastFullClean(long time) {
+		lastFullClean = time;
+	}
+
+	/**
+	 * Writes the index to its file.
+	 */
+	public synchronized void save() {
+		if (file == null)
+			return;
+		try {
+			file.getParentFile().mkdirs();
+			File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))))) {
+				output.writeInt(VERSION);
+				output.writeLong(lastFullClean);
+				output.writeInt(profiles.size());
+				for (Map.Entry<String, ProfileEntry> profile : profiles.entrySet()) {
+					output.writeUTF(profile.getKey());
+					output.writeLong(profile.getValue().timestamp);
+					writeReferences(output, profile.getValue().references);
+				}
+				writeReferences(output, released);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, GarbageCollectorHelper.ID, "Unable to write the garbage collector index " + file, e)); //$NON-NLS-1$
+		}
+	}
+
+	private static Map<String, Set<String>> readReferences(DataInputStream input) throws IOException {
+		Map<String, Set<String>> references = new HashMap<>();
+		for (int i = input.readInt(); i > 0; i--) {
+			String repository = input.readUTF();
+			int size = input.readInt();
+			Set<String> keys = new HashSet<>(size);
+			for (int j = 0; j < size; j++)
+				keys.add(input.readUTF());
+			references.put(repository, keys);
+		}
+		return references;
+	}
+
+	private static void writeReferences(DataOutputStream output, Map<String, Set<String>> references) throws IOException {
+		output.writeInt(references.size());
+		for (Map.Entry<String, Set<String>> entry : references.entrySet()) {
+			output.writeUTF(entry.getKey());
+			output.writeInt(entry.getValue().size());
+			for (String key : entry.getValue())
+				output.writeUTF(key);
+		}
+	}
+}
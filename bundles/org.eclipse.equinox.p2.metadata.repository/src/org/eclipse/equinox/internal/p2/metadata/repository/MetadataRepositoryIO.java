@@ -16,10 +16,12 @@ package org.eclipse.equinox.internal.p2.metadata.repository;
 
 import java.io.*;
 import java.lang.reflect.Constructor;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.*;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
@@ -38,6 +40,7 @@ import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.FrameworkUtil;
+import org.tukaani.xz.XZInputStream;
 import org.xml.sax.*;
 
 /**
@@ -87,6 +90,87 @@ public class MetadataRepositoryIO {
 		}
 	}
 
+	/**
+	 * Reads the installable units of the simple metadata repository at the given
+	 * location and passes each of them to the given consumer as soon as it is
+	 * parsed. Unlike loading the repository, the units are not kept, so the
+	 * memory needed does not depend on the size of the repository. The
+	 * repository is read from <code>content.xml.xz</code>,
+	 * <code>content.jar</code> or <code>content.xml</code>, in this order, and
+	 * cached first if it is remote.
+	 *
+	 * @throws ProvisionException if the repository cannot be found or read
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	public void readUnits(URI location, Consumer<IInstallableUnit> consumer, IProgressMonitor monitor) throws ProvisionException {
+		SubMonitor sub = SubMonitor.convert(monitor, 400);
+		try {
+			File localFile;
+			try {
+				localFile = XZedSimpleMetadataRepositoryFactory.getLocalFile(agent, location, sub.newChild(100));
+			} catch (FileNotFoundException e) {
+				localFile = null;
+			} catch (ProvisionException e) {
+				if (e.getStatus().getCode() != ProvisionException.REPOSITORY_NOT_FOUND)
+					throw e;
+				localFile = null;
+			}
+			sub.setWorkRemaining(300);
+			if (localFile == null)
+				localFile = SimpleMetadataRepositoryFactory.getLocalFile(agent, location, sub.newChild(200));
+			sub.setWorkRemaining(100);
+			try (InputStream input = openContent(localFile, location)) {
+				Parser repositoryParser = new Parser(FrameworkUtil.getBundle(MetadataRepositoryIO.class).getBundleContext(), Constants.ID);
+				repositoryParser.setErrorContext(localFile.toURI().toString());
+				repositoryParser.setUnitConsumer(consumer);
+				repositoryParser.parse(input, sub.newChild(100));
+				IStatus result = repositoryParser.getStatus();
+				switch (result.getSeverity()) {
+					case IStatus.CANCEL :
+						throw new OperationCanceledException();
+					case IStatus.ERROR :
+						throw new ProvisionException(result);
+					case IStatus.WARNING :
+					case IStatus.INFO :
+						LogHelper.log(result);
+				}
+			}
+		} catch (FileNotFoundException e) {
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Constants.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, e));
+		} catch (IOException e) {
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Constants.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, e));
+		} finally {
+			if (monitor != null)
+				monitor.done();
+		}
+	}
+
+	/*
+	 * Open a buffered stream on the repository descriptor in the given file.
+	 */
+	private static InputStream openContent(File file, URI location) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			String name = file.getName();
+			if (name.endsWith(".xz")) //$NON-NLS-1$
+				return new BufferedInputStream(new XZInputStream(input));
+			if (!name.endsWith(".jar")) //$NON-NLS-1$
+				return input;
+			JarInputStream jarStream = new JarInputStream(input);
+			String entryName = URLMetadataRepository.CONTENT_FILENAME + URLMetadataRepository.XML_EXTENSION;
+			for (JarEntry entry = jarStream.getNextJarEntry(); entry != null; entry = jarStream.getNextJarEntry()) {
+				if (entryName.equals(entry.getName()))
+					return jarStream;
+			}
+			throw new IOException(NLS.bind(Messages.repoMan_invalidLocation, location));
+		} catch (IOException | RuntimeException e) {
+			input.close();
+			throw e;
+		}
+	}
+
 	/**
 	 *
 	 */
@@ -190,11 +274,19 @@ public class MetadataRepositoryIO {
 	private class Parser extends MetadataParser implements XMLConstants {
 
 		private IMetadataRepository theRepository = null;
+		private Consumer<IInstallableUnit> unitConsumer = null;
 
 		public Parser(BundleContext context, String bundleId) {
 			super(context, bundleId);
 		}
 
+		/*
+		 * Pass the units to the given consumer instead of creating the repository.
+		 */
+		void setUnitConsumer(Consumer<IInstallableUnit> consumer) {
+			this.unitConsumer = consumer;
+		}
+
 		public synchronized void parse(InputStream stream, IProgressMonitor monitor) throws IOException {
 			this.status = null;
 			setProgressMonitor(monitor);
@@ -296,7 +388,7 @@ public class MetadataRepositoryIO {
 					}
 				} else if (INSTALLABLE_UNITS_ELEMENT.equals(name)) {
 					if (unitsHandler == null) {
-						unitsHandler = new InstallableUnitsHandler(this, attributes);
+						unitsHandler = unitConsumer == null ? new InstallableUnitsHandler(this, attributes) : new InstallableUnitsHandler(this, attributes, unitConsumer);
 					} else {
 						duplicateElement(this, name, attributes);
 					}
@@ -313,7 +405,8 @@ public class MetadataRepositoryIO {
 
 			@Override
 			protected void finished() {
-				if (isValidXML()) {
+				// the units have been consumed, there is no repository to create
+				if (isValidXML() && unitConsumer == null) {
 					state.Properties = (propertiesHandler == null ? new OrderedProperties(0) //
 							: propertiesHandler.getProperties());
 					state.Units = (unitsHandler == null ? new IInstallableUnit[0] //
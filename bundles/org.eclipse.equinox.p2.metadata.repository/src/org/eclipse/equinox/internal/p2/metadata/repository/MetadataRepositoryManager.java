@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2017 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -15,6 +15,7 @@
 package org.eclipse.equinox.internal.p2.metadata.repository;
 
 import java.net.URI;
+import java.util.Iterator;
 import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
@@ -22,6 +23,9 @@ import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.index.IIndexProvider;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.ICompositeRepository;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -115,4 +119,17 @@ public class MetadataRepositoryManager extends AbstractRepositoryManager<IInstal
 		return (IMetadataRepository) basicRefreshRepository(location, monitor);
 	}
 
+	@Override
+	protected long getRepositoryWeight(IRepository<IInstallableUnit> repository) {
+		// the children of a composite repository are cached and weighed by themselves
+		if (repository instanceof ICompositeRepository<?>)
+			return 1;
+		if (repository instanceof IIndexProvider<?>) {
+			long count = 0;
+			for (Iterator<?> units = ((IIndexProvider<?>) repository).everything(); units.hasNext(); units.next())
+				count++;
+			return count;
+		}
+		return repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size();
+	}
 }
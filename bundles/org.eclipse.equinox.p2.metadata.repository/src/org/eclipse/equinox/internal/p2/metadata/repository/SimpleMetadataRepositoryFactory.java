@@ -22,6 +22,7 @@ import java.util.jar.JarInputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -45,7 +46,7 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 	 * Returns a file in the local file system that contains the contents of the
 	 * metadata repository at the given location.
 	 */
-	private File getLocalFile(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
+	static File getLocalFile(IProvisioningAgent agent, URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
 		File localFile = null;
 		URI jarLocation = URLMetadataRepository.getActualLocation(location, JAR_EXTENSION);
 		URI xmlLocation = URLMetadataRepository.getActualLocation(location, XML_EXTENSION);
@@ -63,7 +64,7 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 			throw new ProvisionException(new Status(IStatus.ERROR, Constants.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, null));
 		}
 		// file is not local, create a cache of the repository metadata
-		CacheManager cache = getAgent().getService(CacheManager.class);
+		CacheManager cache = agent.getService(CacheManager.class);
 		if (cache == null)
 			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
 		localFile = cache.createCache(location, URLMetadataRepository.CONTENT_FILENAME, monitor);
@@ -86,7 +87,7 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 		}
 		SubMonitor sub = SubMonitor.convert(monitor, 400);
 		try {
-			File localFile = getLocalFile(location, sub.newChild(300));
+			File localFile = getLocalFile(getAgent(), location, sub.newChild(300));
 			InputStream inStream = new BufferedInputStream(new FileInputStream(localFile));
 			JarInputStream jarStream = null;
 			try {
@@ -19,6 +19,7 @@ import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -41,7 +42,7 @@ public class XZedSimpleMetadataRepositoryFactory extends MetadataRepositoryFacto
 	 * Returns a file in the local file system that contains the contents of the
 	 * metadata repository at the given location.
 	 */
-	private File getLocalFile(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
+	static File getLocalFile(IProvisioningAgent agent, URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
 		File localFile = null;
 		URI xzLocation = URIUtil.append(location, REPOSITORY_FILENAME);
 		// If the repository is local, we can return the repository file directly
@@ -54,7 +55,7 @@ public class XZedSimpleMetadataRepositoryFactory extends MetadataRepositoryFacto
 			throw new ProvisionException(new Status(IStatus.ERROR, Constants.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, null));
 		}
 		// file is not local, create a cache of the repository metadata
-		CacheManager cache = getAgent().getService(CacheManager.class);
+		CacheManager cache = agent.getService(CacheManager.class);
 		if (cache == null)
 			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
 		localFile = cache.createCacheFromFile(URIUtil.append(location, REPOSITORY_FILENAME), monitor);
@@ -77,7 +78,7 @@ public class XZedSimpleMetadataRepositoryFactory extends MetadataRepositoryFacto
 		}
 		SubMonitor sub = SubMonitor.convert(monitor, 400);
 		try {
-			File localFile = getLocalFile(location, sub.newChild(300));
+			File localFile = getLocalFile(getAgent(), location, sub.newChild(300));
 			InputStream stream = new BufferedInputStream(new FileInputStream(localFile));
 			XZInputStream descriptorStream = new XZInputStream(stream);
 			try {
@@ -20,6 +20,7 @@ import static java.util.stream.Collectors.toList;
 import java.net.URI;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.Consumer;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
@@ -97,12 +98,24 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 
 	protected class InstallableUnitsHandler extends AbstractMetadataHandler {
 		private ArrayList<InstallableUnitDescription> units;
+		private Consumer<IInstallableUnit> consumer;
 
 		public InstallableUnitsHandler(AbstractHandler parentHandler, Attributes attributes) {
 			super(parentHandler, INSTALLABLE_UNITS_ELEMENT);
 			units = new ArrayList<>(getOptionalSize(attributes, 4));
 		}
 
+		/**
+		 * Creates a handler which passes every unit to the given consumer as soon as
+		 * it is parsed, instead of keeping it. {@link #getUnits()} returns an empty
+		 * array.
+		 */
+		public InstallableUnitsHandler(AbstractHandler parentHandler, Attributes attributes, Consumer<IInstallableUnit> consumer) {
+			super(parentHandler, INSTALLABLE_UNITS_ELEMENT);
+			units = new ArrayList<>(1);
+			this.consumer = consumer;
+		}
+
 		public IInstallableUnit[] getUnits() {
 			int size = units.size();
 			IInstallableUnit[] result = new IInstallableUnit[size];
@@ -115,11 +128,29 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 		@Override
 		public void startElement(String name, Attributes attributes) {
 			if (name.equals(INSTALLABLE_UNIT_ELEMENT)) {
+				flushUnits();
 				new InstallableUnitHandler(this, attributes, units);
 			} else {
 				invalidElement(name, attributes);
 			}
 		}
+
+		@Override
+		protected void finished() {
+			flushUnits();
+		}
+
+		/*
+		 * Pass the units parsed so far to the consumer, if any. At most one unit is
+		 * pending since a unit handler only finishes before the next one starts.
+		 */
+		private void flushUnits() {
+			if (consumer == null)
+				return;
+			for (InstallableUnitDescription desc : units)
+				consumer.accept(MetadataFactory.createInstallableUnit(desc));
+			units.clear();
+		}
 	}
 
 	protected class InstallableUnitHandler extends AbstractHandler {
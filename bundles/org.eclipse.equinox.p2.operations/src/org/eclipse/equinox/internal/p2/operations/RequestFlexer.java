@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2018 Red Hat, Inc. and others
+ * Copyright (c) 2013, 2021 Red Hat, Inc. and others
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -16,6 +16,7 @@ package org.eclipse.equinox.internal.p2.operations;
 import java.util.*;
 import java.util.Map.Entry;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.director.MetadataSnapshotContext;
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.engine.query.IUProfilePropertyQuery;
@@ -76,7 +77,12 @@ public class RequestFlexer {
 	}
 
 	public void setProvisioningContext(ProvisioningContext context) {
-		provisioningContext = context;
+		// a snapshot given by flows which run several flexers is copied, so that the
+		// property changes made here stay local to this flexer
+		if (context instanceof MetadataSnapshotContext)
+			provisioningContext = new MetadataSnapshotContext((MetadataSnapshotContext) context);
+		else
+			provisioningContext = context;
 	}
 
 	public void setEnsureProduct(boolean productPresent) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2013, 2018 Red Hat, Inc. and others
+ * Copyright (c) 2013, 2021 Red Hat, Inc. and others
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -13,12 +13,15 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.operations;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.director.MetadataSnapshotContext;
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 import org.eclipse.equinox.internal.p2.operations.*;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.planner.IPlanner;
@@ -36,6 +39,9 @@ import org.eclipse.equinox.p2.planner.IProfileChangeRequest;
  */
 public class RemediationOperation extends ProfileChangeOperation {
 
+	// the number of configurations evaluated at the same time, 1 evaluates them in order
+	private static final String PROP_THREADS = "eclipse.p2.remediation.threads"; //$NON-NLS-1$
+
 	private static int ZERO_WEIGHT = 0;
 	private static int LOW_WEIGHT = 1;
 	private static int MEDIUM_WEIGHT = 2;
@@ -45,6 +51,7 @@ public class RemediationOperation extends ProfileChangeOperation {
 	private Remedy bestSolutionChangingWhatIsInstalled;
 	private Remedy currentRemedy;
 	private RemedyConfig[] remedyConfigs;
+	private boolean stopAtBestSolutions;
 
 	public RemedyConfig[] getRemedyConfigs() {
 		return remedyConfigs;
@@ -85,6 +92,21 @@ public class RemediationOperation extends ProfileChangeOperation {
 		return remedies;
 	}
 
+	/**
+	 * Sets whether the search for remedies stops as soon as no other remedy can
+	 * be better than the best solutions found, that is once a remedy which only
+	 * changes the versions being installed and a remedy which only updates what is
+	 * installed have been found. The remedies of the configurations not evaluated
+	 * by then are not part of {@link #getRemedies()}. By default all
+	 * configurations are evaluated.
+	 *
+	 * @param stop whether to stop at the best solutions
+	 * @since 2.6
+	 */
+	public void setStopAtBestSolutions(boolean stop) {
+		this.stopAtBestSolutions = stop;
+	}
+
 	@Override
 	protected void computeProfileChangeRequest(MultiStatus status, IProgressMonitor monitor) {
 		SubMonitor sub = SubMonitor.convert(monitor, 1);
@@ -101,27 +123,125 @@ public class RemediationOperation extends ProfileChangeOperation {
 		determineBestSolutions();
 	}
 
+	/*
+	 * The configurations are evaluated concurrently, each planner run has its own
+	 * request flexer and projector. The available installable units are gathered
+	 * once into a snapshot shared by all runs. The remedies keep the order of the
+	 * configurations.
+	 */
 	private IStatus computeAllRemediations(IProgressMonitor monitor) {
-		SubMonitor sub = SubMonitor.convert(monitor, remedyConfigs.length);
+		SubMonitor sub = SubMonitor.convert(monitor, remedyConfigs.length + 1);
 		sub.setTaskName(Messages.RemediationOperation_ProfileChangeRequestProgress);
-		List<Remedy> tmpRemedies = new ArrayList<>(remedyConfigs.length);
+		Remedy[] found = new Remedy[remedyConfigs.length];
+		ProvisioningContext snapshot = new MetadataSnapshotContext(session.getProvisioningAgent(), getProvisioningContext());
+		snapshot.getMetadata(sub.newChild(1));
+		int threads = Math.min(remedyConfigs.length, Integer.getInteger(PROP_THREADS, Runtime.getRuntime().availableProcessors()).intValue());
+		if (threads <= 1) {
+			try {
+				for (int i = 0; i < remedyConfigs.length; i++) {
+					sub.subTask((i + 1) + " / " + remedyConfigs.length); //$NON-NLS-1$
+					if (sub.isCanceled())
+						return Status.CANCEL_STATUS;
+					found[i] = computeRemedy(remedyConfigs[i], snapshot, sub.newChild(1, SubMonitor.SUPPRESS_ALL_LABELS));
+					if (stopAtBestSolutions && dominatesOthers(found))
+						break;
+				}
+			} finally {
+				sub.done();
+			}
+			return setRemedies(found);
+		}
+
+		Remedy[] results = new Remedy[remedyConfigs.length];
+		AtomicBoolean stopped = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "Remediation"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
 		try {
+			CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
 			for (int i = 0; i < remedyConfigs.length; i++) {
-				sub.subTask((i + 1) + " / " + remedyConfigs.length); //$NON-NLS-1$
-				if (sub.isCanceled())
+				int index = i;
+				completion.submit(() -> {
+					IProgressMonitor searchMonitor = new NullProgressMonitor() {
+						@Override
+						public boolean isCanceled() {
+							return stopped.get();
+						}
+					};
+					try {
+						results[index] = computeRemedy(remedyConfigs[index], snapshot, searchMonitor);
+					} catch (OperationCanceledException e) {
+						// stopped
+					}
+					return Integer.valueOf(index);
+				});
+			}
+			for (int done = 0; done < remedyConfigs.length;) {
+				if (sub.isCanceled()) {
+					stopped.set(true);
 					return Status.CANCEL_STATUS;
-				Remedy remedy = computeRemedy(remedyConfigs[i], sub.newChild(1, SubMonitor.SUPPRESS_ALL_LABELS));
-				if (remedy != null) {
-					tmpRemedies.add(remedy);
+				}
+				Future<Integer> search = completion.poll(100, TimeUnit.MILLISECONDS);
+				if (search == null)
+					continue;
+				int index = search.get().intValue();
+				// only the remedies of completed searches count, even if others complete later
+				found[index] = results[index];
+				sub.subTask(++done + " / " + remedyConfigs.length); //$NON-NLS-1$
+				sub.worked(1);
+				if (stopAtBestSolutions && dominatesOthers(found)) {
+					stopped.set(true);
+					break;
 				}
 			}
+		} catch (InterruptedException e) {
+			stopped.set(true);
+			Thread.currentThread().interrupt();
+			return Status.CANCEL_STATUS;
+		} catch (ExecutionException e) {
+			stopped.set(true);
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IllegalStateException(e.getCause());
 		} finally {
+			executor.shutdownNow();
 			sub.done();
 		}
+		return setRemedies(found);
+	}
+
+	private IStatus setRemedies(Remedy[] found) {
+		List<Remedy> tmpRemedies = new ArrayList<>(found.length);
+		for (Remedy remedy : found) {
+			if (remedy != null)
+				tmpRemedies.add(remedy);
+		}
 		remedies = tmpRemedies;
 		return getResolutionResult();
 	}
 
+	/*
+	 * Whether the remedies found include the best possible solution changing the
+	 * request and the best possible solution changing what is installed.
+	 */
+	private static boolean dominatesOthers(Remedy[] found) {
+		boolean bestChangingTheRequest = false;
+		boolean bestChangingWhatIsInstalled = false;
+		for (Remedy remedy : found) {
+			if (remedy == null)
+				continue;
+			if (remedy.getBeingInstalledRelaxedWeight() == HIGH_WEIGHT && remedy.getInstallationRelaxedWeight() == ZERO_WEIGHT)
+				bestChangingTheRequest = true;
+			else if (remedy.getInstallationRelaxedWeight() == HIGH_WEIGHT && remedy.getBeingInstalledRelaxedWeight() == ZERO_WEIGHT)
+				bestChangingWhatIsInstalled = true;
+		}
+		return bestChangingTheRequest && bestChangingWhatIsInstalled;
+	}
+
 	private void determineBestSolutions() {
 		int beingInstalledWeight = 0;
 		int installationWeight = 0;
@@ -141,7 +261,7 @@ public class RemediationOperation extends ProfileChangeOperation {
 		}
 	}
 
-	private Remedy computeRemedy(RemedyConfig configuration, IProgressMonitor monitor) {
+	private Remedy computeRemedy(RemedyConfig configuration, ProvisioningContext context, IProgressMonitor monitor) {
 		Remedy remedy = new Remedy(originalRequest);
 		remedy.setConfig(configuration);
 		IPlanner planner = session.getPlanner();
@@ -150,7 +270,7 @@ public class RemediationOperation extends ProfileChangeOperation {
 		av.setAllowInstalledElementChange(configuration.allowInstalledUpdate);
 		av.setAllowInstalledElementRemoval(configuration.allowInstalledRemoval);
 		av.setAllowPartialInstall(configuration.allowPartialInstall);
-		av.setProvisioningContext(getProvisioningContext());
+		av.setProvisioningContext(context);
 		remedy.setRequest((ProfileChangeRequest) av.getChangeRequest(originalRequest, ((ProfileChangeRequest) originalRequest).getProfile(), monitor));
 		if (remedy.getRequest() == null)
 			return null;
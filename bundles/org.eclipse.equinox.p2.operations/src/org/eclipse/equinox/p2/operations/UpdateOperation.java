@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 IBM Corporation and others.
+ * Copyright (c) 2009, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -17,9 +17,11 @@ package org.eclipse.equinox.p2.operations;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.director.MetadataSnapshotContext;
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
 import org.eclipse.equinox.internal.p2.operations.*;
 import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.engine.query.UserVisibleRootQuery;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.planner.ProfileInclusionRules;
@@ -134,14 +136,14 @@ public class UpdateOperation extends ProfileChangeOperation {
 		return all.toArray(new Update[all.size()]);
 	}
 
-	private Update[] updatesFor(IInstallableUnit iu, IProfile profile, IProgressMonitor monitor) {
+	private Update[] updatesFor(IInstallableUnit iu, IProfile profile, ProvisioningContext snapshot, IProgressMonitor monitor) {
 		List<Update> updates;
 		if (possibleUpdatesByIU.containsKey(iu)) {
 			// We've already looked them up in the planner, use the cache
 			updates = possibleUpdatesByIU.get(iu);
 		} else {
 			// We must consult the planner
-			IQueryResult<IInstallableUnit> replacements = session.getPlanner().updatesFor(iu, context, monitor);
+			IQueryResult<IInstallableUnit> replacements = session.getPlanner().updatesFor(iu, snapshot, monitor);
 			updates = new ArrayList<>();
 			for (IInstallableUnit replacementIU : replacements) {
 				// see https://bugs.eclipse.org/bugs/show_bug.cgi?id=273967
@@ -175,9 +177,11 @@ public class UpdateOperation extends ProfileChangeOperation {
 			return;
 
 		SubMonitor sub = SubMonitor.convert(monitor, Messages.UpdateOperation_ProfileChangeRequestProgress, 100 * iusToUpdate.size());
+		// every unit is looked up in the same metadata, gather it only once
+		ProvisioningContext snapshot = context == null ? null : new MetadataSnapshotContext(session.getProvisioningAgent(), context);
 		for (IInstallableUnit iuToUpdate : iusToUpdate) {
 			SubMonitor iuMon = sub.newChild(100);
-			Update[] updates = updatesFor(iuToUpdate, profile, iuMon);
+			Update[] updates = updatesFor(iuToUpdate, profile, snapshot, iuMon);
 			for (Update update : updates) {
 				toBeUpdated.add(iuToUpdate);
 				if (defaultUpdates != null && defaultUpdates.contains(update)) {
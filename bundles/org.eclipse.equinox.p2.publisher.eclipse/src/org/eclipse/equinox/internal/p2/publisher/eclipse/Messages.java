@@ -37,6 +37,9 @@ public class Messages extends NLS {
 	public static String message_problemPublishingProduct;
 	public static String message_cannotDetermineFilterOnInclusion;
 
+	public static String message_cannotReadInputCache;
+	public static String message_cannotWriteInputCache;
+
 	static {
 		// load message values from bundle file
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
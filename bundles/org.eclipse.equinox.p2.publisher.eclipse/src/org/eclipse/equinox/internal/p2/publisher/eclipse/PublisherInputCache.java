@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher.eclipse;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.publisher.*;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.pde.internal.publishing.Activator;
+
+/**
+ * Remembers which installable units and artifacts were published for which
+ * input (a bundle or feature jar or directory) so that publishing again into
+ * the same repositories only needs to process the inputs that changed.
+ * <p>
+ * An input is unchanged if its size and last modified time are the same as
+ * when it was published, or if its content hash is. Directories are compared
+ * by the total size, the latest modification and the content of all their
+ * files. The units and artifacts of changed inputs and of inputs which are
+ * gone are removed from the repositories before publishing, so that they are
+ * generated again rather than found in the repositories.
+ * </p>
+ */
+public class PublisherInputCache {
+	public static final String CACHE_FILENAME = "publisher.cache"; //$NON-NLS-1$
+
+	private static final String CACHE_VERSION = "1"; //$NON-NLS-1$
+	private static final String PROP_VERSION = "version"; //$NON-NLS-1$
+	private static final String PROP_OPTIONS = "options"; //$NON-NLS-1$
+	private static final String PREFIX_INPUT = "input."; //$NON-NLS-1$
+	private static final String SUFFIX_PATH = ".path"; //$NON-NLS-1$
+	private static final String SUFFIX_STAMP = ".stamp"; //$NON-NLS-1$
+	private static final String SUFFIX_HASH = ".hash"; //$NON-NLS-1$
+	private static final String SUFFIX_IU = ".iu."; //$NON-NLS-1$
+	private static final String SUFFIX_ARTIFACT = ".artifact."; //$NON-NLS-1$
+
+	private static class Entry {
+		final String stamp;
+		final String hash;
+		final Set<IVersionedId> ius = new LinkedHashSet<>();
+		final Set<IArtifactKey> artifacts = new LinkedHashSet<>();
+
+		Entry(String stamp, String hash) {
+			this.stamp = stamp;
+			this.hash = hash;
+		}
+	}
+
+	private final String options;
+	// the inputs of the previous run, by absolute path
+	private final Map<String, Entry> previous;
+	// the inputs of this run, by absolute path
+	private final Map<String, Entry> current = new LinkedHashMap<>();
+	// the previous inputs whose units and artifacts are removed before publishing
+	private final List<Entry> stale = new ArrayList<>();
+	// the units which identify the input they are generated from
+	private final Map<IVersionedId, String> primaryUnits = new HashMap<>();
+
+	private PublisherInputCache(String options, Map<String, Entry> previous) {
+		this.options = options;
+		this.previous = previous;
+	}
+
+	/**
+	 * Reads the cache from the given file. If the file does not exist, can not
+	 * be read or was written with different publisher options, the cache is
+	 * empty and all inputs are published.
+	 *
+	 * @param file the cache file
+	 * @param options the publisher options the cache is valid for
+	 */
+	public static PublisherInputCache read(File file, String options) {
+		Map<String, Entry> entries = new HashMap<>();
+		if (file.exists()) {
+			Properties properties = new Properties();
+			try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+				properties.load(input);
+				if (CACHE_VERSION.equals(properties.getProperty(PROP_VERSION)) && options.equals(properties.getProperty(PROP_OPTIONS)))
+					readEntries(properties, entries);
+			} catch (IOException | IllegalArgumentException e) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.message_cannotReadInputCache, file), e));
+				entries.clear();
+			}
+		}
+		return new PublisherInputCache(options, entries);
+	}
+
+	private static void readEntries(Properties properties, Map<String, Entry> entries) {
+		for (int i = 0;; i++) {
+			String prefix = PREFIX_INPUT + i;
+			String path = properties.getProperty(prefix + SUFFIX_PATH);
+			if (path == null)
+				return;
+			Entry entry = new Entry(properties.getProperty(prefix + SUFFIX_STAMP), properties.getProperty(prefix + SUFFIX_HASH));
+			for (int j = 0;; j++) {
+				String iu = properties.getProperty(prefix + SUFFIX_IU + j);
+				if (iu == null)
+					break;
+				entry.ius.add(VersionedId.parse(iu));
+			}
+			for (int j = 0;; j++) {
+				String artifact = properties.getProperty(prefix + SUFFIX_ARTIFACT + j);
+				if (artifact == null)
+					break;
+				entry.artifacts.add(ArtifactKey.parse(artifact));
+			}
+			entries.put(path, entry);
+		}
+	}
+
+	/**
+	 * Writes the cache with the inputs of this run to the given file.
+	 */
+	public void write(File file) {
+		Properties properties = new Properties();
+		properties.setProperty(PROP_VERSION, CACHE_VERSION);
+		properties.setProperty(PROP_OPTIONS, options);
+		int i = 0;
+		for (Map.Entry<String, Entry> input : current.entrySet()) {
+			String prefix = PREFIX_INPUT + i++;
+			Entry entry = input.getValue();
+			properties.setProperty(prefix + SUFFIX_PATH, input.getKey());
+			properties.setProperty(prefix + SUFFIX_STAMP, entry.stamp);
+			if (entry.hash != null)
+				properties.setProperty(prefix + SUFFIX_HASH, entry.hash);
+			int j = 0;
+			for (IVersionedId iu : entry.ius)
+				properties.setProperty(prefix + SUFFIX_IU + j++, iu.toString());
+			j = 0;
+			for (IArtifactKey artifact : entry.artifacts)
+				properties.setProperty(prefix + SUFFIX_ARTIFACT + j++, artifact.toExternalForm());
+		}
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+			properties.store(output, null);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.message_cannotWriteInputCache, file), e));
+		}
+	}
+
+	/**
+	 * Returns the inputs which have to be published, in the given order. All
+	 * other inputs are unchanged since the previous run and their units are
+	 * still in the given repository.
+	 *
+	 * @param inputs the inputs of this run
+	 * @param repository the repository the units are published to
+	 * @param force <code>true</code> if all inputs have to be published again
+	 */
+	public List<File> getChangedInputs(File[] inputs, IMetadataRepository repository, boolean force) {
+		List<File> result = new ArrayList<>();
+		for (File input : inputs) {
+			String path = input.getAbsolutePath();
+			Entry entry = previous.remove(path);
+			if (entry == null && current.containsKey(path))
+				continue;
+			String stamp = stamp(input);
+			if (!force && entry != null && isUnchanged(input, stamp, entry) && isPublished(entry, repository)) {
+				Entry unchanged = entry;
+				if (!stamp.equals(entry.stamp)) {
+					// the content is the same, remember the new stamp
+					unchanged = new Entry(stamp, entry.hash);
+					unchanged.ius.addAll(entry.ius);
+					unchanged.artifacts.addAll(entry.artifacts);
+				}
+				current.put(path, unchanged);
+				continue;
+			}
+			if (entry != null)
+				stale.add(entry);
+			current.put(path, new Entry(stamp, hash(input)));
+			result.add(input);
+		}
+		return result;
+	}
+
+	private static boolean isUnchanged(File input, String stamp, Entry entry) {
+		if (stamp.equals(entry.stamp))
+			return true;
+		String hash = hash(input);
+		return hash != null && hash.equals(entry.hash);
+	}
+
+	private static boolean isPublished(Entry entry, IMetadataRepository repository) {
+		if (repository == null)
+			return true;
+		for (IVersionedId iu : entry.ius) {
+			if (repository.query(QueryUtil.createIUQuery(iu), new NullProgressMonitor()).isEmpty())
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Remembers that the unit with the given id and version is generated from the
+	 * given input. The units which are published after it are attributed to the
+	 * same input until the next such unit is published.
+	 */
+	public void setPrimaryUnit(File input, String id, Version version) {
+		primaryUnits.put(new VersionedId(id, version), input.getAbsolutePath());
+	}
+
+	/**
+	 * Returns an action which removes the units and artifacts of the inputs which
+	 * changed or are gone from the repositories. It has to be performed before the
+	 * inputs are published. {@link #getChangedInputs(File[], IMetadataRepository, boolean)}
+	 * has to be called for all inputs of this run before.
+	 */
+	public IPublisherAction createRemovalAction() {
+		stale.addAll(previous.values());
+		previous.clear();
+		return (publisherInfo, results, monitor) -> {
+			removeStale(publisherInfo, monitor);
+			return Status.OK_STATUS;
+		};
+	}
+
+	private void removeStale(IPublisherInfo publisherInfo, IProgressMonitor monitor) {
+		Set<IInstallableUnit> ius = new HashSet<>();
+		Set<IArtifactKey> artifacts = new LinkedHashSet<>();
+		IMetadataRepository metadataRepository = publisherInfo.getMetadataRepository();
+		for (Entry entry : stale) {
+			if (metadataRepository != null) {
+				for (IVersionedId iu : entry.ius)
+					metadataRepository.query(QueryUtil.createIUQuery(iu), monitor).forEach(ius::add);
+			}
+			artifacts.addAll(entry.artifacts);
+		}
+		stale.clear();
+		if (!ius.isEmpty())
+			metadataRepository.removeInstallableUnits(ius);
+		IArtifactRepository artifactRepository = publisherInfo.getArtifactRepository();
+		if (artifactRepository != null && !artifacts.isEmpty())
+			artifactRepository.removeDescriptors(artifacts.toArray(new IArtifactKey[artifacts.size()]), monitor);
+	}
+
+	/**
+	 * Returns an action which performs the given action and records the units and
+	 * artifacts it publishes for the input they are generated from.
+	 */
+	public IPublisherAction createRecordingAction(IPublisherAction action) {
+		return (publisherInfo, results, monitor) -> action.perform(publisherInfo, new RecordingResult(results), monitor);
+	}
+
+	private class RecordingResult implements IPublisherResult {
+		private final IPublisherResult delegate;
+		private Entry entry;
+
+		RecordingResult(IPublisherResult delegate) {
+			this.delegate = delegate;
+		}
+
+		private void record(IInstallableUnit iu) {
+			String input = primaryUnits.get(new VersionedId(iu.getId(), iu.getVersion()));
+			if (input != null)
+				entry = current.get(input);
+			if (entry == null)
+				return;
+			entry.ius.add(new VersionedId(iu.getId(), iu.getVersion()));
+			entry.artifacts.addAll(iu.getArtifacts());
+		}
+
+		@Override
+		public void addIU(IInstallableUnit iu, String type) {
+			record(iu);
+			delegate.addIU(iu, type);
+		}
+
+		@Override
+		public void addIUs(Collection<IInstallableUnit> ius, String type) {
+			for (IInstallableUnit iu : ius)
+				record(iu);
+			delegate.addIUs(ius, type);
+		}
+
+		@Override
+		public Collection<IInstallableUnit> getIUs(String id, String type) {
+			return delegate.getIUs(id, type);
+		}
+
+		@Deprecated
+		@Override
+		public IInstallableUnit getIU(String id, String type) {
+			return delegate.getIU(id, type);
+		}
+
+		@Override
+		public IInstallableUnit getIU(String id, Version version, String type) {
+			return delegate.getIU(id, version, type);
+		}
+
+		@Override
+		public void merge(IPublisherResult result, int mode) {
+			delegate.merge(result, mode);
+		}
+
+		@Override
+		public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+			return delegate.query(query, monitor);
+		}
+	}
+
+	/*
+	 * Returns the size and the last modification of the given input. For a
+	 * directory these are the total size and the latest modification of all
+	 * files and directories in it.
+	 */
+	private static String stamp(File input) {
+		long[] stamp = new long[2];
+		stamp(input, stamp);
+		return Long.toString(stamp[0]) + ',' + stamp[1];
+	}
+
+	private static void stamp(File file, long[] stamp) {
+		stamp[1] = Math.max(stamp[1], file.lastModified());
+		File[] children = file.listFiles();
+		if (children == null) {
+			stamp[0] += file.length();
+			return;
+		}
+		for (File child : children)
+			stamp(child, stamp);
+	}
+
+	/*
+	 * Returns the hash of the content of the given input, or null if it can not
+	 * be read. For a directory the relative paths and the content of all files are
+	 * hashed.
+	 */
+	private static String hash(File input) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			hash(input, "", digest); //$NON-NLS-1$
+			StringBuilder result = new StringBuilder();
+			for (byte b : digest.digest())
+				result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return result.toString();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	private static void hash(File file, String path, MessageDigest digest) throws IOException {
+		File[] children = file.listFiles();
+		if (children == null) {
+			digest.update(path.getBytes("UTF-8")); //$NON-NLS-1$
+			byte[] buffer = new byte[8192];
+			try (InputStream input = new FileInputStream(file)) {
+				int read;
+				while ((read = input.read(buffer)) != -1)
+					digest.update(buffer, 0, read);
+			}
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children)
+			hash(child, path + '/' + child.getName(), digest);
+	}
+}
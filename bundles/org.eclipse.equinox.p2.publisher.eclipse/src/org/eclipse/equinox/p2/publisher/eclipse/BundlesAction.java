@@ -31,6 +31,7 @@ import org.eclipse.equinox.frameworkadmin.BundleInfo;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
+import org.eclipse.equinox.internal.p2.publisher.PublishingPipeline;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.GeneratorBundleInfo;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
@@ -940,13 +941,13 @@ public class BundlesAction extends AbstractPublisherAction {
 		}
 	}
 
-	private File[] expandLocations(File[] list) {
+	static File[] expandLocations(File[] list) {
 		ArrayList<File> result = new ArrayList<>();
 		expandLocations(list, result);
 		return result.toArray(new File[result.size()]);
 	}
 
-	private void expandLocations(File[] list, ArrayList<File> result) {
+	private static void expandLocations(File[] list, ArrayList<File> result) {
 		if (list == null)
 			return;
 		for (File location : list) {
@@ -998,62 +999,67 @@ public class BundlesAction extends AbstractPublisherAction {
 		// This assumes that hosts are processed before fragments because for each
 		// fragment the host
 		// is queried for the strings that should be translated.
+		List<BundleDescription> toPublish = new ArrayList<>(bundleDescriptions.length);
 		for (BundleDescription bd : bundleDescriptions) {
-			if (monitor.isCanceled()) {
-				throw new OperationCanceledException();
-			}
-
-			if (bd == null || bd.getSymbolicName() == null || bd.getVersion() == null) {
-				continue;
-			}
+			if (bd != null && bd.getSymbolicName() != null && bd.getVersion() != null)
+				toPublish.add(bd);
+		}
 
-			// First check to see if there is already an IU around for this
-			IInstallableUnit bundleIU = queryForIU(result, bd.getSymbolicName(),
-					PublisherHelper.fromOSGiVersion(bd.getVersion()));
+		// The artifact descriptors (and their checksums) are computed concurrently,
+		// the IUs are created and the artifacts are published in the order of the bundles.
+		PublishingPipeline.forEachOrdered(toPublish, bd -> {
 			IArtifactKey bundleArtKey = createBundleArtifactKey(bd.getSymbolicName(), bd.getVersion().toString());
-			if (bundleIU == null) {
-				createAdviceFileAdvice(bd, info);
-				// Create the bundle IU according to any shape advice we have
-				bundleIU = doCreateBundleIU(bd, bundleArtKey, info);
-			}
+			return PublisherHelper.createArtifactDescriptor(info, bundleArtKey, new File(bd.getLocation()));
+		}, (bd, ad) -> generateBundleIU(bd, ad, info, result), monitor);
+	}
 
-			File bundleLocation = new File(bd.getLocation());
-			IArtifactDescriptor ad = PublisherHelper.createArtifactDescriptor(info, bundleArtKey, bundleLocation);
-			processArtifactPropertiesAdvice(bundleIU, ad, info);
+	private void generateBundleIU(BundleDescription bd, IArtifactDescriptor ad, IPublisherInfo info,
+			IPublisherResult result) {
+		// First check to see if there is already an IU around for this
+		IInstallableUnit bundleIU = queryForIU(result, bd.getSymbolicName(),
+				PublisherHelper.fromOSGiVersion(bd.getVersion()));
+		IArtifactKey bundleArtKey = ad.getArtifactKey();
+		if (bundleIU == null) {
+			createAdviceFileAdvice(bd, info);
+			// Create the bundle IU according to any shape advice we have
+			bundleIU = doCreateBundleIU(bd, bundleArtKey, info);
+		}
 
-			// Publish according to the shape on disk
-			if (bundleLocation.isDirectory()) {
-				publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), info);
-			} else {
-				publishArtifact(ad, bundleLocation, info);
-			}
+		File bundleLocation = new File(bd.getLocation());
+		processArtifactPropertiesAdvice(bundleIU, ad, info);
 
-			IInstallableUnit fragment = null;
-			if (isFragment(bd)) {
-				String hostId = bd.getHost().getName();
-				VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
+		// Publish according to the shape on disk
+		if (bundleLocation.isDirectory()) {
+			publishArtifact(ad, bundleLocation, bundleLocation.listFiles(), info);
+		} else {
+			publishArtifact(ad, bundleLocation, info);
+		}
 
-				IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
+		IInstallableUnit fragment = null;
+		if (isFragment(bd)) {
+			String hostId = bd.getHost().getName();
+			VersionRange hostVersionRange = PublisherHelper.fromOSGiVersionRange(bd.getHost().getVersionRange());
 
-				for (IInstallableUnit host : hosts) {
-					String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
-					fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
-					if (fragment == null) {
-						String[] externalizedStrings = getExternalizedStrings(host);
-						fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
-					}
+			IQueryResult<IInstallableUnit> hosts = queryForIUs(result, hostId, hostVersionRange);
+
+			for (IInstallableUnit host : hosts) {
+				String fragmentId = makeHostLocalizationFragmentId(bd.getSymbolicName());
+				fragment = queryForIU(result, fragmentId, PublisherHelper.fromOSGiVersion(bd.getVersion()));
+				if (fragment == null) {
+					String[] externalizedStrings = getExternalizedStrings(host);
+					fragment = createHostLocalizationFragment(bundleIU, bd, hostId, externalizedStrings);
 				}
 			}
+		}
 
-			result.addIU(bundleIU, IPublisherResult.ROOT);
-			if (fragment != null) {
-				result.addIU(fragment, IPublisherResult.NON_ROOT);
-			}
+		result.addIU(bundleIU, IPublisherResult.ROOT);
+		if (fragment != null) {
+			result.addIU(fragment, IPublisherResult.NON_ROOT);
+		}
 
-			InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, info);
-			for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
-				result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
-			}
+		InstallableUnitDescription[] others = processAdditionalInstallableUnitsAdvice(bundleIU, info);
+		for (int iuIndex = 0; others != null && iuIndex < others.length; iuIndex++) {
+			result.addIU(MetadataFactory.createInstallableUnit(others[iuIndex]), IPublisherResult.ROOT);
 		}
 	}
 
@@ -1099,21 +1105,21 @@ public class BundlesAction extends AbstractPublisherAction {
 		if (bundleLocations == null)
 			return new BundleDescription[0];
 		List<BundleDescription> result = new ArrayList<>(bundleLocations.length);
-		for (File bundleLocation : bundleLocations) {
-			if (monitor.isCanceled())
-				throw new OperationCanceledException();
-			BundleDescription description = null;
+		// the manifests are read concurrently, the descriptions and errors are
+		// collected in the order of the locations
+		PublishingPipeline.forEachOrdered(Arrays.asList(bundleLocations), bundleLocation -> {
 			try {
-				description = createBundleDescription(bundleLocation);
-			} catch (IOException e) {
-				addPublishingErrorToFinalStatus(e, bundleLocation);
-			} catch (BundleException e) {
-				addPublishingErrorToFinalStatus(e, bundleLocation);
+				return createBundleDescription(bundleLocation);
+			} catch (IOException | BundleException e) {
+				return e;
 			}
-			if (description != null) {
-				result.add(description);
+		}, (bundleLocation, description) -> {
+			if (description instanceof BundleDescription) {
+				result.add((BundleDescription) description);
+			} else if (description instanceof Exception) {
+				addPublishingErrorToFinalStatus((Exception) description, bundleLocation);
 			}
-		}
+		}, monitor);
 		return result.toArray(new BundleDescription[0]);
 	}
 
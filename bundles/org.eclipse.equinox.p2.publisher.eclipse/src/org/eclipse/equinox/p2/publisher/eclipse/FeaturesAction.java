@@ -28,6 +28,7 @@ import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.publisher.FileSetDescriptor;
 import org.eclipse.equinox.internal.p2.publisher.Messages;
+import org.eclipse.equinox.internal.p2.publisher.PublishingPipeline;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
@@ -135,7 +136,7 @@ public class FeaturesAction extends AbstractPublisherAction {
 		return MetadataFactory.createInstallableUnit(iu);
 	}
 
-	private static String getTransformedId(String original, boolean isPlugin, boolean isGroup) {
+	static String getTransformedId(String original, boolean isPlugin, boolean isGroup) {
 		return (isPlugin ? original : original + (isGroup ? ".feature.group" : ".feature.jar")); //$NON-NLS-1$//$NON-NLS-2$
 	}
 
@@ -378,13 +379,13 @@ public class FeaturesAction extends AbstractPublisherAction {
 		return MetadataFactory.createInstallableUnitPatch(iu);
 	}
 
-	private File[] expandLocations(File[] list) {
+	static File[] expandLocations(File[] list) {
 		ArrayList<File> result = new ArrayList<>();
 		expandLocations(list, result);
 		return result.toArray(new File[result.size()]);
 	}
 
-	private void expandLocations(File[] list, ArrayList<File> result) {
+	private static void expandLocations(File[] list, ArrayList<File> result) {
 		if (list == null)
 			return;
 		for (File location : list) {
@@ -514,13 +515,13 @@ public class FeaturesAction extends AbstractPublisherAction {
 
 	protected Feature[] getFeatures(File[] featureLocations) {
 		ArrayList<Feature> result = new ArrayList<>(featureLocations.length);
-		for (File featureLocation : featureLocations) {
-			Feature feature = new FeatureParser().parse(featureLocation);
+		// the features are parsed concurrently and collected in the order of the locations
+		PublishingPipeline.forEachOrdered(Arrays.asList(featureLocations), featureLocation -> new FeatureParser().parse(featureLocation), (featureLocation, feature) -> {
 			if (feature != null) {
 				feature.setLocation(featureLocation.getAbsolutePath());
 				result.add(feature);
 			}
-		}
+		}, null);
 		return result.toArray(new Feature[result.size()]);
 	}
 
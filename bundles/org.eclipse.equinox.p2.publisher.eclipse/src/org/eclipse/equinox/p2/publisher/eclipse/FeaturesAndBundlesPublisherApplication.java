@@ -17,10 +17,17 @@ package org.eclipse.equinox.p2.publisher.eclipse;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherInputCache;
 import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.publisher.*;
 import org.eclipse.equinox.p2.publisher.actions.RootIUAction;
 import org.eclipse.equinox.p2.publisher.actions.RootIUResultFilterAdvice;
+import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
+import org.eclipse.osgi.service.resolver.BundleDescription;
 
 /**
  * <p>
@@ -30,6 +37,10 @@ import org.eclipse.equinox.p2.publisher.actions.RootIUResultFilterAdvice;
  * </p><p>
  * Optionally, the -features <csv of file locations> and -bundles <csv of file locations> arguments can 
  * be specified.  If given, these override the defaults derived from a supplied -source parameter.
+ * </p><p>
+ * With the -incremental flag the repositories are appended to and only the features and bundles which
+ * changed since the previous run are published. The inputs of a run are remembered in a cache file
+ * next to the metadata repository.
  * </p>
  */
 public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApplication {
@@ -40,6 +51,9 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 	protected String rootIU = null;
 	protected String rootVersion = null;
 
+	protected boolean incremental = false;
+	private PublisherInputCache inputCache = null;
+
 	public FeaturesAndBundlesPublisherApplication() {
 		// nothing to do
 	}
@@ -61,6 +75,16 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 			rootVersion = parameter;
 	}
 
+	@Override
+	protected void processFlag(String arg, PublisherInfo pinfo) {
+		super.processFlag(arg, pinfo);
+
+		if (arg.equalsIgnoreCase("-incremental")) { //$NON-NLS-1$
+			incremental = true;
+			append = true;
+		}
+	}
+
 	private File[] createFiles(String parameter) {
 		String[] filespecs = AbstractPublisherAction.getArrayFromString(parameter, ","); //$NON-NLS-1$
 		File[] result = new File[filespecs.length];
@@ -74,10 +98,15 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 		ArrayList<IPublisherAction> result = new ArrayList<>();
 		if (features == null)
 			features = new File[] {new File(source, "features")}; //$NON-NLS-1$
-		result.add(new FeaturesAction(features));
 		if (bundles == null)
 			bundles = new File[] {new File(source, "plugins")}; //$NON-NLS-1$
-		result.add(new BundlesAction(bundles));
+		File cacheFile = getInputCacheFile();
+		if (cacheFile != null) {
+			createIncrementalActions(cacheFile, result);
+		} else {
+			result.add(new FeaturesAction(features));
+			result.add(new BundlesAction(bundles));
+		}
 
 		if (rootIU != null) {
 			result.add(new RootIUAction(rootIU, Version.parseVersion(rootVersion), rootIU));
@@ -86,4 +115,61 @@ public class FeaturesAndBundlesPublisherApplication extends AbstractPublisherApp
 
 		return result.toArray(new IPublisherAction[result.size()]);
 	}
+
+	/*
+	 * Returns the cache file of an incremental run, or null if all inputs are published.
+	 * The cache is not used for in-place publishing, where the artifacts of the inputs
+	 * are the inputs themselves.
+	 */
+	private File getInputCacheFile() {
+		if (!incremental || inplace)
+			return null;
+		File location = URIUtil.toFile(metadataLocation);
+		if (location == null)
+			return null;
+		return new File(location.isFile() ? location.getParentFile() : location, PublisherInputCache.CACHE_FILENAME);
+	}
+
+	private void createIncrementalActions(File cacheFile, List<IPublisherAction> result) {
+		String options = Integer.toString(info.getArtifactOptions()) + ',' + String.join(",", info.getConfigurations()); //$NON-NLS-1$
+		PublisherInputCache cache = PublisherInputCache.read(cacheFile, options);
+		// the root IU is created from the published units, so all of them have to be published
+		boolean force = rootIU != null;
+		List<File> changedFeatures = cache.getChangedInputs(FeaturesAction.expandLocations(features), info.getMetadataRepository(), force);
+		List<File> changedBundles = cache.getChangedInputs(BundlesAction.expandLocations(bundles), info.getMetadataRepository(), force);
+
+		result.add(cache.createRemovalAction());
+		result.add(cache.createRecordingAction(new FeaturesAction(changedFeatures.toArray(new File[changedFeatures.size()])) {
+			@Override
+			protected Feature[] getFeatures(File[] featureLocations) {
+				Feature[] result = super.getFeatures(featureLocations);
+				for (Feature feature : result) {
+					File location = new File(feature.getLocation());
+					Version version = Version.parseVersion(feature.getVersion());
+					cache.setPrimaryUnit(location, getTransformedId(feature.getId(), false, false), version);
+					cache.setPrimaryUnit(location, getGroupId(feature.getId()), version);
+				}
+				return result;
+			}
+		}));
+		result.add(cache.createRecordingAction(new BundlesAction(changedBundles.toArray(new File[changedBundles.size()])) {
+			@Override
+			protected BundleDescription[] getBundleDescriptions(File[] bundleLocations, IProgressMonitor monitor) {
+				BundleDescription[] result = super.getBundleDescriptions(bundleLocations, monitor);
+				for (BundleDescription bd : result)
+					cache.setPrimaryUnit(new File(bd.getLocation()), bd.getSymbolicName(), PublisherHelper.fromOSGiVersion(bd.getVersion()));
+				return result;
+			}
+		}));
+		inputCache = cache;
+	}
+
+	@Override
+	public Object run(PublisherInfo publisherInfo) throws Exception {
+		inputCache = null;
+		Object result = super.run(publisherInfo);
+		if (inputCache != null && result == IApplication.EXIT_OK)
+			inputCache.write(getInputCacheFile());
+		return result;
+	}
 }
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which accompanies this distribution,
+ * and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *   IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.internal.p2.publisher;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Helper for publishing many elements concurrently while keeping the result
+ * identical to publishing them one after the other.
+ * <p>
+ * Work that only depends on the element itself (reading manifests, parsing,
+ * computing checksums) is done by {@link #forEachOrdered} on worker threads.
+ * Its results are handed to the calling thread in the original order, so
+ * everything that depends on order (advice, publisher results, repository
+ * content) is changed in exactly the same sequence as before. The repositories
+ * are only touched by the calling thread, which usually holds their lock for
+ * the whole batch (see {@link org.eclipse.equinox.p2.publisher.Publisher}).
+ * </p><p>
+ * The number of threads is set by the system property
+ * {@value #PROP_THREADS}. It defaults to the number of processors. With one
+ * thread everything runs on the calling thread.
+ * </p>
+ */
+public class PublishingPipeline {
+	public static final String PROP_THREADS = "eclipse.p2.publisher.threads"; //$NON-NLS-1$
+
+	// number of elements a stage may run ahead of its consumer, per thread
+	private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+	private PublishingPipeline() {
+		// static helpers only
+	}
+
+	public static int getThreadCount() {
+		return Math.max(1, Integer.getInteger(PROP_THREADS, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Computes a value for every element on worker threads and passes the
+	 * elements with their values to the consumer on the calling thread, in the
+	 * order of the list. Only a bounded number of values is computed ahead of the
+	 * consumer.
+	 *
+	 * @param elements the elements to process
+	 * @param compute computes the value of an element, must not depend on other elements
+	 * @param consumer consumes the elements and their values in order
+	 * @param monitor checked for cancellation before each element is consumed
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	public static <T, R> void forEachOrdered(List<T> elements, Function<T, R> compute, BiConsumer<T, R> consumer, IProgressMonitor monitor) {
+		forEachOrdered(elements, getThreadCount(), compute, consumer, monitor);
+	}
+
+	/**
+	 * Like {@link #forEachOrdered(List, Function, BiConsumer, IProgressMonitor)}
+	 * but with an explicit number of threads, for work that is bound by I/O
+	 * rather than by the processors.
+	 *
+	 * @param elements the elements to process
+	 * @param threads the maximal number of worker threads
+	 * @param compute computes the value of an element, must not depend on other elements
+	 * @param consumer consumes the elements and their values in order
+	 * @param monitor checked for cancellation before each element is consumed
+	 * @throws OperationCanceledException if the monitor is canceled
+	 */
+	public static <T, R> void forEachOrdered(List<T> elements, int threads, Function<T, R> compute, BiConsumer<T, R> consumer, IProgressMonitor monitor) {
+		threads = Math.min(threads, elements.size());
+		if (threads <= 1) {
+			for (T element : elements) {
+				checkCanceled(monitor);
+				consumer.accept(element, compute.apply(element));
+			}
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("Publisher worker")); //$NON-NLS-1$
+		try {
+			int queueSize = threads * QUEUE_SIZE_PER_THREAD;
+			Deque<Future<R>> pending = new ArrayDeque<>(queueSize);
+			int next = 0;
+			for (T element : elements) {
+				while (next < elements.size() && pending.size() < queueSize) {
+					T toCompute = elements.get(next++);
+					pending.add(executor.submit(() -> compute.apply(toCompute)));
+				}
+				checkCanceled(monitor);
+				consumer.accept(element, getResult(pending.remove()));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled())
+			throw new OperationCanceledException();
+	}
+
+	private static <R> R getResult(Future<R> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			throw propagate(e.getCause());
+		}
+	}
+
+	private static RuntimeException propagate(Throwable t) {
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		if (t instanceof Error)
+			throw (Error) t;
+		return new IllegalStateException(t);
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + ' ' + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
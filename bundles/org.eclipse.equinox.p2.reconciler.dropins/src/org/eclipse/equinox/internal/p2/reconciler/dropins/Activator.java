@@ -50,6 +50,7 @@ public class Activator implements BundleActivator {
 	private static final String CONFIG_INI = "config.ini"; //$NON-NLS-1$
 	private static final String PLATFORM_CFG = "org.eclipse.update/platform.xml"; //$NON-NLS-1$
 	private static final String CACHE_FILENAME = "cache.timestamps"; //$NON-NLS-1$
+	private static final String FINGERPRINT_FILENAME = "cache.fingerprint"; //$NON-NLS-1$
 	private static final String DIR_ECLIPSE = "eclipse"; //$NON-NLS-1$
 	private static final String DIR_PLUGINS = "plugins"; //$NON-NLS-1$
 	private static final String DIR_FEATURES = "features"; //$NON-NLS-1$
@@ -58,6 +59,8 @@ public class Activator implements BundleActivator {
 	private static BundleContext bundleContext;
 	private final static Set<IMetadataRepository> repositories = new HashSet<>();
 	private Collection<File> filesToCheck = null;
+	private Collection<File> dropinsToCheck = null;
+	private Boolean dropinsUnchanged = null;
 
 	/**
 	 * Helper method to create an extension location metadata repository at the given URI.
@@ -166,6 +169,7 @@ public class Activator implements BundleActivator {
 		if (isUpToDate()) {
 			// clear the cache
 			filesToCheck = null;
+			dropinsToCheck = null;
 			return;
 		}
 
@@ -178,12 +182,14 @@ public class Activator implements BundleActivator {
 
 		synchronize(null);
 		writeTimestamps();
+		writeFingerprint();
 
 		// we should probably be holding on to these repos by URL
 		// see Bug 223422
 		// for now explicitly nulling out these repos to allow GC to occur
 		repositories.clear();
 		filesToCheck = null;
+		dropinsToCheck = null;
 	}
 
 	private void checkConfigIni() {
@@ -242,6 +248,7 @@ public class Activator implements BundleActivator {
 
 		// gather the list of files/folders that we need to check
 		Collection<File> files = getFilesToCheck();
+		boolean timestampsUpdated = false;
 		for (File file : files) {
 			String key = file.getAbsolutePath();
 			String timestamp = timestamps.getProperty(key);
@@ -253,8 +260,13 @@ public class Activator implements BundleActivator {
 			long lastModified = file.lastModified();
 			if (!Long.toString(lastModified).equals(timestamp)) {
 				trace("Timestamp has been updated for file: " + key + ", expected: " + timestamp + ", actual: " + lastModified); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-				trace("Performing reconciliation."); //$NON-NLS-1$
-				return false;
+				// a dropins location may have been touched without changing its content
+				if (!dropinsToCheck.contains(file) || !isDropinsContentUnchanged(false)) {
+					trace("Performing reconciliation."); //$NON-NLS-1$
+					return false;
+				}
+				trace("Content of dropins unchanged."); //$NON-NLS-1$
+				timestampsUpdated = true;
 			}
 			timestamps.remove(key);
 		}
@@ -262,7 +274,15 @@ public class Activator implements BundleActivator {
 		// if we had some extra timestamps in the file, then signal that something has
 		// changed and we need to reconcile
 		boolean result = timestamps.isEmpty();
+		if (result && !isDropinsContentUnchanged(true)) {
+			trace("Content of dropins changed."); //$NON-NLS-1$
+			trace("Performing reconciliation."); //$NON-NLS-1$
+			return false;
+		}
 		if (result) {
+			// remember the new timestamps so the next check does not need the fingerprint
+			if (timestampsUpdated)
+				writeTimestamps();
 			trace("Cached timestamp values up to date."); //$NON-NLS-1$
 			trace("Reconciliation skipped."); //$NON-NLS-1$
 		} else {
@@ -276,6 +296,32 @@ public class Activator implements BundleActivator {
 		return result;
 	}
 
+	/*
+	 * Return true if the content of the dropins and links locations matches the cached
+	 * fingerprint. If there is no cached fingerprint, return the given default value.
+	 */
+	private boolean isDropinsContentUnchanged(boolean defaultValue) {
+		if (dropinsUnchanged == null) {
+			DropinsFingerprint fingerprint = DropinsFingerprint.read(getContext().getDataFile(FINGERPRINT_FILENAME));
+			if (fingerprint == null) {
+				trace("Cached fingerprint not found."); //$NON-NLS-1$
+				return defaultValue;
+			}
+			dropinsUnchanged = Boolean.valueOf(fingerprint.matches(dropinsToCheck));
+		}
+		return dropinsUnchanged.booleanValue();
+	}
+
+	/*
+	 * Persist the fingerprint of the dropins and links locations.
+	 */
+	private void writeFingerprint() {
+		getFilesToCheck();
+		File file = getContext().getDataFile(FINGERPRINT_FILENAME);
+		trace("Writing out fingerprint to file : " + file.getAbsolutePath()); //$NON-NLS-1$
+		DropinsFingerprint.compute(dropinsToCheck).write(file);
+	}
+
 	/*
 	 * Restore the cached timestamp values.
 	 */
@@ -337,12 +383,14 @@ public class Activator implements BundleActivator {
 
 		// dropins folders
 		File[] dropins = getDropinsDirectories();
-		result.addAll(getDropinsToCheck(dropins));
+		Set<File> dropinsResult = new HashSet<>(getDropinsToCheck(dropins));
 
 		// links folders
 		File[] links = getLinksDirectories();
-		result.addAll(getDropinsToCheck(links));
+		dropinsResult.addAll(getDropinsToCheck(links));
 
+		result.addAll(dropinsResult);
+		dropinsToCheck = dropinsResult;
 		filesToCheck = result;
 		return filesToCheck;
 	}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ * All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which accompanies this distribution,
+ * and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ * IBM Corporation - initial implementation and ideas
+ ******************************************************************************/
+package org.eclipse.equinox.internal.p2.reconciler.dropins;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+
+/*
+ * A fingerprint of the content of the dropins and links locations. For every
+ * entry of the locations it records the size, the last modified time and a hash
+ * of the manifest: the bundle manifest of a jar or directory bundle, the
+ * feature.xml of a feature directory or the whole content of any other file.
+ *
+ * The fingerprint is used to prove that nothing changed in the locations even if
+ * their timestamps did (e.g. a file was added and removed again, or a bundle was
+ * copied over with identical content), and to detect changes that do not update
+ * the timestamp of the location (e.g. a jar replaced in place).
+ */
+public class DropinsFingerprint {
+	private static final String MANIFEST = "META-INF/MANIFEST.MF"; //$NON-NLS-1$
+	private static final String FEATURE_XML = "feature.xml"; //$NON-NLS-1$
+	private static final String JAR_EXT = ".jar"; //$NON-NLS-1$
+	private static final String NO_HASH = "-"; //$NON-NLS-1$
+	private static final char SEPARATOR = ',';
+
+	private final Properties entries;
+
+	private DropinsFingerprint(Properties entries) {
+		this.entries = entries;
+	}
+
+	/*
+	 * Compute the fingerprint of the given locations.
+	 */
+	public static DropinsFingerprint compute(Collection<File> locations) {
+		Properties entries = new Properties();
+		for (File entry : getEntries(locations)) {
+			String hash = hash(entry);
+			entries.put(entry.getAbsolutePath(), Long.toString(size(entry)) + SEPARATOR + entry.lastModified() + SEPARATOR + (hash == null ? NO_HASH : hash));
+		}
+		return new DropinsFingerprint(entries);
+	}
+
+	/*
+	 * Return true if the content of the given locations still matches this fingerprint. Only
+	 * the entries whose size and last modified time are unchanged are not read again.
+	 */
+	public boolean matches(Collection<File> locations) {
+		Set<String> remaining = new HashSet<>(entries.stringPropertyNames());
+		for (File entry : getEntries(locations)) {
+			String key = entry.getAbsolutePath();
+			if (!remaining.remove(key)) {
+				Activator.trace("New entry: " + key); //$NON-NLS-1$
+				return false;
+			}
+			String[] value = entries.getProperty(key).split(String.valueOf(SEPARATOR), 3);
+			if (value.length != 3 || !value[0].equals(Long.toString(size(entry)))) {
+				Activator.trace("Size changed for entry: " + key); //$NON-NLS-1$
+				return false;
+			}
+			if (value[1].equals(Long.toString(entry.lastModified())))
+				continue;
+			String hash = hash(entry);
+			if (hash == null || !hash.equals(value[2])) {
+				Activator.trace("Content changed for entry: " + key); //$NON-NLS-1$
+				return false;
+			}
+		}
+		if (!remaining.isEmpty()) {
+			Activator.trace("Removed entries: " + remaining); //$NON-NLS-1$
+			return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Return the entries of the given locations. A location which is a file is an entry itself.
+	 */
+	private static Set<File> getEntries(Collection<File> locations) {
+		Set<File> result = new HashSet<>();
+		for (File location : locations) {
+			File[] children = location.listFiles();
+			if (children != null)
+				result.addAll(Arrays.asList(children));
+			else if (location.isFile())
+				result.add(location);
+		}
+		return result;
+	}
+
+	private static long size(File entry) {
+		return entry.isDirectory() ? 0 : entry.length();
+	}
+
+	/*
+	 * Return the hash of the manifest of the given entry, or null if it can not be read.
+	 */
+	private static String hash(File entry) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+			if (entry.isDirectory()) {
+				File manifest = new File(entry, MANIFEST);
+				if (!manifest.isFile())
+					manifest = new File(entry, FEATURE_XML);
+				if (!manifest.isFile())
+					return NO_HASH;
+				try (InputStream input = new FileInputStream(manifest)) {
+					update(digest, input);
+				}
+			} else if (entry.getName().toLowerCase().endsWith(JAR_EXT)) {
+				try (ZipFile jar = new ZipFile(entry)) {
+					ZipEntry manifest = jar.getEntry(MANIFEST);
+					if (manifest == null)
+						return NO_HASH;
+					try (InputStream input = jar.getInputStream(manifest)) {
+						update(digest, input);
+					}
+				}
+			} else {
+				try (InputStream input = new FileInputStream(entry)) {
+					update(digest, input);
+				}
+			}
+			StringBuilder result = new StringBuilder();
+			for (byte b : digest.digest())
+				result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			return result.toString();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, InputStream input) throws IOException {
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1)
+			digest.update(buffer, 0, read);
+	}
+
+	/*
+	 * Read a fingerprint from the given file. Return null if there is none.
+	 */
+	public static DropinsFingerprint read(File file) {
+		if (!file.exists())
+			return null;
+		Properties entries = new Properties();
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			entries.load(input);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, "Error occurred while reading cached fingerprint for reconciliation.", e)); //$NON-NLS-1$
+			return null;
+		}
+		return new DropinsFingerprint(entries);
+	}
+
+	/*
+	 * Persist the fingerprint to the given file.
+	 */
+	public void write(File file) {
+		file.delete();
+		try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+			entries.store(output, null);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, "Error occurred while writing cached fingerprint for reconciliation.", e)); //$NON-NLS-1$
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.internal.repository.mirroring;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumHelper;
+import org.eclipse.equinox.p2.internal.repository.tools.Activator;
+import org.eclipse.equinox.p2.internal.repository.tools.Messages;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A content addressed store of artifact files, shared by the file based
+ * repositories on one disk. Every blob is named by the SHA-256 of its content,
+ * which is the download checksum the descriptors carry, and is hard linked into
+ * the layout of each repository containing it. Identical artifacts mirrored
+ * into several repositories are therefore stored only once.
+ * <p>
+ * The blobs are split among 256 directories named after the first two
+ * characters of their checksum. A blob is only linked to, never written
+ * through, so a repository removing or replacing an artifact does not affect
+ * the other repositories. Blobs which are no longer linked from any
+ * repository are removed by {@link #gc()}.
+ * </p>
+ */
+public class ContentStore {
+	public static final String CHECKSUM_PROPERTY = IArtifactDescriptor.DOWNLOAD_CHECKSUM + ".sha-256"; //$NON-NLS-1$
+	private static final String ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	private final File root;
+
+	public ContentStore(File root) {
+		this.root = root;
+	}
+
+	public File getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns the checksum the given descriptor is stored under, or
+	 * <code>null</code> if it has none.
+	 */
+	public static String getChecksum(IArtifactDescriptor descriptor) {
+		String checksum = descriptor.getProperty(CHECKSUM_PROPERTY);
+		return checksum == null || checksum.length() < 2 ? null : checksum.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Returns the blob with the given checksum. It does not necessarily exist.
+	 */
+	public File getBlob(String checksum) {
+		return new File(new File(root, checksum.substring(0, 2)), checksum);
+	}
+
+	/**
+	 * Returns whether a blob with the given checksum is stored.
+	 */
+	public boolean contains(String checksum) {
+		return getBlob(checksum).isFile();
+	}
+
+	/**
+	 * Shares the given artifact file through the store. If a blob with the
+	 * checksum is stored, the file is replaced by a link to it. Otherwise the
+	 * content of the file is verified and the file becomes the blob.
+	 *
+	 * @return whether the file is linked to the store. It is left alone if the
+	 * file system does not support links or the content does not match.
+	 */
+	public boolean add(String checksum, File file) {
+		Path blob = getBlob(checksum).toPath();
+		Path path = file.toPath();
+		try {
+			if (Files.isRegularFile(blob)) {
+				if (Files.isSameFile(blob, path))
+					return true;
+				// link next to the file and move it over, the file never goes missing
+				Path link = path.resolveSibling(path.getFileName() + ".link"); //$NON-NLS-1$
+				Files.deleteIfExists(link);
+				Files.createLink(link, blob);
+				Files.move(link, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				return true;
+			}
+			if (!checksum.equals(computeChecksum(file))) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.ContentStore_checksumMismatch, file, checksum)));
+				return false;
+			}
+			Files.createDirectories(blob.getParent());
+			Files.createLink(blob, path);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			// added concurrently, link to that one instead
+			if (Files.isRegularFile(blob))
+				return add(checksum, file);
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.ContentStore_cannotLink, file, root), e));
+			return false;
+		} catch (IOException | UnsupportedOperationException | SecurityException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.ContentStore_cannotLink, file, root), e));
+			return false;
+		}
+	}
+
+	/**
+	 * Verifies that the content of every blob matches its name.
+	 *
+	 * @return a status with an error for every corrupt blob
+	 */
+	public IStatus verify(IProgressMonitor monitor) {
+		MultiStatus result = new MultiStatus(Activator.ID, IStatus.OK, NLS.bind(Messages.ContentStore_verifying, root), null);
+		for (File blob : listBlobs()) {
+			if (monitor != null && monitor.isCanceled())
+				throw new OperationCanceledException();
+			try {
+				if (!blob.getName().equals(computeChecksum(blob)))
+					result.add(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ContentStore_corruptBlob, blob)));
+			} catch (IOException e) {
+				result.add(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ContentStore_corruptBlob, blob), e));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Removes the blobs which are not linked from any repository.
+	 *
+	 * @return the number of removed blobs, or -1 if the file system cannot
+	 * count the links of a file
+	 */
+	public int gc() {
+		int removed = 0;
+		for (File blob : listBlobs()) {
+			try {
+				Object links = Files.getAttribute(blob.toPath(), "unix:nlink"); //$NON-NLS-1$
+				if (links instanceof Integer && ((Integer) links).intValue() <= 1 && blob.delete())
+					removed++;
+			} catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+				return -1;
+			}
+		}
+		return removed;
+	}
+
+	private File[] listBlobs() {
+		File[] folders = root.listFiles(File::isDirectory);
+		if (folders == null)
+			return new File[0];
+		List<File> blobs = new ArrayList<>();
+		for (File folder : folders) {
+			File[] files = folder.listFiles(File::isFile);
+			if (files != null)
+				blobs.addAll(Arrays.asList(files));
+		}
+		return blobs.toArray(new File[blobs.size()]);
+	}
+
+	private static String computeChecksum(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		byte[] buffer = new byte[8192];
+		try (InputStream input = new FileInputStream(file)) {
+			for (int read = input.read(buffer); read != -1; read = input.read(buffer))
+				digest.update(buffer, 0, read);
+		}
+		return ChecksumHelper.toHexString(digest.digest());
+	}
+}
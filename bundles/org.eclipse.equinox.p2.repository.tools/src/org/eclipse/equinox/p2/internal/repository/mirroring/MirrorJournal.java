@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.internal.repository.mirroring;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.p2.internal.repository.tools.Activator;
+import org.eclipse.equinox.p2.internal.repository.tools.Messages;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * The progress of a mirroring run, persisted so that an interrupted run can be
+ * resumed without mirroring or comparing the same descriptors again.
+ * <p>
+ * The journal is a text file. The first line identifies the source and the
+ * destination, a journal written for other repositories is ignored. Every
+ * following line is a descriptor which is mirrored and saved in the
+ * destination. Descriptors must only be added after the destination has been
+ * saved, otherwise a resumed run would skip descriptors the destination does
+ * not know.
+ * </p>
+ */
+public class MirrorJournal {
+	private final File file;
+	private final String header;
+	private final Set<String> completed = new HashSet<>();
+
+	/**
+	 * Reads the journal for mirroring the given source to the given destination.
+	 * The journal is empty if the file does not exist, cannot be read or was
+	 * written for other repositories.
+	 */
+	public static MirrorJournal read(File file, String source, String destination) {
+		MirrorJournal journal = new MirrorJournal(file, source + " -> " + destination); //$NON-NLS-1$
+		if (!file.exists())
+			return journal;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+			if (!journal.header.equals(reader.readLine()))
+				return journal;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (line.length() > 0)
+					journal.completed.add(line);
+			}
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.MirrorJournal_cannotRead, file), e));
+			journal.completed.clear();
+		}
+		return journal;
+	}
+
+	private MirrorJournal(File file, String header) {
+		this.file = file;
+		this.header = header;
+	}
+
+	/**
+	 * Returns whether the given descriptor was completed by an earlier run.
+	 */
+	public boolean isCompleted(IArtifactDescriptor descriptor) {
+		return completed.contains(descriptor.toString());
+	}
+
+	/**
+	 * Records the given descriptors as completed. The file is rewritten
+	 * when it belongs to other repositories.
+	 */
+	public void addCompleted(Collection<IArtifactDescriptor> descriptors) {
+		if (descriptors.isEmpty() && file.exists())
+			return;
+		boolean append = file.exists() && !completed.isEmpty();
+		if (file.getParentFile() != null)
+			file.getParentFile().mkdirs();
+		try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append), StandardCharsets.UTF_8))) {
+			if (!append) {
+				writer.write(header);
+				writer.write('\n');
+				for (String line : completed) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			}
+			for (IArtifactDescriptor descriptor : descriptors) {
+				String line = descriptor.toString();
+				if (completed.add(line)) {
+					writer.write(line);
+					writer.write('\n');
+				}
+			}
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.MirrorJournal_cannotWrite, file), e));
+		}
+	}
+
+	/**
+	 * Deletes the journal, once the mirroring run has completed.
+	 */
+	public void delete() {
+		completed.clear();
+		file.delete();
+	}
+}
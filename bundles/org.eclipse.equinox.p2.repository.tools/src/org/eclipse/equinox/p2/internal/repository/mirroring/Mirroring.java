@@ -15,17 +15,25 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.mirroring;
 
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepository;
 import org.eclipse.equinox.internal.p2.artifact.repository.RawMirrorRequest;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.internal.repository.tools.Activator;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.query.IQuery;
 import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.tools.comparator.ArtifactComparatorFactory;
@@ -34,8 +42,16 @@ import org.eclipse.osgi.util.NLS;
 
 /**
  * A utility class that performs mirroring of artifacts between repositories.
+ * <p>
+ * With more than one thread the descriptors are mirrored concurrently, in
+ * batches of {@value #BATCH_SIZE}. The destination is saved once per batch,
+ * and the batch is then recorded in the journal, if one is set.
+ * </p>
  */
 public class Mirroring {
+	// number of descriptors mirrored between two saves of the destination
+	private static final int BATCH_SIZE = 100;
+
 	private IArtifactRepository source;
 	private IArtifactRepository destination;
 	private IArtifactRepository baseline;
@@ -51,6 +67,10 @@ public class Mirroring {
 	private Transport transport;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int threads = 1;
+	private int maxPerHost = 0;
+	private File journalFile;
+	private ContentStore contentStore;
 
 	private IArtifactComparator getComparator() {
 		if (comparator == null)
@@ -110,17 +130,22 @@ public class Mirroring {
 			compareExclusions = exclusions.toUnmodifiableSet();
 		}
 
-		while (keys.hasNext()) {
-			IArtifactKey key = keys.next();
-			IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
-			for (IArtifactDescriptor descriptor : descriptors) {
-				IStatus result = mirror(descriptor, verbose);
-				// Only log INFO and WARNING if we want verbose logging. Always log ERRORs
-				if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
-					multiStatus.add(result);
-				// stop mirroring as soon as we have an error
-				if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
-					return multiStatus;
+		if (threads > 1 || journalFile != null) {
+			if (!mirrorInBatches(keys, multiStatus, failOnError, verbose))
+				return multiStatus;
+		} else {
+			while (keys.hasNext()) {
+				IArtifactKey key = keys.next();
+				IArtifactDescriptor[] descriptors = source.getArtifactDescriptors(key);
+				for (IArtifactDescriptor descriptor : descriptors) {
+					IStatus result = mirror(descriptor, verbose);
+					// Only log INFO and WARNING if we want verbose logging. Always log ERRORs
+					if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
+						multiStatus.add(result);
+					// stop mirroring as soon as we have an error
+					if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
+						return multiStatus;
+				}
 			}
 		}
 
@@ -149,6 +174,147 @@ public class Mirroring {
 		return multiStatus;
 	}
 
+	/*
+	 * Mirror the descriptors of the given keys concurrently, saving the
+	 * destination after every batch. The statuses are added in the order of the
+	 * descriptors. Returns false if mirroring stopped because of an error.
+	 */
+	private boolean mirrorInBatches(Iterator<IArtifactKey> keys, MultiStatus multiStatus, boolean failOnError,
+			boolean verbose) {
+		MirrorJournal journal = journalFile == null ? null
+				: MirrorJournal.read(journalFile, getSourceId(), destination.getLocation().toString());
+		List<IArtifactDescriptor> descriptors = new ArrayList<>();
+		while (keys.hasNext()) {
+			for (IArtifactDescriptor descriptor : source.getArtifactDescriptors(keys.next())) {
+				if (journal == null || !journal.isCompleted(descriptor))
+					descriptors.add(descriptor);
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+			Thread thread = new Thread(runnable, "Artifact mirroring"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		Map<String, Semaphore> hostLimits = new HashMap<>();
+		try {
+			for (int start = 0; start < descriptors.size(); start += BATCH_SIZE) {
+				List<IArtifactDescriptor> batch = descriptors.subList(start,
+						Math.min(start + BATCH_SIZE, descriptors.size()));
+				IStatus[] results = new IStatus[batch.size()];
+				IStatus batchStatus = executeBatch(
+						monitor -> mirrorBatch(executor, hostLimits, batch, results, failOnError, verbose));
+				List<IArtifactDescriptor> completed = new ArrayList<>(batch.size());
+				for (int i = 0; i < results.length; i++) {
+					IStatus result = results[i];
+					if (result == null)
+						continue; // skipped after an error
+					if (result.getSeverity() != IStatus.ERROR && result.getSeverity() != IStatus.CANCEL)
+						completed.add(batch.get(i));
+					// Only log INFO and WARNING if we want verbose logging. Always log ERRORs
+					if (!result.isOK() && (verbose || result.getSeverity() == IStatus.ERROR))
+						multiStatus.add(result);
+				}
+				if (!batchStatus.isOK()) {
+					multiStatus.add(batchStatus);
+				} else if (journal != null) {
+					// the destination has been saved, record the batch
+					journal.addCompleted(completed);
+				}
+				// stop mirroring as soon as we have an error
+				if (failOnError && multiStatus.getSeverity() == IStatus.ERROR)
+					return false;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (journal != null && multiStatus.getSeverity() != IStatus.ERROR)
+			journal.delete();
+		return true;
+	}
+
+	/*
+	 * Return a string identifying the source across runs. The mirror application
+	 * uses an in-memory composite with a generated location, its children
+	 * identify it.
+	 */
+	private String getSourceId() {
+		if (source instanceof CompositeArtifactRepository)
+			return ((CompositeArtifactRepository) source).getChildren().toString();
+		return source.getLocation().toString();
+	}
+
+	/*
+	 * Mirror one batch of descriptors on the given executor and wait for all of
+	 * them. Descriptors that have not been started when an error occurs are
+	 * skipped if we fail on errors, their result stays null.
+	 */
+	private void mirrorBatch(ExecutorService executor, Map<String, Semaphore> hostLimits,
+			List<IArtifactDescriptor> batch, IStatus[] results, boolean failOnError, boolean verbose) {
+		List<Future<?>> futures = new ArrayList<>(batch.size());
+		AtomicBoolean failed = new AtomicBoolean();
+		for (int i = 0; i < batch.size(); i++) {
+			int index = i;
+			IArtifactDescriptor descriptor = batch.get(i);
+			Semaphore hostLimit = getHostLimit(hostLimits, descriptor);
+			futures.add(executor.submit(() -> {
+				if (failOnError && failed.get())
+					return;
+				hostLimit.acquireUninterruptibly();
+				try {
+					IStatus result = mirror(descriptor, verbose);
+					if (result.getSeverity() == IStatus.ERROR)
+						failed.set(true);
+					results[index] = result;
+				} catch (RuntimeException e) {
+					failed.set(true);
+					results[index] = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+				} finally {
+					hostLimit.release();
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new OperationCanceledException();
+			} catch (ExecutionException e) {
+				// the task catches its exceptions
+			}
+		}
+	}
+
+	/*
+	 * Return the semaphore limiting the concurrent downloads from the host of the
+	 * repository the descriptor comes from.
+	 */
+	private Semaphore getHostLimit(Map<String, Semaphore> hostLimits, IArtifactDescriptor descriptor) {
+		IArtifactRepository repository = descriptor.getRepository() != null ? descriptor.getRepository() : source;
+		String host = repository.getLocation().getHost();
+		int permits = maxPerHost > 0 ? maxPerHost : Math.max(1, threads);
+		return hostLimits.computeIfAbsent(host == null ? "" : host, h -> new Semaphore(permits)); //$NON-NLS-1$
+	}
+
+	/*
+	 * Run the given runnable so that the destination is only saved at its end.
+	 * Artifacts are added by several threads, so the batch must not hold the
+	 * destination's monitor.
+	 */
+	private IStatus executeBatch(IRunnableWithProgress runnable) {
+		if (destination instanceof SimpleArtifactRepository)
+			return ((SimpleArtifactRepository) destination).executeConcurrentBatch(runnable,
+					new NullProgressMonitor());
+		// other repositories save every artifact on their own
+		try {
+			runnable.run(new NullProgressMonitor());
+		} catch (InvocationTargetException e) {
+			return new Status(IStatus.ERROR, Activator.ID, e.getCause().getMessage(), e.getCause());
+		}
+		return Status.OK_STATUS;
+	}
+
 	@SuppressWarnings("removal")
 	private IStatus mirror(IArtifactDescriptor sourceDescriptor, boolean verbose) {
 		if (!includePacked
@@ -227,8 +393,12 @@ public class Mirroring {
 			IArtifactRepository destRepository, IArtifactDescriptor destDescriptor) {
 		IStatus comparison = getComparator().compare(sourceRepository, sourceDescriptor, destRepository,
 				destDescriptor);
-		if (comparatorLog != null && !comparison.isOK())
-			comparatorLog.log(sourceDescriptor, comparison);
+		if (comparatorLog != null && !comparison.isOK()) {
+			// may be called concurrently
+			synchronized (comparatorLog) {
+				comparatorLog.log(sourceDescriptor, comparison);
+			}
+		}
 		return comparison;
 	}
 
@@ -237,10 +407,67 @@ public class Mirroring {
 	 */
 	private IStatus downloadArtifact(IArtifactRepository sourceRepo, IArtifactDescriptor destDescriptor,
 			IArtifactDescriptor srcDescriptor) {
+		String checksum = contentStore == null ? null : ContentStore.getChecksum(srcDescriptor);
+		if (checksum != null && contentStore.contains(checksum)) {
+			IStatus result = copyFromContentStore(checksum, destDescriptor);
+			if (result.isOK()) {
+				shareThroughContentStore(checksum, destDescriptor);
+				return result;
+			}
+			// fall back to the source
+		}
+
 		RawMirrorRequest request = new RawMirrorRequest(srcDescriptor, destDescriptor, destination, transport);
 		request.perform(sourceRepo, new NullProgressMonitor());
 
-		return request.getResult();
+		IStatus result = request.getResult();
+		if (checksum != null && result.getSeverity() != IStatus.ERROR)
+			shareThroughContentStore(checksum, destDescriptor);
+		return result;
+	}
+
+	/*
+	 * Add the artifact to the destination with the content of the blob, instead
+	 * of downloading it. The copy is replaced by a link afterwards.
+	 */
+	private IStatus copyFromContentStore(String checksum, IArtifactDescriptor destDescriptor) {
+		IStatus result = Status.OK_STATUS;
+		try {
+			OutputStream output = destination.getOutputStream(destDescriptor);
+			try {
+				Files.copy(contentStore.getBlob(checksum).toPath(), output);
+			} catch (IOException e) {
+				result = new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+				// do not add the descriptor
+				if (output instanceof IStateful)
+					((IStateful) output).setStatus(result);
+			} finally {
+				output.close();
+			}
+		} catch (ProvisionException e) {
+			return e.getStatus();
+		} catch (IOException e) {
+			return new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e);
+		}
+		return result;
+	}
+
+	/*
+	 * Replace the artifact file in the destination by a link to the blob, or
+	 * make it the blob.
+	 */
+	private void shareThroughContentStore(String checksum, IArtifactDescriptor destDescriptor) {
+		if (!(destination instanceof IFileArtifactRepository))
+			return;
+		for (IArtifactDescriptor descriptor : destination.getArtifactDescriptors(destDescriptor.getArtifactKey())) {
+			if (descriptor.equals(destDescriptor)) {
+				File file = ((IFileArtifactRepository) destination).getArtifactFile(descriptor);
+				// folder based artifacts cannot be shared
+				if (file != null && file.isFile())
+					contentStore.add(checksum, file);
+				return;
+			}
+		}
 	}
 
 	public void setArtifactKeys(IArtifactKey[] keys) {
@@ -370,4 +597,39 @@ public class Mirroring {
 	public void setIncludePacked(boolean includePacked) {
 		this.includePacked = includePacked;
 	}
+
+	/**
+	 * Sets the number of descriptors to mirror concurrently. With one thread, the
+	 * default, descriptors are mirrored one after the other.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets the maximal number of concurrent downloads from one host. Zero, the
+	 * default, only limits them by the number of threads.
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		this.maxPerHost = maxPerHost;
+	}
+
+	/**
+	 * Sets the file recording the progress of mirroring. An interrupted run with
+	 * the same journal skips the descriptors it has already mirrored. The journal
+	 * is deleted when mirroring completes without errors.
+	 */
+	public void setJournal(File journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * Set the content store shared with other destinations on the same disk.
+	 * Artifacts whose download checksum is in the store are taken from it
+	 * instead of the source, and every mirrored artifact is linked to the store,
+	 * so identical artifacts are stored only once.
+	 */
+	public void setContentStore(ContentStore contentStore) {
+		this.contentStore = contentStore;
+	}
 }
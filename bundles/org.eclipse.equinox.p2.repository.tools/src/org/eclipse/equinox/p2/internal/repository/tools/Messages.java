@@ -64,6 +64,16 @@ public class Messages extends NLS {
 	public static String Mirroring_ValidationError;
 	public static String Mirroring_missingDescriptor;
 	public static String Mirroring_differentDescriptorProperty;
+	public static String MirrorJournal_cannotRead;
+	public static String MirrorJournal_cannotWrite;
+	public static String ContentStore_checksumMismatch;
+	public static String ContentStore_cannotLink;
+	public static String ContentStore_verifying;
+	public static String ContentStore_corruptBlob;
+	public static String ContentStore_cannotCountLinks;
+	public static String ContentStore_removedBlobs;
+	public static String Repo2Runnable_fetching;
+	public static String Repo2Runnable_fetched;
 
 	public static String invalidComparatorId;
 
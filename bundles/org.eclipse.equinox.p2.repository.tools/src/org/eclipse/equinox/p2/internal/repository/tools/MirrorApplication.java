@@ -57,6 +57,12 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	private String[] rootIUs = null;
 	private boolean includePacked = true;
 	private boolean mirrorProperties = false;
+	private int threads = 1;
+	private int maxPerHost = 0;
+	private File journal;
+	private File contentStore;
+	private boolean verifyContentStore = false;
+	private boolean gcContentStore = false;
 
 	private File mirrorLogFile; // file to log mirror output to (optional)
 	private File comparatorLogFile; // file to comparator output to (optional)
@@ -143,6 +149,10 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 				mirrorReferences = true;
 			else if (args[i].equalsIgnoreCase("-properties")) //$NON-NLS-1$
 				mirrorProperties = true;
+			else if (args[i].equalsIgnoreCase("-verifyContentStore")) //$NON-NLS-1$
+				verifyContentStore = true;
+			else if (args[i].equalsIgnoreCase("-gcContentStore")) //$NON-NLS-1$
+				gcContentStore = true;
 
 			// check for args with parameters. If we are at the last argument or
 			// if the next one has a '-' as the first character, then we can't have
@@ -167,6 +177,14 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 				rootIUs = getArrayArgsFromString(arg, ","); //$NON-NLS-1$
 			} else if (args[i - 1].equalsIgnoreCase("-references")) {//$NON-NLS-1$
 				mirrorReferences = Boolean.parseBoolean(args[i]);
+			} else if (args[i - 1].equalsIgnoreCase("-threads")) { //$NON-NLS-1$
+				threads = Integer.parseInt(arg);
+			} else if (args[i - 1].equalsIgnoreCase("-maxPerHost")) { //$NON-NLS-1$
+				maxPerHost = Integer.parseInt(arg);
+			} else if (args[i - 1].equalsIgnoreCase("-journal")) { //$NON-NLS-1$
+				journal = new File(arg);
+			} else if (args[i - 1].equalsIgnoreCase("-contentStore")) { //$NON-NLS-1$
+				contentStore = new File(arg);
 			} else {
 				try {
 					if (args[i - 1].equalsIgnoreCase("-source")) { //$NON-NLS-1$
@@ -194,6 +212,9 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 
 	@Override
 	public IStatus run(IProgressMonitor monitor) throws ProvisionException {
+		// maintenance of the content store only
+		if (sourceRepositories.isEmpty() && contentStore != null && (verifyContentStore || gcContentStore))
+			return maintainContentStore(monitor);
 		IStatus mirrorStatus = Status.OK_STATUS;
 		try {
 			initializeRepos(new NullProgressMonitor());
@@ -212,11 +233,40 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 			finalizeRepositories();
 			finalizeLogs();
 		}
+		if (contentStore != null && (verifyContentStore || gcContentStore)) {
+			IStatus maintenance = maintainContentStore(monitor);
+			if (!maintenance.isOK())
+				return maintenance.getSeverity() > mirrorStatus.getSeverity() ? maintenance : mirrorStatus;
+		}
 		if (mirrorStatus.isOK())
 			return Status.OK_STATUS;
 		return mirrorStatus;
 	}
 
+	/*
+	 * Verify the blobs of the content store and remove the ones no destination
+	 * links to anymore.
+	 */
+	private IStatus maintainContentStore(IProgressMonitor monitor) {
+		ContentStore store = new ContentStore(contentStore);
+		IStatus result = Status.OK_STATUS;
+		if (verifyContentStore) {
+			result = store.verify(monitor);
+			if (!result.isOK() || verbose)
+				LogHelper.log(result);
+		}
+		if (gcContentStore) {
+			int removed = store.gc();
+			IStatus gc = removed < 0 ? new Status(IStatus.WARNING, Activator.ID, NLS.bind(Messages.ContentStore_cannotCountLinks, contentStore))
+					: new Status(IStatus.INFO, Activator.ID, NLS.bind(Messages.ContentStore_removedBlobs, removed, contentStore));
+			if (verbose || removed < 0)
+				LogHelper.log(gc);
+			if (gc.getSeverity() > result.getSeverity())
+				result = gc;
+		}
+		return result;
+	}
+
 	private IStatus mirrorArtifacts(IQueryable<IInstallableUnit> slice, IProgressMonitor monitor) {
 		Mirroring mirror = getMirroring(slice, monitor);
 
@@ -247,6 +297,11 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 		mirror.setTransport((Transport) agent.getService(Transport.SERVICE_NAME));
 		mirror.setIncludePacked(includePacked);
 		mirror.setMirrorProperties(mirrorProperties);
+		mirror.setThreads(threads);
+		mirror.setMaxPerHost(maxPerHost);
+		mirror.setJournal(journal);
+		if (contentStore != null)
+			mirror.setContentStore(new ContentStore(contentStore));
 
 		// If IUs have been specified then only they should be mirrored, otherwise
 		// mirror everything.
@@ -490,4 +545,46 @@ public class MirrorApplication extends AbstractApplication implements IApplicati
 	public void setMirrorProperties(boolean mirrorProperties) {
 		this.mirrorProperties = mirrorProperties;
 	}
+
+	/*
+	 * Set the number of artifacts to mirror concurrently
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/*
+	 * Set the maximal number of concurrent downloads from one host
+	 */
+	public void setMaxPerHost(int maxPerHost) {
+		this.maxPerHost = maxPerHost;
+	}
+
+	/*
+	 * Set the journal that allows an interrupted mirroring to be resumed
+	 */
+	public void setJournal(File journal) {
+		this.journal = journal;
+	}
+
+	/*
+	 * Set the content store shared by destinations on the same disk
+	 */
+	public void setContentStore(File contentStore) {
+		this.contentStore = contentStore;
+	}
+
+	/*
+	 * Verify the content of the content store after mirroring
+	 */
+	public void setVerifyContentStore(boolean verify) {
+		this.verifyContentStore = verify;
+	}
+
+	/*
+	 * Remove blobs no longer linked from any repository after mirroring
+	 */
+	public void setGCContentStore(boolean gc) {
+		this.gcContentStore = gc;
+	}
 }
@@ -19,10 +19,12 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.app.IApplication;
 import org.eclipse.equinox.app.IApplicationContext;
 import org.eclipse.equinox.frameworkadmin.BundleInfo;
+import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.engine.*;
 import org.eclipse.equinox.internal.p2.engine.phases.Collect;
@@ -33,26 +35,43 @@ import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.IRunnableWithProgress;
 import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.simpleconfigurator.manipulator.SimpleConfiguratorManipulator;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * The transformer takes an existing p2 repository (local or remote), iterates over 
  * its list of IUs, and fetches all of the corresponding artifacts to a user-specified location. 
  * Once fetched, the artifacts will be in "runnable" form... that is directory-based bundles will be
  * extracted into folders and packed JAR files will be un-packed.
+ * <p>
+ * By default the artifacts are fetched by the engine, performing the collect
+ * phase on a temporary profile whose bundle pool is the destination. With more
+ * than one thread, the artifacts the collect phases would fetch are computed
+ * from the IUs directly and fetched concurrently into the destination, which
+ * is saved once at the end. IUs with other touchpoints than the Eclipse and
+ * the native touchpoint, or with their own collect instructions, are left to
+ * the engine.
+ * </p>
  * 
  * @since 1.0
  */
 public class Repo2Runnable extends AbstractApplication implements IApplication {
 	private static final String NATIVE_ARTIFACTS = "nativeArtifacts"; //$NON-NLS-1$
 	private static final String NATIVE_TYPE = "org.eclipse.equinox.p2.native"; //$NON-NLS-1$
+	private static final String ECLIPSE_TYPE = "org.eclipse.equinox.p2.osgi"; //$NON-NLS-1$
+	private static final String COLLECT_INSTRUCTION = "collect"; //$NON-NLS-1$
+	private static final String ZIPPED_INSTRUCTION = "zipped"; //$NON-NLS-1$
+	private static final String ARTIFACT_FOLDER = "artifact.folder"; //$NON-NLS-1$
+	private static final String FILE_SCHEME = "file"; //$NON-NLS-1$
 	private static final String PARM_OPERAND = "operand"; //$NON-NLS-1$
 	private static final String PARM_PROFILE = "profile"; //$NON-NLS-1$
 
 	private boolean createFragments;
 	private boolean flagAsRunnable = false;
+	private int threads = 1;
 
 	protected class CollectNativesAction extends ProvisioningAction {
 		@Override
@@ -140,6 +159,19 @@ public class Repo2Runnable extends AbstractApplication implements IApplication {
 		// figure out which IUs we need to process
 		collectIUs(progress.newChild(1));
 
+		if (threads > 1) {
+			List<IArtifactRequest> requests = createArtifactRequests();
+			if (requests != null) {
+				try {
+					IStatus result = fetchConcurrently(requests, progress.newChild(2));
+					complete(progress.newChild(1));
+					return result;
+				} finally {
+					finalizeRepositories();
+				}
+			}
+		}
+
 		// call the engine with only the "collect" phase so all we do is download
 		IProfile profile = createProfile();
 		try {
@@ -158,54 +190,192 @@ public class Repo2Runnable extends AbstractApplication implements IApplication {
 			if (nativeSet != null)
 				engine.perform(plan, nativeSet, progress.newChild(1));
 
-			// publish the metadata to a destination - if requested
-			publishMetadata(progress.newChild(1));
-
-			setRunnableProperty(destinationArtifactRepository);
-			// return the resulting status
+			complete(progress.newChild(1));
+			return result;
+		} finally {
+			// cleanup by removing the temporary profile and unloading the repos which were new
+			removeProfile(profile);
+			finalizeRepositories();
+		}
+	}
 
-			if (createFragments) {
-				File parentDir = new File(destinationArtifactRepository.getLocation().toString().substring(5));
-				File pluginsDir = new File(parentDir, "plugins");
-				File fragmentInfo = new File(parentDir, "fragment.info");
-				HashSet<BundleInfo> bundles = new HashSet<>();
-				try {
-					for (IInstallableUnit iu : processedIUs) {
-						if (iu.getId().equals("a.jre"))
-							continue;
-						Collection<IProvidedCapability> providedCapabilities = iu.getProvidedCapabilities();
-						for (IProvidedCapability cap : providedCapabilities) {
-							if ("org.eclipse.equinox.p2.eclipse.type".equals(cap.getNamespace())) {
-								if ("bundle".equals(cap.getName())) {
-									File candidate = new File(pluginsDir, iu.getId() + "_" + iu.getVersion());
-									if (candidate.exists()) {
-										bundles.add(new BundleInfo(iu.getId(), iu.getVersion().toString(), candidate.toURI(), 4, false));
-									}
-									candidate = new File(pluginsDir, iu.getId() + "_" + iu.getVersion() + ".jar");
-									if (candidate.exists()) {
-										bundles.add(new BundleInfo(iu.getId(), iu.getVersion().toString(), candidate.toURI(), 4, false));
-									}
-									break;
+	/*
+	 * Publish the metadata, flag the destination and create the fragment once
+	 * the artifacts are fetched.
+	 */
+	private void complete(IProgressMonitor monitor) {
+		// publish the metadata to a destination - if requested
+		publishMetadata(monitor);
+
+		setRunnableProperty(destinationArtifactRepository);
+
+		if (createFragments) {
+			File parentDir = new File(destinationArtifactRepository.getLocation().toString().substring(5));
+			File pluginsDir = new File(parentDir, "plugins");
+			File fragmentInfo = new File(parentDir, "fragment.info");
+			HashSet<BundleInfo> bundles = new HashSet<>();
+			try {
+				for (IInstallableUnit iu : processedIUs) {
+					if (iu.getId().equals("a.jre"))
+						continue;
+					Collection<IProvidedCapability> providedCapabilities = iu.getProvidedCapabilities();
+					for (IProvidedCapability cap : providedCapabilities) {
+						if ("org.eclipse.equinox.p2.eclipse.type".equals(cap.getNamespace())) {
+							if ("bundle".equals(cap.getName())) {
+								File candidate = new File(pluginsDir, iu.getId() + "_" + iu.getVersion());
+								if (candidate.exists()) {
+									bundles.add(new BundleInfo(iu.getId(), iu.getVersion().toString(), candidate.toURI(), 4, false));
+								}
+								candidate = new File(pluginsDir, iu.getId() + "_" + iu.getVersion() + ".jar");
+								if (candidate.exists()) {
+									bundles.add(new BundleInfo(iu.getId(), iu.getVersion().toString(), candidate.toURI(), 4, false));
 								}
+								break;
 							}
 						}
 					}
-					SimpleConfiguratorManipulator simpleManipulator = ServiceHelper.getService(Activator.getBundleContext(), SimpleConfiguratorManipulator.class);
-					simpleManipulator.saveConfiguration(bundles.toArray(new BundleInfo[0]), fragmentInfo, parentDir.toURI());
-				} catch (FileNotFoundException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IOException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
 				}
+				SimpleConfiguratorManipulator simpleManipulator = ServiceHelper.getService(Activator.getBundleContext(), SimpleConfiguratorManipulator.class);
+				simpleManipulator.saveConfiguration(bundles.toArray(new BundleInfo[0]), fragmentInfo, parentDir.toURI());
+			} catch (FileNotFoundException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/*
+	 * Create the requests the collect phases of the engine would create for the
+	 * processed IUs, or return null if an IU needs the engine to find them.
+	 */
+	private List<IArtifactRequest> createArtifactRequests() {
+		if (getRepositories(false).length == 0)
+			return null;
+		IArtifactRepositoryManager manager = getArtifactRepositoryManager();
+		List<IArtifactRequest> requests = new ArrayList<>();
+		Set<IArtifactKey> requested = new HashSet<>();
+		for (IInstallableUnit iu : processedIUs) {
+			Collection<IArtifactKey> keys = iu.getArtifacts();
+			ITouchpointType type = iu.getTouchpointType();
+			if (keys == null || keys.isEmpty() || type == null || type == ITouchpointType.NONE)
+				continue;
+			Map<String, String> properties = null;
+			if (hasInstruction(iu, COLLECT_INSTRUCTION))
+				return null;
+			if (ECLIPSE_TYPE.equals(type.getId())) {
+				// like the collect action of the Eclipse touchpoint
+				if (hasInstruction(iu, ZIPPED_INSTRUCTION))
+					properties = Collections.singletonMap(ARTIFACT_FOLDER, Boolean.TRUE.toString());
+			} else if (!NATIVE_TYPE.equals(type.getId())) {
+				return null;
+			}
+			for (IArtifactKey key : keys) {
+				if (requested.add(key) && !destinationArtifactRepository.contains(key))
+					requests.add(manager.createMirrorRequest(key, destinationArtifactRepository, null, properties));
+			}
+		}
+		return requests;
+	}
+
+	private static boolean hasInstruction(IInstallableUnit iu, String name) {
+		for (ITouchpointData data : iu.getTouchpointData()) {
+			if (data.getInstruction(name) != null)
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Fetch the requests concurrently from the source repositories, local ones
+	 * first, like the download manager of the engine does. The destination is
+	 * saved once all requests are done.
+	 */
+	private IStatus fetchConcurrently(List<IArtifactRequest> requests, IProgressMonitor monitor) throws ProvisionException {
+		SubMonitor progress = SubMonitor.convert(monitor, Messages.Repo2Runnable_fetching, requests.size() + 1);
+		List<IArtifactRepository> sources = new ArrayList<>();
+		for (URI location : getRepositories(false))
+			sources.add(getArtifactRepositoryManager().loadRepository(location, progress.newChild(0)));
+		sources.sort(Comparator.comparing(repository -> !FILE_SCHEME.equals(repository.getLocation().getScheme())));
+		progress.worked(1);
+
+		MultiStatus result = new MultiStatus(Activator.ID, IStatus.OK, Messages.Repo2Runnable_fetching, null);
+		IStatus batchStatus = Status.OK_STATUS;
+		if (destinationArtifactRepository instanceof SimpleArtifactRepository) {
+			IRunnableWithProgress fetch = batchMonitor -> fetchAll(sources, requests, result, progress);
+			batchStatus = ((SimpleArtifactRepository) destinationArtifactRepository).executeConcurrentBatch(fetch, new NullProgressMonitor());
+		} else {
+			// other repositories save every artifact on their own
+			fetchAll(sources, requests, result, progress);
+		}
+		if (progress.isCanceled() || batchStatus.getSeverity() == IStatus.CANCEL)
+			return Status.CANCEL_STATUS;
+		if (!batchStatus.isOK())
+			result.add(batchStatus);
+		return result;
+	}
+
+	/*
+	 * Run the fetches on the worker threads and report their progress on the
+	 * calling thread.
+	 */
+	private void fetchAll(List<IArtifactRepository> sources, List<IArtifactRequest> requests, MultiStatus result, SubMonitor progress) {
+		// progress monitors are not thread safe, the workers only check for cancellation
+		IProgressMonitor workerMonitor = new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return super.isCanceled() || progress.isCanceled();
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, requests.size())), runnable -> {
+			Thread thread = new Thread(runnable, "Repo2Runnable fetch"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		CompletionService<IArtifactRequest> completion = new ExecutorCompletionService<>(executor);
+		try {
+			for (IArtifactRequest request : requests)
+				completion.submit(() -> fetch(sources, request, workerMonitor));
+			for (int done = 1; done <= requests.size(); done++) {
+				IArtifactRequest request;
+				try {
+					request = completion.take().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					workerMonitor.setCanceled(true);
+					return;
+				} catch (ExecutionException e) {
+					result.add(new Status(IStatus.ERROR, Activator.ID, e.getCause().getMessage(), e.getCause()));
+					progress.worked(1);
+					continue;
+				}
+				IStatus status = request.getResult();
+				if (status != null && !status.isOK() && status.getSeverity() != IStatus.CANCEL)
+					result.add(status);
+				progress.subTask(NLS.bind(Messages.Repo2Runnable_fetched, new Object[] {request.getArtifactKey(), Integer.valueOf(done), Integer.valueOf(requests.size())}));
+				progress.worked(1);
 			}
-			return result;
 		} finally {
-			// cleanup by removing the temporary profile and unloading the repos which were new
-			removeProfile(profile);
-			finalizeRepositories();
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Fetch the request from the first source which succeeds.
+	 */
+	private static IArtifactRequest fetch(List<IArtifactRepository> sources, IArtifactRequest request, IProgressMonitor monitor) {
+		for (IArtifactRepository source : sources) {
+			if (monitor.isCanceled())
+				break;
+			if (!source.contains(request.getArtifactKey()))
+				continue;
+			source.getArtifacts(new IArtifactRequest[] {request}, monitor);
+			if (request.getResult() != null && request.getResult().isOK())
+				break;
 		}
+		return request;
 	}
 
 	static class Writer extends ProfileWriter {
@@ -341,6 +511,10 @@ public class Repo2Runnable extends AbstractApplication implements IApplication {
 			if (option.equalsIgnoreCase("-createFragments")) { //$NON-NLS-1$
 				setCreateFragments(true);
 			}
+
+			if (option.equalsIgnoreCase("-threads")) { //$NON-NLS-1$
+				setThreads(Integer.parseInt(arg));
+			}
 		}
 	}
 
@@ -370,4 +544,12 @@ public class Repo2Runnable extends AbstractApplication implements IApplication {
 		this.createFragments = createFragments;
 
 	}
+
+	/**
+	 * Sets the number of threads fetching the artifacts. With more than one
+	 * thread, the artifacts are fetched without the engine where possible.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
 }
@@ -14,8 +14,13 @@
 ******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.tools;
 
-import java.util.Iterator;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.query.IQueryResult;
 import org.eclipse.equinox.p2.query.QueryUtil;
@@ -24,57 +29,256 @@ import org.eclipse.equinox.p2.repository.tools.analyzer.IIUAnalyzer;
 import org.eclipse.equinox.p2.repository.tools.analyzer.IUAnalyzer;
 
 /**
+ * Runs the registered analyzers over the installable units of repositories.
+ * Every unit is read once and passed to all analyzers.
+ * <p>
+ * Repositories given by location are streamed: their units are parsed one
+ * after the other and dropped once analyzed, so even very large repositories
+ * are analyzed in bounded memory. In this mode the analyzers are given a
+ * <code>null</code> repository in {@link IIUAnalyzer#preAnalysis(IMetadataRepository)}.
+ * </p>
  * @since 2.0
  *
  */
 public class RepositoryAnalyzer {
+	// units are handed to the analyzer threads in batches, a few per thread at most
+	private static final int BATCH_SIZE = 256;
+	private static final int PENDING_BATCHES = 4;
 
 	private final IMetadataRepository[] repositories;
+	private final URI[] locations;
+	private final IProvisioningAgent agent;
+	private int threads = 1;
 
 	public RepositoryAnalyzer(IMetadataRepository[] repositories) {
 		this.repositories = repositories;
+		this.locations = null;
+		this.agent = null;
+	}
+
+	/**
+	 * Creates an analyzer streaming the simple metadata repositories at the given
+	 * locations instead of loading them.
+	 */
+	public RepositoryAnalyzer(IProvisioningAgent agent, URI[] locations) {
+		this.repositories = null;
+		this.locations = locations;
+		this.agent = agent;
+	}
+
+	/**
+	 * Sets the number of threads the analyzers run on. Each analyzer is only
+	 * called from one thread, the analyzers are spread over the threads.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
 	}
 
 	public IStatus analyze(IProgressMonitor monitor) {
 		MultiStatus result = new MultiStatus(Activator.ID, IStatus.OK, null, null);
-
-		SubMonitor sub = SubMonitor.convert(monitor, repositories.length * 2);
 		IConfigurationElement[] config = RegistryFactory.getRegistry().getConfigurationElementsFor(IIUAnalyzer.ID);
 
+		if (locations != null) {
+			SubMonitor sub = SubMonitor.convert(monitor, locations.length);
+			MetadataRepositoryIO io = new MetadataRepositoryIO(agent);
+			for (URI location : locations) {
+				Analysis analysis = new Analysis(config, null, result);
+				try {
+					SubMonitor repositoryMonitor = sub.newChild(1);
+					io.readUnits(location, iu -> {
+						if (repositoryMonitor.isCanceled())
+							throw new OperationCanceledException();
+						analysis.analyzeIU(iu);
+					}, repositoryMonitor);
+					analysis.finish();
+				} catch (ProvisionException e) {
+					result.add(e.getStatus());
+				} finally {
+					analysis.dispose();
+				}
+			}
+			sub.done();
+			return result;
+		}
+
+		SubMonitor sub = SubMonitor.convert(monitor, repositories.length * 2);
 		for (IMetadataRepository repository : repositories) {
-			IQueryResult<IInstallableUnit> queryResult = repository.query(QueryUtil.createIUAnyQuery(), sub);
-			SubMonitor repositoryMonitor = SubMonitor.convert(sub, IProgressMonitor.UNKNOWN);
-			for (IConfigurationElement config1 : config) {
+			IQueryResult<IInstallableUnit> queryResult = repository.query(QueryUtil.createIUAnyQuery(), sub.newChild(1));
+			SubMonitor repositoryMonitor = sub.newChild(1);
+			Analysis analysis = new Analysis(config, repository, result);
+			try {
+				Iterator<IInstallableUnit> iter = queryResult.iterator();
+				while (iter.hasNext()) {
+					if (repositoryMonitor.isCanceled())
+						throw new OperationCanceledException();
+					analysis.analyzeIU(iter.next());
+				}
+				analysis.finish();
+			} finally {
+				analysis.dispose();
+			}
+			repositoryMonitor.done();
+		}
+		sub.done();
+		return result;
+	}
+
+	/*
+	 * One run of all analyzers over the units of one repository.
+	 */
+	private class Analysis {
+		private final IConfigurationElement[] config;
+		private final IIUAnalyzer[] analyzers;
+		private final boolean[] missing;
+		private final MultiStatus result;
+		// the analyzers of each thread, when running on several threads
+		private List<List<IIUAnalyzer>> lanes;
+		private ExecutorService[] executors;
+		private Semaphore pending;
+		private List<Future<?>> futures = new ArrayList<>();
+		private IInstallableUnit[] batch;
+		private int batchSize;
+
+		Analysis(IConfigurationElement[] config, IMetadataRepository repository, MultiStatus result) {
+			this.config = config;
+			this.result = result;
+			this.analyzers = new IIUAnalyzer[config.length];
+			this.missing = new boolean[config.length];
+			List<IIUAnalyzer> created = new ArrayList<>();
+			for (int i = 0; i < config.length; i++) {
 				try {
-					IIUAnalyzer verifier = (IIUAnalyzer) config1.createExecutableExtension("class"); //$NON-NLS-1$
-					String analyizerName = config1.getAttribute("name"); //$NON-NLS-1$
+					IIUAnalyzer verifier = (IIUAnalyzer) config[i].createExecutableExtension("class"); //$NON-NLS-1$
 					if (verifier instanceof IUAnalyzer) {
-						((IUAnalyzer) verifier).setName(analyizerName);
+						((IUAnalyzer) verifier).setName(config[i].getAttribute("name")); //$NON-NLS-1$
 					}
 					verifier.preAnalysis(repository);
-					Iterator<IInstallableUnit> iter = queryResult.iterator();
-					while (iter.hasNext()) {
-						IInstallableUnit iu = iter.next();
-						verifier.analyzeIU(iu);
-					}
-					IStatus postAnalysisResult = verifier.postAnalysis();
-					if (postAnalysisResult == null)
-						postAnalysisResult = new Status(IStatus.OK, Activator.ID, analyizerName);
-					if (postAnalysisResult.isOK() && !postAnalysisResult.isMultiStatus())
-						postAnalysisResult = new Status(IStatus.OK, Activator.ID, analyizerName);
-					result.add(postAnalysisResult);
+					analyzers[i] = verifier;
+					created.add(verifier);
 				} catch (CoreException e) {
-					if (e.getCause() instanceof ClassNotFoundException) {
-						result.add(new Status(IStatus.ERROR, Activator.ID,
-								"Cannot find: " + config1.getAttribute("class"))); //$NON-NLS-1$ //$NON-NLS-2$
-					} else {
+					if (e.getCause() instanceof ClassNotFoundException)
+						missing[i] = true;
+					else
 						e.printStackTrace();
+				}
+			}
+			int laneCount = Math.min(threads, created.size());
+			if (laneCount > 1) {
+				lanes = new ArrayList<>(laneCount);
+				executors = new ExecutorService[laneCount];
+				for (int i = 0; i < laneCount; i++) {
+					lanes.add(new ArrayList<>());
+					executors[i] = Executors.newSingleThreadExecutor(runnable -> {
+						Thread thread = new Thread(runnable, "Repository analyzer"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+				for (int i = 0; i < created.size(); i++)
+					lanes.get(i % laneCount).add(created.get(i));
+				pending = new Semaphore(laneCount * PENDING_BATCHES);
+				batch = new IInstallableUnit[BATCH_SIZE];
+			}
+		}
+
+		void analyzeIU(IInstallableUnit iu) {
+			if (lanes == null) {
+				for (IIUAnalyzer analyzer : analyzers) {
+					if (analyzer != null)
+						analyzer.analyzeIU(iu);
+				}
+				return;
+			}
+			batch[batchSize++] = iu;
+			if (batchSize == BATCH_SIZE)
+				flush();
+		}
+
+		/*
+		 * Hand the current batch to every thread, waiting while too many batches are
+		 * pending so that parsing does not run ahead of the analyzers.
+		 */
+		private void flush() {
+			IInstallableUnit[] units = batchSize == BATCH_SIZE ? batch : Arrays.copyOf(batch, batchSize);
+			batch = new IInstallableUnit[BATCH_SIZE];
+			batchSize = 0;
+			for (int i = 0; i < executors.length; i++) {
+				List<IIUAnalyzer> lane = lanes.get(i);
+				try {
+					pending.acquire();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				}
+				futures.add(executors[i].submit(() -> {
+					try {
+						for (IInstallableUnit iu : units) {
+							for (IIUAnalyzer analyzer : lane)
+								analyzer.analyzeIU(iu);
+						}
+					} finally {
+						pending.release();
 					}
+				}));
+			}
+			checkFailures(false);
+		}
+
+		/*
+		 * Rethrow the first failure of an analyzer thread. Completed batches are
+		 * forgotten.
+		 */
+		private void checkFailures(boolean wait) {
+			for (Iterator<Future<?>> iter = futures.iterator(); iter.hasNext();) {
+				Future<?> future = iter.next();
+				if (!wait && !future.isDone())
+					continue;
+				try {
+					future.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new OperationCanceledException();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw new IllegalStateException(cause);
 				}
+				iter.remove();
+			}
+		}
+
+		/*
+		 * Complete the analysis and add the results in the order of the analyzers.
+		 */
+		void finish() {
+			if (lanes != null) {
+				if (batchSize > 0)
+					flush();
+				checkFailures(true);
+			}
+			for (int i = 0; i < config.length; i++) {
+				if (analyzers[i] == null) {
+					if (missing[i])
+						result.add(new Status(IStatus.ERROR, Activator.ID, "Cannot find: " + config[i].getAttribute("class"))); //$NON-NLS-1$ //$NON-NLS-2$
+					continue;
+				}
+				String analyizerName = config[i].getAttribute("name"); //$NON-NLS-1$
+				IStatus postAnalysisResult = analyzers[i].postAnalysis();
+				if (postAnalysisResult == null)
+					postAnalysisResult = new Status(IStatus.OK, Activator.ID, analyizerName);
+				if (postAnalysisResult.isOK() && !postAnalysisResult.isMultiStatus())
+					postAnalysisResult = new Status(IStatus.OK, Activator.ID, analyizerName);
+				result.add(postAnalysisResult);
+			}
+		}
+
+		void dispose() {
+			if (executors != null) {
+				for (ExecutorService executor : executors)
+					executor.shutdownNow();
 			}
-			repositoryMonitor.done();
 		}
-		sub.done();
-		return result;
 	}
 }
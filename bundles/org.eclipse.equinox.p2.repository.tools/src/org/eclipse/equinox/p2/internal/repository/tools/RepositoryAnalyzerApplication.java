@@ -28,6 +28,8 @@ import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 public class RepositoryAnalyzerApplication implements IApplication {
 
 	private URI uri = null;
+	private boolean stream = false;
+	private int threads = 1;
 
 	@Override
 	public Object start(IApplicationContext context) throws Exception {
@@ -35,9 +37,15 @@ public class RepositoryAnalyzerApplication implements IApplication {
 		long start = System.currentTimeMillis();
 		processArguments((String[]) context.getArguments().get("application.args"));
 		IProvisioningAgent agent = ServiceHelper.getService(Activator.getBundleContext(), IProvisioningAgent.class);
-		IMetadataRepositoryManager manager = (IMetadataRepositoryManager) agent.getService(IMetadataRepositoryManager.SERVICE_NAME);
-		IMetadataRepository repository = manager.loadRepository(uri, new NullProgressMonitor());
-		RepositoryAnalyzer repositoryAnalyzer = new RepositoryAnalyzer(new IMetadataRepository[] {repository});
+		RepositoryAnalyzer repositoryAnalyzer;
+		if (stream) {
+			repositoryAnalyzer = new RepositoryAnalyzer(agent, new URI[] {uri});
+		} else {
+			IMetadataRepositoryManager manager = (IMetadataRepositoryManager) agent.getService(IMetadataRepositoryManager.SERVICE_NAME);
+			IMetadataRepository repository = manager.loadRepository(uri, new NullProgressMonitor());
+			repositoryAnalyzer = new RepositoryAnalyzer(new IMetadataRepository[] {repository});
+		}
+		repositoryAnalyzer.setThreads(threads);
 		IStatus status = repositoryAnalyzer.analyze(new NullProgressMonitor());
 		IStatus[] children = status.getChildren();
 		long time = (System.currentTimeMillis()) - start;
@@ -67,6 +75,11 @@ public class RepositoryAnalyzerApplication implements IApplication {
 			if ("-m".equals(args[i]) || "-metadataRepository".equals(args[i])) { //$NON-NLS-1$ //$NON-NLS-2$
 				if (i + 1 < args.length)
 					uri = new URI(args[i + 1]);
+			} else if ("-stream".equals(args[i])) { //$NON-NLS-1$
+				stream = true;
+			} else if ("-threads".equals(args[i])) { //$NON-NLS-1$
+				if (i + 1 < args.length)
+					threads = Integer.parseInt(args[++i]);
 			}
 		}
 		validateLaunch();
@@ -15,7 +15,8 @@
 ******************************************************************************/
 package org.eclipse.equinox.p2.internal.repository.tools.analyzer;
 
-import java.util.Collection;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.equinox.internal.p2.metadata.RequiredCapability;
 import org.eclipse.equinox.p2.metadata.*;
@@ -28,13 +29,34 @@ import org.eclipse.equinox.p2.repository.tools.analyzer.IUAnalyzer;
 /**
  * This service checks that for each fragment the host can be resolved.
  * Currently this service only checks requirements with the namespace "osgi.bundle"
+ * <p>
+ * When the repository is streamed, the versions of all units are recorded
+ * instead and hosts not seen yet are resolved after the last unit.
+ * </p>
  */
 public class HostCheckAnalyzer extends IUAnalyzer {
 
+	// a host of a fragment which could not be resolved yet
+	private static class Host {
+		final IVersionedId fragment;
+		final String name;
+		final VersionRange range;
+
+		Host(IVersionedId fragment, String name, VersionRange range) {
+			this.fragment = fragment;
+			this.name = name;
+			this.range = range;
+		}
+	}
+
 	private IMetadataRepository repository;
+	private Map<String, List<Version>> versions;
+	private List<Host> unresolved;
 
 	@Override
 	public void analyzeIU(IInstallableUnit iu) {
+		if (repository == null)
+			versions.computeIfAbsent(iu.getId(), id -> new ArrayList<>(1)).add(iu.getVersion());
 		if (iu instanceof IInstallableUnitFragment) {
 			IInstallableUnitFragment fragment = (IInstallableUnitFragment) iu;
 			Collection<IRequirement> hosts = fragment.getHost();
@@ -44,6 +66,11 @@ public class HostCheckAnalyzer extends IUAnalyzer {
 				if ("osgi.bundle".equals(namespace)) { //$NON-NLS-1$
 					String name = RequiredCapability.extractName(hostMatch);
 					VersionRange range = RequiredCapability.extractRange(hostMatch);
+					if (repository == null) {
+						if (!hasVersion(name, range))
+							unresolved.add(new Host(new VersionedId(iu.getId(), iu.getVersion()), name, range));
+						continue;
+					}
 					IQueryResult<IInstallableUnit> results = repository.query(QueryUtil.createIUQuery(name, range), new NullProgressMonitor());
 					if (results.isEmpty()) {
 						error(iu, "IU Fragment: " + iu.getId() + " cannot find host" + name + " : " + range);
@@ -55,9 +82,41 @@ public class HostCheckAnalyzer extends IUAnalyzer {
 
 	}
 
+	private boolean hasVersion(String id, VersionRange range) {
+		List<Version> candidates = versions.get(id);
+		if (candidates != null) {
+			for (Version version : candidates) {
+				if (range.isIncluded(version))
+					return true;
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public void preAnalysis(IMetadataRepository repository) {
 		this.repository = repository;
+		if (repository == null) {
+			versions = new HashMap<>();
+			unresolved = new ArrayList<>();
+		}
+	}
+
+	@Override
+	public IStatus postAnalysis() {
+		if (repository == null) {
+			Set<IVersionedId> reported = new HashSet<>();
+			for (Host host : unresolved) {
+				// like the repository check, report one missing host per fragment
+				if (reported.contains(host.fragment) || hasVersion(host.name, host.range))
+					continue;
+				reported.add(host.fragment);
+				error(null, "IU Fragment: " + host.fragment.getId() + " cannot find host" + host.name + " : " + host.range);
+			}
+			versions = null;
+			unresolved = null;
+		}
+		return super.postAnalysis();
 	}
 
 }
@@ -34,6 +34,12 @@ public interface IIUAnalyzer {
 
 	public static final String ID = "org.eclipse.equinox.p2.repository.tools.verifier"; //$NON-NLS-1$
 
+	/**
+	 * Called before the first unit is analyzed.
+	 *
+	 * @param repository the repository being analyzed, or <code>null</code> if its
+	 * units are streamed without loading the repository
+	 */
 	public void preAnalysis(IMetadataRepository repository);
 
 	public IStatus postAnalysis();
@@ -149,4 +149,28 @@ public class MirrorTask extends AbstractRepositoryTask {
 	public void setMirrorProperties(boolean value) {
 		((MirrorApplication) application).setMirrorProperties(value);
 	}
+
+	public void setThreads(int value) {
+		((MirrorApplication) application).setThreads(value);
+	}
+
+	public void setMaxPerHost(int value) {
+		((MirrorApplication) application).setMaxPerHost(value);
+	}
+
+	public void setJournal(String value) {
+		((MirrorApplication) application).setJournal(new File(value));
+	}
+
+	public void setContentStore(String value) {
+		((MirrorApplication) application).setContentStore(new File(value));
+	}
+
+	public void setVerifyContentStore(boolean value) {
+		((MirrorApplication) application).setVerifyContentStore(value);
+	}
+
+	public void setGCContentStore(boolean value) {
+		((MirrorApplication) application).setGCContentStore(value);
+	}
 }
@@ -38,6 +38,7 @@ public class Repo2RunnableTask extends AbstractRepositoryTask {
 	private boolean failOnError = true;
 	private boolean flagAsRunnable = false;
 	private boolean createFragments = false;
+	private int threads = 1;
 
 	/*
 	 * Constructor for the class. Create a new instance of the application
@@ -59,6 +60,7 @@ public class Repo2RunnableTask extends AbstractRepositoryTask {
 			application.setSourceIUs(ius);
 			((Repo2Runnable) application).setFlagAsRunnable(flagAsRunnable);
 			((Repo2Runnable) application).setCreateFragments(createFragments);
+			((Repo2Runnable) application).setThreads(threads);
 			IStatus result = application.run(null);
 			if (failOnError && result.matches(IStatus.ERROR))
 				throw new ProvisionException(result);
@@ -82,4 +84,8 @@ public class Repo2RunnableTask extends AbstractRepositoryTask {
 	public void setCreateFragments(boolean fragments) {
 		this.createFragments = fragments;
 	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
 }
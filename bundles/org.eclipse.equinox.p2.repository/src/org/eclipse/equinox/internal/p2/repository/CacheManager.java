@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -18,6 +18,7 @@ package org.eclipse.equinox.internal.p2.repository;
 import java.io.*;
 import java.net.*;
 import java.util.HashSet;
+import java.util.Properties;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
@@ -37,6 +38,11 @@ import org.eclipse.osgi.util.NLS;
  * Using the bus listeners will allow the manager to listen for repository
  * events. When a repository is removed, it will remove the cache file if one
  * was created for the repository.
+ * 
+ * Next to each cache file the entity tag and the caching directives the
+ * server sent are kept. A cache file is used without asking the server
+ * within the max-age of {@link RepositoryPreferences#getCacheMaxAge()}, and is
+ * otherwise revalidated with a conditional download.
  */
 public class CacheManager {
 	/**
@@ -72,15 +78,105 @@ public class CacheManager {
 
 	}
 
+	/**
+	 * What is known about a cache file besides its content. Its last modified
+	 * date is the one of the cache file.
+	 */
+	private static class CacheInfo {
+		private static final String ETAG = "etag"; //$NON-NLS-1$
+		private static final String MAX_AGE = "maxAge"; //$NON-NLS-1$
+		private static final String VALIDATED = "validated"; //$NON-NLS-1$
+		private static final String MISSING = "missing"; //$NON-NLS-1$
+
+		String etag;
+		long maxAge = DownloadStatus.UNKNOWN_MAX_AGE;
+		// when the server last confirmed the content
+		long validated;
+		// whether the server reported that the remote file does not exist
+		boolean missing;
+
+		static File getFile(File cacheFile) {
+			return new File(cacheFile.getParentFile(), cacheFile.getName() + INFO_EXTENSION);
+		}
+
+		static CacheInfo read(File cacheFile) {
+			CacheInfo info = new CacheInfo();
+			File file = getFile(cacheFile);
+			if (!file.isFile())
+				return info;
+			Properties properties = new Properties();
+			try (InputStream input = new FileInputStream(file)) {
+				properties.load(input);
+				info.etag = properties.getProperty(ETAG);
+				info.maxAge = Long.parseLong(properties.getProperty(MAX_AGE, Long.toString(DownloadStatus.UNKNOWN_MAX_AGE)));
+				info.validated = Long.parseLong(properties.getProperty(VALIDATED, "0")); //$NON-NLS-1$
+				info.missing = Boolean.parseBoolean(properties.getProperty(MISSING));
+			} catch (IOException | NumberFormatException e) {
+				// revalidate the cache file
+				return new CacheInfo();
+			}
+			return info;
+		}
+
+		void update(IStatus result) {
+			validated = System.currentTimeMillis();
+			if (result instanceof DownloadStatus) {
+				DownloadStatus status = (DownloadStatus) result;
+				// an unchanged file keeps its tag if the server does not repeat it
+				if (status.getETag() != null || status.getCode() != DownloadStatus.CODE_NOT_MODIFIED)
+					etag = status.getETag();
+				maxAge = status.getMaxAge();
+			}
+		}
+
+		void write(File cacheFile) {
+			Properties properties = new Properties();
+			if (etag != null)
+				properties.setProperty(ETAG, etag);
+			properties.setProperty(MAX_AGE, Long.toString(maxAge));
+			properties.setProperty(VALIDATED, Long.toString(validated));
+			if (missing)
+				properties.setProperty(MISSING, Boolean.TRUE.toString());
+			cacheFile.getParentFile().mkdirs();
+			try (OutputStream output = new FileOutputStream(getFile(cacheFile))) {
+				properties.store(output, null);
+			} catch (IOException e) {
+				// the cache file is revalidated next time
+				getFile(cacheFile).delete();
+			}
+		}
+
+		/*
+		 * Whether the cache file can be used without asking the server.
+		 */
+		boolean isFresh(long maxAgeLimit) {
+			long age = System.currentTimeMillis() - validated;
+			long limit = maxAge == DownloadStatus.UNKNOWN_MAX_AGE ? maxAgeLimit : Math.min(maxAge, maxAgeLimit);
+			return validated > 0 && age >= 0 && age < limit;
+		}
+	}
+
+	private long maxAge = RepositoryPreferences.getCacheMaxAge();
+
 	public CacheManager(IAgentLocation agentLocation, Transport transport) {
 		this.agentLocation = agentLocation;
 		this.transport = transport;
 	}
 
+	/**
+	 * Sets how long a cache file is used without revalidating it with the
+	 * server, in milliseconds. By default this is
+	 * {@link RepositoryPreferences#getCacheMaxAge()}.
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
 	private static SynchronousProvisioningListener busListener;
 	private static final String DOWNLOADING = "downloading"; //$NON-NLS-1$
 	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String INFO_EXTENSION = ".info"; //$NON-NLS-1$
 
 	private final HashSet<String> knownPrefixes = new HashSet<>(5);
 
@@ -92,13 +188,33 @@ public class CacheManager {
 	}
 
 	public File createCacheFromFile(URI remoteFile, IProgressMonitor monitor) throws ProvisionException, IOException {
+		return createCacheFromFile(remoteFile, "", monitor); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns a local cache file with the contents of the given remote file. The
+	 * cache file is downloaded again when the remote file has been modified.
+	 * 
+	 * @param remoteFile the remote file to be cached
+	 * @param suffix the suffix of the cache file name, for readers that depend on the extension
+	 * @param monitor a progress monitor
+	 * @return the cache file
+	 * @throws ProvisionException if the remote file cannot be downloaded
+	 * @throws IOException on general IO errors
+	 */
+	public File createCacheFromFile(URI remoteFile, String suffix, IProgressMonitor monitor) throws ProvisionException, IOException {
 		if (!isURL(remoteFile)) {
 			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.CacheManager_CannotLoadNonUrlLocation, remoteFile), null));
 		}
 
 		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
 		try {
-			File cacheFile = getCacheFile(remoteFile);
+			File cacheFile = getCacheFile(remoteFile, suffix);
+			if (cacheFile.isFile()) {
+				CacheInfo info = CacheInfo.read(cacheFile);
+				if (info.isFresh(maxAge) || revalidateCache(cacheFile, remoteFile, info, submonitor.newChild(500)))
+					return cacheFile;
+			}
 
 			boolean stale = true;
 			long lastModified = cacheFile.lastModified();
@@ -129,9 +245,12 @@ public class CacheManager {
 				// the xml.
 			}
 
-			stale = lastModifiedRemote != lastModified;
-			if (!stale)
+			// bug 269588 - also stale if remote reports 0, otherwise a missing cache file would be taken as up to date
+			stale = lastModifiedRemote != lastModified || lastModifiedRemote <= 0;
+			if (!stale) {
+				markValidated(cacheFile);
 				return cacheFile;
+			}
 
 			// The cache is stale or missing, so we need to update it from the remote location
 			updateCache(cacheFile, remoteFile, lastModifiedRemote, submonitor);
@@ -142,6 +261,66 @@ public class CacheManager {
 
 	}
 
+	/**
+	 * Returns a local cache file with the contents of the given remote file, or
+	 * <code>null</code> if the remote file does not exist. Unlike
+	 * {@link #createCacheFromFile(URI, String, IProgressMonitor)} this is meant for
+	 * files which are often missing: the absence of the remote file is cached as
+	 * well, for {@link RepositoryPreferences#getNotFoundTimeToLive()}, and a
+	 * missing or stale cache file is fetched with a single conditional download,
+	 * without checking the remote file first.
+	 *
+	 * @param remoteFile the remote file to be cached
+	 * @param suffix the suffix of the cache file name
+	 * @param monitor a progress monitor
+	 * @return the cache file, or <code>null</code> if the remote file does not exist
+	 * @throws ProvisionException if the remote file cannot be downloaded for another reason
+	 * @throws IOException on general IO errors
+	 */
+	public File createCacheFromOptionalFile(URI remoteFile, String suffix, IProgressMonitor monitor) throws ProvisionException, IOException {
+		if (!isURL(remoteFile)) {
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.CacheManager_CannotLoadNonUrlLocation, remoteFile), null));
+		}
+		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
+		try {
+			File cacheFile = getCacheFile(remoteFile, suffix);
+			CacheInfo info = CacheInfo.read(cacheFile);
+			if (info.missing) {
+				if (info.isFresh(RepositoryPreferences.getNotFoundTimeToLive()))
+					return null;
+			} else if (cacheFile.isFile() && info.isFresh(maxAge)) {
+				return cacheFile;
+			}
+			if (!cacheFile.isFile())
+				info = new CacheInfo();
+			IStatus result = revalidate(cacheFile, remoteFile, info, submonitor);
+			if (result.isOK())
+				return cacheFile;
+			int code = result.getCode();
+			if (code == ProvisionException.ARTIFACT_NOT_FOUND || code == ProvisionException.REPOSITORY_NOT_FOUND) {
+				safeDelete(cacheFile);
+				info = new CacheInfo();
+				info.update(result);
+				info.missing = true;
+				info.write(cacheFile);
+				return null;
+			}
+			throw new ProvisionException(result);
+		} finally {
+			submonitor.done();
+		}
+	}
+
+	/**
+	 * Deletes the local cache file of the given remote file, with what is known
+	 * about it, so that it is downloaded again when it is next asked for.
+	 */
+	public void deleteCacheFromFile(URI remoteFile, String suffix) {
+		File cacheFile = getCacheFile(remoteFile, suffix);
+		safeDelete(cacheFile);
+		safeDelete(CacheInfo.getFile(cacheFile));
+	}
+
 	/**
 	 * Returns a local cache file with the contents of the given remote location,
 	 * or <code>null</code> if a local cache could not be created.
@@ -182,6 +361,10 @@ public class CacheManager {
 			URI remoteFile = jarLocation;
 
 			if (cacheFile != null) {
+				CacheInfo info = CacheInfo.read(cacheFile);
+				// the jar is preferred, revalidating a cached jar settles which index to use
+				if (info.isFresh(maxAge) || (cacheFile.getName().endsWith(JAR_EXTENSION) && revalidateCache(cacheFile, jarLocation, info, submonitor.newChild(500))))
+					return cacheFile;
 				lastModified = cacheFile.lastModified();
 				name = cacheFile.getName();
 			}
@@ -256,8 +439,10 @@ public class CacheManager {
 				remoteFile = xmlLocation;
 			}
 
-			if (!stale)
+			if (!stale) {
+				markValidated(cacheFile);
 				return cacheFile;
+			}
 
 			// The cache is stale or missing, so we need to update it from the remote location
 			cacheFile = new File(getCacheDirectory(), prefix + hashCode + useExtension);
@@ -296,6 +481,7 @@ public class CacheManager {
 			for (File cacheFile : cacheFiles) {
 				// delete the cache file if it exists
 				safeDelete(cacheFile);
+				safeDelete(CacheInfo.getFile(cacheFile));
 				// delete a resumable download if it exists
 				safeDelete(new File(new File(cacheFile.getParentFile(), DOWNLOADING), cacheFile.getName()));
 			}
@@ -338,10 +524,10 @@ public class CacheManager {
 		return files;
 	}
 
-	private File getCacheFile(URI url) {
+	private File getCacheFile(URI url, String suffix) {
 		File dataAreaFile = getCacheDirectory();
 		int hashCode = computeHash(url);
-		return new File(dataAreaFile, Integer.toString(hashCode));
+		return new File(dataAreaFile, Integer.toString(hashCode) + suffix);
 	}
 
 	private static boolean isURL(URI location) {
@@ -399,7 +585,75 @@ public class CacheManager {
 			bus.removeListener(busListener);
 	}
 
-	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
+	/*
+	 * Revalidate the given cache file, and update it if the remote file changed,
+	 * with a single conditional download. Returns false if this did not succeed,
+	 * the caller then checks the remote file first to report the problem.
+	 */
+	private boolean revalidateCache(File cacheFile, URI remoteFile, CacheInfo info, SubMonitor submonitor) throws IOException, ProvisionException {
+		return revalidate(cacheFile, remoteFile, info, submonitor).isOK();
+	}
+
+	/*
+	 * Like revalidateCache, but returns the result of the download, or an error
+	 * if the cache file could not be replaced.
+	 */
+	private IStatus revalidate(File cacheFile, URI remoteFile, CacheInfo info, SubMonitor submonitor) throws IOException, ProvisionException {
+		long lastModified = cacheFile.isFile() ? cacheFile.lastModified() : 0L;
+		File tempFile = createTempFile(cacheFile);
+		StatefulStream stream = null;
+		try {
+			stream = new StatefulStream(new FileOutputStream(tempFile));
+		} catch (Exception e) {
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, e.getMessage(), e));
+		}
+		IStatus result = null;
+		try {
+			submonitor.setWorkRemaining(1000);
+			result = transport.downloadIfModified(remoteFile, stream, info.etag, lastModified, submonitor.newChild(1000));
+			while (result.getCode() == IArtifactRepository.CODE_RETRY) {
+				result = transport.downloadIfModified(remoteFile, stream, info.etag, lastModified, submonitor.newChild(1000));
+			}
+		} catch (OperationCanceledException e) {
+			result = stream.getStatus();
+		} finally {
+			stream.close();
+			if (result == null || !result.isOK() || result.getCode() == DownloadStatus.CODE_NOT_MODIFIED)
+				safeDelete(tempFile);
+		}
+		if (result == null || result.getSeverity() == IStatus.CANCEL || submonitor.isCanceled())
+			throw new OperationCanceledException();
+		if (result.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, remoteFile), null));
+		if (!result.isOK())
+			return result;
+		if (result.getCode() != DownloadStatus.CODE_NOT_MODIFIED) {
+			if (cacheFile.exists())
+				safeDelete(cacheFile);
+			if (!tempFile.renameTo(cacheFile)) {
+				safeDelete(tempFile);
+				return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
+			}
+			long lastModifiedRemote = result instanceof DownloadStatus ? ((DownloadStatus) result).getLastModified() : 0L;
+			if (lastModifiedRemote > 0)
+				cacheFile.setLastModified(lastModifiedRemote);
+		}
+		info.missing = false;
+		info.update(result);
+		info.write(cacheFile);
+		return result;
+	}
+
+	/*
+	 * Record that the server confirmed the content of the given cache file.
+	 */
+	private void markValidated(File cacheFile) {
+		CacheInfo info = CacheInfo.read(cacheFile);
+		info.validated = System.currentTimeMillis();
+		info.write(cacheFile);
+	}
+
+	private File createTempFile(File cacheFile) throws IOException {
 		cacheFile.getParentFile().mkdirs();
 		File downloadDir = new File(cacheFile.getParentFile(), DOWNLOADING);
 		if (!downloadDir.exists())
@@ -410,6 +664,11 @@ public class CacheManager {
 			safeDelete(tempFile);
 
 		tempFile.createNewFile();
+		return tempFile;
+	}
+
+	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
+		File tempFile = createTempFile(cacheFile);
 
 		StatefulStream stream = null;
 		try {
@@ -442,6 +701,9 @@ public class CacheManager {
 					//local cache file should have the same lastModified as the server's file. bug 324200
 					cacheFile.setLastModified(lastModifiedRemote);
 				}
+				CacheInfo info = new CacheInfo();
+				info.update(result);
+				info.write(cacheFile);
 				return;
 			}
 			result = new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
@@ -22,10 +22,20 @@ import org.eclipse.core.runtime.Status;
 public class DownloadStatus extends Status {
 	public static final long UNKNOWN_RATE = -1;
 	public static final long UNKNOWN_SIZE = -1;
+	public static final long UNKNOWN_MAX_AGE = -1;
+
+	/**
+	 * The code of the status of a conditional download when the remote file is
+	 * unchanged and has not been downloaded.
+	 * @see Transport#downloadIfModified(java.net.URI, java.io.OutputStream, String, long, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public static final int CODE_NOT_MODIFIED = 304;
 
 	private long speed = UNKNOWN_RATE;
 	private long fileSize = UNKNOWN_SIZE;
 	private long lastModified = 0;
+	private String etag;
+	private long maxAge = UNKNOWN_MAX_AGE;
 
 	/**
 	 * Constructs a new DownloadStatus with the given attributes.
@@ -78,6 +88,38 @@ public class DownloadStatus extends Status {
 		return lastModified;
 	}
 
+	/**
+	 * Sets the entity tag the server reported for the file.
+	 */
+	public void setETag(String etag) {
+		this.etag = etag;
+	}
+
+	/**
+	 * Returns the entity tag the server reported for the file, or
+	 * <code>null</code> if unknown.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * Sets how long the server allows the file to be cached without asking it
+	 * again, in milliseconds.
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Returns how long the server allows the file to be cached without asking it
+	 * again, in milliseconds. If the server did not say, {@link #UNKNOWN_MAX_AGE}
+	 * is returned.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder(super.toString());
@@ -25,6 +25,15 @@ public class RepositoryPreferences {
 	private static int connectionMsRetryDelay = Integer.getInteger("p2.RepositoryPreferences.connectionMsRetryDelay", //$NON-NLS-1$
 			200);
 
+	/** How long cached repository indexes are used without asking the server, in seconds */
+	private static long cacheMaxAge = Long.getLong("p2.RepositoryPreferences.cacheMaxAge", 0); //$NON-NLS-1$
+
+	/** The total weight of the repositories a repository manager holds strongly */
+	private static long repositoryCacheWeight = Long.getLong("p2.RepositoryPreferences.repositoryCacheWeight", 50000); //$NON-NLS-1$
+
+	/** How long a location at which no repository was found is not tried again, in seconds */
+	private static long notFoundTimeToLive = Long.getLong("p2.RepositoryPreferences.notFoundTimeToLive", 600); //$NON-NLS-1$
+
 	/**
 	 * Number of attempts to connect (with same credentials) before giving up. Note
 	 * that newer ECF using apache HTTPclient has retry by default. TODO - consider
@@ -55,6 +64,39 @@ public class RepositoryPreferences {
 		return retryOnSocketTimeout;
 	}
 
+	/**
+	 * How long a cached repository index is used without revalidating it with
+	 * the server, in milliseconds. A shorter max-age reported by the server
+	 * takes precedence.
+	 *
+	 * @return {@code 0} by default, the cache is revalidated on every load
+	 */
+	public static long getCacheMaxAge() {
+		return cacheMaxAge * 1000;
+	}
+
+	/**
+	 * The total weight of the loaded repositories a repository manager holds
+	 * strongly, beyond that the least recently used ones are only held softly. The
+	 * weight of a metadata repository is the number of its installable units, the
+	 * weight of an artifact repository the number of its artifact descriptors.
+	 *
+	 * @return {@code 50000} by default
+	 */
+	public static long getRepositoryCacheWeight() {
+		return repositoryCacheWeight;
+	}
+
+	/**
+	 * How long a location at which no repository was found is not tried again,
+	 * in milliseconds.
+	 *
+	 * @return ten minutes by default
+	 */
+	public static long getNotFoundTimeToLive() {
+		return notFoundTimeToLive * 1000;
+	}
+
 	/**
 	 * Number of attempts to connect (with different credentials) before giving up.
 	 * The returned value should be the number of prompts to the user + 1 (for the initial
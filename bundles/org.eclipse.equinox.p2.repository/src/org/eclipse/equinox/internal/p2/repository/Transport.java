@@ -74,4 +74,45 @@ public abstract class Transport {
 	 */
 	public abstract long getLastModified(URI toDownload, IProgressMonitor monitor) throws CoreException, FileNotFoundException, AuthenticationFailedException;
 
+	/**
+	 * Downloads a file unless it is unchanged since it was last downloaded. The
+	 * file is described by the entity tag and the last modified date of that
+	 * download. If the file is unchanged, nothing is written to the target and
+	 * the resulting status is OK with the code {@link DownloadStatus#CODE_NOT_MODIFIED}.
+	 * <p>
+	 * This implementation compares the last modified date first and downloads
+	 * the file if it differs. Transports able to send conditional requests
+	 * override this method to check and download in a single request.
+	 * </p>
+	 *
+	 * @returns IStatus, that is a {@link DownloadStatus} on success.
+	 * @param toDownload URI of file to download
+	 * @param target OutputStream where result is written
+	 * @param etag the entity tag of the last download, or <code>null</code>
+	 * @param lastModified the last modified date of the last download, or 0
+	 * @param monitor where progress should be reported
+	 * @throws OperationCanceledException if the operation was canceled.
+	 */
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, String etag, long lastModified, IProgressMonitor monitor) {
+		long lastModifiedRemote = 0L;
+		if (lastModified > 0) {
+			try {
+				lastModifiedRemote = getLastModified(toDownload, monitor);
+				if (lastModifiedRemote == lastModified) {
+					DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null);
+					status.setLastModified(lastModified);
+					if (target instanceof IStateful)
+						((IStateful) target).setStatus(status);
+					return status;
+				}
+			} catch (CoreException | IOException e) {
+				// the download reports the problem
+			}
+		}
+		IStatus result = download(toDownload, target, monitor);
+		if (lastModifiedRemote > 0 && result instanceof DownloadStatus)
+			((DownloadStatus) result).setLastModified(lastModifiedRemote);
+		return result;
+	}
+
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2015 IBM Corporation and others.
+ * Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -18,14 +18,12 @@
 package org.eclipse.equinox.internal.p2.repository.helpers;
 
 import java.io.*;
-import java.lang.ref.SoftReference;
 import java.net.*;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
-import org.eclipse.equinox.internal.p2.repository.Activator;
-import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.*;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
@@ -51,7 +49,6 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		public URI location;
 		public String name;
 		public String nickname;
-		public SoftReference<IRepository<R>> repository;
 		public String suffix;
 
 		public RepositoryInfo() {
@@ -76,6 +73,9 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 
 	public static final String NODE_REPOSITORIES = "repositories"; //$NON-NLS-1$
 	private static final String INDEX_FILE = "p2.index"; //$NON-NLS-1$
+	// the suffix of the cached index files in the cache of the agent
+	private static final String INDEX_SUFFIX = ".index"; //$NON-NLS-1$
+	private static final String NOT_FOUND_FILE = "unavailable.properties"; //$NON-NLS-1$
 
 	/**
 	 * Map of String->RepositoryInfo, where String is the repository key
@@ -87,10 +87,15 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	protected final Object repositoryLock = new Object();
 
 	/**
-	 * Cache List of repositories that are not reachable. Maintain cache
+	 * The loaded repositories, by the repository key obtained via getKey(URI).
+	 */
+	protected final RepositoryCache<T> loadedRepositories = new RepositoryCache<>(RepositoryPreferences.getRepositoryCacheWeight(), this::getRepositoryWeight);
+
+	/**
+	 * Cache of repositories that are not reachable. Maintain cache
 	 * for short duration because repository may become available at any time.
 	 */
-	protected SoftReference<List<URI>> unavailableRepositories;
+	private NotFoundCache unavailableRepositories;
 
 	/**
 	 * Set used to manage exclusive load locks on repository locations.
@@ -126,7 +131,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				added = true;
 				repositories.put(key, info);
 			}
-			info.repository = new SoftReference<>(repository);
+			loadedRepositories.put(key, repository);
 			info.name = repository.getName();
 			info.description = repository.getDescription();
 			info.location = repository.getLocation();
@@ -181,10 +186,11 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		synchronized (repositoryLock) {
 			if (repositories == null)
 				restoreRepositories();
-			RepositoryInfo<T> info = repositories.get(getKey(location));
-			if (info == null || info.repository == null)
+			String key = getKey(location);
+			RepositoryInfo<T> info = repositories.get(key);
+			if (info == null)
 				return null;
-			IRepository<T> repo = info.repository.get();
+			IRepository<T> repo = loadedRepositories.get(key);
 			//update our repository info because the repository may have changed
 			if (repo != null)
 				addRepository(repo, false, info.suffix);
@@ -195,6 +201,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	public IRepository<T> basicRefreshRepository(URI location, IProgressMonitor monitor) throws ProvisionException {
 		checkValidLocation(location);
 		clearNotFound(location);
+		forgetIndexFile(location);
 		boolean wasEnabled = isEnabled(location);
 		String nick = getRepositoryProperty(location, IRepository.PROP_NICKNAME);
 		//remove the repository so  event is broadcast and repositories can clear their caches
@@ -226,26 +233,23 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * found, and <code>false</code> otherwise.
 	 */
 	private boolean checkNotFound(URI location) {
-		if (unavailableRepositories == null)
-			return false;
-		List<URI> badRepos = unavailableRepositories.get();
-		if (badRepos == null)
-			return false;
-		return badRepos.contains(location);
+		return getNotFoundCache().contains(location);
 	}
 
 	/**
 	 * Clear the fact that we tried to load a repository at this location and did not find anything.
 	 */
 	private void clearNotFound(URI location) {
-		List<URI> badRepos;
-		if (unavailableRepositories != null) {
-			badRepos = unavailableRepositories.get();
-			if (badRepos != null) {
-				badRepos.remove(location);
-				return;
-			}
+		getNotFoundCache().remove(location);
+	}
+
+	private synchronized NotFoundCache getNotFoundCache() {
+		if (unavailableRepositories == null) {
+			URI dataArea = agentLocation == null ? null : agentLocation.getDataArea(getBundleId());
+			File file = dataArea == null || !"file".equals(dataArea.getScheme()) ? null : new File(new File(dataArea), NOT_FOUND_FILE); //$NON-NLS-1$
+			unavailableRepositories = new NotFoundCache(file, RepositoryPreferences.getNotFoundTimeToLive());
 		}
+		return unavailableRepositories;
 	}
 
 	@Override
@@ -666,6 +670,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 			LocationProperties indexFile = loadIndexFile(location, sub.newChild(15));
 			String[] preferredOrder = getPreferredRepositorySearchOrder(indexFile);
 			String[] suffixes = sortSuffixes(getAllSuffixes(), location, preferredOrder);
+			if ((preferredOrder == null || preferredOrder.length == 0) && NotFoundCache.isRemote(location) && !hasKnownSuffix(location))
+				suffixes = SuffixProbe.sort(getTransport(), location, suffixes);
 
 			sub = SubMonitor.convert(sub, NLS.bind(Messages.repoMan_adding, location), suffixes.length * 100);
 			ProvisionException failure = null;
@@ -724,7 +730,24 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		return handleRemoteIndexFile(indexFile, monitor);
 	}
 
+	/*
+	 * The index file is kept in the cache of the agent, which also remembers
+	 * that a location has none, so that it is not fetched on every load.
+	 */
 	private LocationProperties handleRemoteIndexFile(URI indexFileURI, IProgressMonitor monitor) {
+		CacheManager cacheManager = agent.getService(CacheManager.class);
+		if (cacheManager != null) {
+			try {
+				File indexFile = cacheManager.createCacheFromOptionalFile(indexFileURI, INDEX_SUFFIX, monitor);
+				if (indexFile == null)
+					return LocationProperties.createEmptyIndexFile();
+				try (InputStream input = new FileInputStream(indexFile)) {
+					return LocationProperties.create(input);
+				}
+			} catch (ProvisionException | IOException e) {
+				return LocationProperties.createEmptyIndexFile();
+			}
+		}
 		ByteArrayOutputStream index = new ByteArrayOutputStream();
 		IStatus indexFileStatus = null;
 		indexFileStatus = getTransport().download(indexFileURI, index, monitor);
@@ -750,6 +773,25 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		return LocationProperties.createEmptyIndexFile();
 	}
 
+	private void forgetIndexFile(URI location) {
+		CacheManager cacheManager = agent.getService(CacheManager.class);
+		if (cacheManager != null && isInMemoryRepository(location))
+			cacheManager.deleteCacheFromFile(getIndexFileURI(location), INDEX_SUFFIX);
+	}
+
+	/*
+	 * Whether a repository was loaded from the given location before, with the
+	 * suffix it was loaded with remembered.
+	 */
+	private boolean hasKnownSuffix(URI location) {
+		synchronized (repositoryLock) {
+			if (repositories == null)
+				restoreRepositories();
+			RepositoryInfo<T> info = repositories.get(getKey(location));
+			return info != null && info.suffix != null;
+		}
+	}
+
 	/**
 	 * Basic sanity checking on location argument
 	 */
@@ -912,17 +954,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 * Cache the fact that we tried to load a repository at this location and did not find anything.
 	 */
 	private void rememberNotFound(URI location) {
-		List<URI> badRepos;
-		if (unavailableRepositories != null) {
-			badRepos = unavailableRepositories.get();
-			if (badRepos != null) {
-				badRepos.add(location);
-				return;
-			}
-		}
-		badRepos = new ArrayList<>();
-		badRepos.add(location);
-		unavailableRepositories = new SoftReference<>(badRepos);
+		getNotFoundCache().add(location);
 	}
 
 	@Override
@@ -938,6 +970,7 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				restoreRepositories();
 			if (repositories.remove(repoKey) == null)
 				return false;
+			loadedRepositories.remove(repoKey);
 		}
 		// remove the repository from the preference store
 		try {
@@ -1085,8 +1118,13 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				Tracing.debug("Unsaved preferences when shutting down " + getClass().getName()); //$NON-NLS-1$
 			saveToPreferences();
 		}
+		if (Tracing.DEBUG)
+			Tracing.debug(getClass().getName() + ": " + loadedRepositories + ", unavailable repository hits=" + getNotFoundCache().getHits()); //$NON-NLS-1$ //$NON-NLS-2$
 		repositories = null;
-		unavailableRepositories = null;
+		loadedRepositories.clear();
+		synchronized (this) {
+			unavailableRepositories = null;
+		}
 	}
 
 	/**
@@ -1194,13 +1232,24 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	}
 
 	public void flushCache() {
-		synchronized (repositoryLock) {
-			if (repositories != null) {
-				Collection<RepositoryInfo<T>> repos = repositories.values();
-				for (RepositoryInfo<T> repositoryInfo : repos) {
-					repositoryInfo.repository = null;
-				}
-			}
-		}
+		loadedRepositories.clear();
+	}
+
+	/**
+	 * Keeps the loaded repository at the given location from being evicted from
+	 * memory while the given owner is reachable.
+	 */
+	public void pin(URI location, Object owner) {
+		loadedRepositories.pin(getKey(checkValidLocation(location)), owner);
+	}
+
+	/**
+	 * Returns the weight of the given repository in the cache of loaded
+	 * repositories, which should be proportional to the memory it uses.
+	 *
+	 * @see RepositoryPreferences#getRepositoryCacheWeight()
+	 */
+	protected long getRepositoryWeight(IRepository<T> repository) {
+		return 1;
 	}
 }
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.repository.Activator;
+
+/**
+ * The locations at which no repository was found, each for a limited time
+ * because a repository may become available at any time.
+ * <p>
+ * Remote locations are also kept in a file, so that a new session does not try
+ * them again before their time is up. Other locations are cheap to try again
+ * and are only kept in memory.
+ * </p>
+ */
+public class NotFoundCache {
+	private final File file;
+	private final long timeToLive;
+	// location -> time at which it may be tried again
+	private final Map<URI, Long> locations = new HashMap<>();
+	private long hits;
+
+	/**
+	 * Creates a cache which keeps locations for the given time, in milliseconds.
+	 * The remote locations are kept in the given file, unless it is
+	 * <code>null</code>.
+	 */
+	public NotFoundCache(File file, long timeToLive) {
+		this.file = file;
+		this.timeToLive = timeToLive;
+		if (file == null || !file.isFile())
+			return;
+		Properties properties = new Properties();
+		try (InputStream input = new BufferedInputStream(new FileInputStream(file))) {
+			properties.load(input);
+		} catch (IOException | IllegalArgumentException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to read unavailable repositories from " + file, e)); //$NON-NLS-1$
+			return;
+		}
+		long now = System.currentTimeMillis();
+		for (String location : properties.stringPropertyNames()) {
+			try {
+				long expiry = Long.parseLong(properties.getProperty(location));
+				// also ignore entries made with a longer time to live
+				if (expiry > now && expiry <= now + timeToLive)
+					locations.put(new URI(location), expiry);
+			} catch (NumberFormatException | URISyntaxException e) {
+				// ignore the entry
+			}
+		}
+	}
+
+	/**
+	 * Returns whether no repository was found at the given location recently.
+	 */
+	public synchronized boolean contains(URI location) {
+		Long expiry = locations.get(location);
+		if (expiry == null)
+			return false;
+		if (expiry.longValue() <= System.currentTimeMillis()) {
+			remove(location);
+			return false;
+		}
+		hits++;
+		return true;
+	}
+
+	public synchronized void add(URI location) {
+		if (timeToLive <= 0)
+			return;
+		locations.put(location, System.currentTimeMillis() + timeToLive);
+		if (isRemote(location))
+			save();
+	}
+
+	public synchronized void remove(URI location) {
+		if (locations.remove(location) != null && isRemote(location))
+			save();
+	}
+
+	/**
+	 * Returns how often a location was found in this cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns whether the given location is one on a server.
+	 */
+	static boolean isRemote(URI location) {
+		String scheme = location.getScheme();
+		return "http".equals(scheme) || "https".equals(scheme) || "ftp".equals(scheme); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+
+	private void save() {
+		if (file == null)
+			return;
+		Properties properties = new Properties();
+		long now = System.currentTimeMillis();
+		locations.forEach((location, expiry) -> {
+			if (isRemote(location) && expiry.longValue() > now)
+				properties.setProperty(location.toString(), expiry.toString());
+		});
+		try {
+			if (properties.isEmpty()) {
+				Files.deleteIfExists(file.toPath());
+				return;
+			}
+			file.getParentFile().mkdirs();
+			File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+			try (OutputStream output = new BufferedOutputStream(new FileOutputStream(temp))) {
+				properties.store(output, null);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Unable to write unavailable repositories to " + file, e)); //$NON-NLS-1$
+		}
+	}
+}
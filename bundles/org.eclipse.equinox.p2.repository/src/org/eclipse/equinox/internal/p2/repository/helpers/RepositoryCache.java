@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import org.eclipse.equinox.p2.repository.IRepository;
+
+/**
+ * The loaded repositories of a repository manager.
+ * <p>
+ * Repositories are held strongly as long as their total weight, as computed by
+ * the weigher given to the cache, does not exceed the maximum weight. Beyond
+ * that the least recently used repositories are evicted. An evicted repository
+ * is only held softly, it is held strongly again when it is used before the
+ * garbage collector reclaimed it. Repositories pinned by an owner which is
+ * still reachable are never evicted.
+ * </p>
+ */
+public class RepositoryCache<T> {
+	private static class Entry<T> {
+		final SoftReference<IRepository<T>> soft;
+		final long weight;
+		// null while evicted
+		IRepository<T> strong;
+		List<WeakReference<Object>> owners;
+
+		Entry(IRepository<T> repository, long weight) {
+			this.soft = new SoftReference<>(repository);
+			this.weight = weight;
+			this.strong = repository;
+		}
+
+		boolean isPinned() {
+			if (owners == null)
+				return false;
+			owners.removeIf(owner -> owner.get() == null);
+			return !owners.isEmpty();
+		}
+	}
+
+	private final long maxWeight;
+	private final ToLongFunction<IRepository<T>> weigher;
+	// in access order, the least recently used first
+	private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	public RepositoryCache(long maxWeight, ToLongFunction<IRepository<T>> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Returns the repository cached for the given key, or <code>null</code>.
+	 */
+	public synchronized IRepository<T> get(String key) {
+		Entry<T> entry = entries.get(key);
+		IRepository<T> repository = entry == null ? null : entry.soft.get();
+		if (repository == null) {
+			if (entry != null)
+				entries.remove(key);
+			misses++;
+			return null;
+		}
+		hits++;
+		if (entry.strong == null) {
+			entry.strong = repository;
+			weight += entry.weight;
+			evict(entry);
+		}
+		return repository;
+	}
+
+	/**
+	 * Caches the given repository for the given key, replacing another
+	 * repository cached for it.
+	 */
+	public synchronized void put(String key, IRepository<T> repository) {
+		Entry<T> entry = entries.get(key);
+		if (entry != null && entry.soft.get() == repository) {
+			if (entry.strong == null) {
+				entry.strong = repository;
+				weight += entry.weight;
+			}
+		} else {
+			remove(key);
+			List<WeakReference<Object>> owners = entry == null ? null : entry.owners;
+			entry = new Entry<>(repository, Math.max(0, weigher.applyAsLong(repository)));
+			entry.owners = owners;
+			entries.put(key, entry);
+			weight += entry.weight;
+		}
+		evict(entry);
+	}
+
+	/**
+	 * Keeps the repository cached for the given key from being evicted while the
+	 * given owner is reachable.
+	 */
+	public synchronized void pin(String key, Object owner) {
+		Entry<T> entry = entries.get(key);
+		if (entry == null)
+			return;
+		if (entry.owners == null)
+			entry.owners = new ArrayList<>(1);
+		for (WeakReference<Object> existing : entry.owners) {
+			if (existing.get() == owner)
+				return;
+		}
+		entry.owners.add(new WeakReference<>(owner));
+	}
+
+	public synchronized void remove(String key) {
+		Entry<T> entry = entries.remove(key);
+		if (entry != null && entry.strong != null)
+			weight -= entry.weight;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/*
+	 * Evict the least recently used repositories until the weight fits, except
+	 * for the given one, which was just used.
+	 */
+	private void evict(Entry<T> used) {
+		for (Iterator<Entry<T>> iterator = entries.values().iterator(); weight > maxWeight && iterator.hasNext();) {
+			Entry<T> entry = iterator.next();
+			if (entry == used || entry.strong == null || entry.isPinned())
+				continue;
+			entry.strong = null;
+			weight -= entry.weight;
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the total weight of the repositories which are not evicted.
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "RepositoryCache [repositories=" + entries.size() + ", weight=" + weight + '/' + maxWeight + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ']'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
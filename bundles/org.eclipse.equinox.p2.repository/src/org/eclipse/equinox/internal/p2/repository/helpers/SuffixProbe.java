@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.FileNotFoundException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.p2.core.ProvisionException;
+
+/**
+ * Orders the suffixes a repository manager tries at a remote location by
+ * asking the server in parallel which of the files they stand for exist,
+ * instead of trying one suffix after the other.
+ * <p>
+ * The answers only change the order, every suffix is still tried: a location
+ * does not have to name a directory of repository files, like the location of
+ * an update site which names its site.xml, and some suffixes do not stand for
+ * a file at all.
+ * </p>
+ */
+public class SuffixProbe {
+	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
+
+	/**
+	 * Returns the given suffixes with the ones whose files exist at the given
+	 * location first, followed by the ones the server gave no clear answer for,
+	 * or which do not stand for a file, and the ones whose files are missing.
+	 * The order within each group is kept.
+	 */
+	public static String[] sort(Transport transport, URI location, String[] suffixes) {
+		if (transport == null || suffixes.length < 2)
+			return suffixes;
+		Map<String, List<Future<Boolean>>> probes = new LinkedHashMap<>();
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "Repository probe"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			for (String suffix : suffixes) {
+				List<Future<Boolean>> files = new ArrayList<>(2);
+				if (isFile(suffix)) {
+					files.add(executor.submit(() -> probe(transport, URIUtil.append(location, suffix))));
+					// simple and composite repositories are also found in a jar
+					if (suffix.endsWith(XML_EXTENSION))
+						files.add(executor.submit(() -> probe(transport, URIUtil.append(location, suffix.substring(0, suffix.length() - XML_EXTENSION.length()) + JAR_EXTENSION))));
+				}
+				probes.put(suffix, files);
+			}
+			List<String> found = new ArrayList<>(suffixes.length);
+			List<String> unknown = new ArrayList<>(suffixes.length);
+			List<String> missing = new ArrayList<>(suffixes.length);
+			for (Map.Entry<String, List<Future<Boolean>>> entry : probes.entrySet()) {
+				Boolean exists = entry.getValue().isEmpty() ? null : Boolean.FALSE;
+				for (Future<Boolean> file : entry.getValue()) {
+					Boolean result;
+					try {
+						result = file.get();
+					} catch (ExecutionException e) {
+						result = null;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return suffixes;
+					}
+					if (result == null)
+						exists = null;
+					else if (result.booleanValue()) {
+						exists = result;
+						break;
+					}
+				}
+				if (exists == null)
+					unknown.add(entry.getKey());
+				else if (exists.booleanValue())
+					found.add(entry.getKey());
+				else
+					missing.add(entry.getKey());
+			}
+			if (Tracing.DEBUG)
+				Tracing.debug("Probed " + location + ": found " + found + ", unknown " + unknown + ", missing " + missing); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			found.addAll(unknown);
+			found.addAll(missing);
+			return found.toArray(new String[found.size()]);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * Whether the suffix names a file next to the location, rather than for
+	 * instance a test factory or a directory.
+	 */
+	private static boolean isFile(String suffix) {
+		return !suffix.startsWith("@") && suffix.indexOf('.') > 0; //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns whether the given remote file exists, or null if the server did
+	 * not tell.
+	 */
+	private static Boolean probe(Transport transport, URI file) {
+		try {
+			transport.getLastModified(file, new NullProgressMonitor());
+			return Boolean.TRUE;
+		} catch (FileNotFoundException e) {
+			return Boolean.FALSE;
+		} catch (CoreException e) {
+			int code = e.getStatus().getCode();
+			if (code == ProvisionException.ARTIFACT_NOT_FOUND || code == ProvisionException.REPOSITORY_NOT_FOUND)
+				return Boolean.FALSE;
+			return null;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+}
@@ -100,23 +100,30 @@ public class SarInputStream extends InputStream {
 	 * @throws IOException on error
 	 */
 	public SarEntry getNextEntry() throws IOException {
+		if (contentStream != null)
+			contentStream.close();
+
 		SarEntry sarEntry = new SarEntry(this);
-		if (sarEntry.isEof())
+		if (sarEntry.isEof()) {
+			contentStream = null;
 			return null;
+		}
 
-		byte[] content = readBytes();
-		contentStream = new ByteArrayInputStream(content);
+		// the content is read from the archive as it is consumed, not held in memory
+		int length = dataInputStream.readInt();
+		contentStream = new EntryInputStream(Math.max(length, 0));
 		return sarEntry;
 
 	}
 
 	/**
-	 * Close the entry.
+	 * Close the entry. Content of the entry which has not been read is skipped.
 	 *
 	 * @throws IOException
 	 */
 	public void closeEntry() throws IOException {
-		contentStream.close();
+		if (contentStream != null)
+			contentStream.close();
 	}
 
 	/**
@@ -179,7 +186,7 @@ public class SarInputStream extends InputStream {
 	 */
 	@Override
 	public int read() throws IOException {
-		return contentStream.read();
+		return contentStream != null ? contentStream.read() : -1;
 	}
 
 	/**
@@ -196,7 +203,65 @@ public class SarInputStream extends InputStream {
 	 */
 	@Override
 	public int read(byte[] buffer, int offset, int numToRead) throws IOException {
-		return contentStream.read(buffer, offset, numToRead);
+		return contentStream != null ? contentStream.read(buffer, offset, numToRead) : -1;
+	}
+
+	/**
+	 * The content of the current entry, read directly from the archive up to the
+	 * length given in front of it.
+	 */
+	private class EntryInputStream extends InputStream {
+		private long remaining;
+
+		EntryInputStream(long length) {
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0)
+				return -1;
+			int b = dataInputStream.read();
+			if (b == -1)
+				throw new EOFException();
+			remaining--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int numToRead) throws IOException {
+			if (remaining <= 0)
+				return -1;
+			if (numToRead == 0)
+				return 0;
+			int read = dataInputStream.read(buffer, offset, (int) Math.min(numToRead, remaining));
+			if (read == -1)
+				throw new EOFException();
+			remaining -= read;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(remaining, dataInputStream.available());
+		}
+
+		/**
+		 * Skips the rest of the content, the archive is then positioned at the
+		 * next entry.
+		 */
+		@Override
+		public void close() throws IOException {
+			while (remaining > 0) {
+				int skipped = dataInputStream.skipBytes((int) Math.min(remaining, Integer.MAX_VALUE));
+				if (skipped <= 0) {
+					if (dataInputStream.read() == -1)
+						throw new EOFException();
+					skipped = 1;
+				}
+				remaining -= skipped;
+			}
+		}
 	}
 
 }
\ No newline at end of file
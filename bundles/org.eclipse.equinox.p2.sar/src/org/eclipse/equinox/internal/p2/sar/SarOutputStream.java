@@ -20,12 +20,19 @@ import java.io.*;
  * The SarOutputStream writes a stream archive as an OutputStream. Methods are
  * provided to put entries, and then write their contents by writing to this
  * stream using write().
+ * <p>
+ * The content of an entry is preceded by its length. If the length is known
+ * when the entry is put, the content is written through to the underlying
+ * stream, otherwise it is buffered until the entry is closed.
+ * </p>
  */
 public class SarOutputStream extends OutputStream {
 
 	private boolean finished;
 	private final DataOutputStream dataOutputStream;
 	private final DirectByteArrayOutputStream entryContent;
+	// content still to be written through for the current entry, -1 while buffering
+	private long remainingContent = -1;
 
 	/**
 	 * @param outputStream
@@ -75,7 +82,26 @@ public class SarOutputStream extends OutputStream {
 	 * @throws IOException
 	 */
 	public void putNextEntry(SarEntry entry) throws IOException {
+		putNextEntry(entry, entry.isZip() ? -1 : entry.getSize());
+	}
+
+	/**
+	 * Put an entry on the output stream whose content has the given length. If
+	 * the length is not negative, exactly that many bytes must be written before
+	 * the entry is closed and they are written through without buffering.
+	 *
+	 * @param entry         the SarEntry to be written to the archive.
+	 * @param contentLength the number of bytes of content, or -1 if unknown
+	 * @throws IOException
+	 */
+	public void putNextEntry(SarEntry entry, long contentLength) throws IOException {
 		entry.writeTo(this);
+		if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+			dataOutputStream.writeInt((int) contentLength);
+			remainingContent = contentLength;
+		} else {
+			remainingContent = -1;
+		}
 	}
 
 	/**
@@ -88,6 +114,13 @@ public class SarOutputStream extends OutputStream {
 	 * @throws IOException
 	 */
 	public void closeEntry() throws IOException {
+		if (remainingContent >= 0) {
+			long missing = remainingContent;
+			remainingContent = -1;
+			if (missing != 0)
+				throw new IOException("Entry content is shorter than announced.");
+			return;
+		}
 		writeBytes(entryContent.getBuffer(), entryContent.getBufferLength());
 		entryContent.reset();
 	}
@@ -159,9 +192,12 @@ public class SarOutputStream extends OutputStream {
 	 */
 	@Override
 	public void write(int b) throws IOException {
-		byte[] bytes = new byte[1];
-		bytes[0] = (byte) b;
-		entryContent.write(bytes);
+		if (remainingContent >= 0) {
+			checkContent(1);
+			dataOutputStream.write(b);
+			return;
+		}
+		entryContent.write(b);
 	}
 
 	/**
@@ -174,7 +210,7 @@ public class SarOutputStream extends OutputStream {
 	 */
 	@Override
 	public void write(byte[] bytes) throws IOException {
-		entryContent.write(bytes, 0, bytes.length);
+		write(bytes, 0, bytes.length);
 	}
 
 	/**
@@ -190,9 +226,20 @@ public class SarOutputStream extends OutputStream {
 	 */
 	@Override
 	public void write(byte[] bytes, int offset, int numToWrite) throws IOException {
+		if (remainingContent >= 0) {
+			checkContent(numToWrite);
+			dataOutputStream.write(bytes, offset, numToWrite);
+			return;
+		}
 		entryContent.write(bytes, offset, numToWrite);
 	}
 
+	private void checkContent(int numToWrite) throws IOException {
+		if (numToWrite > remainingContent)
+			throw new IOException("Entry content is longer than announced.");
+		remainingContent -= numToWrite;
+	}
+
 	/**
 	 * Write an EOF (end of archive) entry to the org.eclipse.equinox.p2.sar
 	 * archive.
@@ -15,14 +15,23 @@
 package org.eclipse.equinox.internal.p2.sar;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
 import java.util.zip.*;
 
 /**
  * Helper class for converting Zips/Jars to Sars and vice versa.
+ * <p>
+ * Entries are streamed from one archive to the other. Their content is only
+ * buffered when converting a zip to a sar without knowing the size of an
+ * entry, which is the case for nested zips and for entries followed by a data
+ * descriptor in zips read from a stream. Converting zip files looks the sizes up
+ * in the central directory instead.
+ * </p>
  */
 public class SarUtil {
 
-	private static final int BUFFER_SIZE = 8 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
 	private static final boolean DEBUG = SarConstants.DEBUG;
 
 	/**
@@ -67,9 +76,11 @@ public class SarUtil {
 	 * @throws IOException
 	 */
 	public static void zipToSar(File zipFile, File sarFile) throws IOException {
-		InputStream zipInputStream = new BufferedInputStream(new FileInputStream(zipFile));
-		OutputStream sarOutputStream = new BufferedOutputStream(new FileOutputStream(sarFile));
-		SarUtil.zipToSar(zipInputStream, sarOutputStream);
+		Map<String, Long> sizes = readSizes(zipFile);
+		try (InputStream zipInputStream = new BufferedInputStream(Files.newInputStream(zipFile.toPath()), BUFFER_SIZE);
+				OutputStream sarOutputStream = new BufferedOutputStream(Files.newOutputStream(sarFile.toPath()), BUFFER_SIZE)) {
+			zipToSarNoClose(zipInputStream, sarOutputStream, sizes);
+		}
 	}
 
 	/**
@@ -89,7 +100,7 @@ public class SarUtil {
 	 * @throws IOException
 	 */
 	public static void zipToSar(InputStream zippedInputStream, boolean closeIn, OutputStream saredOutputStream, boolean closeOut) throws IOException {
-		zipToSarNoClose(zippedInputStream, saredOutputStream);
+		zipToSarNoClose(zippedInputStream, saredOutputStream, Collections.emptyMap());
 
 		if (closeIn)
 			zippedInputStream.close();
@@ -103,10 +114,10 @@ public class SarUtil {
 	 * @throws IOException
 	 */
 	public static void sarToZip(File sarFile, File zipFile) throws IOException {
-		InputStream saredInputStream = new BufferedInputStream(new FileInputStream(sarFile));
-		OutputStream zippedOutputStream = new BufferedOutputStream(new FileOutputStream(zipFile));
-
-		sarToZip(saredInputStream, zippedOutputStream);
+		try (InputStream saredInputStream = new BufferedInputStream(Files.newInputStream(sarFile.toPath()), BUFFER_SIZE);
+				OutputStream zippedOutputStream = new BufferedOutputStream(Files.newOutputStream(zipFile.toPath()), BUFFER_SIZE)) {
+			sarToZipNoClose(saredInputStream, zippedOutputStream);
+		}
 	}
 
 	/**
@@ -137,9 +148,10 @@ public class SarUtil {
 	/**
 	 * @param zippedInputStream
 	 * @param saredOutputStream
+	 * @param sizes the uncompressed sizes of the entries by name, as far as known
 	 * @throws IOException
 	 */
-	private static void zipToSarNoClose(InputStream zippedInputStream, OutputStream saredOutputStream) throws IOException {
+	private static void zipToSarNoClose(InputStream zippedInputStream, OutputStream saredOutputStream, Map<String, Long> sizes) throws IOException {
 
 		ZipInputStream zipInputStream = new ZipInputStream(zippedInputStream);
 		SarOutputStream sarOutputStream = new SarOutputStream(saredOutputStream);
@@ -149,9 +161,13 @@ public class SarUtil {
 		while ((zipEntry = zipInputStream.getNextEntry()) != null) {
 			boolean isZip = isZip(zipEntry);
 			SarEntry sarEntry = new SarEntry(zipEntry, isZip);
-			sarOutputStream.putNextEntry(sarEntry);
+			// the sar of a nested zip differs in length from the zip itself
+			long size = isZip ? -1 : zipEntry.getSize();
+			if (size < 0 && !isZip)
+				size = sizes.getOrDefault(zipEntry.getName(), -1L);
+			sarOutputStream.putNextEntry(sarEntry, size);
 			if (isZip) {
-				zipToSarNoClose(zipInputStream, sarOutputStream);
+				zipToSarNoClose(zipInputStream, sarOutputStream, Collections.emptyMap());
 			} else {
 				int read;
 				while ((read = zipInputStream.read(buf)) != -1) {
@@ -200,6 +216,26 @@ public class SarUtil {
 		zipOutputStream.finish();
 	}
 
+	/*
+	 * Read the uncompressed sizes of the entries from the central directory of the
+	 * given zip. Entries whose name is not unique are left out, the size read
+	 * with the zip stream might not be theirs.
+	 */
+	private static Map<String, Long> readSizes(File zip) throws IOException {
+		Map<String, Long> sizes = new HashMap<>();
+		try (ZipFile zipFile = new ZipFile(zip)) {
+			for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				if (sizes.putIfAbsent(entry.getName(), entry.getSize()) != null)
+					sizes.put(entry.getName(), -1L);
+			}
+		} catch (ZipException e) {
+			// not readable as zip file, sizes are read with the stream only
+			return Collections.emptyMap();
+		}
+		return sizes;
+	}
+
 	private static boolean isZip(ZipEntry zipEntry) {
 		String name = zipEntry.getName().toLowerCase();
 		return name.endsWith(".zip") || name.endsWith(".jar");
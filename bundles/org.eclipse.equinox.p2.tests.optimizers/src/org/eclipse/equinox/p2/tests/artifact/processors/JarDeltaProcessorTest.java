@@ -14,9 +14,15 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.artifact.processors;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
 import java.io.*;
-import java.util.zip.ZipInputStream;
+import java.util.Enumeration;
+import java.util.zip.*;
 import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.artifact.optimizers.jardelta.DeltaComputer;
+import org.eclipse.equinox.internal.p2.artifact.processors.jardelta.DeltaApplier;
 import org.eclipse.equinox.internal.p2.artifact.processors.jardelta.JarDeltaProcessorStep;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
@@ -59,6 +65,34 @@ public class JarDeltaProcessorTest extends OptimizerTest {
 		}
 	}
 
+	@Test
+	public void testRoundTripKeepsCompressedEntries() throws IOException {
+		File base = TestData.getTempFile("optimizers", "testdata_1.0.0.1.jar");
+		File target = TestData.getTempFile("optimizers", "testdata_1.0.0.2.jar");
+		File delta = TestData.createTempFile("delta.jar");
+		File result = TestData.createTempFile("result.jar");
+		new DeltaComputer(base, target, delta).run();
+		new DeltaApplier(base, delta, result).run();
+
+		try (ZipInputStream expectedJar = new ZipInputStream(new FileInputStream(target));
+				ZipInputStream testJar = new ZipInputStream(new FileInputStream(result))) {
+			TestData.assertEquals(expectedJar, testJar);
+		}
+		// the entries are copied as they are stored, not compressed again
+		try (ZipFile targetJar = new ZipFile(target); ZipFile resultJar = new ZipFile(result)) {
+			assertEquals(targetJar.size(), resultJar.size());
+			for (Enumeration<? extends ZipEntry> entries = targetJar.entries(); entries.hasMoreElements();) {
+				ZipEntry expected = entries.nextElement();
+				ZipEntry actual = resultJar.getEntry(expected.getName());
+				assertNotNull(expected.getName(), actual);
+				if (expected.isDirectory())
+					continue;
+				assertEquals(expected.getName(), expected.getCompressedSize(), actual.getCompressedSize());
+				assertEquals(expected.getName(), expected.getTime(), actual.getTime());
+			}
+		}
+	}
+
 	/**
 	 * Need to inject a repository!
 	 */
@@ -13,10 +13,12 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.sar;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.*;
-import java.util.Arrays;
+import java.util.*;
+import java.util.zip.*;
 import org.eclipse.equinox.internal.p2.sar.SarUtil;
 import org.eclipse.equinox.p2.tests.optimizers.TestData;
 import org.junit.Ignore;
@@ -135,4 +137,90 @@ public class SarTest {
 
 	}
 
+	/**
+	 * Entries of nested zips and entries followed by a data descriptor have no
+	 * size up front, the others are streamed. Both must give the same result.
+	 */
+	@Test
+	public void testNormalizeNestedZipOnFilesAndStreams() throws IOException {
+		File zip = TestData.createTempFile("nested.zip");
+		try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+			out.putNextEntry(new ZipEntry("inner.jar"));
+			ByteArrayOutputStream innerJar = new ByteArrayOutputStream();
+			writeZip(innerJar, 2, 10 * 1024);
+			out.write(innerJar.toByteArray());
+			out.closeEntry();
+			ZipEntry stored = new ZipEntry("stored.txt");
+			byte[] content = "stored content".getBytes();
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			stored.setMethod(ZipEntry.STORED);
+			stored.setSize(content.length);
+			stored.setCrc(crc.getValue());
+			out.putNextEntry(stored);
+			out.write(content);
+			out.closeEntry();
+			out.putNextEntry(new ZipEntry("deflated.bin"));
+			out.write(new byte[100 * 1024]);
+			out.closeEntry();
+		}
+
+		File normalizedZip = TestData.createTempFile("normalizednested.zip");
+		SarUtil.normalize(zip, normalizedZip);
+		ByteArrayOutputStream normalizedStream = new ByteArrayOutputStream();
+		try (InputStream in = new FileInputStream(zip)) {
+			SarUtil.normalize(in, normalizedStream);
+		}
+		try (InputStream in = new FileInputStream(normalizedZip)) {
+			TestData.assertEquals(in, new ByteArrayInputStream(normalizedStream.toByteArray()));
+		}
+		try (ZipInputStream expected = new ZipInputStream(new FileInputStream(zip)); ZipInputStream actual = new ZipInputStream(new FileInputStream(normalizedZip))) {
+			TestData.assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	@Ignore
+	public void testZipToSarAndBackForLargeZip() throws IOException {
+		File zipFile = TestData.createTempFile("large.zip");
+		try (OutputStream out = new BufferedOutputStream(new FileOutputStream(zipFile))) {
+			writeZip(out, 64, 8 * 1024 * 1024);
+		}
+		File sarFile = TestData.createTempFile("large.sar");
+		File recreatedZipFile = TestData.createTempFile("large.zip");
+
+		long before = System.currentTimeMillis();
+		SarUtil.zipToSar(zipFile, sarFile);
+		System.out.println("zipToSar of " + zipFile.length() + " bytes took: " + (System.currentTimeMillis() - before));
+
+		before = System.currentTimeMillis();
+		SarUtil.sarToZip(sarFile, recreatedZipFile);
+		System.out.println("sarToZip of " + sarFile.length() + " bytes took: " + (System.currentTimeMillis() - before));
+
+		// too large to compare in memory, compare the checksums instead
+		try (ZipFile expected = new ZipFile(zipFile); ZipFile actual = new ZipFile(recreatedZipFile)) {
+			assertEquals(expected.size(), actual.size());
+			for (Enumeration<? extends ZipEntry> entries = expected.entries(); entries.hasMoreElements();) {
+				ZipEntry entry = entries.nextElement();
+				assertEquals(entry.getName(), entry.getCrc(), actual.getEntry(entry.getName()).getCrc());
+			}
+		}
+	}
+
+	/*
+	 * Write a zip of entries which are half random and half zeros.
+	 */
+	private static void writeZip(OutputStream zip, int entries, int entrySize) throws IOException {
+		Random random = new Random(entries);
+		byte[] content = new byte[entrySize];
+		try (ZipOutputStream out = new ZipOutputStream(zip)) {
+			for (int i = 0; i < entries; i++) {
+				random.nextBytes(content);
+				Arrays.fill(content, entrySize / 2, entrySize, (byte) 0);
+				out.putNextEntry(new ZipEntry("entry" + i + ".bin"));
+				out.write(content);
+				out.closeEntry();
+			}
+		}
+	}
 }
@@ -63,6 +63,18 @@ public class Repo2RunnableTaskTests extends AbstractAntProvisioningTest {
 		assertTrue("Unexpected format", expectedFormat(destination));
 	}
 
+	/*
+	 * Test that fetching the artifacts concurrently without the engine gives the same result
+	 */
+	public void testRepo2RunnableWithThreads() {
+		AntTaskElement task = createRepo2RunnableTaskElement(TYPE_BOTH);
+		task.addAttribute("threads", "4");
+
+		runAntTask();
+		assertEquals("Number of artifact keys differs", getArtifactKeyCount(source), getArtifactKeyCount(destination));
+		assertTrue("Unexpected format", expectedFormat(destination));
+	}
+
 	public void testRepo2RunnableFragments() throws IOException {
 		createRepo2RunnableTaskElementFragments(TYPE_BOTH);
 
@@ -30,8 +30,11 @@ import java.io.PrintStream;
 import java.lang.reflect.Field;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -1093,6 +1096,67 @@ public class CompositeArtifactRepositoryTest extends AbstractProvisioningTest {
 		return (CompositeArtifactRepository) factory.create(location, name, CompositeArtifactRepository.REPOSITORY_TYPE, null);
 	}
 
+	/*
+	 * Test fetching from the children concurrently, the first child containing an
+	 * artifact is asked first and the next one when it fails
+	 */
+	public void testGetArtifactsConcurrently() throws Exception {
+		List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+		class Child extends TestArtifactRepository {
+			private final String name;
+			private final String failing;
+
+			Child(String name, String failing, String... ids) throws URISyntaxException {
+				super(getAgent(), new URI("memory:/in/memory/" + name));
+				this.name = name;
+				this.failing = failing;
+				for (String id : ids)
+					addDescriptor(new ArtifactDescriptor(new ArtifactKey("osgi.bundle", id, Version.create("1.0.0"))), new NullProgressMonitor());
+			}
+
+			@Override
+			public IStatus getArtifact(IArtifactDescriptor descriptor, OutputStream out, IProgressMonitor monitor) {
+				String id = descriptor.getArtifactKey().getId();
+				fetched.add(name + ':' + id);
+				return id.equals(failing) ? new Status(IStatus.ERROR, "Test", "Test - Download failed") : Status.OK_STATUS;
+			}
+		}
+		String oldThreads = System.getProperty(CompositeArtifactRepository.PROP_FETCH_THREADS);
+		System.setProperty(CompositeArtifactRepository.PROP_FETCH_THREADS, "4");
+		CompositeArtifactRepository source = createRepository(new URI("memory:/in/memory"), "in memory test");
+		Child[] children = new Child[] {new Child("one", "b", "a", "b"), new Child("two", null, "a", "b", "c")};
+		try {
+			for (Child child : children) {
+				child.addToRepositoryManager();
+				source.addChild(child.getLocation());
+			}
+			IArtifactRequest[] requests = new IArtifactRequest[3];
+			for (int i = 0; i < requests.length; i++) {
+				requests[i] = new ArtifactRequest(new ArtifactKey("osgi.bundle", String.valueOf((char) ('a' + i)), Version.create("1.0.0")), null) {
+					@Override
+					public void perform(IArtifactRepository sourceRepository, IProgressMonitor monitor) {
+						setResult(sourceRepository.getArtifact(sourceRepository.getArtifactDescriptors(getArtifactKey())[0], new ByteArrayOutputStream(), monitor));
+					}
+				};
+			}
+
+			source.getArtifacts(requests, new NullProgressMonitor());
+
+			for (IArtifactRequest request : requests)
+				assertTrue(request.getArtifactKey().toString(), request.getResult().isOK());
+			assertEquals(new HashSet<>(Arrays.asList("one:a", "one:b", "two:b", "two:c")), new HashSet<>(fetched));
+			assertEquals(4, fetched.size());
+		} finally {
+			if (oldThreads == null)
+				System.clearProperty(CompositeArtifactRepository.PROP_FETCH_THREADS);
+			else
+				System.setProperty(CompositeArtifactRepository.PROP_FETCH_THREADS, oldThreads);
+			getArtifactRepositoryManager().removeRepository(source.getLocation());
+			for (Child child : children)
+				getArtifactRepositoryManager().removeRepository(child.getLocation());
+		}
+	}
+
 	/*
 	 * Test a child returning different bytes
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2017 IBM Corporation and others.
+ * Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,14 +14,19 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.artifact.repository;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector;
 import org.eclipse.equinox.internal.p2.artifact.repository.MirrorSelector.MirrorInfo;
+import org.eclipse.equinox.internal.p2.artifact.repository.MirrorStatistics;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -310,6 +315,58 @@ public class MirrorSelectorTest {
 
 	}
 
+	@Test
+	public void testLatency() {
+		MirrorInfo slow = new MirrorInfo("http://slow.example.org/eclipse/", 1);
+		MirrorInfo fast = new MirrorInfo("http://fast.example.org/eclipse/", 1);
+		MirrorInfo unknown = new MirrorInfo("http://unknown.example.org/eclipse/", 1);
+		slow.setLatency(800);
+		fast.setLatency(50);
+
+		MirrorInfo[] mirrors = new MirrorInfo[] {slow, unknown, fast};
+		Arrays.sort(mirrors, MirrorSelector.MirrorInfoComparator.forMirrors(mirrors));
+		// an unmeasured mirror counts as average, the fast one ranks above both others
+		assertArrayEquals(new MirrorInfo[] {fast, unknown, slow}, mirrors);
+
+		// measuring a mirror by itself does not demote it below the unmeasured ones
+		MirrorInfo other = new MirrorInfo("http://other.example.org/eclipse/", 1);
+		MirrorInfo[] pair = new MirrorInfo[] {other, slow};
+		assertEquals(0, MirrorSelector.MirrorInfoComparator.forMirrors(pair).compare(slow, other));
+	}
+
+	@Test
+	public void testStatistics() throws IOException {
+		File file = File.createTempFile("mirrors", ".properties");
+		try {
+			MirrorStatistics statistics = new MirrorStatistics(file);
+			MirrorInfo mirror = new MirrorInfo("http://mirror.example.org/eclipse/", 3);
+			mirror.setBytesPerSecond(125000);
+			mirror.setLatency(40);
+			statistics.record(mirror);
+			MirrorInfo failed = new MirrorInfo("http://failed.example.org/eclipse/", 4);
+			failed.incrementFailureCount();
+			statistics.record(failed);
+			statistics.setMirrors("http://example.org/mirrors.php", new String[] {"http://mirror.example.org/eclipse/", "http://failed.example.org/eclipse/"});
+			statistics.save();
+
+			MirrorStatistics reloaded = new MirrorStatistics(file);
+			assertArrayEquals(new String[] {"http://mirror.example.org/eclipse/", "http://failed.example.org/eclipse/"}, reloaded.getMirrors("http://example.org/mirrors.php"));
+			assertNull(reloaded.getMirrors("http://example.org/other.php"));
+			MirrorInfo warm = new MirrorInfo("http://mirror.example.org/eclipse", 0);
+			reloaded.apply(warm);
+			assertEquals(125000, warm.getBytesPerSecond());
+			assertEquals(40, warm.getLatency());
+			MirrorInfo warmFailed = new MirrorInfo("http://failed.example.org/eclipse/", 1);
+			reloaded.apply(warmFailed);
+			MirrorInfo fresh = new MirrorInfo("http://fresh.example.org/eclipse/", 1);
+			MirrorInfo[] mirrors = new MirrorInfo[] {warmFailed, fresh};
+			Arrays.sort(mirrors, new MirrorSelector.MirrorInfoComparator(0, 0, 1));
+			assertArrayEquals(new MirrorInfo[] {fresh, warmFailed}, mirrors);
+		} finally {
+			file.delete();
+		}
+	}
+
 	/**
 	 * @param originallist
 	 * @param mirrors
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -23,7 +23,8 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({ AutomatedDirectorTest.class, Bug203637.class, OperationGenerationTest.class,
 		OracleTest.class,
 		OracleTest2.class, ReplacePlanTest.class, RollbackTest.class, SingletonTest.class, UninstallTest.class,
-		UpdateTest.class, IUListFormatterTest.class, DirectorApplicationTest.class })
+		UpdateTest.class, IUListFormatterTest.class, DirectorApplicationTest.class,
+		MetadataSnapshotContextTest.class })
 public class AllTests {
 // test suite
 }
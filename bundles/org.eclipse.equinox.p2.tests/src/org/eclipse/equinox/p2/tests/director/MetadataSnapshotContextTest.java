@@ -0,0 +1,235 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.director;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.MetadataSnapshotContext;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshot;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.ProvisioningContext;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.junit.Test;
+
+/**
+ * Tests that a {@link MetadataSnapshotContext} gathers the metadata once, and
+ * neither changes the context it was made of nor the contexts copied from it.
+ */
+public class MetadataSnapshotContextTest {
+	private final URI first = URI.create("http://localhost/first"); //$NON-NLS-1$
+	private final URI second = URI.create("http://localhost/second"); //$NON-NLS-1$
+	private final IInstallableUnit a1 = createIU("a", "1.0.0"); //$NON-NLS-1$ //$NON-NLS-2$
+	private final IInstallableUnit b1 = createIU("b", "1.0.0"); //$NON-NLS-1$ //$NON-NLS-2$
+	private final Map<URI, Collection<IInstallableUnit>> metadata = new HashMap<>();
+	private final List<URI> metadataLoads = new ArrayList<>();
+	// the manager hands out the same instance on every load, like its cache does
+	private final Map<URI, IMetadataRepository> loaded = new HashMap<>();
+	private final IProvisioningAgent agent = createAgent();
+
+	private static IInstallableUnit createIU(String id, String version) {
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId(id);
+		description.setVersion(Version.create(version));
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	@SuppressWarnings("unchecked")
+	private IMetadataRepository createMetadataRepository(URI location) {
+		return (IMetadataRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMetadataRepository.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "query" : //$NON-NLS-1$
+					return new CollectionResult<>(metadata.get(location)).query((IQuery<IInstallableUnit>) args[0], null);
+				case "getLocation" : //$NON-NLS-1$
+					return location;
+				case "getReferences" : //$NON-NLS-1$
+					return Collections.emptyList();
+				case "isModifiable" : //$NON-NLS-1$
+					return false;
+				case "equals" : //$NON-NLS-1$
+					return proxy == args[0];
+				case "hashCode" : //$NON-NLS-1$
+					return System.identityHashCode(proxy);
+				default :
+					return null;
+			}
+		});
+	}
+
+	private IArtifactRepository createArtifactRepository(URI location) {
+		return (IArtifactRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IArtifactRepository.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getLocation" : //$NON-NLS-1$
+					return location;
+				case "equals" : //$NON-NLS-1$
+					return proxy == args[0];
+				case "hashCode" : //$NON-NLS-1$
+					return System.identityHashCode(proxy);
+				default :
+					return null;
+			}
+		});
+	}
+
+	private IProvisioningAgent createAgent() {
+		IMetadataRepositoryManager metadataManager = (IMetadataRepositoryManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMetadataRepositoryManager.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getKnownRepositories" : //$NON-NLS-1$
+					return metadata.keySet().toArray(new URI[0]);
+				case "loadRepository" : //$NON-NLS-1$
+					metadataLoads.add((URI) args[0]);
+					return loaded.computeIfAbsent((URI) args[0], this::createMetadataRepository);
+				default :
+					return null;
+			}
+		});
+		IArtifactRepositoryManager artifactManager = (IArtifactRepositoryManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IArtifactRepositoryManager.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getKnownRepositories" : //$NON-NLS-1$
+					return new URI[] {first, second};
+				case "loadRepository" : //$NON-NLS-1$
+					return createArtifactRepository((URI) args[0]);
+				default :
+					return null;
+			}
+		});
+		// the bus lets the agent share the snapshots of its repositories
+		IProvisioningEventBus bus = (IProvisioningEventBus) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IProvisioningEventBus.class}, (proxy, method, args) -> null);
+		Map<String, Object> services = new HashMap<>();
+		services.put(IProvisioningEventBus.SERVICE_NAME, bus);
+		services.put(IMetadataRepositoryManager.SERVICE_NAME, metadataManager);
+		services.put(IArtifactRepositoryManager.SERVICE_NAME, artifactManager);
+		return (IProvisioningAgent) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IProvisioningAgent.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getService" : //$NON-NLS-1$
+					return services.get(args[0] instanceof Class ? ((Class<?>) args[0]).getName() : args[0]);
+				case "equals" : //$NON-NLS-1$
+					return proxy == args[0];
+				case "hashCode" : //$NON-NLS-1$
+					return System.identityHashCode(proxy);
+				default :
+					return null;
+			}
+		});
+	}
+
+	private static Set<IInstallableUnit> getUnits(ProvisioningContext context) {
+		return context.getMetadata(null).query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+	}
+
+	private static List<URI> getArtifactLocations(ProvisioningContext context) {
+		List<URI> locations = new ArrayList<>();
+		for (IArtifactRepository repository : context.getArtifactRepositories(null).query(QueryUtil.createMatchQuery(IArtifactRepository.class, ExpressionUtil.TRUE_EXPRESSION), null))
+			locations.add(repository.getLocation());
+		return locations;
+	}
+
+	@Test
+	public void testSnapshotShared() {
+		metadata.put(first, Arrays.asList(a1));
+		metadata.put(second, Arrays.asList(b1));
+		ProvisioningContext original = new ProvisioningContext(agent);
+		MetadataSnapshotContext snapshot = new MetadataSnapshotContext(agent, original);
+		IQueryable<IInstallableUnit> queryable = snapshot.getMetadata(null);
+		assertEquals(new HashSet<>(Arrays.asList(a1, b1)), getUnits(snapshot));
+		assertSame(queryable, snapshot.getMetadata(null));
+
+		// copies answer from the same snapshot, the repositories are not asked again
+		MetadataSnapshotContext copy = new MetadataSnapshotContext(snapshot);
+		assertSame(queryable, copy.getMetadata(null));
+		assertSame(queryable, new MetadataSnapshotContext(copy).getMetadata(null));
+		assertEquals(2, metadataLoads.size());
+	}
+
+	@Test
+	public void testAgentSnapshotShared() {
+		metadata.put(first, Arrays.asList(a1));
+		metadata.put(second, Arrays.asList(b1));
+		// the contexts answer the merged snapshot of the agent, not a copy of their own
+		IQueryable<IInstallableUnit> queryable = new MetadataSnapshotContext(agent, new ProvisioningContext(agent)).getMetadata(null);
+		assertTrue(queryable instanceof MetadataSnapshot);
+		assertSame(queryable, new MetadataSnapshotContext(agent, new ProvisioningContext(agent)).getMetadata(null));
+		assertSame(queryable, new ProvisioningContext(agent).getMetadata(null));
+		assertSame(((MetadataSnapshot) queryable).getTranslationSupport(), ((MetadataSnapshot) queryable).getTranslationSupport());
+	}
+
+	@Test
+	public void testPropertiesIsolated() {
+		metadata.put(first, Arrays.asList(a1));
+		ProvisioningContext original = new ProvisioningContext(agent);
+		original.setProperty("key", "original"); //$NON-NLS-1$ //$NON-NLS-2$
+		original.setExtraInstallableUnits(Arrays.asList(b1));
+		MetadataSnapshotContext snapshot = new MetadataSnapshotContext(agent, original);
+		assertEquals("original", snapshot.getProperty("key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList(b1), snapshot.getExtraInstallableUnits());
+
+		MetadataSnapshotContext copy = new MetadataSnapshotContext(snapshot);
+		snapshot.setProperty("key", "snapshot"); //$NON-NLS-1$ //$NON-NLS-2$
+		snapshot.setExtraInstallableUnits(null);
+		copy.setProperty("key", "copy"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("original", original.getProperty("key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList(b1), original.getExtraInstallableUnits());
+		assertEquals("snapshot", snapshot.getProperty("key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("copy", copy.getProperty("key")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(Arrays.asList(b1), copy.getExtraInstallableUnits());
+	}
+
+	@Test
+	public void testArtifactRepositoriesIsolated() {
+		ProvisioningContext original = new ProvisioningContext(agent);
+		original.setArtifactRepositories(first);
+		MetadataSnapshotContext snapshot = new MetadataSnapshotContext(agent, original);
+		assertEquals(Arrays.asList(first), getArtifactLocations(snapshot));
+
+		// the repositories set on the snapshot are its own
+		snapshot.setArtifactRepositories(second);
+		MetadataSnapshotContext copy = new MetadataSnapshotContext(snapshot);
+		assertEquals(Arrays.asList(second), getArtifactLocations(snapshot));
+		assertEquals(Arrays.asList(first), getArtifactLocations(original));
+
+		// and are copied, but setting them on the copy leaves the snapshot alone
+		assertEquals(Arrays.asList(second), getArtifactLocations(copy));
+		copy.setArtifactRepositories(first);
+		assertEquals(Arrays.asList(first), getArtifactLocations(copy));
+		assertEquals(Arrays.asList(second), getArtifactLocations(snapshot));
+	}
+
+	@Test
+	public void testMetadataRepositoriesIsolated() {
+		metadata.put(first, Arrays.asList(a1));
+		metadata.put(second, Arrays.asList(b1));
+		ProvisioningContext original = new ProvisioningContext(agent);
+		original.setMetadataRepositories(first);
+		MetadataSnapshotContext snapshot = new MetadataSnapshotContext(agent, original);
+		assertEquals(Collections.singleton(a1), getUnits(snapshot));
+
+		// setting the repositories starts a new snapshot, the copies keep the former one
+		MetadataSnapshotContext copy = new MetadataSnapshotContext(snapshot);
+		snapshot.setMetadataRepositories(second);
+		assertEquals(Collections.singleton(b1), getUnits(snapshot));
+		assertEquals(Collections.singleton(b1), getUnits(new MetadataSnapshotContext(snapshot)));
+		assertEquals(Collections.singleton(a1), getUnits(copy));
+		assertEquals(Collections.singleton(a1), getUnits(original));
+	}
+}
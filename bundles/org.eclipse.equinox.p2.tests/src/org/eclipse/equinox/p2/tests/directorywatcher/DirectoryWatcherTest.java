@@ -104,4 +104,88 @@ public class DirectoryWatcherTest extends AbstractProvisioningTest {
 		watcher.poll();
 		assertEquals(2, list.size());
 	}
+
+	public void testEventWatcher() throws Exception {
+		assertWatcherDelivers(true);
+	}
+
+	public void testPollingWatcher() throws Exception {
+		assertWatcherDelivers(false);
+	}
+
+	private void assertWatcherDelivers(boolean events) throws Exception {
+		File folder = getTempFolder();
+		new File(folder, "existing.jar").createNewFile();
+		final Map<File, Long> seen = Collections.synchronizedMap(new HashMap<>());
+		DirectoryChangeListener listener = new DirectoryChangeListener() {
+			@Override
+			public boolean added(File file) {
+				seen.put(file, file.lastModified());
+				return true;
+			}
+
+			@Override
+			public boolean changed(File file) {
+				seen.put(file, file.lastModified());
+				return true;
+			}
+
+			@Override
+			public boolean removed(File file) {
+				seen.remove(file);
+				return true;
+			}
+
+			@Override
+			public boolean isInterested(File file) {
+				return true;
+			}
+
+			@Override
+			public Long getSeenFile(File file) {
+				return seen.get(file);
+			}
+		};
+
+		String oldValue = System.getProperty(DirectoryWatcher.EVENTS);
+		System.setProperty(DirectoryWatcher.EVENTS, Boolean.toString(events));
+		DirectoryWatcher watcher = new DirectoryWatcher(folder);
+		watcher.addListener(listener);
+		try {
+			watcher.start(100);
+			waitFor(() -> seen.size() == 1);
+
+			File a = new File(folder, "a.jar");
+			File b = new File(folder, "b");
+			a.createNewFile();
+			b.mkdir();
+			waitFor(() -> seen.containsKey(a) && seen.containsKey(b));
+
+			// a new entry in a watched sub-directory changes the directory
+			Long backdated = seen.get(b) - 10000;
+			b.setLastModified(backdated);
+			waitFor(() -> backdated.equals(seen.get(b)));
+			new File(b, "plugin.xml").createNewFile();
+			waitFor(() -> !backdated.equals(seen.get(b)));
+
+			a.delete();
+			waitFor(() -> !seen.containsKey(a));
+			assertEquals(2, seen.size());
+		} finally {
+			watcher.stop();
+			if (oldValue == null)
+				System.clearProperty(DirectoryWatcher.EVENTS);
+			else
+				System.setProperty(DirectoryWatcher.EVENTS, oldValue);
+		}
+	}
+
+	private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+		long end = System.currentTimeMillis() + 20000;
+		while (!condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > end)
+				fail("Timed out waiting for the directory watcher");
+			Thread.sleep(50);
+		}
+	}
 }
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshot;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshotCache;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.junit.Test;
+
+/**
+ * Tests for the metadata snapshots shared by provisioning contexts.
+ */
+public class MetadataSnapshotCacheTest {
+	private final MetadataSnapshotCache cache = new MetadataSnapshotCache();
+
+	private static IInstallableUnit createIU(String id, String version, String capability) {
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId(id);
+		description.setVersion(Version.create(version));
+		description.addProvidedCapabilities(Collections.singleton(MetadataFactory.createProvidedCapability("test", capability, Version.create(version))));
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static IMetadataRepository createRepository(boolean modifiable, IInstallableUnit... ius) {
+		IQueryable<IInstallableUnit> units = QueryUtil.compoundQueryable(Collections.singleton(new CollectionResult<>(Arrays.asList(ius))));
+		return (IMetadataRepository) Proxy.newProxyInstance(MetadataSnapshotCacheTest.class.getClassLoader(), new Class<?>[] {IMetadataRepository.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "query" :
+					return units.query((IQuery<IInstallableUnit>) args[0], null);
+				case "isModifiable" :
+					return modifiable;
+				case "equals" :
+					return proxy == args[0];
+				case "hashCode" :
+					return System.identityHashCode(proxy);
+				default :
+					return null;
+			}
+		});
+	}
+
+	@Test
+	public void testSnapshot() {
+		IInstallableUnit a1 = createIU("a", "1.0.0", "x");
+		IInstallableUnit a2 = createIU("a", "2.0.0", "y");
+		IInstallableUnit b1 = createIU("b", "1.0.0", "x");
+		List<IMetadataRepository> repositories = Arrays.asList(createRepository(false, a1, b1), createRepository(false, a2, createIU("b", "1.0.0", "x")));
+		IQueryable<IInstallableUnit> metadata = cache.getMetadata(repositories);
+		assertTrue(metadata instanceof MetadataSnapshot);
+		assertEquals(3, ((MetadataSnapshot) metadata).size());
+		assertEquals(new HashSet<>(Arrays.asList(a1, a2)), metadata.query(QueryUtil.createIUQuery("a"), null).toUnmodifiableSet());
+		assertEquals(new HashSet<>(Arrays.asList(a1, b1)), metadata.query(QueryUtil.createMatchQuery("providedCapabilities.exists(c | c.name == $0)", "x"), null).toUnmodifiableSet());
+
+		// contexts over the same repositories share the snapshot
+		assertSame(metadata, cache.getMetadata(new ArrayList<>(repositories)));
+		cache.clear();
+		assertNotSame(metadata, cache.getMetadata(repositories));
+	}
+
+	@Test
+	public void testModifiableRepositoryNotInSnapshot() {
+		IInstallableUnit a1 = createIU("a", "1.0.0", "x");
+		IInstallableUnit a2 = createIU("a", "2.0.0", "x");
+		IInstallableUnit a3 = createIU("a", "3.0.0", "x");
+		List<IMetadataRepository> repositories = Arrays.asList(createRepository(false, a1), createRepository(false, a2), createRepository(true, a3));
+		IQueryable<IInstallableUnit> metadata = cache.getMetadata(repositories);
+		assertFalse(metadata instanceof MetadataSnapshot);
+		assertEquals(new HashSet<>(Arrays.asList(a1, a2, a3)), metadata.query(QueryUtil.createIUQuery("a"), null).toUnmodifiableSet());
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.gc;
+
+import java.io.File;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.garbagecollector.GarbageCollector;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.IEngine;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests that the {@link GarbageCollector} removes the artifacts of the bundle
+ * pool which the uninstalls of a profile leave unreferenced.
+ */
+public class GarbageCollectorTest extends AbstractProvisioningTest {
+	private static final String PROFILE_ID = "GarbageCollectorTest";
+
+	private File pool;
+	private IArtifactRepository poolRepository;
+	private IProfile profile;
+	private IPlanner planner;
+	private IEngine engine;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// the collector listens for the commits of the engine
+		assertNotNull(getAgent().getService(GarbageCollector.SERVICE_NAME));
+		pool = getTestFolder("GarbageCollectorTest");
+		poolRepository = getArtifactRepositoryManager().createRepository(pool.toURI(), "pool", IArtifactRepositoryManager.TYPE_SIMPLE_REPOSITORY, new HashMap<>());
+		profile = createProfile(PROFILE_ID, Collections.singletonMap(IProfile.PROP_CACHE, pool.getAbsolutePath()));
+		planner = createPlanner();
+		engine = createEngine();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		getArtifactRepositoryManager().removeRepository(pool.toURI());
+		delete(pool);
+		super.tearDown();
+	}
+
+	private IInstallableUnit createIUWithArtifact(String id) throws ProvisionException {
+		IArtifactKey key = new ArtifactKey("osgi.bundle", id, DEFAULT_VERSION);
+		poolRepository.addDescriptor(new ArtifactDescriptor(key), null);
+		MetadataFactory.InstallableUnitDescription description = new MetadataFactory.InstallableUnitDescription();
+		description.setId(id);
+		description.setVersion(DEFAULT_VERSION);
+		description.setCapabilities(new IProvidedCapability[] {getSelfCapability(id, DEFAULT_VERSION)});
+		description.setArtifacts(new IArtifactKey[] {key});
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	private boolean isInPool(IInstallableUnit iu) throws ProvisionException {
+		URI location = pool.toURI();
+		return getArtifactRepositoryManager().loadRepository(location, null).contains(iu.getArtifacts().iterator().next());
+	}
+
+	private void installAndUninstall(String id) throws ProvisionException {
+		IInstallableUnit iu = createIUWithArtifact(id);
+		assertOK("install " + id, install(profile, new IInstallableUnit[] {iu}, true, planner, engine));
+		profile = getProfile(PROFILE_ID);
+		assertTrue(id + " removed on install", isInPool(iu));
+		assertOK("uninstall " + id, uninstall(profile, new IInstallableUnit[] {iu}, planner, engine));
+		profile = getProfile(PROFILE_ID);
+		assertFalse(id + " kept after uninstall", isInPool(iu));
+	}
+
+	/*
+	 * The keys of an installed unit are only known to the collector from the
+	 * commit of the install, since no collection runs then.
+	 */
+	public void testInstallThenUninstall() throws ProvisionException {
+		installAndUninstall("a");
+		installAndUninstall("b");
+	}
+}
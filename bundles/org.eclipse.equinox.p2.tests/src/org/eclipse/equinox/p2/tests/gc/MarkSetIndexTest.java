@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.gc;
+
+import java.io.File;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.garbagecollector.MarkSetIndex;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests for the index of the keys referenced by profiles
+ */
+public class MarkSetIndexTest extends AbstractProvisioningTest {
+	private static final String POOL = "file:/pool"; //$NON-NLS-1$
+
+	private static Map<String, Set<String>> references(String... keys) {
+		return Collections.singletonMap(POOL, new HashSet<>(Arrays.asList(keys)));
+	}
+
+	public void testReferenceCounts() {
+		MarkSetIndex index = new MarkSetIndex(null);
+		index.update("a", 1, references("osgi.bundle,x,1.0.0", "osgi.bundle,y,1.0.0"));
+		index.update("b", 1, references("osgi.bundle,x,1.0.0"));
+		assertEquals(references("osgi.bundle,x,1.0.0", "osgi.bundle,y,1.0.0"), index.getReferences("a", 1));
+		assertNull(index.getReferences("a", 2));
+
+		index.update("a", 2, references("osgi.bundle,z,1.0.0"));
+		assertTrue(index.isReferenced(POOL, "osgi.bundle,x,1.0.0"));
+		assertFalse(index.isReferenced(POOL, "osgi.bundle,y,1.0.0"));
+		assertEquals(Collections.singleton("osgi.bundle,y,1.0.0"), index.takeReleasedKeys(POOL));
+		assertTrue(index.takeReleasedKeys(POOL).isEmpty());
+
+		index.retain(Collections.singleton("a"));
+		assertEquals(Collections.singleton("osgi.bundle,x,1.0.0"), index.takeReleasedKeys(POOL));
+		assertEquals(Collections.singleton("osgi.bundle,z,1.0.0"), index.getReferencedKeys(POOL));
+	}
+
+	public void testReleasedKeyReferencedAgain() {
+		MarkSetIndex index = new MarkSetIndex(null);
+		index.update("a", 1, references("osgi.bundle,x,1.0.0"));
+		index.update("a", 2, references());
+		index.update("b", 1, references("osgi.bundle,x,1.0.0"));
+		assertTrue(index.takeReleasedKeys(POOL).isEmpty());
+	}
+
+	public void testPersistence() {
+		File file = new File(getTempFolder(), "markset.index");
+		MarkSetIndex index = new MarkSetIndex(file);
+		index.update("a", 1, references("osgi.bundle,x,1.0.0"));
+		index.update("b", 1, references("osgi.bundle,y,1.0.0"));
+		index.retain(Collections.singleton("a"));
+		index.setLastFullClean(42);
+		index.save();
+
+		MarkSetIndex read = new MarkSetIndex(file);
+		assertEquals(references("osgi.bundle,x,1.0.0"), read.getReferences("a", 1));
+		assertNull(read.getReferences("b", 1));
+		assertEquals(42, read.getLastFullClean());
+		assertEquals(Collections.singleton("osgi.bundle,y,1.0.0"), read.takeReleasedKeys(POOL));
+	}
+}
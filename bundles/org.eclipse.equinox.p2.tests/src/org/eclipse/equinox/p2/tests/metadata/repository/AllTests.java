@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2015 IBM Corporation and others.
+ *  Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -25,7 +25,7 @@ import org.junit.runners.Suite;
 		BatchExecuteMetadataRepositoryTest.class, CompositeMetadataRepositoryTest.class,
 		JarURLMetadataRepositoryTest.class, LocalMetadataRepositoryTest.class, SPIMetadataRepositoryTest.class,
 		StandaloneSerializationTest.class, MetadataRepositoryManagerTest.class, NoFailOver.class,
-		SiteIndexFileTest.class, XZedRepositoryTest.class
+		SiteIndexFileTest.class, XZedRepositoryTest.class, MetadataRepositoryIOTest.class, RepositoryAnalyzerTest.class
 })
 public class AllTests {
 	// ResumeDownloadTest.class,
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.repository;
+
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.junit.Test;
+
+/**
+ * Tests that {@link MetadataRepositoryIO#readUnits} streams the same units as
+ * loading the repository gives.
+ */
+public class MetadataRepositoryIOTest extends AbstractProvisioningTest {
+
+	private URI getLocation(String path) {
+		return getTestData("streamed repository", path).toURI();
+	}
+
+	private List<IInstallableUnit> readUnits(URI location) throws ProvisionException {
+		List<IInstallableUnit> units = new ArrayList<>();
+		new MetadataRepositoryIO(getAgent()).readUnits(location, units::add, null);
+		return units;
+	}
+
+	private void assertSameAsLoaded(String path) throws ProvisionException {
+		URI location = getLocation(path);
+		List<IInstallableUnit> streamed = readUnits(location);
+		Map<IInstallableUnit, IInstallableUnit> loaded = new HashMap<>();
+		for (IInstallableUnit iu : getMetadataRepositoryManager().loadRepository(location, null).query(QueryUtil.createIUAnyQuery(), null))
+			loaded.put(iu, iu);
+		getMetadataRepositoryManager().removeRepository(location);
+
+		// every unit is passed once, and holds what the loaded one holds
+		assertEquals(loaded.size(), streamed.size());
+		assertEquals(loaded.keySet(), new HashSet<>(streamed));
+		for (IInstallableUnit iu : streamed) {
+			IInstallableUnit expected = loaded.get(iu);
+			assertEquals(expected.getProperties(), iu.getProperties());
+			assertEquals(new HashSet<>(expected.getProvidedCapabilities()), new HashSet<>(iu.getProvidedCapabilities()));
+			assertEquals(new HashSet<>(expected.getRequirements()), new HashSet<>(iu.getRequirements()));
+			assertEquals(expected.getArtifacts(), iu.getArtifacts());
+		}
+	}
+
+	@Test
+	public void testReadContentJar() throws ProvisionException {
+		assertSameAsLoaded("testData/bug329279/repo");
+	}
+
+	@Test
+	public void testReadContentXML() throws ProvisionException {
+		assertSameAsLoaded("testData/orbitRepo");
+	}
+
+	@Test
+	public void testReadXzOnly() throws ProvisionException {
+		assertSameAsLoaded("testData/xzRepoTests/metadata/xzOnly");
+	}
+
+	@Test
+	public void testReadXzFirst() throws ProvisionException {
+		// like loading, the xz content is preferred over the jar and the xml
+		assertSameAsLoaded("testData/xzRepoTests/metadata/xzAndContentJar");
+		assertSameAsLoaded("testData/xzRepoTests/metadata/xzAndContentXML");
+		for (String path : new String[] {"testData/xzRepoTests/metadata/xzAndContentJar", "testData/xzRepoTests/metadata/xzAndContentXML"}) {
+			List<IInstallableUnit> units = readUnits(getLocation(path));
+			assertEquals(1, units.size());
+			assertEquals("iuFromXZ", units.get(0).getId());
+		}
+	}
+
+	@Test
+	public void testUnitsPassedWhileParsing() throws ProvisionException {
+		// the first unit arrives before the others are parsed, so stopping there ends the read
+		List<IInstallableUnit> units = new ArrayList<>();
+		try {
+			new MetadataRepositoryIO(getAgent()).readUnits(getLocation("testData/bug329279/repo"), iu -> {
+				units.add(iu);
+				throw new OperationCanceledException();
+			}, null);
+			fail("the read went on after the consumer failed");
+		} catch (OperationCanceledException e) {
+			// expected
+		}
+		assertEquals(1, units.size());
+	}
+
+	@Test
+	public void testReadMissing() {
+		try {
+			readUnits(getTempFolder().toURI());
+			fail("a missing repository was read");
+		} catch (ProvisionException e) {
+			assertEquals(ProvisionException.REPOSITORY_NOT_FOUND, e.getStatus().getCode());
+		}
+	}
+
+	@Test
+	public void testReadBusted() {
+		try {
+			readUnits(getLocation("testData/xzRepoTests/metadata/xzBusted"));
+			fail("a broken repository was read");
+		} catch (ProvisionException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,244 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.metadata.repository;
+
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.internal.repository.tools.RepositoryAnalyzer;
+import org.eclipse.equinox.p2.internal.repository.tools.RepositoryAnalyzerApplication;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.tools.analyzer.IUAnalyzer;
+import org.eclipse.equinox.p2.tests.*;
+import org.junit.Test;
+
+/**
+ * Tests that the {@link RepositoryAnalyzer} reports the same when it streams a
+ * repository or spreads the analyzers over threads as when it analyzes the
+ * loaded repository on the calling thread.
+ */
+public class RepositoryAnalyzerTest extends AbstractProvisioningTest {
+	// more units than fit in a few batches of the analyzer threads
+	private static final String REPOSITORY = "testData/bug329279/repo";
+
+	/**
+	 * Reports the units it was given, sorted, and fails if it was called from
+	 * more than one thread. Registered in the plugin.xml of the tests.
+	 */
+	public static class RecordingAnalyzer extends IUAnalyzer {
+		static volatile RecordingAnalyzer last;
+		static volatile RuntimeException failure;
+
+		final List<String> units = new ArrayList<>();
+		final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		boolean streamed;
+
+		@Override
+		public void preAnalysis(IMetadataRepository repository) {
+			streamed = repository == null;
+			last = this;
+		}
+
+		@Override
+		public void analyzeIU(IInstallableUnit iu) {
+			threads.add(Thread.currentThread());
+			if (failure != null)
+				throw failure;
+			units.add(iu.getId() + ' ' + iu.getVersion());
+		}
+
+		@Override
+		public IStatus postAnalysis() {
+			if (threads.size() > 1)
+				return new Status(IStatus.ERROR, TestActivator.PI_PROV_TESTS, "Analyzed on " + threads.size() + " threads");
+			Collections.sort(units);
+			IStatus[] children = new IStatus[units.size()];
+			for (int i = 0; i < children.length; i++)
+				children[i] = new Status(IStatus.OK, TestActivator.PI_PROV_TESTS, units.get(i));
+			return new MultiStatus(TestActivator.PI_PROV_TESTS, IStatus.OK, children, "Recorded units", null);
+		}
+	}
+
+	private URI location;
+	private IMetadataRepository repository;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		location = getTestData("analyzed repository", REPOSITORY).toURI();
+		repository = getMetadataRepositoryManager().loadRepository(location, null);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		RecordingAnalyzer.last = null;
+		RecordingAnalyzer.failure = null;
+		getMetadataRepositoryManager().removeRepository(location);
+		super.tearDown();
+	}
+
+	private IStatus analyzeLoaded(int threads) {
+		RepositoryAnalyzer analyzer = new RepositoryAnalyzer(new IMetadataRepository[] {repository});
+		analyzer.setThreads(threads);
+		IStatus result = analyzer.analyze(null);
+		assertFalse(RecordingAnalyzer.last.streamed);
+		return result;
+	}
+
+	private IStatus analyzeStreamed(int threads, IProgressMonitor monitor) {
+		RepositoryAnalyzer analyzer = new RepositoryAnalyzer(getAgent(), new URI[] {location});
+		analyzer.setThreads(threads);
+		IStatus result = analyzer.analyze(monitor);
+		assertTrue(RecordingAnalyzer.last.streamed);
+		return result;
+	}
+
+	private static List<String> getMessages(IStatus status) {
+		List<String> messages = new ArrayList<>();
+		for (IStatus child : status.getChildren())
+			messages.add(child.getMessage());
+		Collections.sort(messages);
+		return messages;
+	}
+
+	/*
+	 * The results of the analyzers come in the same order, the findings of each
+	 * may come in the order the units were read.
+	 */
+	private static void assertSameResult(IStatus expected, IStatus actual) {
+		assertEquals(expected.getSeverity(), actual.getSeverity());
+		IStatus[] expectedResults = expected.getChildren();
+		IStatus[] actualResults = actual.getChildren();
+		assertEquals(expectedResults.length, actualResults.length);
+		for (int i = 0; i < expectedResults.length; i++) {
+			assertEquals(expectedResults[i].getMessage(), actualResults[i].getMessage());
+			assertEquals(expectedResults[i].getSeverity(), actualResults[i].getSeverity());
+			assertEquals(getMessages(expectedResults[i]), getMessages(actualResults[i]));
+		}
+	}
+
+	private IStatus getRecorded(IStatus result) {
+		for (IStatus child : result.getChildren()) {
+			if ("Recorded units".equals(child.getMessage()))
+				return child;
+		}
+		fail("the recording analyzer did not report");
+		return null;
+	}
+
+	@Test
+	public void testStreamedSameAsLoaded() {
+		IStatus expected = analyzeLoaded(1);
+		Set<IInstallableUnit> units = repository.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet();
+		assertEquals(units.size(), getRecorded(expected).getChildren().length);
+		assertEquals(Collections.singleton(Thread.currentThread()), RecordingAnalyzer.last.threads);
+
+		assertSameResult(expected, analyzeStreamed(1, null));
+		assertEquals(Collections.singleton(Thread.currentThread()), RecordingAnalyzer.last.threads);
+	}
+
+	@Test
+	public void testThreadedSameAsSequential() {
+		IStatus expected = analyzeLoaded(1);
+		// more threads than analyzers leaves some threads out
+		for (int threads : new int[] {2, 3, 100}) {
+			assertSameResult(expected, analyzeLoaded(threads));
+			assertFalse(RecordingAnalyzer.last.threads.contains(Thread.currentThread()));
+			assertSameResult(expected, analyzeStreamed(threads, null));
+			assertFalse(RecordingAnalyzer.last.threads.contains(Thread.currentThread()));
+		}
+	}
+
+	@Test
+	public void testThreadedFailure() {
+		RecordingAnalyzer.failure = new IllegalStateException("analyzer failed");
+		try {
+			analyzeStreamed(3, null);
+			fail("the failure of the analyzer thread was lost");
+		} catch (IllegalStateException e) {
+			assertSame(RecordingAnalyzer.failure, e);
+		}
+		assertFalse(RecordingAnalyzer.last.threads.contains(Thread.currentThread()));
+	}
+
+	@Test
+	public void testCanceled() {
+		for (int threads : new int[] {1, 3}) {
+			NullProgressMonitor monitor = new NullProgressMonitor();
+			monitor.setCanceled(true);
+			try {
+				analyzeStreamed(threads, monitor);
+				fail("a canceled analysis completed");
+			} catch (OperationCanceledException e) {
+				assertTrue(RecordingAnalyzer.last.units.isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void testMissingRepository() {
+		IStatus result = new RepositoryAnalyzer(getAgent(), new URI[] {getTempFolder().toURI()}).analyze(null);
+		assertEquals(IStatus.ERROR, result.getSeverity());
+		assertEquals(1, result.getChildren().length);
+		assertEquals(ProvisionException.REPOSITORY_NOT_FOUND, result.getChildren()[0].getCode());
+	}
+
+	/*
+	 * Runs the application with the given arguments and returns the lines it
+	 * printed, sorted and without the one telling the time it took.
+	 */
+	private List<String> runApplication(String... args) throws Exception {
+		Map<String, Object> arguments = Collections.singletonMap(IApplicationContext.APPLICATION_ARGS, args);
+		IApplicationContext context = (IApplicationContext) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IApplicationContext.class}, (proxy, method, methodArgs) -> method.getName().equals("getArguments") ? arguments : null);
+		StringBuffer buffer = new StringBuffer();
+		PrintStream out = System.out;
+		try {
+			System.setOut(new PrintStream(new StringBufferStream(buffer)));
+			assertEquals(IApplication.EXIT_OK, new RepositoryAnalyzerApplication().start(context));
+		} finally {
+			System.setOut(out);
+		}
+		List<String> lines = new ArrayList<>(Arrays.asList(buffer.toString().split("\\R")));
+		assertTrue(lines.removeIf(line -> line.startsWith("Repository Analyzer Finished")));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	@Test
+	public void testApplicationArguments() throws Exception {
+		List<String> expected = runApplication("-m", location.toString());
+		assertFalse(RecordingAnalyzer.last.streamed);
+		assertEquals(Collections.singleton(Thread.currentThread()), RecordingAnalyzer.last.threads);
+
+		assertEquals(expected, runApplication("-m", location.toString(), "-stream"));
+		assertTrue(RecordingAnalyzer.last.streamed);
+		assertEquals(Collections.singleton(Thread.currentThread()), RecordingAnalyzer.last.threads);
+
+		assertEquals(expected, runApplication("-metadataRepository", location.toString(), "-threads", "3"));
+		assertFalse(RecordingAnalyzer.last.streamed);
+		assertFalse(RecordingAnalyzer.last.threads.contains(Thread.currentThread()));
+
+		assertEquals(expected, runApplication("-stream", "-threads", "3", "-m", location.toString()));
+		assertTrue(RecordingAnalyzer.last.streamed);
+		assertFalse(RecordingAnalyzer.last.threads.contains(Thread.currentThread()));
+	}
+}
@@ -24,8 +24,15 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -38,8 +45,13 @@ import org.eclipse.equinox.internal.p2.artifact.repository.CompositeArtifactRepo
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepository;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.repository.helpers.ChecksumHelper;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.internal.repository.comparator.ArtifactChecksumComparator;
+import org.eclipse.equinox.p2.internal.repository.mirroring.ContentStore;
+import org.eclipse.equinox.p2.internal.repository.mirroring.MirrorJournal;
+import org.eclipse.equinox.p2.internal.repository.mirroring.Mirroring;
 import org.eclipse.equinox.p2.internal.repository.tools.Messages;
 import org.eclipse.equinox.p2.internal.repository.tools.MirrorApplication;
 import org.eclipse.equinox.p2.internal.repository.tools.RepositoryDescriptor;
@@ -53,6 +65,7 @@ import org.eclipse.equinox.p2.repository.artifact.ArtifactKeyQuery;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
 import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
 import org.eclipse.equinox.p2.tests.StringBufferStream;
@@ -1507,4 +1520,98 @@ public class NewMirrorApplicationArtifactTest extends AbstractProvisioningTest {
 			fail("Error mirroring", e);
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Tests mirroring several artifacts at the same time
+	 */
+	@Test
+	public void testArtifactMirrorConcurrently() throws Exception {
+		File journal = new File(getTempFolder(), "mirror.journal");
+		MirrorApplication app = new MirrorApplication();
+		app.addSource(createRepositoryDescriptor(sourceRepo3Location.toURI(), null, null, null));
+		app.addDestination(createRepositoryDescriptor(destRepoLocation.toURI(), null, null, null));
+		app.setThreads(4);
+		app.setMaxPerHost(2);
+		app.setJournal(journal);
+		assertTrue(app.run(null).isOK());
+		assertContentEquals("1.0", getArtifactRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null), getArtifactRepositoryManager().loadRepository(destRepoLocation.toURI(), null));
+		// the journal is only kept for resuming an incomplete mirror
+		assertFalse(journal.exists());
+	}
+
+	/**
+	 * Tests that mirroring skips the artifacts an interrupted run has recorded as mirrored
+	 */
+	@Test
+	public void testArtifactMirrorResumesFromJournal() throws Exception {
+		IArtifactRepository source = getArtifactRepositoryManager().loadRepository(sourceRepo3Location.toURI(), null);
+		IArtifactRepository destination = createArtifactRepository(destRepoLocation.toURI(), null);
+		IArtifactDescriptor mirrored = source.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).iterator().next();
+		File journal = new File(getTempFolder(), "mirror.journal");
+		MirrorJournal.read(journal, source.getLocation().toString(), destination.getLocation().toString()).addCompleted(Collections.singleton(mirrored));
+
+		Mirroring mirroring = new Mirroring(source, destination, true);
+		mirroring.setThreads(2);
+		mirroring.setJournal(journal);
+		assertTrue(mirroring.run(true, false).isOK());
+
+		assertFalse(destination.contains(mirrored));
+		int descriptorCount = 0;
+		for (IArtifactDescriptor descriptor : source.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null)) {
+			if (!descriptor.equals(mirrored))
+				assertTrue(descriptor.toString(), destination.contains(descriptor));
+			descriptorCount++;
+		}
+		assertEquals(descriptorCount - 1, destination.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).toUnmodifiableSet().size());
+		assertFalse(journal.exists());
+	}
+
+	/**
+	 * Tests that artifacts mirrored into several destinations are stored once in the content store
+	 */
+	@Test
+	public void testArtifactMirrorWithContentStore() throws Exception {
+		File folder = getTempFolder();
+		IArtifactRepository source = createArtifactRepository(new File(folder, "source").toURI(), null);
+		for (int i = 0; i < 3; i++) {
+			byte[] content = ("content " + i).getBytes(StandardCharsets.UTF_8);
+			ArtifactDescriptor descriptor = new ArtifactDescriptor(new ArtifactKey("osgi.bundle", "a" + i, Version.create("1.0.0")));
+			descriptor.setProperty(ContentStore.CHECKSUM_PROPERTY, ChecksumHelper.toHexString(MessageDigest.getInstance("SHA-256").digest(content)));
+			try (OutputStream output = source.getOutputStream(descriptor)) {
+				output.write(content);
+			}
+		}
+		ContentStore store = new ContentStore(new File(folder, "store"));
+		File[] destinations = new File[] {new File(folder, "release"), new File(folder, "staging")};
+		for (File destination : destinations) {
+			Mirroring mirroring = new Mirroring(source, createArtifactRepository(destination.toURI(), null), true);
+			mirroring.setContentStore(store);
+			assertTrue(mirroring.run(true, false).isOK());
+		}
+
+		IFileArtifactRepository release = (IFileArtifactRepository) getArtifactRepositoryManager().loadRepository(destinations[0].toURI(), null);
+		IFileArtifactRepository staging = (IFileArtifactRepository) getArtifactRepositoryManager().loadRepository(destinations[1].toURI(), null);
+		for (IArtifactDescriptor descriptor : source.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null)) {
+			File blob = store.getBlob(ContentStore.getChecksum(descriptor));
+			assertTrue(descriptor.toString(), Files.isSameFile(blob.toPath(), release.getArtifactFile(release.getArtifactDescriptors(descriptor.getArtifactKey())[0]).toPath()));
+			assertTrue(descriptor.toString(), Files.isSameFile(blob.toPath(), staging.getArtifactFile(staging.getArtifactDescriptors(descriptor.getArtifactKey())[0]).toPath()));
+		}
+		assertTrue(store.verify(null).isOK());
+
+		// blobs are kept as long as a repository links to them, where the links of a file can be counted
+		boolean countsLinks = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+		List<File> blobs = new ArrayList<>();
+		for (IArtifactDescriptor descriptor : source.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null))
+			blobs.add(store.getBlob(ContentStore.getChecksum(descriptor)));
+		assertEquals(countsLinks ? 0 : -1, store.gc());
+		for (File blob : blobs)
+			assertTrue(blob.toString(), blob.isFile());
+		getArtifactRepositoryManager().removeRepository(destinations[0].toURI());
+		getArtifactRepositoryManager().removeRepository(destinations[1].toURI());
+		delete(destinations[0]);
+		delete(destinations[1]);
+		assertEquals(countsLinks ? 3 : -1, store.gc());
+		for (File blob : blobs)
+			assertEquals(blob.toString(), !countsLinks, blob.isFile());
+	}
+}
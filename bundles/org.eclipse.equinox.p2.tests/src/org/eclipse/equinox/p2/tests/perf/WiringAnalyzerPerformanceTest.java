@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.perf;
+
+import java.util.*;
+import org.eclipse.core.tests.harness.PerformanceTestRunner;
+import org.eclipse.equinox.internal.simpleconfigurator.WiringAnalyzer;
+import org.eclipse.equinox.p2.tests.simpleconfigurator.SyntheticWiring;
+import org.eclipse.equinox.p2.tests.simpleconfigurator.WiringAnalyzerTest;
+import org.osgi.framework.Bundle;
+
+/**
+ * Performance tests for computing the additional refresh set of the simple
+ * configurator on a synthetic framework.
+ */
+public class WiringAnalyzerPerformanceTest extends ProvisioningPerformanceTest {
+	private static final int REPEATS = 5;
+	private static final int BUNDLE_COUNT = 2000;
+
+	public void testFindAdditionalRefresh() {
+		new PerformanceTestRunner() {
+			WiringAnalyzer analyzer = new WiringAnalyzer();
+			List<Bundle> previouslyResolved;
+			Set<Bundle> newlyResolved;
+
+			@Override
+			protected void setUp() {
+				SyntheticWiring wiring = WiringAnalyzerTest.createWiring(BUNDLE_COUNT);
+				previouslyResolved = new ArrayList<>(wiring.getBundles());
+				newlyResolved = Collections.singleton(wiring.addBundle("opt1", new String[0], new String[0]));
+			}
+
+			@Override
+			protected void test() {
+				analyzer.findAdditionalRefresh(previouslyResolved, newlyResolved);
+			}
+		}.run(this, "Test additional refresh for " + BUNDLE_COUNT + " bundles", REPEATS, 10);
+	}
+
+	public void testFindAdditionalRefreshNaive() {
+		new PerformanceTestRunner() {
+			List<Bundle> previouslyResolved;
+			Set<Bundle> newlyResolved;
+
+			@Override
+			protected void setUp() {
+				SyntheticWiring wiring = WiringAnalyzerTest.createWiring(BUNDLE_COUNT);
+				previouslyResolved = new ArrayList<>(wiring.getBundles());
+				newlyResolved = Collections.singleton(wiring.addBundle("opt1", new String[0], new String[0]));
+			}
+
+			@Override
+			protected void test() {
+				WiringAnalyzerTest.findAdditionalRefreshNaive(previouslyResolved, newlyResolved);
+			}
+		}.run(this, "Test naive additional refresh for " + BUNDLE_COUNT + " bundles", REPEATS, 10);
+	}
+}
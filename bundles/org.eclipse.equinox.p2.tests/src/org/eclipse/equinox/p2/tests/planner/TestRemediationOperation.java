@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.HashSet;
+import java.util.List;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.p2.engine.IEngine;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.operations.*;
+import org.eclipse.equinox.p2.planner.*;
+import org.eclipse.equinox.p2.tests.*;
+
+/**
+ * Tests that the remedy configurations evaluated concurrently give the same
+ * remedies as evaluated one after the other, and that the search stops at the
+ * best solutions when asked to.
+ */
+public class TestRemediationOperation extends AbstractProvisioningTest {
+	private static final String THREADS = "eclipse.p2.remediation.threads";
+	private static final int HIGH_WEIGHT = 3;
+
+	@IUDescription(content = "package: sdk \n" + "singleton: true\n" + "version: 1 \n" + "depends: platform = 1")
+	public IInstallableUnit sdk1;
+
+	@IUDescription(content = "package: platform \n" + "singleton: true\n" + "version: 1 \n")
+	public IInstallableUnit platform1;
+
+	@IUDescription(content = "package: sdk \n" + "singleton: true\n" + "version: 2 \n" + "depends: platform = 2")
+	public IInstallableUnit sdk2;
+
+	@IUDescription(content = "package: platform \n" + "singleton: true\n" + "version: 2 \n")
+	public IInstallableUnit platform2;
+
+	@IUDescription(content = "package: egit \n" + "singleton: true\n" + "version: 1 \n" + "depends: platform = 1")
+	public IInstallableUnit egit1;
+
+	@IUDescription(content = "package: egit \n" + "singleton: true\n" + "version: 2 \n" + "depends: platform = 2")
+	public IInstallableUnit egit2;
+
+	IProfile profile;
+
+	private IPlanner planner;
+
+	private IEngine engine;
+
+	private IProfileChangeRequest originalRequest;
+
+	private final RemedyConfig[] configs = RemedyConfig.getAllRemedyConfigs();
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		profile = createProfile("TestProfile." + getName());
+		IULoader.loadIUs(this);
+		createTestMetdataRepository(new IInstallableUnit[] {sdk1, platform1, sdk2, platform2, egit1, egit2});
+		planner = createPlanner();
+		engine = createEngine();
+		assertOK(install(profile, new IInstallableUnit[] {sdk1}, true, planner, engine));
+
+		originalRequest = planner.createChangeRequest(profile);
+		originalRequest.add(egit2);
+		originalRequest.setInstallableUnitInclusionRules(egit2, ProfileInclusionRules.createStrictInclusionRule(egit2));
+		assertNotOK(planner.getProvisioningPlan(originalRequest, null, null).getStatus());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		System.clearProperty(THREADS);
+		super.tearDown();
+		getProfileRegistry().removeProfile(profile.getProfileId());
+	}
+
+	private RemediationOperation remediate(int threads, boolean stopAtBestSolutions) {
+		System.setProperty(THREADS, Integer.toString(threads));
+		RemediationOperation operation = new RemediationOperation(new ProvisioningSession(getAgent()), originalRequest, configs);
+		operation.setProfileId(profile.getProfileId());
+		operation.setStopAtBestSolutions(stopAtBestSolutions);
+		assertOK(operation.resolveModal(new NullProgressMonitor()));
+		return operation;
+	}
+
+	private static void assertSameRemedy(Remedy expected, Remedy actual) {
+		assertSame(expected.getConfig(), actual.getConfig());
+		assertEquals(expected.getBeingInstalledRelaxedWeight(), actual.getBeingInstalledRelaxedWeight());
+		assertEquals(expected.getInstallationRelaxedWeight(), actual.getInstallationRelaxedWeight());
+		assertEquals(new HashSet<>(expected.getRequest().getAdditions()), new HashSet<>(actual.getRequest().getAdditions()));
+		assertEquals(new HashSet<>(expected.getRequest().getRemovals()), new HashSet<>(actual.getRequest().getRemovals()));
+	}
+
+	private static void assertSameRemedies(List<Remedy> expected, List<Remedy> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertSameRemedy(expected.get(i), actual.get(i));
+	}
+
+	public void testParallelSameAsSequential() {
+		RemediationOperation sequential = remediate(1, false);
+		assertTrue(sequential.getRemedies().size() > 1);
+		RemediationOperation parallel = remediate(configs.length, false);
+		assertSameRemedies(sequential.getRemedies(), parallel.getRemedies());
+		assertSameRemedy(sequential.bestSolutionChangingTheRequest(), parallel.bestSolutionChangingTheRequest());
+		assertSameRemedy(sequential.bestSolutionChangingWhatIsInstalled(), parallel.bestSolutionChangingWhatIsInstalled());
+
+		// the best solutions install the former egit, or update the sdk for the new one
+		assertTrue(sequential.bestSolutionChangingTheRequest().getRequest().getAdditions().contains(egit1));
+		assertTrue(sequential.bestSolutionChangingWhatIsInstalled().getRequest().getAdditions().contains(sdk2));
+	}
+
+	public void testStopAtBestSolutions() {
+		RemediationOperation all = remediate(1, false);
+		RemediationOperation sequential = remediate(1, true);
+		RemediationOperation parallel = remediate(configs.length, true);
+
+		// in order, the configurations after the one completing the best solutions are not evaluated
+		List<Remedy> stopped = sequential.getRemedies();
+		assertTrue(stopped.size() < all.getRemedies().size());
+		assertSameRemedies(all.getRemedies().subList(0, stopped.size()), stopped);
+
+		// concurrently, any of the configurations may have completed by then
+		for (Remedy remedy : parallel.getRemedies()) {
+			Remedy expected = null;
+			for (Remedy candidate : all.getRemedies()) {
+				if (candidate.getConfig() == remedy.getConfig())
+					expected = candidate;
+			}
+			assertNotNull(expected);
+			assertSameRemedy(expected, remedy);
+		}
+
+		// but the best solutions are always found
+		for (RemediationOperation operation : new RemediationOperation[] {sequential, parallel}) {
+			assertSameRemedy(all.bestSolutionChangingTheRequest(), operation.bestSolutionChangingTheRequest());
+			assertSameRemedy(all.bestSolutionChangingWhatIsInstalled(), operation.bestSolutionChangingWhatIsInstalled());
+			assertEquals(HIGH_WEIGHT, operation.bestSolutionChangingTheRequest().getBeingInstalledRelaxedWeight());
+			assertEquals(HIGH_WEIGHT, operation.bestSolutionChangingWhatIsInstalled().getInstallationRelaxedWeight());
+		}
+	}
+}
@@ -39,6 +39,7 @@ import org.eclipse.equinox.p2.tests.publisher.actions.ProductActionWithJRELocati
 import org.eclipse.equinox.p2.tests.publisher.actions.ProductContentTypeTest;
 import org.eclipse.equinox.p2.tests.publisher.actions.ProductFileAdviceTest;
 import org.eclipse.equinox.p2.tests.publisher.actions.ProductFileTest;
+import org.eclipse.equinox.p2.tests.publisher.actions.PublishingPipelineTest;
 import org.eclipse.equinox.p2.tests.publisher.actions.RootFilesActionTest;
 import org.eclipse.equinox.p2.tests.publisher.actions.RootIUActionTest;
 import org.eclipse.equinox.p2.tests.publisher.actions.VersionAdviceTest;
@@ -54,8 +55,8 @@ import org.junit.runners.Suite;
 		JREActionTest.class, LocalizationTests.class, LocalUpdateSiteActionTest.class, MD5GenerationTest.class,
 		ChecksumGenerationTest.class, ProductActionTest.class, ProductActionCapturingTest.class,
 		ProductActionTestMac.class, ProductActionWithJRELocationTest.class, ProductContentTypeTest.class,
-		ProductFileAdviceTest.class, ProductFileTest.class, RootFilesActionTest.class, RootIUActionTest.class,
-		GeneralPublisherTests.class, VersionAdviceTest.class })
+		ProductFileAdviceTest.class, ProductFileTest.class, PublishingPipelineTest.class, RootFilesActionTest.class,
+		RootIUActionTest.class, GeneralPublisherTests.class, IncrementalPublisherTest.class, VersionAdviceTest.class })
 public class AllTests {
 // test suite
 }
\ No newline at end of file
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.publisher;
+
+import java.io.*;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.*;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.internal.p2.publisher.eclipse.PublisherInputCache;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAndBundlesPublisherApplication;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.tests.*;
+
+public class IncrementalPublisherTest extends AbstractProvisioningTest {
+	private static final String OPTIONS = "0";
+
+	private static void createBundle(File file, String id, String version) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-ManifestVersion", "2");
+		manifest.getMainAttributes().putValue("Bundle-SymbolicName", id);
+		manifest.getMainAttributes().putValue("Bundle-Version", version);
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file), manifest)) {
+			// only the manifest
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		try (Writer writer = new FileWriter(file)) {
+			writer.write(content);
+		}
+	}
+
+	public void testChangedInputs() throws IOException {
+		File folder = getTempFolder();
+		File jar = new File(folder, "a_1.0.0.jar");
+		createBundle(jar, "a", "1.0.0");
+		File dir = new File(folder, "b_1.0.0");
+		dir.mkdirs();
+		writeFile(new File(dir, "b.txt"), "b");
+		File[] inputs = new File[] {jar, dir};
+		File cacheFile = new File(folder, PublisherInputCache.CACHE_FILENAME);
+
+		PublisherInputCache cache = PublisherInputCache.read(cacheFile, OPTIONS);
+		assertEquals(Arrays.asList(inputs), cache.getChangedInputs(inputs, null, false));
+		cache.write(cacheFile);
+
+		cache = PublisherInputCache.read(cacheFile, OPTIONS);
+		assertEquals(Collections.emptyList(), cache.getChangedInputs(inputs, null, false));
+		cache.write(cacheFile);
+
+		// touched without changing the content
+		jar.setLastModified(jar.lastModified() - 10000);
+		cache = PublisherInputCache.read(cacheFile, OPTIONS);
+		assertEquals(Collections.emptyList(), cache.getChangedInputs(inputs, null, false));
+		cache.write(cacheFile);
+
+		// a file in a directory changed
+		writeFile(new File(dir, "b.txt"), "c");
+		cache = PublisherInputCache.read(cacheFile, OPTIONS);
+		assertEquals(Collections.singletonList(dir), cache.getChangedInputs(inputs, null, false));
+		cache.write(cacheFile);
+
+		// forced or published with other options
+		cache = PublisherInputCache.read(cacheFile, OPTIONS);
+		assertEquals(Arrays.asList(inputs), cache.getChangedInputs(inputs, null, true));
+		cache = PublisherInputCache.read(cacheFile, "1");
+		assertEquals(Arrays.asList(inputs), cache.getChangedInputs(inputs, null, false));
+	}
+
+	public void testIncrementalPublishing() throws Exception {
+		File source = getTempFolder();
+		File plugins = new File(source, "plugins");
+		File features = new File(source, "features");
+		plugins.mkdirs();
+		features.mkdirs();
+		File testData = TestActivator.getTestDataFolder();
+		copy("1.0", new File(testData, "FeaturesActionTest/foo"), new File(features, "foo"));
+		copy("1.1", new File(testData, "FragmentPublisherTest/foo"), new File(plugins, "foo"));
+		File changed = new File(plugins, "changed.jar");
+		createBundle(changed, "changed", "1.0.0");
+		File removed = new File(plugins, "removed.jar");
+		createBundle(removed, "removed", "1.0.0");
+
+		File target = getTempFolder();
+		publish(source, target);
+		assertTrue(new File(target, PublisherInputCache.CACHE_FILENAME).exists());
+		IMetadataRepository metadata = loadMetadata(target.toURI());
+		assertContains(metadata, "foo.feature.group", "1.0.0");
+		assertContains(metadata, "changed", "1.0.0");
+		assertContains(metadata, "removed", "1.0.0");
+
+		long lastModified = changed.lastModified();
+		createBundle(changed, "changed", "1.0.1");
+		changed.setLastModified(lastModified + 10000);
+		removed.delete();
+		publish(source, target);
+		metadata = loadMetadata(target.toURI());
+		assertContains(metadata, "foo.feature.group", "1.0.0");
+		assertContains(metadata, "foo.feature.jar", "1.0.0");
+		assertContains(metadata, "changed", "1.0.1");
+		assertNotContains(metadata, "changed", "1.0.0");
+		assertNotContains(metadata, "removed", "1.0.0");
+		assertEquals(1, metadata.query(QueryUtil.createIUQuery("foo"), null).toUnmodifiableSet().size());
+
+		getArtifactRepositoryManager().removeRepository(target.toURI());
+		IArtifactRepository artifacts = getArtifactRepositoryManager().loadRepository(target.toURI(), null);
+		assertTrue(artifacts.contains(new ArtifactKey("osgi.bundle", "changed", Version.create("1.0.1"))));
+		assertFalse(artifacts.contains(new ArtifactKey("osgi.bundle", "changed", Version.create("1.0.0"))));
+		assertFalse(artifacts.contains(new ArtifactKey("osgi.bundle", "removed", Version.create("1.0.0"))));
+	}
+
+	private void publish(File source, File target) throws Exception {
+		String[] args = new String[] {"-source", source.getAbsolutePath(), "-metadataRepository", target.toURI().toString(), "-artifactRepository", target.toURI().toString(), "-publishArtifacts", "-incremental"};
+		PrintStream out = System.out;
+		try {
+			System.setOut(new PrintStream(new StringBufferStream()));
+			assertEquals(0, new FeaturesAndBundlesPublisherApplication().run(args));
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	private IMetadataRepository loadMetadata(URI location) throws Exception {
+		getMetadataRepositoryManager().removeRepository(location);
+		return loadMetadataRepository(location);
+	}
+
+	private static void assertContains(IMetadataRepository repository, String id, String version) {
+		assertFalse(id, repository.query(QueryUtil.createIUQuery(id, Version.create(version)), null).isEmpty());
+	}
+
+	private static void assertNotContains(IMetadataRepository repository, String id, String version) {
+		assertTrue(id, repository.query(QueryUtil.createIUQuery(id, Version.create(version)), null).isEmpty());
+	}
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.publisher.actions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.publisher.PublishingPipeline;
+import org.eclipse.equinox.p2.publisher.*;
+import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
+import org.eclipse.equinox.p2.publisher.eclipse.FeaturesAction;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestActivator;
+
+public class PublishingPipelineTest extends AbstractProvisioningTest {
+	private String oldThreads;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		oldThreads = System.getProperty(PublishingPipeline.PROP_THREADS);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (oldThreads == null)
+			System.clearProperty(PublishingPipeline.PROP_THREADS);
+		else
+			System.setProperty(PublishingPipeline.PROP_THREADS, oldThreads);
+		super.tearDown();
+	}
+
+	private static void setThreads(int threads) {
+		System.setProperty(PublishingPipeline.PROP_THREADS, Integer.toString(threads));
+	}
+
+	public void testForEachOrdered() {
+		setThreads(4);
+		List<Integer> input = new ArrayList<>();
+		for (int i = 0; i < 100; i++)
+			input.add(i);
+		List<Integer> output = new ArrayList<>();
+		PublishingPipeline.forEachOrdered(input, i -> {
+			// finish the elements out of order
+			try {
+				Thread.sleep((100 - i) % 7);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+			return i * 2;
+		}, (i, result) -> {
+			assertEquals(i * 2, result.intValue());
+			output.add(i);
+		}, new NullProgressMonitor());
+		assertEquals(input, output);
+	}
+
+	public void testForEachOrderedCanceled() {
+		setThreads(4);
+		IProgressMonitor monitor = new NullProgressMonitor();
+		List<Integer> consumed = new ArrayList<>();
+		try {
+			PublishingPipeline.forEachOrdered(Arrays.asList(1, 2, 3, 4, 5), i -> i, (i, result) -> {
+				consumed.add(i);
+				if (i == 2)
+					monitor.setCanceled(true);
+			}, monitor);
+			fail("1.0");
+		} catch (OperationCanceledException e) {
+			assertEquals(Arrays.asList(1, 2), consumed);
+		}
+	}
+
+	/**
+	 * Publishing concurrently must produce the same repositories as publishing
+	 * sequentially.
+	 */
+	public void testSameResultAsSequential() throws Exception {
+		setThreads(1);
+		File sequential = publish();
+		setThreads(4);
+		File parallel = publish();
+		assertEquals(readRepository(new File(sequential, "content.xml")), readRepository(new File(parallel, "content.xml")));
+		assertEquals(readRepository(new File(sequential, "artifacts.xml")), readRepository(new File(parallel, "artifacts.xml")));
+	}
+
+	private File publish() throws Exception {
+		File testData = TestActivator.getTestDataFolder();
+		List<File> bundles = new ArrayList<>();
+		bundles.addAll(Arrays.asList(new File(testData, "BundlesActionTest").listFiles()));
+		bundles.addAll(Arrays.asList(new File(testData, "FragmentPublisherTest").listFiles()));
+		File[] features = new File(testData, "FeaturesActionTest").listFiles(File::isDirectory);
+
+		File target = getTempFolder();
+		PublisherInfo info = new PublisherInfo();
+		info.setArtifactOptions(IPublisherInfo.A_PUBLISH | IPublisherInfo.A_INDEX);
+		info.setMetadataRepository(createMetadataRepository(target.toURI(), null));
+		info.setArtifactRepository(createArtifactRepository(target.toURI(), null));
+		IPublisherAction[] actions = new IPublisherAction[] {new FeaturesAction(features), new BundlesAction(bundles.toArray(new File[bundles.size()]))};
+		new Publisher(info).publish(actions, new NullProgressMonitor());
+		return target;
+	}
+
+	/*
+	 * Returns the content of the given repository file without the timestamp and
+	 * the generated artifact ids, which differ from run to run.
+	 */
+	private static String readRepository(File file) throws IOException {
+		return Files.readAllLines(file.toPath()).stream().filter(line -> !line.contains("p2.timestamp") && !line.contains("artifact.uuid")).collect(Collectors.joining("\n"));
+	}
+}
@@ -37,6 +37,7 @@ public class AllTests extends TestCase {
 			suite.addTest(SharedInstallTestsProfileSpoofEnabledConfigured.suite());
 		}
 		suite.addTest(Bug362692.suite());
+		suite.addTestSuite(DropinsFingerprintTest.class);
 		return suite;
 	}
 }
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.reconciler.dropins;
+
+import java.io.*;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.jar.*;
+import org.eclipse.equinox.internal.p2.reconciler.dropins.DropinsFingerprint;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class DropinsFingerprintTest extends AbstractProvisioningTest {
+	private File dropins;
+	private Collection<File> locations;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dropins = getTempFolder();
+		locations = Collections.singleton(dropins);
+		createJar(new File(dropins, "a_1.0.0.jar"), "1.0.0");
+		File bundle = new File(dropins, "b_1.0.0/META-INF");
+		bundle.mkdirs();
+		writeFile(new File(bundle, "MANIFEST.MF"), "Bundle-SymbolicName: b\n");
+	}
+
+	private static void createJar(File file, String version) throws IOException {
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		manifest.getMainAttributes().putValue("Bundle-Version", version);
+		try (JarOutputStream output = new JarOutputStream(new FileOutputStream(file), manifest)) {
+			// only the manifest
+		}
+	}
+
+	private static void writeFile(File file, String content) throws IOException {
+		try (Writer writer = new FileWriter(file)) {
+			writer.write(content);
+		}
+	}
+
+	private DropinsFingerprint writeAndRead() {
+		File file = new File(getTempFolder(), "cache.fingerprint");
+		DropinsFingerprint.compute(locations).write(file);
+		return DropinsFingerprint.read(file);
+	}
+
+	public void testUnchanged() {
+		DropinsFingerprint fingerprint = writeAndRead();
+		assertNotNull(fingerprint);
+		assertTrue(fingerprint.matches(locations));
+	}
+
+	public void testMissing() {
+		assertNull(DropinsFingerprint.read(new File(getTempFolder(), "cache.fingerprint")));
+	}
+
+	public void testTouchedWithSameContent() throws IOException {
+		DropinsFingerprint fingerprint = writeAndRead();
+		File jar = new File(dropins, "a_1.0.0.jar");
+		jar.setLastModified(jar.lastModified() - 10000);
+		File bundle = new File(dropins, "b_1.0.0");
+		new File(bundle, "other.txt").createNewFile();
+		bundle.setLastModified(bundle.lastModified() - 10000);
+		assertTrue(fingerprint.matches(locations));
+	}
+
+	public void testJarReplacedInPlace() throws IOException {
+		DropinsFingerprint fingerprint = writeAndRead();
+		File jar = new File(dropins, "a_1.0.0.jar");
+		long lastModified = jar.lastModified();
+		createJar(jar, "1.0.1");
+		jar.setLastModified(lastModified - 10000);
+		assertFalse(fingerprint.matches(locations));
+	}
+
+	public void testManifestChanged() throws IOException {
+		DropinsFingerprint fingerprint = writeAndRead();
+		File manifest = new File(dropins, "b_1.0.0/META-INF/MANIFEST.MF");
+		long lastModified = manifest.getParentFile().getParentFile().lastModified();
+		writeFile(manifest, "Bundle-SymbolicName: c\n");
+		new File(dropins, "b_1.0.0").setLastModified(lastModified - 10000);
+		assertFalse(fingerprint.matches(locations));
+	}
+
+	public void testAddedAndRemoved() throws IOException {
+		DropinsFingerprint fingerprint = writeAndRead();
+		File added = new File(dropins, "c_1.0.0.jar");
+		createJar(added, "1.0.0");
+		assertFalse(fingerprint.matches(locations));
+		added.delete();
+		assertTrue(fingerprint.matches(locations));
+		new File(dropins, "a_1.0.0.jar").delete();
+		assertFalse(fingerprint.matches(locations));
+	}
+}
@@ -38,6 +38,8 @@ public class AllTestServerTests extends AbstractTestServerSuite {
 
 		suite.addTestSuite(FileInfoReaderTest.class);
 		suite.addTestSuite(FileReaderTest.class);
+		suite.addTestSuite(HttpClientTransportTest.class);
+		suite.addTestSuite(RepositoryTransportTest.class);
 		suite.addTestSuite(NTLMTest.class);
 		suite.addTestSuite(MirrorRequestTest2.class);
 		suite.addTestSuite(StatsTest.class);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011, 2017 EclipseSource.
+ * Copyright (c) 2011, 2021 EclipseSource.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -10,18 +10,17 @@
  ******************************************************************************/
 package org.eclipse.equinox.p2.tests.repository;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
-import org.eclipse.core.runtime.IPath;
-import org.eclipse.core.runtime.NullProgressMonitor;
-import org.eclipse.core.runtime.Path;
-import org.eclipse.core.runtime.Platform;
-import org.eclipse.equinox.internal.p2.repository.CacheManager;
-import org.eclipse.equinox.internal.p2.repository.Transport;
+import java.nio.file.Files;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.*;
 import org.eclipse.equinox.p2.core.IAgentLocation;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.IProvisioningAgentProvider;
@@ -100,6 +99,141 @@ public class CacheManagerTest {
 				lastModifiedInitial == cache2.lastModified());
 	}
 
+	@Test
+	public void testCacheFromFile() throws ProvisionException, IOException {
+		URI remoteFile = contentXmlFile.toURI();
+		File cache = cacheManager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertTrue(cache.getName().endsWith(".jar")); //$NON-NLS-1$
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+		// unchanged, the cache file is not downloaded again
+		long lastModified = cache.lastModified();
+		Files.write(cache.toPath(), new byte[] {1});
+		cache.setLastModified(lastModified);
+		cache = cacheManager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertEquals(1, cache.length());
+
+		// Do update
+		contentXmlFile.setLastModified(lastModified + ONE_HOUR);
+		cache = cacheManager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertEquals(0, cache.length());
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+	}
+
+	@Test
+	public void testFreshnessWindow() throws ProvisionException, IOException {
+		ConditionalTransport transport = new ConditionalTransport();
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		manager.setMaxAge(ONE_HOUR);
+		File cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		long lastModified = cache.lastModified();
+		int requests = transport.requests;
+		// within the window the server is not asked
+		contentXmlFile.setLastModified(contentXmlFile.lastModified() + ONE_HOUR);
+		cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(requests, transport.requests);
+		assertEquals(lastModified, cache.lastModified());
+
+		manager.setMaxAge(0);
+		cache = manager.createCache(repositoryLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+	}
+
+	@Test
+	public void testConditionalRevalidation() throws ProvisionException, IOException {
+		ConditionalTransport transport = new ConditionalTransport();
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		URI remoteFile = contentXmlFile.toURI();
+		File cache = manager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+		// unchanged, a single conditional request confirms the cache file
+		int requests = transport.requests;
+		cache = manager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertEquals(requests + 1, transport.requests);
+
+		// changed, the same request downloads it
+		Files.write(contentXmlFile.toPath(), new byte[] {1, 2});
+		contentXmlFile.setLastModified(contentXmlFile.lastModified() + ONE_HOUR);
+		cache = manager.createCacheFromFile(remoteFile, ".jar", new NullProgressMonitor()); //$NON-NLS-1$
+		assertEquals(requests + 2, transport.requests);
+		assertEquals(2, cache.length());
+		assertEquals(contentXmlFile.lastModified(), cache.lastModified());
+	}
+
+	@Test
+	public void testCacheFromOptionalFile() throws ProvisionException, IOException {
+		ConditionalTransport transport = new ConditionalTransport();
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		File cache = manager.createCacheFromOptionalFile(contentXmlFile.toURI(), ".index", new NullProgressMonitor()); //$NON-NLS-1$
+		assertNotNull(cache);
+		assertEquals(contentXmlFile.length(), cache.length());
+		assertEquals(1, transport.requests);
+
+		// the absence of a file is remembered
+		URI missingFile = new File(contentXmlFile.getParentFile(), "p2.index").toURI(); //$NON-NLS-1$
+		assertNull(manager.createCacheFromOptionalFile(missingFile, ".index", new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, transport.requests);
+		Files.write(new File(missingFile).toPath(), new byte[] {1});
+		assertNull(manager.createCacheFromOptionalFile(missingFile, ".index", new NullProgressMonitor())); //$NON-NLS-1$
+		assertEquals(2, transport.requests);
+
+		// until the cache file is deleted
+		manager.deleteCacheFromFile(missingFile, ".index"); //$NON-NLS-1$
+		cache = manager.createCacheFromOptionalFile(missingFile, ".index", new NullProgressMonitor()); //$NON-NLS-1$
+		assertNotNull(cache);
+		assertEquals(1, cache.length());
+		assertEquals(3, transport.requests);
+	}
+
+	/**
+	 * A transport for local files answering conditional downloads in one
+	 * request, with the last modified date of the file as its entity tag.
+	 */
+	static class ConditionalTransport extends Transport {
+		int requests;
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return download(toDownload, target, monitor);
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			requests++;
+			File file = new File(toDownload);
+			try {
+				Files.copy(file.toPath(), target);
+			} catch (IOException e) {
+				return new DownloadStatus(IStatus.ERROR, "test", ProvisionException.ARTIFACT_NOT_FOUND, e.getMessage(), e); //$NON-NLS-1$
+			}
+			DownloadStatus status = new DownloadStatus(IStatus.OK, "test", Status.OK_STATUS.getMessage()); //$NON-NLS-1$
+			status.setLastModified(file.lastModified());
+			status.setETag(Long.toString(file.lastModified()));
+			return status;
+		}
+
+		@Override
+		public IStatus downloadIfModified(URI toDownload, OutputStream target, String etag, long lastModified, IProgressMonitor monitor) {
+			if (etag == null || !etag.equals(Long.toString(new File(toDownload).lastModified())))
+				return download(toDownload, target, monitor);
+			requests++;
+			return new DownloadStatus(IStatus.OK, "test", DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null); //$NON-NLS-1$
+		}
+
+		@Override
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			return new FileInputStream(new File(toDownload));
+		}
+
+		@Override
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			requests++;
+			File file = new File(toDownload);
+			if (!file.exists())
+				throw new FileNotFoundException(toDownload.toString());
+			return file.lastModified();
+		}
+	}
+
 	private URI createRepistory() throws IOException {
 		File repository = File.createTempFile("remoteFile", ""); //$NON-NLS-1$//$NON-NLS-2$
 		repository.deleteOnExit();
@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.transport.ecf.HttpClientTransport;
+import org.eclipse.equinox.internal.p2.transport.ecf.RepositoryTransport;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.tests.TestActivator;
+import org.eclipse.equinox.p2.tests.testserver.helper.AbstractTestServerClientCase;
+import org.osgi.framework.BundleActivator;
+
+/**
+ * Tests HttpClientTransport.
+ */
+public class HttpClientTransportTest extends AbstractTestServerClientCase {
+
+	/**
+	 * Loads the HTTP transport again, as if the optional proxy service package
+	 * was not available. The other classes come from the regular loaders.
+	 */
+	static class NoProxyServiceLoader extends ClassLoader {
+		private static final String PACKAGE = HttpClientTransport.class.getPackage().getName() + '.';
+		private static final String[] ISOLATED = {PACKAGE + "Activator", PACKAGE + "HttpClientTransport", PACKAGE + "ProxyServiceSelector"};
+
+		NoProxyServiceLoader() {
+			super(HttpClientTransportTest.class.getClassLoader());
+		}
+
+		private static boolean isIsolated(String name) {
+			for (String isolated : ISOLATED) {
+				if (name.equals(isolated) || name.startsWith(isolated + '$'))
+					return true;
+			}
+			return false;
+		}
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("org.eclipse.core.net.proxy."))
+				throw new ClassNotFoundException(name);
+			if (!isIsolated(name))
+				return super.loadClass(name, resolve);
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+				if (loaded != null)
+					return loaded;
+				try (InputStream input = HttpClientTransport.class.getClassLoader().getResourceAsStream(name.replace('.', '/') + ".class")) {
+					if (input == null)
+						throw new ClassNotFoundException(name);
+					byte[] bytes = input.readAllBytes();
+					return defineClass(name, bytes, 0, bytes.length);
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+			}
+		}
+	}
+
+	private HttpClientTransport createTransport() {
+		return new HttpClientTransport(null, new RepositoryTransport());
+	}
+
+	public void testRead() throws URISyntaxException {
+		URI toDownload = new URI(getBaseURL() + "/public/index.html");
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus result = createTransport().download(toDownload, target, new NullProgressMonitor());
+		assertTrue("1.0", result.isOK());
+		assertTrue("1.1", target.size() > 0);
+		assertEquals("1.2", target.size(), ((DownloadStatus) result).getFileSize());
+	}
+
+	public void testReadFromPosition() throws URISyntaxException {
+		HttpClientTransport transport = createTransport();
+		URI toDownload = new URI(getBaseURL() + "/public/index.html");
+		ByteArrayOutputStream whole = new ByteArrayOutputStream();
+		assertTrue("1.0", transport.download(toDownload, whole, new NullProgressMonitor()).isOK());
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		assertTrue("1.1", transport.download(toDownload, rest, 10, new NullProgressMonitor()).isOK());
+		assertEquals("1.2", whole.toString().substring(10), rest.toString());
+	}
+
+	public void testReadStream() throws URISyntaxException, CoreException, IOException {
+		URI toDownload = new URI(getBaseURL() + "/public/index.html");
+		try (InputStream stream = createTransport().stream(toDownload, new NullProgressMonitor())) {
+			assertTrue("1.0", stream.read() != -1);
+		}
+	}
+
+	public void testNotFound() throws URISyntaxException {
+		URI toDownload = new URI(getBaseURL() + "/public/nothing.xml");
+		IStatus result = createTransport().download(toDownload, new ByteArrayOutputStream(), new NullProgressMonitor());
+		assertEquals("1.0", IStatus.ERROR, result.getSeverity());
+		assertEquals("1.1", ProvisionException.ARTIFACT_NOT_FOUND, result.getCode());
+	}
+
+	public void testLastModifiedNotFound() throws Exception {
+		URI toDownload = new URI(getBaseURL() + "/public/nothing.xml");
+		try {
+			createTransport().getLastModified(toDownload, new NullProgressMonitor());
+			fail("1.0");
+		} catch (FileNotFoundException e) {
+			// expected
+		}
+	}
+
+	public void testNotModified() throws URISyntaxException {
+		HttpClientTransport transport = createTransport();
+		URI toDownload = new URI(getBaseURL() + "/conditional/etag");
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		DownloadStatus result = (DownloadStatus) transport.download(toDownload, target, new NullProgressMonitor());
+		assertTrue("1.0", result.isOK());
+		assertEquals("1.1", "Conditional content", target.toString());
+		assertEquals("1.2", 60000, result.getMaxAge());
+		String etag = result.getETag();
+		assertNotNull("1.3", etag);
+
+		// the server only answers 304 if the entity tag was sent
+		target = new ByteArrayOutputStream();
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, target, etag, 0, new NullProgressMonitor());
+		assertTrue("2.0", result.isOK());
+		assertEquals("2.1", DownloadStatus.CODE_NOT_MODIFIED, result.getCode());
+		assertEquals("2.2", 0, target.size());
+		assertEquals("2.3", etag, result.getETag());
+		assertEquals("2.4", 60000, result.getMaxAge());
+
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, target, "\"other\"", 0, new NullProgressMonitor());
+		assertEquals("3.0", IStatus.OK, result.getCode());
+		assertEquals("3.1", "Conditional content", target.toString());
+	}
+
+	public void testNotModifiedSince() throws URISyntaxException {
+		HttpClientTransport transport = createTransport();
+		URI toDownload = new URI(getBaseURL() + "/conditional/modified");
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		DownloadStatus result = (DownloadStatus) transport.download(toDownload, target, new NullProgressMonitor());
+		assertTrue("1.0", result.isOK());
+		long lastModified = result.getLastModified();
+		assertTrue("1.1", lastModified > 0);
+
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, new ByteArrayOutputStream(), null, lastModified, new NullProgressMonitor());
+		assertEquals("2.0", DownloadStatus.CODE_NOT_MODIFIED, result.getCode());
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, new ByteArrayOutputStream(), null, lastModified - 1000, new NullProgressMonitor());
+		assertEquals("2.1", IStatus.OK, result.getCode());
+	}
+
+	public void testAuthenticated() throws URISyntaxException {
+		URI toDownload = new URI(getBaseURL() + "/private/index.html");
+		setAladdinLoginService();
+		try {
+			ByteArrayOutputStream target = new ByteArrayOutputStream();
+			IStatus result = createTransport().download(toDownload, target, new NullProgressMonitor());
+			assertTrue("1.0", result.isOK());
+			assertTrue("1.1", target.size() > 0);
+		} finally {
+			clearLoginService();
+		}
+	}
+
+	public void testAuthenticationFailed() throws URISyntaxException {
+		URI toDownload = new URI(getBaseURL() + "/never/index.html");
+		setAladdinLoginService();
+		try {
+			IStatus result = createTransport().download(toDownload, new ByteArrayOutputStream(), new NullProgressMonitor());
+			assertEquals("1.0", IStatus.ERROR, result.getSeverity());
+			assertEquals("1.1", ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, result.getCode());
+		} finally {
+			clearLoginService();
+		}
+	}
+
+	public void testBadPort() throws URISyntaxException {
+		URI toDownload = new URI("http://localhost:1/nothing.xml");
+		IStatus status = createTransport().download(toDownload, new ByteArrayOutputStream(), new NullProgressMonitor());
+		assertEquals("1.0", IStatus.ERROR, status.getSeverity());
+	}
+
+	public void testFallback() throws IOException {
+		File source = File.createTempFile("content", ".txt");
+		try {
+			try (Writer writer = new FileWriter(source)) {
+				writer.write("content");
+			}
+			ByteArrayOutputStream target = new ByteArrayOutputStream();
+			IStatus result = createTransport().download(source.toURI(), target, new NullProgressMonitor());
+			assertTrue("1.0", result.isOK());
+			assertEquals("1.1", "content", target.toString());
+		} finally {
+			source.delete();
+		}
+	}
+
+	public void testWithoutProxyService() throws Exception {
+		ClassLoader loader = new NoProxyServiceLoader();
+		// the selector only looks for the proxy service with the context of the bundle
+		BundleActivator activator = (BundleActivator) loader.loadClass(NoProxyServiceLoader.PACKAGE + "Activator").getConstructor().newInstance();
+		activator.start(TestActivator.getContext());
+		Class<?> transportClass = loader.loadClass(HttpClientTransport.class.getName());
+		assertNotSame("1.0", HttpClientTransport.class, transportClass);
+		Transport transport = (Transport) transportClass.getConstructor(IProvisioningAgent.class, Transport.class).newInstance(null, new RepositoryTransport());
+
+		URI toDownload = new URI(getBaseURL() + "/public/index.html");
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		IStatus result = transport.download(toDownload, target, new NullProgressMonitor());
+		assertTrue("2.0", result.isOK());
+		assertTrue("2.1", target.size() > 0);
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.equinox.internal.p2.repository.helpers.NotFoundCache;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryCache;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.junit.Test;
+
+/**
+ * Tests for the caches of loaded and unavailable repositories.
+ */
+public class RepositoryCacheTest {
+	private final Map<IRepository<IInstallableUnit>, Long> weights = new HashMap<>();
+	private final RepositoryCache<IInstallableUnit> cache = new RepositoryCache<>(10, weights::get);
+
+	@SuppressWarnings("unchecked")
+	private IRepository<IInstallableUnit> createRepository(long weight) {
+		IRepository<IInstallableUnit> repository = (IRepository<IInstallableUnit>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IRepository.class}, (proxy, method, args) -> {
+			if (method.getName().equals("equals"))
+				return proxy == args[0];
+			if (method.getName().equals("hashCode"))
+				return System.identityHashCode(proxy);
+			return null;
+		});
+		weights.put(repository, weight);
+		return repository;
+	}
+
+	@Test
+	public void testHitsAndMisses() {
+		IRepository<IInstallableUnit> repository = createRepository(1);
+		assertNull(cache.get("a"));
+		cache.put("a", repository);
+		assertSame(repository, cache.get("a"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		cache.remove("a");
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		IRepository<IInstallableUnit> a = createRepository(4);
+		IRepository<IInstallableUnit> b = createRepository(4);
+		cache.put("a", a);
+		cache.put("b", b);
+		cache.get("a");
+		cache.put("c", createRepository(4));
+		// b was used least recently
+		assertEquals(1, cache.getEvictions());
+		assertEquals(8, cache.getWeight());
+		// an evicted repository which is still reachable is held strongly again
+		assertSame(b, cache.get("b"));
+		assertEquals(2, cache.getEvictions());
+		assertEquals(8, cache.getWeight());
+	}
+
+	@Test
+	public void testPinnedNotEvicted() {
+		Object owner = new Object();
+		cache.put("a", createRepository(6));
+		cache.pin("a", owner);
+		cache.put("b", createRepository(6));
+		assertEquals(0, cache.getEvictions());
+		assertEquals(12, cache.getWeight());
+		cache.put("c", createRepository(1));
+		// the pinned repository stays, the other ones are evicted
+		assertEquals(1, cache.getEvictions());
+		assertEquals(7, cache.getWeight());
+	}
+
+	@Test
+	public void testPutSameRepository() {
+		IRepository<IInstallableUnit> repository = createRepository(3);
+		cache.put("a", repository);
+		cache.put("a", repository);
+		assertEquals(3, cache.getWeight());
+		cache.put("a", createRepository(5));
+		assertEquals(5, cache.getWeight());
+	}
+
+	@Test
+	public void testNotFoundCache() throws IOException {
+		File file = new File(Files.createTempDirectory("notfound").toFile(), "unavailable.properties");
+		URI remote = URI.create("https://example.org/repository");
+		URI local = new File(file.getParentFile(), "repository").toURI();
+		NotFoundCache notFound = new NotFoundCache(file, 60000);
+		notFound.add(remote);
+		notFound.add(local);
+		assertTrue(notFound.contains(remote));
+		assertTrue(notFound.contains(local));
+		assertEquals(2, notFound.getHits());
+
+		// only remote locations are kept across sessions
+		notFound = new NotFoundCache(file, 60000);
+		assertTrue(notFound.contains(remote));
+		assertFalse(notFound.contains(local));
+
+		// entries made with a longer time to live are dropped
+		notFound = new NotFoundCache(file, 1000);
+		assertFalse(notFound.contains(remote));
+
+		notFound = new NotFoundCache(file, 60000);
+		notFound.remove(remote);
+		assertFalse(file.exists());
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.transport.ecf.RepositoryTransport;
+import org.eclipse.equinox.p2.core.IAgentLocation;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.testserver.helper.AbstractTestServerClientCase;
+
+/**
+ * Tests the conditional downloads of the ECF based RepositoryTransport. The
+ * test server only answers 304 (Not Modified) if the matching conditional
+ * header was sent.
+ */
+public class RepositoryTransportTest extends AbstractTestServerClientCase {
+	// the last modified date of the conditional content of the test server
+	private static final long LAST_MODIFIED = 1600000000000L;
+
+	private File cacheFolder;
+
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		cacheFolder = Files.createTempDirectory("RepositoryTransportTest").toFile();
+	}
+
+	@Override
+	public void tearDown() throws Exception {
+		AbstractProvisioningTest.delete(cacheFolder);
+		super.tearDown();
+	}
+
+	private CacheManager createCacheManager() {
+		URI dataArea = cacheFolder.toURI();
+		IAgentLocation location = (IAgentLocation) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IAgentLocation.class}, (proxy, method, args) -> method.getName().equals("getDataArea") ? dataArea : null);
+		CacheManager cacheManager = new CacheManager(location, new RepositoryTransport());
+		// revalidate on every load
+		cacheManager.setMaxAge(0);
+		return cacheManager;
+	}
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	private static long getValidated(File cacheFile) throws IOException {
+		Properties properties = new Properties();
+		try (InputStream input = new FileInputStream(cacheFile.getPath() + ".info")) {
+			properties.load(input);
+		}
+		return Long.parseLong(properties.getProperty("validated"));
+	}
+
+	public void testNotModified() throws URISyntaxException {
+		RepositoryTransport transport = new RepositoryTransport();
+		URI toDownload = new URI(getBaseURL() + "/conditional/etag");
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		assertTrue("1.0", transport.download(toDownload, target, new NullProgressMonitor()).isOK());
+		assertEquals("1.1", "Conditional content", target.toString());
+
+		// If-None-Match was sent
+		target = new ByteArrayOutputStream();
+		DownloadStatus result = (DownloadStatus) transport.downloadIfModified(toDownload, target, "\"p2-conditional-1\"", 0, new NullProgressMonitor());
+		assertTrue("2.0", result.isOK());
+		assertEquals("2.1", DownloadStatus.CODE_NOT_MODIFIED, result.getCode());
+		assertEquals("2.2", 0, target.size());
+
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, target, "\"other\"", 0, new NullProgressMonitor());
+		assertEquals("3.0", IStatus.OK, result.getCode());
+		assertEquals("3.1", "Conditional content", target.toString());
+	}
+
+	public void testNotModifiedSince() throws URISyntaxException {
+		RepositoryTransport transport = new RepositoryTransport();
+		URI toDownload = new URI(getBaseURL() + "/conditional/modified");
+
+		// If-Modified-Since was sent, as an HTTP date
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		DownloadStatus result = (DownloadStatus) transport.downloadIfModified(toDownload, target, null, LAST_MODIFIED, new NullProgressMonitor());
+		assertTrue("1.0", result.isOK());
+		assertEquals("1.1", DownloadStatus.CODE_NOT_MODIFIED, result.getCode());
+		assertEquals("1.2", 0, target.size());
+
+		result = (DownloadStatus) transport.downloadIfModified(toDownload, target, null, LAST_MODIFIED - 1000, new NullProgressMonitor());
+		assertEquals("2.0", IStatus.OK, result.getCode());
+		assertEquals("2.1", "Conditional content", target.toString());
+	}
+
+	public void testNotModifiedKeepsCache() throws URISyntaxException, ProvisionException, IOException {
+		CacheManager cacheManager = createCacheManager();
+		URI remoteFile = new URI(getBaseURL() + "/conditional/modified");
+		File cacheFile = cacheManager.createCacheFromFile(remoteFile, new NullProgressMonitor());
+		assertEquals("1.0", "Conditional content", read(cacheFile));
+		assertEquals("1.1", LAST_MODIFIED, cacheFile.lastModified());
+
+		// the server answers 304, so the cache file is not downloaded again
+		Files.write(cacheFile.toPath(), "Cached content".getBytes(StandardCharsets.UTF_8));
+		cacheFile.setLastModified(LAST_MODIFIED);
+		new File(cacheFile.getPath() + ".info").delete();
+		long before = System.currentTimeMillis();
+		assertEquals("2.0", cacheFile, cacheManager.createCacheFromFile(remoteFile, new NullProgressMonitor()));
+		assertEquals("2.1", "Cached content", read(cacheFile));
+		assertEquals("2.2", LAST_MODIFIED, cacheFile.lastModified());
+		assertTrue("2.3", getValidated(cacheFile) >= before);
+
+		// an older cache file is replaced
+		cacheFile.setLastModified(LAST_MODIFIED - 1000);
+		assertEquals("3.0", cacheFile, cacheManager.createCacheFromFile(remoteFile, new NullProgressMonitor()));
+		assertEquals("3.1", "Conditional content", read(cacheFile));
+		assertEquals("3.2", LAST_MODIFIED, cacheFile.lastModified());
+	}
+}
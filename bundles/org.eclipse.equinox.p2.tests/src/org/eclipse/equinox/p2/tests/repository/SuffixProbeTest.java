@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.helpers.SuffixProbe;
+import org.junit.Test;
+
+/**
+ * Tests for ordering repository suffixes by asking the server which files exist.
+ */
+public class SuffixProbeTest {
+	private static final String[] SUFFIXES = {"content.xml", "content.xml.xz", "compositeContent.xml", "site.xml", "eclipse", "@test.repository"};
+
+	/**
+	 * A transport which knows which files exist, and fails for the ones given
+	 * as broken.
+	 */
+	static class ProbeTransport extends Transport {
+		final Set<URI> existing = new HashSet<>();
+		final Set<URI> broken = new HashSet<>();
+		final Set<URI> probed = Collections.synchronizedSet(new HashSet<>());
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return download(toDownload, target, monitor);
+		}
+
+		@Override
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			return Status.CANCEL_STATUS;
+		}
+
+		@Override
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			throw new FileNotFoundException(toDownload.toString());
+		}
+
+		@Override
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) throws CoreException, FileNotFoundException {
+			probed.add(toDownload);
+			if (broken.contains(toDownload))
+				throw new CoreException(new Status(IStatus.ERROR, "test", "broken")); //$NON-NLS-1$ //$NON-NLS-2$
+			if (!existing.contains(toDownload))
+				throw new FileNotFoundException(toDownload.toString());
+			return 1;
+		}
+	}
+
+	private final URI location = URI.create("http://localhost/repository/"); //$NON-NLS-1$
+	private final ProbeTransport transport = new ProbeTransport();
+
+	@Test
+	public void testExistingFirst() {
+		transport.existing.add(location.resolve("compositeContent.jar")); //$NON-NLS-1$
+		String[] sorted = SuffixProbe.sort(transport, location, SUFFIXES);
+		assertArrayEquals(new String[] {"compositeContent.xml", "eclipse", "@test.repository", "content.xml", "content.xml.xz", "site.xml"}, sorted); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		// suffixes which are no files are not asked for
+		assertFalse(transport.probed.contains(location.resolve("eclipse"))); //$NON-NLS-1$
+	}
+
+	@Test
+	public void testUnclearAnswerBeforeMissing() {
+		transport.broken.add(location.resolve("content.xml.xz")); //$NON-NLS-1$
+		transport.existing.add(location.resolve("site.xml")); //$NON-NLS-1$
+		String[] sorted = SuffixProbe.sort(transport, location, SUFFIXES);
+		assertArrayEquals(new String[] {"site.xml", "content.xml.xz", "eclipse", "@test.repository", "content.xml", "compositeContent.xml"}, sorted); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+
+	@Test
+	public void testNothingFoundKeepsAllSuffixes() {
+		// an update site named by its site.xml has no repository files below it
+		URI site = URI.create("http://localhost/foo/site.xml"); //$NON-NLS-1$
+		String[] sorted = SuffixProbe.sort(transport, site, SUFFIXES);
+		assertArrayEquals(new String[] {"eclipse", "@test.repository", "content.xml", "content.xml.xz", "compositeContent.xml", "site.xml"}, sorted); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.eclipse.equinox.internal.simpleconfigurator.utils.BundleInfo;
+import org.eclipse.equinox.internal.simpleconfigurator.utils.BundlesInfoSnapshot;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class BundlesInfoSnapshotTest extends AbstractProvisioningTest {
+
+	public void testWriteRead() throws Exception {
+		File folder = getTempFolder();
+		URI base = folder.toURI();
+
+		BundleInfo a = new BundleInfo("a", "1.0.0", new URI("plugins/a_1.0.0.jar"), 4, true);
+		a.setBaseLocation(base);
+		BundleInfo b = new BundleInfo("b", "2.0.0", new File(folder, "b_2.0.0.jar").toURI(), BundleInfo.NO_LEVEL, false);
+
+		byte[] digest = new byte[] {1, 2, 3};
+		long[] stamp = new long[] {2, 42};
+		File file = new File(folder, "last.bundles.snapshot");
+		new BundlesInfoSnapshot(digest, stamp, new BundleInfo[] {a, b}, new long[] {7, BundlesInfoSnapshot.NO_BUNDLE}).write(file);
+
+		BundlesInfoSnapshot read = BundlesInfoSnapshot.read(file);
+		assertNotNull(read);
+		assertTrue(read.hasDigest(digest));
+		assertFalse(read.hasDigest(new byte[] {1, 2, 4}));
+		assertTrue(read.hasFrameworkStamp(stamp));
+		assertFalse(read.hasFrameworkStamp(new long[] {3, 42}));
+
+		BundleInfo[] bundles = read.getBundles();
+		assertEquals(2, bundles.length);
+		assertTrue(BundlesInfoSnapshot.isSameEntry(a, bundles[0]));
+		assertTrue(BundlesInfoSnapshot.isSameEntry(b, bundles[1]));
+		assertEquals(7, read.getBundleId(0));
+		assertEquals(BundlesInfoSnapshot.NO_BUNDLE, read.getBundleId(1));
+	}
+
+	public void testReadCorrupt() throws IOException {
+		File file = new File(getTempFolder(), "last.bundles.snapshot");
+		assertNull(BundlesInfoSnapshot.read(file));
+
+		Files.write(file.toPath(), new byte[] {0, 1, 2});
+		assertNull(BundlesInfoSnapshot.read(file));
+	}
+
+	public void testIsSameEntry() throws Exception {
+		BundleInfo a = new BundleInfo("a", "1.0.0", new URI("plugins/a_1.0.0.jar"), 4, true);
+		assertTrue(BundlesInfoSnapshot.isSameEntry(a, new BundleInfo("a", "1.0.0", new URI("plugins/a_1.0.0.jar"), 4, true)));
+		assertFalse(BundlesInfoSnapshot.isSameEntry(a, new BundleInfo("a", "1.0.0", new URI("plugins/a_1.0.0.jar"), 5, true)));
+		assertFalse(BundlesInfoSnapshot.isSameEntry(a, new BundleInfo("a", "1.0.0", new URI("plugins/a_1.0.0.jar"), 4, false)));
+		assertFalse(BundlesInfoSnapshot.isSameEntry(a, new BundleInfo("a", "1.0.1", new URI("plugins/a_1.0.1.jar"), 4, true)));
+	}
+
+	public void testComputeDigest() throws IOException {
+		File folder = getTempFolder();
+		File bundlesInfo = new File(folder, "bundles.info");
+		Files.write(bundlesInfo.toPath(), "a,1.0.0,plugins/a_1.0.0.jar,4,true\n".getBytes());
+
+		byte[] digest = BundlesInfoSnapshot.computeDigest(bundlesInfo.toURL(), folder.toURI(), true);
+		assertNotNull(digest);
+		assertTrue(Arrays.equals(digest, BundlesInfoSnapshot.computeDigest(bundlesInfo.toURL(), folder.toURI(), true)));
+		assertFalse(Arrays.equals(digest, BundlesInfoSnapshot.computeDigest(bundlesInfo.toURL(), folder.toURI(), false)));
+
+		Files.write(bundlesInfo.toPath(), "a,1.0.0,plugins/a_1.0.0.jar,4,false\n".getBytes());
+		assertFalse(Arrays.equals(digest, BundlesInfoSnapshot.computeDigest(bundlesInfo.toURL(), folder.toURI(), true)));
+	}
+}
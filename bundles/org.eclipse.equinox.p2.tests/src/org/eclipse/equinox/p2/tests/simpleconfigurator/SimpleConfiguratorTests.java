@@ -39,6 +39,9 @@ public class SimpleConfiguratorTests {
 		suite.addTestSuite(NonExclusiveModeExtended.class);
 		suite.addTestSuite(NonExclusiveModeExtendedConfigured.class);
 
+		suite.addTestSuite(BundlesInfoSnapshotTest.class);
+		suite.addTestSuite(WiringAnalyzerTest.class);
+
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import org.osgi.framework.*;
+import org.osgi.framework.namespace.BundleNamespace;
+import org.osgi.framework.namespace.PackageNamespace;
+import org.osgi.framework.wiring.*;
+import org.osgi.resource.Namespace;
+
+/**
+ * A synthetic, in-memory model of bundles and their wirings, large enough to
+ * exercise the refresh computation of the simple configurator without starting
+ * a framework.
+ */
+public class SyntheticWiring {
+	private final List<Bundle> bundles = new ArrayList<>();
+	private final Map<String, BundleCapability> packages = new HashMap<>();
+
+	public List<Bundle> getBundles() {
+		return bundles;
+	}
+
+	/**
+	 * Adds a resolved bundle.
+	 *
+	 * @param name the symbolic name; the bundle also exports a package with this name
+	 * @param imports packages imported and wired to bundles added before
+	 * @param optionalImports packages imported optionally; they are wired if a
+	 * bundle added before exports them
+	 */
+	public Bundle addBundle(String name, String[] imports, String[] optionalImports) {
+		Revision revision = new Revision(bundles.size(), name);
+		revision.capabilities.add(new Capability(revision, PackageNamespace.PACKAGE_NAMESPACE, name));
+		revision.capabilities.add(new Capability(revision, BundleNamespace.BUNDLE_NAMESPACE, name));
+		for (String pkg : imports)
+			revision.requirements.add(new Requirement(revision, PackageNamespace.PACKAGE_NAMESPACE, pkg, false));
+		for (String pkg : optionalImports)
+			revision.requirements.add(new Requirement(revision, PackageNamespace.PACKAGE_NAMESPACE, pkg, true));
+		resolve(revision);
+		bundles.add(revision.bundle);
+		packages.put(name, revision.capabilities.get(0));
+		return revision.bundle;
+	}
+
+	/**
+	 * Resolves the bundle again, creating a new wiring that wires every requirement
+	 * that can be satisfied by the other bundles.
+	 */
+	public void rewire(Bundle bundle) {
+		resolve((Revision) bundle.adapt(BundleRevision.class));
+	}
+
+	private void resolve(Revision revision) {
+		List<BundleWire> wires = new ArrayList<>();
+		for (BundleRequirement requirement : revision.requirements) {
+			BundleCapability capability = packages.get(((Requirement) requirement).name);
+			if (capability != null && capability.getRevision() != revision)
+				wires.add(new Wire(capability, requirement));
+		}
+		revision.wiring = (BundleWiring) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {BundleWiring.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getRequiredWires" :
+					return wires;
+				case "getRevision" :
+					return revision;
+				case "getBundle" :
+					return revision.bundle;
+				case "isCurrent" :
+				case "isInUse" :
+					return Boolean.TRUE;
+				case "hashCode" :
+					return System.identityHashCode(proxy);
+				case "equals" :
+					return proxy == args[0];
+				case "toString" :
+					return "wiring of " + revision.name; //$NON-NLS-1$
+				default :
+					throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	static class Capability implements BundleCapability {
+		final Revision revision;
+		final String namespace;
+		final Map<String, Object> attributes;
+
+		Capability(Revision revision, String namespace, String name) {
+			this.revision = revision;
+			this.namespace = namespace;
+			this.attributes = Collections.singletonMap(namespace, name);
+		}
+
+		@Override
+		public String getNamespace() {
+			return namespace;
+		}
+
+		@Override
+		public Map<String, String> getDirectives() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return attributes;
+		}
+
+		@Override
+		public BundleRevision getRevision() {
+			return revision;
+		}
+
+		@Override
+		public BundleRevision getResource() {
+			return revision;
+		}
+	}
+
+	static class Requirement implements BundleRequirement {
+		final Revision revision;
+		final String namespace;
+		final String name;
+		final Map<String, String> directives = new HashMap<>();
+		final Filter filter;
+
+		Requirement(Revision revision, String namespace, String name, boolean optional) {
+			this.revision = revision;
+			this.namespace = namespace;
+			this.name = name;
+			String filterString = "(" + namespace + "=" + name + ")"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			directives.put(Namespace.REQUIREMENT_FILTER_DIRECTIVE, filterString);
+			if (optional)
+				directives.put(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE, Namespace.RESOLUTION_OPTIONAL);
+			try {
+				filter = FrameworkUtil.createFilter(filterString);
+			} catch (InvalidSyntaxException e) {
+				throw new IllegalArgumentException(e);
+			}
+		}
+
+		@Override
+		public String getNamespace() {
+			return namespace;
+		}
+
+		@Override
+		public Map<String, String> getDirectives() {
+			return directives;
+		}
+
+		@Override
+		public Map<String, Object> getAttributes() {
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public BundleRevision getRevision() {
+			return revision;
+		}
+
+		@Override
+		public BundleRevision getResource() {
+			return revision;
+		}
+
+		@Override
+		public boolean matches(BundleCapability capability) {
+			return namespace.equals(capability.getNamespace()) && filter.matches(capability.getAttributes());
+		}
+	}
+
+	static class Wire implements BundleWire {
+		final BundleCapability capability;
+		final BundleRequirement requirement;
+
+		Wire(BundleCapability capability, BundleRequirement requirement) {
+			this.capability = capability;
+			this.requirement = requirement;
+		}
+
+		@Override
+		public BundleCapability getCapability() {
+			return capability;
+		}
+
+		@Override
+		public BundleRequirement getRequirement() {
+			return requirement;
+		}
+
+		@Override
+		public BundleWiring getProviderWiring() {
+			return capability.getRevision().getWiring();
+		}
+
+		@Override
+		public BundleWiring getRequirerWiring() {
+			return requirement.getRevision().getWiring();
+		}
+
+		@Override
+		public BundleRevision getProvider() {
+			return capability.getRevision();
+		}
+
+		@Override
+		public BundleRevision getRequirer() {
+			return requirement.getRevision();
+		}
+	}
+
+	static class Revision implements BundleRevision {
+		final String name;
+		final Bundle bundle;
+		final List<BundleCapability> capabilities = new ArrayList<>();
+		final List<BundleRequirement> requirements = new ArrayList<>();
+		BundleWiring wiring;
+
+		Revision(long id, String name) {
+			this.name = name;
+			this.bundle = (Bundle) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Bundle.class}, (proxy, method, args) -> {
+				switch (method.getName()) {
+					case "adapt" :
+						return args[0] == BundleRevision.class ? this : null;
+					case "getBundleId" :
+						return id;
+					case "getSymbolicName" :
+						return name;
+					case "getState" :
+						return Bundle.RESOLVED;
+					case "hashCode" :
+						return Long.hashCode(id);
+					case "equals" :
+						return proxy == args[0];
+					case "toString" :
+						return name;
+					default :
+						throw new UnsupportedOperationException(method.getName());
+				}
+			});
+		}
+
+		@Override
+		public Bundle getBundle() {
+			return bundle;
+		}
+
+		@Override
+		public String getSymbolicName() {
+			return name;
+		}
+
+		@Override
+		public Version getVersion() {
+			return Version.emptyVersion;
+		}
+
+		@Override
+		public List<BundleCapability> getDeclaredCapabilities(String namespace) {
+			return filter(capabilities, namespace);
+		}
+
+		@Override
+		public List<BundleRequirement> getDeclaredRequirements(String namespace) {
+			return filter(requirements, namespace);
+		}
+
+		@Override
+		public int getTypes() {
+			return 0;
+		}
+
+		@Override
+		public BundleWiring getWiring() {
+			return wiring;
+		}
+
+		@Override
+		public List<org.osgi.resource.Capability> getCapabilities(String namespace) {
+			return new ArrayList<>(getDeclaredCapabilities(namespace));
+		}
+
+		@Override
+		public List<org.osgi.resource.Requirement> getRequirements(String namespace) {
+			return new ArrayList<>(getDeclaredRequirements(namespace));
+		}
+
+		private static <T> List<T> filter(List<T> all, String namespace) {
+			if (namespace == null)
+				return all;
+			List<T> result = new ArrayList<>();
+			for (T element : all) {
+				String elementNamespace = element instanceof BundleCapability ? ((BundleCapability) element).getNamespace() : ((BundleRequirement) element).getNamespace();
+				if (namespace.equals(elementNamespace))
+					result.add(element);
+			}
+			return result;
+		}
+	}
+}
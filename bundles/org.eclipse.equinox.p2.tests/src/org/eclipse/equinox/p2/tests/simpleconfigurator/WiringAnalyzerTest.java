@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.simpleconfigurator;
+
+import java.util.*;
+import org.eclipse.equinox.internal.simpleconfigurator.WiringAnalyzer;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.wiring.*;
+import org.osgi.resource.Namespace;
+
+public class WiringAnalyzerTest extends AbstractProvisioningTest {
+	private static final String[] NONE = new String[0];
+
+	/**
+	 * Creates bundles "b0" .. "b(count-1)". Every bundle imports the package of
+	 * its predecessor and optionally imports the missing package "opt(i % 100)".
+	 */
+	public static SyntheticWiring createWiring(int count) {
+		SyntheticWiring wiring = new SyntheticWiring();
+		for (int i = 0; i < count; i++) {
+			String[] imports = i == 0 ? NONE : new String[] {"b" + (i - 1)};
+			wiring.addBundle("b" + i, imports, new String[] {"opt" + (i % 100)});
+		}
+		return wiring;
+	}
+
+	/**
+	 * The straightforward computation: every unwired optional requirement of every
+	 * previously resolved bundle is matched against every new capability.
+	 */
+	public static Set<Bundle> findAdditionalRefreshNaive(Collection<Bundle> previouslyResolved, Collection<Bundle> newlyResolved) {
+		List<BundleCapability> capabilities = new ArrayList<>();
+		for (Bundle bundle : newlyResolved)
+			capabilities.addAll(bundle.adapt(BundleRevision.class).getDeclaredCapabilities(null));
+		Set<Bundle> result = new HashSet<>();
+		for (Bundle bundle : previouslyResolved) {
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			Set<BundleRequirement> optional = new HashSet<>();
+			for (BundleRequirement req : revision.getDeclaredRequirements(null))
+				if (Namespace.RESOLUTION_OPTIONAL.equals(req.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE)))
+					optional.add(req);
+			for (BundleWire wire : revision.getWiring().getRequiredWires(null))
+				optional.remove(wire.getRequirement());
+			search: for (BundleRequirement req : optional)
+				for (BundleCapability capability : capabilities)
+					if (req.matches(capability)) {
+						result.add(bundle);
+						break search;
+					}
+		}
+		return result;
+	}
+
+	public void testNoNewCapabilities() {
+		SyntheticWiring wiring = createWiring(10);
+		WiringAnalyzer analyzer = new WiringAnalyzer();
+		assertTrue(analyzer.findAdditionalRefresh(wiring.getBundles(), Collections.emptySet()).isEmpty());
+	}
+
+	public void testFindAdditionalRefresh() {
+		SyntheticWiring wiring = createWiring(2000);
+		List<Bundle> previouslyResolved = new ArrayList<>(wiring.getBundles());
+		WiringAnalyzer analyzer = new WiringAnalyzer();
+
+		// a bundle that satisfies nothing
+		Bundle unrelated = wiring.addBundle("unrelated", NONE, NONE);
+		assertTrue(analyzer.findAdditionalRefresh(previouslyResolved, Collections.singleton(unrelated)).isEmpty());
+
+		// a bundle exporting opt7 satisfies every 100th bundle
+		Bundle opt7 = wiring.addBundle("opt7", NONE, NONE);
+		Set<Bundle> result = analyzer.findAdditionalRefresh(previouslyResolved, Collections.singleton(opt7));
+		assertEquals(20, result.size());
+		assertEquals(findAdditionalRefreshNaive(previouslyResolved, Collections.singleton(opt7)), result);
+		for (Bundle bundle : result)
+			assertEquals(7, Integer.parseInt(bundle.getSymbolicName().substring(1)) % 100);
+	}
+
+	public void testIncrementalUpdate() {
+		SyntheticWiring wiring = createWiring(500);
+		List<Bundle> previouslyResolved = new ArrayList<>(wiring.getBundles());
+		WiringAnalyzer analyzer = new WiringAnalyzer();
+
+		Bundle opt3 = wiring.addBundle("opt3", NONE, NONE);
+		assertEquals(5, analyzer.findAdditionalRefresh(previouslyResolved, Collections.singleton(opt3)).size());
+
+		// after the refresh the requirers are wired to opt3 and are no longer candidates
+		previouslyResolved.add(opt3);
+		for (Bundle bundle : previouslyResolved)
+			wiring.rewire(bundle);
+		assertTrue(analyzer.findAdditionalRefresh(previouslyResolved, Collections.singleton(opt3)).isEmpty());
+
+		// bundles that are no longer resolved are not reported
+		Bundle opt4 = wiring.addBundle("opt4", NONE, NONE);
+		List<Bundle> remaining = previouslyResolved.subList(0, 250);
+		Set<Bundle> result = analyzer.findAdditionalRefresh(remaining, Collections.singleton(opt4));
+		assertEquals(3, result.size());
+		assertEquals(findAdditionalRefreshNaive(remaining, Collections.singleton(opt4)), result);
+	}
+}
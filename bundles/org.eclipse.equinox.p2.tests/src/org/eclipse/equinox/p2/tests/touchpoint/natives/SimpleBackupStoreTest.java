@@ -142,4 +142,52 @@ public class SimpleBackupStoreTest extends AbstractProvisioningTest {
 
 		assertTrue(Files.exists(path));
 	}
+
+	public void testBackupAllMovesTree() throws IOException {
+		Path emptyDir = aDir.resolve("empty");
+		Files.createDirectories(emptyDir);
+
+		SimpleBackupStore buStore = new SimpleBackupStore(null, BACKUP_PREFIX);
+		buStore.backupAll(aDir.toFile());
+
+		assertFalse(Files.exists(aDir));
+		assertTrue(Files.exists(buStore.getBackupRoot().toPath().resolve(SimpleBackupStore.TREES_MANIFEST)));
+
+		buStore.restore();
+
+		assertTrue(Files.exists(aFile));
+		assertTrue(Files.isDirectory(emptyDir));
+		assertFalse(Files.exists(buStore.getBackupRoot().toPath()));
+	}
+
+	public void testBackupAllRestoreIntoExistingDirectory() throws IOException {
+		SimpleBackupStore buStore = new SimpleBackupStore(null, BACKUP_PREFIX);
+		buStore.backupAll(aDir.toFile());
+
+		// Something recreated the directory after the backup
+		Path bDir = aDir.resolve("b");
+		Files.createDirectories(bDir);
+
+		buStore.restore();
+
+		assertTrue(Files.exists(aFile));
+		assertTrue(Files.isDirectory(bDir));
+		assertFalse(Files.exists(buStore.getBackupRoot().toPath()));
+	}
+
+	public void testBackupAllMovedTreeThenBackupInside() throws IOException {
+		SimpleBackupStore buStore = new SimpleBackupStore(null, BACKUP_PREFIX);
+		buStore.backupAll(aDir.toFile());
+
+		// A new file is written where the tree was and backed up in turn
+		Files.createDirectories(aaDir);
+		Path newFile = aaDir.resolve("new.txt");
+		Files.createFile(newFile);
+		buStore.backup(newFile.toFile());
+
+		buStore.restore();
+
+		assertTrue(Files.exists(aFile));
+		assertTrue(Files.exists(newFile));
+	}
 }
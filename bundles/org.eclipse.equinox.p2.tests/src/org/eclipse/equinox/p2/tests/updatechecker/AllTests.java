@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008 IBM Corporation and others.
+ * Copyright (c) 2008, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -20,7 +20,7 @@ import org.junit.runners.Suite;
  * All automated tests for the org.eclipse.equinox.p2.updatechecker bundle
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ UpdateCheckerTest.class })
+@Suite.SuiteClasses({ UpdateCheckerTest.class, UpdateCheckerDiscoveryTest.class })
 public class AllTests {
 	// test suite
 }
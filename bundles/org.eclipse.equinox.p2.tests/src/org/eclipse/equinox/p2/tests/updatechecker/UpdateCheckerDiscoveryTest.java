@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.updatechecker;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.equinox.internal.p2.updatechecker.UpdateChecker;
+import org.eclipse.equinox.internal.provisional.p2.updatechecker.*;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.junit.Test;
+
+/**
+ * Tests how the {@link UpdateChecker} schedules its checks and loads the
+ * repositories, with services which count what they are asked for.
+ */
+public class UpdateCheckerDiscoveryTest {
+	private static final long MAX_WAIT = 5000;
+
+	private final IInstallableUnit a1 = createIU("a", "1.0.0");
+	private final IInstallableUnit b1 = createIU("b", "1.0.0");
+	private final URI first = URI.create("http://localhost/first");
+	private final URI second = URI.create("http://localhost/second");
+	private final Map<URI, TestRepository> repositories = new LinkedHashMap<>();
+	private final Map<URI, Integer> loads = new ConcurrentHashMap<>();
+	// the repositories the planner looked at, in order
+	private final List<URI> planned = Collections.synchronizedList(new ArrayList<>());
+	private long profileTimestamp = 1;
+	private final UpdateChecker checker = new UpdateChecker(createAgent());
+
+	/**
+	 * A repository whose units and timestamp may change.
+	 */
+	class TestRepository {
+		final URI location;
+		Collection<IInstallableUnit> units;
+		String timestamp = "1"; //$NON-NLS-1$
+		final IMetadataRepository repository;
+
+		TestRepository(URI location, IInstallableUnit... units) {
+			this.location = location;
+			this.units = Arrays.asList(units);
+			this.repository = (IMetadataRepository) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMetadataRepository.class}, (proxy, method, args) -> {
+				switch (method.getName()) {
+					case "query" : //$NON-NLS-1$
+						planned.add(location);
+						return new CollectionResult<>(this.units).query((IQuery<IInstallableUnit>) args[0], null);
+					case "getProperty" : //$NON-NLS-1$
+						return IRepository.PROP_TIMESTAMP.equals(args[0]) ? timestamp : null;
+					case "getLocation" : //$NON-NLS-1$
+						return location;
+					case "getReferences" : //$NON-NLS-1$
+						return Collections.emptyList();
+					case "isModifiable" : //$NON-NLS-1$
+						return false;
+					case "equals" : //$NON-NLS-1$
+						return proxy == args[0];
+					case "hashCode" : //$NON-NLS-1$
+						return System.identityHashCode(proxy);
+					default :
+						return null;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Records on which threads the checks ran. A gated listener only lets a check
+	 * run once it is released.
+	 */
+	static class RecordingListener implements IUpdateListener {
+		final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		final BlockingQueue<Collection<IInstallableUnit>> events = new LinkedBlockingQueue<>();
+		final Semaphore gate;
+
+		RecordingListener(boolean gated) {
+			gate = gated ? new Semaphore(0) : null;
+		}
+
+		@Override
+		public void checkingForUpdates() {
+			threads.add(Thread.currentThread());
+			if (gate != null)
+				gate.acquireUninterruptibly();
+		}
+
+		Collection<IInstallableUnit> run() throws InterruptedException {
+			gate.release();
+			return next();
+		}
+
+		@Override
+		public void updatesAvailable(UpdateEvent event) {
+			events.add(event.getIUs());
+		}
+
+		Collection<IInstallableUnit> next() throws InterruptedException {
+			Collection<IInstallableUnit> ius = events.poll(MAX_WAIT, TimeUnit.MILLISECONDS);
+			assertNotNull("no updates reported", ius); //$NON-NLS-1$
+			return ius;
+		}
+	}
+
+	private static IInstallableUnit createIU(String id, String version) {
+		InstallableUnitDescription description = new InstallableUnitDescription();
+		description.setId(id);
+		description.setVersion(Version.create(version));
+		description.setUpdateDescriptor(MetadataFactory.createUpdateDescriptor(id, new VersionRange(Version.emptyVersion, true, Version.create(version), false), IUpdateDescriptor.NORMAL, null));
+		return MetadataFactory.createInstallableUnit(description);
+	}
+
+	private IProvisioningAgent createAgent() {
+		IMetadataRepositoryManager manager = (IMetadataRepositoryManager) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IMetadataRepositoryManager.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getKnownRepositories" : //$NON-NLS-1$
+					return repositories.keySet().toArray(new URI[0]);
+				case "loadRepository" : //$NON-NLS-1$
+					loads.merge((URI) args[0], 1, Integer::sum);
+					return repositories.get(args[0]).repository;
+				default :
+					return null;
+			}
+		});
+		IProfile profile = (IProfile) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IProfile.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "query" : //$NON-NLS-1$
+					return new CollectionResult<>(Arrays.asList(a1, b1)).query((IQuery<IInstallableUnit>) args[0], null);
+				case "getTimestamp" : //$NON-NLS-1$
+					return profileTimestamp;
+				default :
+					return null;
+			}
+		});
+		IProfileRegistry registry = (IProfileRegistry) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IProfileRegistry.class}, (proxy, method, args) -> method.getName().equals("getProfile") ? profile : null); //$NON-NLS-1$
+		// the planner offers the newer units of the same id which the context holds
+		IPlanner planner = (IPlanner) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IPlanner.class}, (proxy, method, args) -> {
+			if (!method.getName().equals("updatesFor")) //$NON-NLS-1$
+				return null;
+			IInstallableUnit iu = (IInstallableUnit) args[0];
+			ProvisioningContext context = (ProvisioningContext) args[1];
+			return context.getMetadata(null).query(QueryUtil.createMatchQuery("id == $0 && version > $1", iu.getId(), iu.getVersion()), null); //$NON-NLS-1$
+		});
+		Map<String, Object> services = new HashMap<>();
+		services.put(IMetadataRepositoryManager.SERVICE_NAME, manager);
+		services.put(IProfileRegistry.SERVICE_NAME, registry);
+		services.put(IPlanner.SERVICE_NAME, planner);
+		return (IProvisioningAgent) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {IProvisioningAgent.class}, (proxy, method, args) -> {
+			switch (method.getName()) {
+				case "getService" : //$NON-NLS-1$
+					return services.get(args[0] instanceof Class ? ((Class<?>) args[0]).getName() : args[0]);
+				case "equals" : //$NON-NLS-1$
+					return proxy == args[0];
+				case "hashCode" : //$NON-NLS-1$
+					return System.identityHashCode(proxy);
+				default :
+					return null;
+			}
+		});
+	}
+
+	private void addRepository(URI location, IInstallableUnit... units) {
+		repositories.put(location, new TestRepository(location, units));
+	}
+
+	@Test
+	public void testSharedSchedulerAndRound() throws InterruptedException {
+		addRepository(first, createIU("a", "2.0.0")); //$NON-NLS-1$ //$NON-NLS-2$
+		addRepository(second, createIU("b", "2.0.0")); //$NON-NLS-1$ //$NON-NLS-2$
+		RecordingListener one = new RecordingListener(false);
+		RecordingListener other = new RecordingListener(false);
+		checker.addUpdateCheck("profile", null, IUpdateChecker.ONE_TIME_CHECK, 0, one); //$NON-NLS-1$
+		checker.addUpdateCheck("profile", null, IUpdateChecker.ONE_TIME_CHECK, 0, other); //$NON-NLS-1$
+		assertEquals(new HashSet<>(Arrays.asList(a1, b1)), new HashSet<>(one.next()));
+		assertEquals(new HashSet<>(Arrays.asList(a1, b1)), new HashSet<>(other.next()));
+
+		// both checks ran on the one thread of the checker
+		assertEquals(1, one.threads.size());
+		assertEquals(one.threads, other.threads);
+		// the round loaded the repositories once, the planner once for each check
+		assertEquals(Integer.valueOf(3), loads.get(first));
+		assertEquals(Integer.valueOf(3), loads.get(second));
+	}
+
+	@Test
+	public void testOnlyChangedRepositoriesPlanned() throws InterruptedException {
+		addRepository(first, createIU("a", "2.0.0")); //$NON-NLS-1$ //$NON-NLS-2$
+		addRepository(second);
+		RecordingListener listener = new RecordingListener(true);
+		checker.addUpdateCheck("profile", null, 1, 1, listener); //$NON-NLS-1$
+		try {
+			assertEquals(Collections.singletonList(a1), listener.run());
+			assertTrue(planned.contains(first));
+			assertTrue(planned.contains(second));
+
+			// a changed repository is asked again, the unchanged one is not
+			planned.clear();
+			TestRepository changed = repositories.get(second);
+			changed.units = Arrays.asList(createIU("b", "3.0.0")); //$NON-NLS-1$ //$NON-NLS-2$
+			changed.timestamp = "2"; //$NON-NLS-1$
+			assertEquals(new HashSet<>(Arrays.asList(a1, b1)), new HashSet<>(listener.run()));
+			assertTrue(planned.contains(second));
+			assertFalse(planned.contains(first));
+
+			// nothing changed, nothing is asked
+			planned.clear();
+			assertEquals(new HashSet<>(Arrays.asList(a1, b1)), new HashSet<>(listener.run()));
+			assertTrue(planned.isEmpty());
+
+			// a changed profile has all repositories asked again
+			profileTimestamp++;
+			assertEquals(new HashSet<>(Arrays.asList(a1, b1)), new HashSet<>(listener.run()));
+			assertTrue(planned.contains(first));
+			assertTrue(planned.contains(second));
+		} finally {
+			checker.removeUpdateCheck(listener);
+			listener.gate.release(Integer.MAX_VALUE / 2);
+		}
+	}
+}
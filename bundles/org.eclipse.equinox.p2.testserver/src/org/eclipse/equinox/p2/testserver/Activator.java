@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2018 Cloudsmith Inc and others.
+ * Copyright (c) 2009, 2021 Cloudsmith Inc and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -18,6 +18,7 @@ import java.net.URI;
 import javax.servlet.ServletException;
 import org.eclipse.equinox.p2.testserver.servlets.BasicResourceDelivery;
 import org.eclipse.equinox.p2.testserver.servlets.ChopAndDelay;
+import org.eclipse.equinox.p2.testserver.servlets.ConditionalResponse;
 import org.eclipse.equinox.p2.testserver.servlets.ContentLengthLier;
 import org.eclipse.equinox.p2.testserver.servlets.FileMolester;
 import org.eclipse.equinox.p2.testserver.servlets.IntermittentTimeout;
@@ -106,6 +107,7 @@ public class Activator implements BundleActivator, ServiceTrackerCustomizer<Http
 			httpService.registerServlet("/proxy4/aprivate", //$NON-NLS-1$
 					new BasicResourceDelivery("/proxy4/aprivate", URI.create(SITE3)), null, artifactSecuredHttpContext); //$NON-NLS-1$
 			httpService.registerServlet("/stats", new Stats(), null, null); //$NON-NLS-1$
+			httpService.registerServlet("/conditional", new ConditionalResponse(), null, null); //$NON-NLS-1$
 
 		} catch (NamespaceException e) {
 			// TODO Auto-generated catch block
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.equinox.p2.testserver.servlets;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Produces a fixed text which may be cached for a minute, and answers
+ * conditional requests for it with 304 (Not Modified). Requires to be
+ * registered for "/conditional" path. The request "/conditional/etag" sends an
+ * entity tag and only honors If-None-Match, the request "/conditional/modified"
+ * sends a last modified date and only honors If-Modified-Since. A 304 response
+ * thus tells which header the client sent.
+ */
+public class ConditionalResponse extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String ETAG = "\"p2-conditional-1\""; //$NON-NLS-1$
+	// Sun, 13 Sep 2020 12:26:40 GMT
+	public static final long LAST_MODIFIED = 1600000000000L;
+	public static final String CONTENT = "Conditional content"; //$NON-NLS-1$
+	public static final int MAX_AGE = 60;
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (doConditional(request, response)) {
+			response.setContentType("text/plain"); //$NON-NLS-1$
+			PrintWriter writer = response.getWriter();
+			writer.print(CONTENT);
+			writer.flush();
+		}
+	}
+
+	@Override
+	protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		doConditional(request, response);
+	}
+
+	/*
+	 * Sets the status and the headers, returns whether the content is to be sent.
+	 */
+	private boolean doConditional(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		String path = request.getPathInfo();
+		boolean notModified;
+		if ("/etag".equals(path)) { //$NON-NLS-1$
+			response.setHeader("ETag", ETAG); //$NON-NLS-1$
+			notModified = ETAG.equals(request.getHeader("If-None-Match")); //$NON-NLS-1$
+		} else if ("/modified".equals(path)) { //$NON-NLS-1$
+			response.setDateHeader("Last-Modified", LAST_MODIFIED); //$NON-NLS-1$
+			notModified = request.getDateHeader("If-Modified-Since") >= LAST_MODIFIED; //$NON-NLS-1$
+		} else {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return false;
+		}
+		response.setHeader("Cache-Control", "max-age=" + MAX_AGE); //$NON-NLS-1$ //$NON-NLS-2$
+		if (notModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return false;
+		}
+		response.setStatus(HttpServletResponse.SC_OK);
+		return true;
+	}
+}
@@ -16,7 +16,11 @@
 package org.eclipse.equinox.internal.p2.touchpoint.natives;
 
 import static java.nio.file.FileVisitResult.CONTINUE;
+import static java.nio.file.FileVisitResult.SKIP_SUBTREE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
 import static java.util.stream.Collectors.joining;
 import static org.eclipse.equinox.internal.p2.touchpoint.natives.Util.logError;
 import static org.eclipse.equinox.internal.p2.touchpoint.natives.Util.logWarning;
@@ -26,6 +30,7 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import org.eclipse.osgi.util.NLS;
 
 /**
@@ -80,6 +85,16 @@ import org.eclipse.osgi.util.NLS;
  * platform specific way (on UN*IX they will inherit the permissions of the
  * parent directory).
  *
+ * <h3>Batched Backup</h3> When {@link #backupAll(File)} is called for a
+ * directory that has not been backed up before, the whole directory tree is
+ * moved to the backup store with a single atomic rename. The tree is recorded
+ * in a manifest file ({@link #TREES_MANIFEST}) in the backup root instead of
+ * leaving per-directory placeholders, and on {@link #restore()} the recorded
+ * trees are renamed back in parallel. If the rename is not possible (e.g. the
+ * backup store is on another volume) the per-file backup is used instead. The
+ * batched mode can be turned off by setting the system property
+ * {@value #PROP_BATCHED_BACKUP} to <code>false</code>.
+ *
  * <h3>Checkpointing</h3> Checkpointing (i.e. to be able to rollback to a
  * particular point) can be implemented by using multiple instances of
  * BackupStore. The client code will need to remember the individual order among
@@ -109,6 +124,18 @@ public class SimpleBackupStore implements IBackupStore {
 
 	public static final String DIR_PLACEHOLDER = "emptydir"; //$NON-NLS-1$
 
+	/**
+	 * Name of the file in the backup root that lists the directory trees that were
+	 * moved to the backup store as a whole.
+	 */
+	public static final String TREES_MANIFEST = "trees." + BACKUP_FILE_EXTENSION; //$NON-NLS-1$
+
+	/**
+	 * System property that controls if directory trees are moved to the backup
+	 * store in one rename. Enabled by default.
+	 */
+	public static final String PROP_BATCHED_BACKUP = "eclipse.p2.backup.batched"; //$NON-NLS-1$
+
 	/**
 	 * The name to use for a directory that represents leading separator (i.e. "/"
 	 * or "\").
@@ -128,6 +155,19 @@ public class SimpleBackupStore implements IBackupStore {
 	 */
 	private List<Path> buInPlace;
 
+	/**
+	 * Whether directory trees are moved to the backup store with a single rename.
+	 */
+	private final boolean batched;
+
+	/**
+	 * Directory trees that were moved to the backup store as a whole, mapped to the
+	 * number of backup items that they account for. Items backed up later into an
+	 * already moved tree are counted against the tree, since they are restored
+	 * together with it.
+	 */
+	private final Map<Path, Long> movedTrees;
+
 	/**
 	 * Counter of how many files where backed up. Used as a simple check mechanism
 	 * if everything was restored (a guard against manual/external tampering with
@@ -170,6 +210,9 @@ public class SimpleBackupStore implements IBackupStore {
 
 		this.buInPlaceSuffix = String.format("-%s.%s", unique, BACKUP_FILE_EXTENSION); //$NON-NLS-1$
 		this.buInPlace = new ArrayList<>();
+
+		this.batched = Boolean.parseBoolean(System.getProperty(PROP_BATCHED_BACKUP, Boolean.TRUE.toString()));
+		this.movedTrees = new LinkedHashMap<>();
 	}
 
 	/**
@@ -293,6 +336,10 @@ public class SimpleBackupStore implements IBackupStore {
 
 		Path path = file.toPath().normalize();
 
+		if (batched && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS) && moveTreeToBackup(path)) {
+			return;
+		}
+
 		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
 			@Override
 			public FileVisitResult visitFile(Path f, BasicFileAttributes attrs) throws IOException {
@@ -371,7 +418,7 @@ public class SimpleBackupStore implements IBackupStore {
 		Files.createDirectories(buPath.getParent());
 		Files.copy(path, buPath, REPLACE_EXISTING);
 
-		backupCounter++;
+		countBackup(buPath);
 		return true;
 	}
 
@@ -440,8 +487,9 @@ public class SimpleBackupStore implements IBackupStore {
 
 		// Put back all files.
 		// Collect things that could not be restored
-		Map<Path, Throwable> unrestorable = new HashMap<>();
+		Map<Path, Throwable> unrestorable = new ConcurrentHashMap<>();
 
+		restoreMovedTrees(unrestorable);
 		restoreBackups(unrestorable);
 		restoreInPlaceBackups(unrestorable);
 
@@ -601,12 +649,136 @@ public class SimpleBackupStore implements IBackupStore {
 			Path inPlaceBuPath = toInPlaceBackupPath(path);
 			move(path, inPlaceBuPath);
 			buInPlace.add(inPlaceBuPath);
+
+			backupCounter++;
+			return true;
 		}
 
+		countBackup(buPath);
+		return true;
+	}
+
+	/**
+	 * Moves an entire directory tree to the backup store with a single atomic
+	 * rename.
+	 *
+	 * The tree is moved only if nothing under it has been backed up yet and it is
+	 * not inside a tree that was already moved. Otherwise, or if the file system
+	 * can not rename the tree (e.g. the backup store is on another volume), nothing
+	 * is changed and the caller should fall back to a per-file backup.
+	 *
+	 * @param dir the directory to move
+	 *
+	 * @return true if the tree was moved to the backup store
+	 *
+	 * @throws IOException if the backup path can not be computed
+	 */
+	private boolean moveTreeToBackup(Path dir) throws IOException {
+		Path buDir = toBackupPath(dir);
+
+		if (Files.exists(buDir, LinkOption.NOFOLLOW_LINKS) || findMovedTree(buDir) != null) {
+			return false;
+		}
+
+		try {
+			Files.createDirectories(buDir.getParent());
+			moveTree(dir, buDir);
+		} catch (IOException e) {
+			return false;
+		}
+
+		movedTrees.put(buDir, 1L);
 		backupCounter++;
+
+		Path manifest = buStoreRoot.resolve(TREES_MANIFEST);
+		try {
+			Files.write(manifest, List.of(buStoreRoot.relativize(buDir).toString()), CREATE, APPEND);
+		} catch (IOException e) {
+			// The manifest only helps a manual restore after a crash
+			logWarning(NLS.bind(Messages.BackupStore_can_not_write_manifest, manifest.toAbsolutePath()), e);
+		}
 		return true;
 	}
 
+	/**
+	 * Counts a backup item stored at the given backup path.
+	 *
+	 * @param buPath the path in the backup store
+	 */
+	private void countBackup(Path buPath) {
+		Path buTree = findMovedTree(buPath);
+		if (buTree != null) {
+			movedTrees.merge(buTree, 1L, Long::sum);
+		}
+		backupCounter++;
+	}
+
+	/**
+	 * @param buPath a path in the backup store
+	 *
+	 * @return the moved tree that contains the backup path, or null if there is
+	 *         none.
+	 */
+	private Path findMovedTree(Path buPath) {
+		for (Path buTree : movedTrees.keySet()) {
+			if (buPath.startsWith(buTree)) {
+				return buTree;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Restores the directory trees that were moved to the backup store as a whole.
+	 *
+	 * The trees are restored in parallel. A tree is moved back with a single rename
+	 * when its original location is free, and otherwise is merged file by file into
+	 * the directory that now occupies it.
+	 *
+	 * @param unrestorable accumulate unrestorable paths
+	 */
+	private void restoreMovedTrees(Map<Path, Throwable> unrestorable) {
+		restoreCounter += movedTrees.entrySet().parallelStream()
+				.mapToLong(e -> restoreMovedTree(e.getKey(), e.getValue(), unrestorable)).sum();
+	}
+
+	/**
+	 * Restores a single directory tree that was moved to the backup store.
+	 *
+	 * @param buTree       the tree in the backup store
+	 * @param count        the number of backup items the tree accounts for
+	 * @param unrestorable accumulate unrestorable paths
+	 *
+	 * @return the number of backup items restored
+	 */
+	private long restoreMovedTree(Path buTree, long count, Map<Path, Throwable> unrestorable) {
+		Path tree = toSourcePath(buTree);
+
+		try {
+			// There is a file where the original directory used to be - delete it
+			if (Files.isRegularFile(tree, LinkOption.NOFOLLOW_LINKS)) {
+				Files.delete(tree);
+			}
+
+			if (!Files.exists(tree, LinkOption.NOFOLLOW_LINKS)) {
+				Files.createDirectories(tree.getParent());
+				try {
+					moveTree(buTree, tree);
+					return count;
+				} catch (IOException e) {
+					// Fall back to restoring file by file
+				}
+			}
+
+			RestoreVisitor visitor = new RestoreVisitor(buTree, unrestorable);
+			Files.walkFileTree(buTree, visitor);
+			return visitor.failed ? 0 : count;
+		} catch (IOException e) {
+			unrestorable.put(buTree, e);
+			return 0;
+		}
+	}
+
 	/**
 	 * Restores everything stored in the backup root
 	 *
@@ -626,91 +798,132 @@ public class SimpleBackupStore implements IBackupStore {
 			return;
 		}
 
-		Files.walkFileTree(buStoreRoot, new SimpleFileVisitor<Path>() {
-			@Override
-			public FileVisitResult preVisitDirectory(Path buDir, BasicFileAttributes attrs) {
-				try {
-					if (Files.isSameFile(buStoreRoot, buDir)) {
-						return CONTINUE;
-					}
+		// The manifest is not a backup item
+		Files.deleteIfExists(buStoreRoot.resolve(TREES_MANIFEST));
 
-					Path dir = toSourcePath(buDir);
-					System.out.printf("Pre restoring dir: %s -> %s\n", buDir, dir);
+		RestoreVisitor visitor = new RestoreVisitor(buStoreRoot, unrestorable);
+		Files.walkFileTree(buStoreRoot, visitor);
+		restoreCounter += visitor.restored;
+	}
 
-					// There is a file where we the original directory used to be - delete it
-					if (Files.isRegularFile(dir)) {
-						Files.delete(dir);
-					}
+	/**
+	 * Moves the backed up files under the visited directory back to their original
+	 * locations and removes the emptied backup directories.
+	 */
+	private class RestoreVisitor extends SimpleFileVisitor<Path> {
+		private final Path root;
 
-					// Make the original directory if needed
-					Files.createDirectories(dir);
-				} catch (IOException e) {
-					unrestorable.put(buDir, e);
+		private final Map<Path, Throwable> unrestorable;
+
+		/**
+		 * Number of backup items restored by this visitor.
+		 */
+		long restored;
+
+		/**
+		 * Whether some of the visited items could not be restored.
+		 */
+		boolean failed;
+
+		RestoreVisitor(Path root, Map<Path, Throwable> unrestorable) {
+			this.root = root;
+			this.unrestorable = unrestorable;
+		}
+
+		private void fail(Path path, Throwable err) {
+			unrestorable.put(path, err);
+			failed = true;
+		}
+
+		@Override
+		public FileVisitResult preVisitDirectory(Path buDir, BasicFileAttributes attrs) {
+			try {
+				if (Files.isSameFile(buStoreRoot, buDir)) {
+					return CONTINUE;
 				}
-				return CONTINUE;
+
+				// Moved trees are restored separately, what remains of them could not be
+				// restored
+				if (!buDir.equals(root) && movedTrees.containsKey(buDir)) {
+					return SKIP_SUBTREE;
+				}
+
+				Path dir = toSourcePath(buDir);
+				System.out.printf("Pre restoring dir: %s -> %s\n", buDir, dir);
+
+				// There is a file where we the original directory used to be - delete it
+				if (Files.isRegularFile(dir)) {
+					Files.delete(dir);
+				}
+
+				// Make the original directory if needed
+				Files.createDirectories(dir);
+			} catch (IOException e) {
+				fail(buDir, e);
 			}
+			return CONTINUE;
+		}
 
-			@Override
-			public FileVisitResult visitFile(Path buFile, BasicFileAttributes attrs) {
-				Path file = toSourcePath(buFile);
-				System.out.printf("Restoring file: %s -> %s\n", buFile, file);
+		@Override
+		public FileVisitResult visitFile(Path buFile, BasicFileAttributes attrs) {
+			Path file = toSourcePath(buFile);
+			System.out.printf("Restoring file: %s -> %s\n", buFile, file);
 
-				try {
-					// The first level children of buStoreRoot are always directories since they
-					// model file system roots
-					if (Files.isSameFile(buFile.getParent(), buStoreRoot)) {
-						unrestorable.put(buFile, new IOException("Not a directory")); //$NON-NLS-1$
+			try {
+				// The first level children of buStoreRoot are always directories since they
+				// model file system roots
+				if (Files.isSameFile(buFile.getParent(), buStoreRoot)) {
+					fail(buFile, new IOException("Not a directory")); //$NON-NLS-1$
+				} else {
+					/*
+					 * Do not restore the place-holders as they are used to trigger creation of
+					 * empty directories and are not wanted in the restored location.
+					 * 
+					 * They are counted as restored non the less.
+					 */
+					if (!DIR_PLACEHOLDER.equals(buFile.getFileName().toString())) {
+						// Clean up the site where the original used to be.
+						// It may be that a file or a directory now occupies it.
+						deleteAll(file);
+
+						// Move the backup to the original location
+						move(buFile, file);
 					} else {
-						/*
-						 * Do not restore the place-holders as they are used to trigger creation of
-						 * empty directories and are not wanted in the restored location.
-						 * 
-						 * They are counted as restored non the less.
-						 */
-						if (!DIR_PLACEHOLDER.equals(buFile.getFileName().toString())) {
-							// Clean up the site where the original used to be.
-							// It may be that a file or a directory now occupies it.
-							deleteAll(file);
-
-							// Move the backup to the original location
-							move(buFile, file);
-						} else {
-							Files.delete(buFile);
-						}
-
-						restoreCounter++;
+						Files.delete(buFile);
 					}
-				} catch (IOException e) {
-					unrestorable.put(buFile, e);
+
+					restored++;
 				}
-				return CONTINUE;
+			} catch (IOException e) {
+				fail(buFile, e);
 			}
+			return CONTINUE;
+		}
 
-			@Override
-			public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
-				unrestorable.put(file, exc);
+		@Override
+		public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+			fail(file, exc);
+			throw exc;
+		}
+
+		@Override
+		public FileVisitResult postVisitDirectory(Path buDir, IOException exc) throws IOException {
+			System.out.printf("Post restoring dir: %s, %s\n", buDir, exc);
+			if (exc != null) {
+				fail(buDir, exc);
 				throw exc;
 			}
-
-			@Override
-			public FileVisitResult postVisitDirectory(Path buDir, IOException exc) throws IOException {
-				System.out.printf("Post restoring dir: %s, %s\n", buDir, exc);
-				if (exc != null) {
-					unrestorable.put(buDir, exc);
-					throw exc;
-				}
-				try {
-					Files.delete(buDir);
-				} catch (DirectoryNotEmptyException e) {
-					String children = Files.list(buDir).map(p -> p.relativize(buDir)).map(Path::toString)
-							.collect(joining(","));
-					unrestorable.put(buDir, new IOException("Directory " + buDir + " not empty: " + children, e));
-				} catch (IOException e) {
-					unrestorable.put(buDir, e);
-				}
-				return CONTINUE;
+			try {
+				Files.delete(buDir);
+			} catch (DirectoryNotEmptyException e) {
+				String children = Files.list(buDir).map(p -> p.relativize(buDir)).map(Path::toString)
+						.collect(joining(","));
+				fail(buDir, new IOException("Directory " + buDir + " not empty: " + children, e));
+			} catch (IOException e) {
+				fail(buDir, e);
 			}
-		});
+			return CONTINUE;
+		}
 	}
 
 	private void restoreInPlaceBackups(Map<Path, Throwable> unrestorable) {
@@ -852,6 +1065,17 @@ public class SimpleBackupStore implements IBackupStore {
 		Files.move(source, target, REPLACE_EXISTING);
 	}
 
+	/**
+	 * A generic file operation that attempts to rename a whole directory tree in
+	 * one step. Fails if the target exists or the rename can not be done
+	 * atomically.
+	 *
+	 * Exposed in a separate method for testing purposes.
+	 */
+	protected void moveTree(Path source, Path target) throws IOException {
+		Files.move(source, target, ATOMIC_MOVE);
+	}
+
 	private static boolean isEclipseExe(Path file) {
 		String name = file.getFileName().toString();
 
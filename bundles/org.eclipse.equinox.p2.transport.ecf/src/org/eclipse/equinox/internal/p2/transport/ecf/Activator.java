@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2017 Cloudsmith Inc and others.
+ * Copyright (c) 2009, 2021 Cloudsmith Inc and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -75,6 +75,10 @@ public class Activator implements BundleActivator {
 		return plugin;
 	}
 
+	static BundleContext getContext() {
+		return context;
+	}
+
 	/**
 	 * Returns a {@link IRetrieveFileTransferFactory} using a {@link ServiceTracker}
 	 * after having attempted to start the bundle
@@ -119,6 +119,7 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	private boolean isPause = false;
 	private boolean hasPaused = false;
 	private IFileTransferPausable pasuable = null;
+	private Map<String, Map<String, String>> requestOptions = options;
 
 	/**
 	 * Create a new FileReader that will retry failed connection attempts and sleep
@@ -137,6 +138,16 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		this.agent = aAgent;
 	}
 
+	/**
+	 * Adds the given headers to the requests of this reader.
+	 */
+	public void setRequestHeaders(Map<String, String> headers) {
+		Map<String, String> requestHeaders = new HashMap<>(options.get(IRetrieveFileTransferOptions.REQUEST_HEADERS));
+		requestHeaders.putAll(headers);
+		requestOptions = new HashMap<>(options);
+		requestOptions.put(IRetrieveFileTransferOptions.REQUEST_HEADERS, requestHeaders);
+	}
+
 	public FileInfo getLastFileInfo() {
 		return fileInfo;
 	}
@@ -454,7 +465,7 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 			try {
 				IFileID fileID = FileIDFactory.getDefault().createFileID(adapter.getRetrieveNamespace(),
 						uri.toString());
-				adapter.sendRetrieveRequest(fileID, range, this, options);
+				adapter.sendRetrieveRequest(fileID, range, this, requestOptions);
 			} catch (IncomingFileTransferException e) {
 				exception = e;
 			} catch (FileCreateException e) {
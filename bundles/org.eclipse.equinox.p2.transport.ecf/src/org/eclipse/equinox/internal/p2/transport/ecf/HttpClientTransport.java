@@ -0,0 +1,609 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.transport.ecf;
+
+import java.io.*;
+import java.net.*;
+import java.net.http.*;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.repository.*;
+import org.eclipse.equinox.internal.p2.repository.Credentials.LoginCanceledException;
+import org.eclipse.equinox.internal.p2.repository.Messages;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
+import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
+import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.core.UIServices.AuthenticationInfo;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * A transport for HTTP and HTTPS locations based on the HTTP client of the
+ * JRE. All requests of an agent go through one client, which keeps its
+ * connections open and multiplexes concurrent requests to HTTP/2 servers over
+ * a single connection, so fetching many small artifacts does not pay for a
+ * connection and a TLS handshake each. Servers only speaking HTTP/1.1 are
+ * served from the pool of the client.
+ * <p>
+ * Other locations are handed to a fallback transport. Authentication, retries
+ * and pausing behave as with {@link RepositoryTransport}: servers asking for
+ * basic authentication are answered with the credentials known for the
+ * location, prompting the user once they are refused, and locations asking for
+ * another scheme are handed to the fallback transport. Requests go through the
+ * proxies of the proxy service and use the connect and read timeouts of the ECF
+ * file transfer. The transport is used instead of the ECF one when the system
+ * property {@link #ENABLED} is <code>true</code>.
+ * </p>
+ */
+public class HttpClientTransport extends Transport {
+	public static final String ENABLED = "org.eclipse.equinox.p2.transport.httpclient"; //$NON-NLS-1$
+
+	// the timeouts of the ECF file transfer, in milliseconds
+	private static final String CONNECT_TIMEOUT = "org.eclipse.ecf.provider.filetransfer.retrieve.connectTimeout"; //$NON-NLS-1$
+	private static final String READ_TIMEOUT = "org.eclipse.ecf.provider.filetransfer.retrieve.readTimeout"; //$NON-NLS-1$
+	private static final int DEFAULT_TIMEOUT = 120000;
+
+	private static final int BUFFER_SIZE = 16 * 1024;
+	// how often a blocked request checks for cancellation
+	private static final long POLL_INTERVAL = 200;
+
+	// closes the bodies of canceled or stalled responses
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "p2 HTTP read watchdog"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final IProvisioningAgent agent;
+	private final Transport fallback;
+	private final ProxySelector proxies;
+	private final Duration readTimeout;
+	private final HttpClient client;
+	// the servers which asked for authentication, so that later requests send the credentials right away
+	private final Set<String> challenged = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param agent    the agent to publish progress to, may be <code>null</code>
+	 * @param fallback the transport to use for locations other than HTTP and HTTPS
+	 */
+	public HttpClientTransport(IProvisioningAgent agent, Transport fallback) {
+		this.agent = agent;
+		this.fallback = fallback;
+		this.proxies = createProxySelector();
+		this.readTimeout = Duration.ofMillis(getTimeout(READ_TIMEOUT));
+		HttpClient.Builder builder = HttpClient.newBuilder() //
+				.version(HttpClient.Version.HTTP_2) //
+				.followRedirects(HttpClient.Redirect.NORMAL) //
+				.connectTimeout(Duration.ofMillis(getTimeout(CONNECT_TIMEOUT)));
+		if (proxies != null)
+			builder.proxy(proxies);
+		this.client = builder.build();
+	}
+
+	private static ProxySelector createProxySelector() {
+		try {
+			// the selector links the proxy service lazily, on the threads of the client, so check for it here
+			Class.forName("org.eclipse.core.net.proxy.IProxyService"); //$NON-NLS-1$
+			return new ProxyServiceSelector();
+		} catch (ClassNotFoundException | LinkageError e) {
+			// the proxy service is optional
+			return ProxySelector.getDefault();
+		}
+	}
+
+	private static int getTimeout(String property) {
+		int timeout = Integer.getInteger(property, DEFAULT_TIMEOUT).intValue();
+		return timeout > 0 ? timeout : DEFAULT_TIMEOUT;
+	}
+
+	private static boolean isHttp(URI uri) {
+		String scheme = uri.getScheme();
+		return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Override
+	public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+		if (!isHttp(toDownload))
+			return fallback.download(toDownload, target, startPos, monitor);
+		Map<String, String> headers = Collections.emptyMap();
+		if (startPos > 0)
+			headers = Collections.singletonMap("Range", "bytes=" + startPos + "-"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		return download(toDownload, target, startPos, headers, monitor);
+	}
+
+	@Override
+	public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+		return download(toDownload, target, -1, monitor);
+	}
+
+	/**
+	 * Sends a conditional request, so that the file is checked and downloaded in
+	 * one round-trip. Unlike the ECF transport, the entity tag and the max-age of
+	 * the response are reported in the status.
+	 */
+	@Override
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, String etag, long lastModified,
+			IProgressMonitor monitor) {
+		if (!isHttp(toDownload))
+			return fallback.downloadIfModified(toDownload, target, etag, lastModified, monitor);
+		Map<String, String> headers = new HashMap<>(2);
+		if (etag != null)
+			headers.put("If-None-Match", etag); //$NON-NLS-1$
+		if (lastModified > 0)
+			headers.put("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME //$NON-NLS-1$
+					.format(Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)));
+		return download(toDownload, target, -1, headers, monitor);
+	}
+
+	private IStatus download(URI toDownload, OutputStream target, long startPos, Map<String, String> headers,
+			IProgressMonitor monitor) {
+		AuthenticationInfo loginDetails = null;
+		for (int i = RepositoryPreferences.getLoginRetryCount(); i > 0; i--) {
+			HttpResponse<InputStream> response = null;
+			try {
+				if (loginDetails == null && challenged.contains(toDownload.getAuthority()))
+					loginDetails = Credentials.forLocation(toDownload, false);
+				response = send(newRequest(toDownload, loginDetails, headers).GET().build(), monitor);
+				int code = response.statusCode();
+				if (code == 401) {
+					close(response);
+					if (!isBasicChallenge(response))
+						return fallback.download(toDownload, target, startPos, monitor);
+					if (i > 1)
+						loginDetails = answerChallenge(toDownload, loginDetails);
+					continue;
+				}
+				if (code == DownloadStatus.CODE_NOT_MODIFIED) {
+					close(response);
+					DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID,
+							DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null);
+					describe(status, response);
+					return statusOn(target, status);
+				}
+				if (code != 200 && code != 206) {
+					close(response);
+					return statusOn(target, forCode(code, toDownload));
+				}
+				DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID, Status.OK_STATUS.getMessage());
+				describe(status, response);
+				// a server ignoring the range sends the whole file
+				long skip = code == 200 && startPos > 0 ? startPos : 0;
+				readInto(toDownload, response, skip, target, status, monitor);
+				return statusOn(target, status);
+			} catch (OperationCanceledException e) {
+				close(response);
+				statusOn(target, new DownloadStatus(IStatus.CANCEL, Activator.ID, 1, "", null)); //$NON-NLS-1$
+				throw e;
+			} catch (IOException e) {
+				close(response);
+				return statusOn(target, RepositoryTransport.forException(e, toDownload));
+			} catch (CoreException e) {
+				if (e.getStatus().getException() == null)
+					return statusOn(target, RepositoryTransport.forException(e, toDownload));
+				return statusOn(target, RepositoryTransport.forStatus(e.getStatus(), toDownload));
+			} catch (LoginCanceledException e) {
+				DownloadStatus status = new DownloadStatus(IStatus.ERROR, Activator.ID,
+						ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, //
+						NLS.bind(Messages.UnableToRead_0_UserCanceled, toDownload), null);
+				return statusOn(target, status);
+			}
+		}
+		// reached maximum number of retries without success
+		DownloadStatus status = new DownloadStatus(IStatus.ERROR, Activator.ID,
+				ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, //
+				NLS.bind(Messages.UnableToRead_0_TooManyAttempts, toDownload), null);
+		return statusOn(target, status);
+	}
+
+	@Override
+	public InputStream stream(URI toDownload, IProgressMonitor monitor)
+			throws FileNotFoundException, CoreException, AuthenticationFailedException {
+		if (!isHttp(toDownload))
+			return fallback.stream(toDownload, monitor);
+		HttpResponse<InputStream> response = open(toDownload, false, monitor);
+		if (response == null)
+			return fallback.stream(toDownload, monitor);
+		return new WatchedInputStream(response.body(), monitor, readTimeout);
+	}
+
+	@Override
+	public long getLastModified(URI toDownload, IProgressMonitor monitor)
+			throws CoreException, FileNotFoundException, AuthenticationFailedException {
+		if (!isHttp(toDownload))
+			return fallback.getLastModified(toDownload, monitor);
+		HttpResponse<InputStream> response = open(toDownload, true, monitor);
+		if (response == null)
+			return fallback.getLastModified(toDownload, monitor);
+		close(response);
+		return parseDate(response.headers().firstValue("Last-Modified").orElse(null)); //$NON-NLS-1$
+	}
+
+	/*
+	 * Send a GET or HEAD request and return the successful response, prompting for
+	 * credentials as long as the server refuses them. Returns null if the server
+	 * asks for an authentication scheme other than basic.
+	 */
+	private HttpResponse<InputStream> open(URI uri, boolean head, IProgressMonitor monitor)
+			throws CoreException, FileNotFoundException, AuthenticationFailedException {
+		AuthenticationInfo loginDetails = null;
+		for (int i = RepositoryPreferences.getLoginRetryCount(); i > 0; i--) {
+			try {
+				if (loginDetails == null && challenged.contains(uri.getAuthority()))
+					loginDetails = Credentials.forLocation(uri, false);
+				HttpRequest.Builder request = newRequest(uri, loginDetails, Collections.emptyMap());
+				if (head)
+					request.method("HEAD", HttpRequest.BodyPublishers.noBody()); //$NON-NLS-1$
+				HttpResponse<InputStream> response = send(request.build(), monitor);
+				int code = response.statusCode();
+				if (code == 200)
+					return response;
+				close(response);
+				if (code == 401) {
+					if (!isBasicChallenge(response))
+						return null;
+					if (i > 1)
+						loginDetails = answerChallenge(uri, loginDetails);
+				} else if (code == 404)
+					throw new FileNotFoundException(uri.toString());
+				else
+					throw new CoreException(forCode(code, uri));
+			} catch (FileNotFoundException e) {
+				throw e;
+			} catch (IOException e) {
+				throw new CoreException(RepositoryTransport.forException(e, uri));
+			} catch (LoginCanceledException e) {
+				// same behavior as if user failed n attempts.
+				throw new AuthenticationFailedException();
+			}
+		}
+		// reached maximum number of authentication retries without success
+		throw new AuthenticationFailedException();
+	}
+
+	/*
+	 * Returns the credentials to answer a basic authentication challenge with: the
+	 * ones known for the location, or the ones the user is prompted for once the
+	 * last used ones were refused.
+	 */
+	private AuthenticationInfo answerChallenge(URI uri, AuthenticationInfo lastUsed)
+			throws LoginCanceledException, CoreException {
+		challenged.add(uri.getAuthority());
+		AuthenticationInfo loginDetails = lastUsed == null ? Credentials.forLocation(uri, false) : null;
+		return loginDetails != null ? loginDetails : Credentials.forLocation(uri, true, lastUsed);
+	}
+
+	private static boolean isBasicChallenge(HttpResponse<?> response) {
+		for (String challenge : response.headers().allValues("WWW-Authenticate")) { //$NON-NLS-1$
+			if (challenge.regionMatches(true, 0, "Basic", 0, 5)) //$NON-NLS-1$
+				return true;
+		}
+		return false;
+	}
+
+	private HttpRequest.Builder newRequest(URI uri, AuthenticationInfo loginDetails, Map<String, String> headers) {
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(readTimeout);
+		if (loginDetails != null)
+			request.header("Authorization", basic(loginDetails.getUserName(), loginDetails.getPassword())); //$NON-NLS-1$
+		if (proxies instanceof ProxyServiceSelector) {
+			String proxyAuthorization = ((ProxyServiceSelector) proxies).getProxyAuthorization(uri);
+			if (proxyAuthorization != null)
+				request.header("Proxy-Authorization", proxyAuthorization); //$NON-NLS-1$
+		}
+		headers.forEach(request::header);
+		return request;
+	}
+
+	static String basic(String userName, String password) {
+		String credentials = userName + ':' + (password == null ? "" : password); //$NON-NLS-1$
+		return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+	}
+
+	/*
+	 * Send the request asynchronously and wait for the response headers, retrying
+	 * failed connections as configured. The body is left to the caller.
+	 */
+	private HttpResponse<InputStream> send(HttpRequest request, IProgressMonitor monitor) throws IOException {
+		int retryCount = RepositoryPreferences.getConnectionRetryCount();
+		for (int attempt = 0;; attempt++) {
+			checkCanceled(monitor);
+			CompletableFuture<HttpResponse<InputStream>> response = client.sendAsync(request,
+					BodyHandlers.ofInputStream());
+			try {
+				return await(response, monitor);
+			} catch (IOException e) {
+				if (attempt >= retryCount
+						|| (e instanceof SocketTimeoutException || e instanceof HttpTimeoutException)
+								&& !RepositoryPreferences.getRetryOnSocketTimeout())
+					throw e;
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID,
+						NLS.bind(Messages.connection_to_0_failed_on_1_retry_attempt_2, new String[] {
+								request.uri().toString(), e.getMessage(), String.valueOf(attempt) }),
+						e));
+				try {
+					Thread.sleep(RepositoryPreferences.getConnectionMsRetryDelay());
+				} catch (InterruptedException ie) {
+					throw new OperationCanceledException();
+				}
+			}
+		}
+	}
+
+	private static <T> T await(CompletableFuture<T> future, IProgressMonitor monitor) throws IOException {
+		try {
+			while (true) {
+				try {
+					return future.get(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					if (monitor != null && monitor.isCanceled()) {
+						future.cancel(true);
+						throw new OperationCanceledException();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	/*
+	 * Copy the body of the response into the target as it arrives, reporting
+	 * progress and waiting while downloads are paused.
+	 */
+	private void readInto(URI uri, HttpResponse<InputStream> response, long skip, OutputStream target,
+			DownloadStatus status, IProgressMonitor monitor) throws IOException {
+		long total = Math.max(status.getFileSize(), 0);
+		String path = uri.getPath();
+		String name = path == null ? uri.toString() : path.substring(path.lastIndexOf('/') + 1);
+		ProgressStatistics stats = new ProgressStatistics(agent, uri, name, total);
+		if (monitor != null) {
+			monitor.beginTask(null, 1000);
+			monitor.subTask(stats.report());
+		}
+		PauseListener pause = new PauseListener();
+		IProvisioningEventBus eventBus = agent == null ? null : agent.getService(IProvisioningEventBus.class);
+		if (eventBus != null)
+			eventBus.addListener(pause);
+		try (WatchedInputStream input = new WatchedInputStream(response.body(), monitor, readTimeout)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long reported = 0;
+			long received = 0;
+			for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+				checkCanceled(monitor);
+				if (pause.paused) {
+					// a paused download is not timed out
+					input.suspend(true);
+					pause.await(monitor);
+					input.suspend(false);
+				}
+				int offset = 0;
+				if (skip > 0) {
+					offset = (int) Math.min(skip, read);
+					skip -= offset;
+				}
+				target.write(buffer, offset, read - offset);
+				received += read - offset;
+				stats.increase(read - offset);
+				if (monitor != null && stats.shouldReport()) {
+					monitor.subTask(stats.report());
+					if (total > 0)
+						monitor.worked((int) (1000 * (received - reported) / total));
+					reported = received;
+				}
+			}
+			status.setTransferRate(stats.getAverageSpeed());
+		} finally {
+			if (eventBus != null)
+				eventBus.removeListener(pause);
+		}
+	}
+
+	/*
+	 * Set the size, date, entity tag and max-age the response describes.
+	 */
+	private static void describe(DownloadStatus status, HttpResponse<?> response) {
+		HttpHeaders headers = response.headers();
+		status.setFileSize(headers.firstValueAsLong("Content-Length").orElse(DownloadStatus.UNKNOWN_SIZE)); //$NON-NLS-1$
+		status.setLastModified(parseDate(headers.firstValue("Last-Modified").orElse(null))); //$NON-NLS-1$
+		headers.firstValue("ETag").ifPresent(status::setETag); //$NON-NLS-1$
+		status.setMaxAge(parseMaxAge(headers.allValues("Cache-Control"))); //$NON-NLS-1$
+	}
+
+	private static long parseDate(String date) {
+		if (date == null)
+			return 0;
+		try {
+			return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return 0;
+		}
+	}
+
+	private static long parseMaxAge(List<String> cacheControl) {
+		for (String value : cacheControl) {
+			for (String directive : value.split(",")) { //$NON-NLS-1$
+				directive = directive.trim().toLowerCase(Locale.ENGLISH);
+				if (directive.equals("no-cache") || directive.equals("no-store")) //$NON-NLS-1$ //$NON-NLS-2$
+					return 0;
+				if (directive.startsWith("max-age=")) { //$NON-NLS-1$
+					try {
+						return Math.max(0, Long.parseLong(directive.substring(8))) * 1000;
+					} catch (NumberFormatException e) {
+						// ignore the directive
+					}
+				}
+			}
+		}
+		return DownloadStatus.UNKNOWN_MAX_AGE;
+	}
+
+	private static DownloadStatus forCode(int code, URI uri) {
+		if (code == 404)
+			return new DownloadStatus(IStatus.ERROR, Activator.ID, ProvisionException.ARTIFACT_NOT_FOUND,
+					NLS.bind(Messages.artifact_not_found, uri), null);
+		int provisionCode = code == 401 ? ProvisionException.REPOSITORY_FAILED_AUTHENTICATION
+				: ProvisionException.REPOSITORY_FAILED_READ;
+		return new DownloadStatus(IStatus.ERROR, Activator.ID, provisionCode,
+				RepositoryStatus.codeToMessage(code, uri.toString()), null);
+	}
+
+	private static void checkCanceled(IProgressMonitor monitor) {
+		if (monitor != null && monitor.isCanceled())
+			throw new OperationCanceledException();
+	}
+
+	private static void close(HttpResponse<InputStream> response) {
+		if (response == null)
+			return;
+		try {
+			response.body().close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	private static DownloadStatus statusOn(OutputStream target, DownloadStatus status) {
+		if (target instanceof IStateful)
+			((IStateful) target).setStatus(status);
+		return status;
+	}
+
+	/*
+	 * The body of a response, closed once the monitor is canceled or no data
+	 * arrived within the read timeout, so that a blocked read returns.
+	 */
+	private static class WatchedInputStream extends FilterInputStream implements Runnable {
+		private final IProgressMonitor monitor;
+		private final long timeout;
+		private final ScheduledFuture<?> watch;
+		private volatile long lastRead = System.nanoTime();
+		private volatile boolean suspended;
+		private volatile boolean canceled;
+		private volatile boolean timedOut;
+
+		WatchedInputStream(InputStream in, IProgressMonitor monitor, Duration timeout) {
+			super(in);
+			this.monitor = monitor;
+			this.timeout = timeout.toNanos();
+			this.watch = watchdog.scheduleWithFixedDelay(this, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+			if (canceled || timedOut)
+				return;
+			if (monitor != null && monitor.isCanceled())
+				canceled = true;
+			else if (!suspended && System.nanoTime() - lastRead > timeout)
+				timedOut = true;
+			else
+				return;
+			try {
+				in.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		void suspend(boolean value) {
+			suspended = value;
+			lastRead = System.nanoTime();
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				return checkRead(super.read());
+			} catch (IOException e) {
+				throw interrupted(e);
+			}
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			try {
+				return checkRead(super.read(b, off, len));
+			} catch (IOException e) {
+				throw interrupted(e);
+			}
+		}
+
+		private int checkRead(int read) throws IOException {
+			// the closed body may just end
+			if (read == -1 && (canceled || timedOut))
+				throw new EOFException();
+			lastRead = System.nanoTime();
+			return read;
+		}
+
+		private IOException interrupted(IOException e) {
+			if (canceled)
+				throw new OperationCanceledException();
+			if (timedOut) {
+				SocketTimeoutException timeoutException = new SocketTimeoutException("Read timed out"); //$NON-NLS-1$
+				timeoutException.initCause(e);
+				return timeoutException;
+			}
+			return e;
+		}
+
+		@Override
+		public void close() throws IOException {
+			watch.cancel(false);
+			super.close();
+		}
+	}
+
+	/*
+	 * Blocks a download while downloads are paused.
+	 */
+	private static class PauseListener implements ProvisioningListener {
+		private volatile boolean paused;
+
+		@Override
+		public void notify(EventObject event) {
+			if (event instanceof DownloadPauseResumeEvent) {
+				int type = ((DownloadPauseResumeEvent) event).getType();
+				if (type == DownloadPauseResumeEvent.TYPE_PAUSE)
+					paused = true;
+				else if (type == DownloadPauseResumeEvent.TYPE_RESUME)
+					paused = false;
+			}
+		}
+
+		void await(IProgressMonitor monitor) {
+			while (paused) {
+				checkCanceled(monitor);
+				try {
+					Thread.sleep(1000);
+				} catch (InterruptedException e) {
+					throw new OperationCanceledException();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ *
+ * This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License 2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.transport.ecf;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.eclipse.core.net.proxy.IProxyData;
+import org.eclipse.core.net.proxy.IProxyService;
+import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Selects the proxies of the {@link IProxyService} for the HTTP client, so that
+ * it goes through the same proxies as the ECF transport. The HTTP client only
+ * supports HTTP proxies, SOCKS proxies are left out. Without the proxy service
+ * the proxies of the JRE are used.
+ */
+class ProxyServiceSelector extends ProxySelector {
+
+	private static IProxyService getProxyService() {
+		BundleContext context = Activator.getContext();
+		return context == null ? null : ServiceHelper.getService(context, IProxyService.class);
+	}
+
+	private static List<IProxyData> select(IProxyService service, URI uri) {
+		List<IProxyData> proxies = new ArrayList<>();
+		for (IProxyData data : service.select(uri)) {
+			if (data.getHost() != null && !IProxyData.SOCKS_PROXY_TYPE.equals(data.getType()))
+				proxies.add(data);
+		}
+		return proxies;
+	}
+
+	@Override
+	public List<Proxy> select(URI uri) {
+		IProxyService service = getProxyService();
+		if (service == null) {
+			ProxySelector system = ProxySelector.getDefault();
+			return system == null ? Collections.singletonList(Proxy.NO_PROXY) : system.select(uri);
+		}
+		List<Proxy> proxies = new ArrayList<>();
+		for (IProxyData data : select(service, uri))
+			proxies.add(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(data.getHost(), data.getPort())));
+		if (proxies.isEmpty())
+			proxies.add(Proxy.NO_PROXY);
+		return proxies;
+	}
+
+	@Override
+	public void connectFailed(URI uri, SocketAddress address, IOException e) {
+		// the client tries the next proxy
+	}
+
+	/**
+	 * Returns the value of the Proxy-Authorization header for a request to the
+	 * given location, or <code>null</code> if the proxy it goes through needs no
+	 * authentication.
+	 */
+	String getProxyAuthorization(URI uri) {
+		IProxyService service = getProxyService();
+		if (service == null)
+			return null;
+		List<IProxyData> proxies = select(service, uri);
+		if (proxies.isEmpty())
+			return null;
+		IProxyData data = proxies.get(0);
+		if (!data.isRequiresAuthentication() || data.getUserId() == null)
+			return null;
+		String credentials = data.getUserId() + ':' + (data.getPassword() == null ? "" : data.getPassword()); //$NON-NLS-1$
+		return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)); //$NON-NLS-1$
+	}
+}
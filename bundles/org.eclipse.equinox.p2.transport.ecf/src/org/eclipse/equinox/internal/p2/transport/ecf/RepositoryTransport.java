@@ -14,6 +14,9 @@ package org.eclipse.equinox.internal.p2.transport.ecf;
 
 import java.io.*;
 import java.net.*;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import org.eclipse.core.runtime.*;
@@ -70,6 +73,31 @@ public class RepositoryTransport extends Transport {
 
 	@Override
 	public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+		return download(toDownload, target, startPos, null, monitor);
+	}
+
+	/**
+	 * Sends a conditional request for HTTP locations, so that the file is
+	 * checked and downloaded in one round-trip. The server answers 304 if the
+	 * file is unchanged.
+	 */
+	@Override
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, String etag, long lastModified,
+			IProgressMonitor monitor) {
+		String scheme = toDownload.getScheme();
+		if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) //$NON-NLS-1$ //$NON-NLS-2$
+			return super.downloadIfModified(toDownload, target, etag, lastModified, monitor);
+		Map<String, String> headers = new HashMap<>(2);
+		if (etag != null)
+			headers.put("If-None-Match", etag); //$NON-NLS-1$
+		if (lastModified > 0)
+			headers.put("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME //$NON-NLS-1$
+					.format(Instant.ofEpochMilli(lastModified).atZone(ZoneOffset.UTC)));
+		return download(toDownload, target, -1, headers, monitor);
+	}
+
+	private IStatus download(URI toDownload, OutputStream target, long startPos, Map<String, String> headers,
+			IProgressMonitor monitor) {
 
 		boolean promptUser = false;
 		boolean useJREHttp = false;
@@ -84,6 +112,8 @@ public class RepositoryTransport extends Transport {
 
 				// perform the download
 				reader = new FileReader(agent, context);
+				if (headers != null && !headers.isEmpty())
+					reader.setRequestHeaders(headers);
 				ProvisioningListener listener = null;
 				IProvisioningEventBus eventBus = null;
 				try {
@@ -134,6 +164,11 @@ public class RepositoryTransport extends Transport {
 				statusOn(target, new DownloadStatus(IStatus.CANCEL, Activator.ID, 1, "", null), reader); //$NON-NLS-1$
 				throw e;
 			} catch (CoreException e) {
+				if (headers != null && isNotModified(e)) {
+					DownloadStatus status = new DownloadStatus(IStatus.OK, Activator.ID,
+							DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null);
+					return statusOn(target, status, null);
+				}
 				if (e.getStatus().getException() == null)
 					return statusOn(target, forException(e, toDownload), reader);
 				return statusOn(target, forStatus(e.getStatus(), toDownload), reader);
@@ -273,6 +308,20 @@ public class RepositoryTransport extends Transport {
 		throw new AuthenticationFailedException();
 	}
 
+	/*
+	 * Whether the server answered a conditional request with 304.
+	 */
+	private static boolean isNotModified(CoreException e) {
+		Throwable t = e;
+		for (int depth = 0; t != null && depth < 10; depth++) {
+			if (t instanceof IncomingFileTransferException)
+				return ((IncomingFileTransferException) t).getErrorCode() == 304;
+			Throwable next = t instanceof CoreException ? ((CoreException) t).getStatus().getException() : null;
+			t = next != null ? next : t.getCause();
+		}
+		return false;
+	}
+
 	private static boolean isForgiveableException(Throwable t) {
 		if (t instanceof SocketTimeoutException)
 			return true;
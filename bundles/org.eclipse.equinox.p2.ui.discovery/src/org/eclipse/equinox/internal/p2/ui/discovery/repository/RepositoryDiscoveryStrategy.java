@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2010, 2017 Tasktop Technologies and others.
+ * Copyright (c) 2010, 2021 Tasktop Technologies and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -21,6 +21,8 @@ import org.eclipse.equinox.internal.p2.discovery.AbstractCatalogSource;
 import org.eclipse.equinox.internal.p2.discovery.AbstractDiscoveryStrategy;
 import org.eclipse.equinox.internal.p2.discovery.model.CatalogCategory;
 import org.eclipse.equinox.internal.p2.discovery.model.CatalogItem;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshot;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshotCache;
 import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
 import org.eclipse.equinox.internal.p2.metadata.TranslationSupport;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -50,6 +52,8 @@ public class RepositoryDiscoveryStrategy extends AbstractDiscoveryStrategy {
 
 	private final Map<String, CatalogItem> catalogItemById;
 
+	private TranslationSupport translations;
+
 	public RepositoryDiscoveryStrategy() {
 		this.locations = new ArrayList<>();
 		this.sourceByRepository = new HashMap<>();
@@ -72,6 +76,7 @@ public class RepositoryDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		monitor.setWorkRemaining(100);
 		try {
 			List<IMetadataRepository> repositories = addRepositories(monitor.newChild(50));
+			translations = getTranslationSupport(repositories);
 			queryInstallableUnits(monitor.newChild(50), repositories);
 			connectCategories();
 		} catch (ProvisionException e) {
@@ -119,6 +124,20 @@ public class RepositoryDiscoveryStrategy extends AbstractDiscoveryStrategy {
 		return repositories;
 	}
 
+	/*
+	 * The catalog items are translated with the fragments of the repositories they
+	 * come from, the snapshot of the repositories shares its translations with the
+	 * provisioning contexts over them.
+	 */
+	private TranslationSupport getTranslationSupport(List<IMetadataRepository> repositories) {
+		ProvisioningSession session = ProvisioningUI.getDefaultUI().getSession();
+		MetadataSnapshotCache snapshots = MetadataSnapshotCache.forAgent(session.getProvisioningAgent());
+		IQueryable<IInstallableUnit> metadata = snapshots == null ? QueryUtil.compoundQueryable(repositories) : snapshots.getMetadata(repositories);
+		if (metadata instanceof MetadataSnapshot)
+			return ((MetadataSnapshot) metadata).getTranslationSupport();
+		return new TranslationSupport(metadata);
+	}
+
 	private void checkCancelled(IProgressMonitor monitor) {
 		if (monitor.isCanceled()) {
 			throw new OperationCanceledException();
@@ -171,7 +190,8 @@ public class RepositoryDiscoveryStrategy extends AbstractDiscoveryStrategy {
 	}
 
 	public String getProperty(IInstallableUnit candidate, String key) {
-		String value = TranslationSupport.getInstance().getIUProperty(candidate, key);
+		TranslationSupport support = translations != null ? translations : TranslationSupport.getInstance();
+		String value = support.getIUProperty(candidate, key);
 		return (value != null) ? value : "";
 	}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -14,11 +14,16 @@
 package org.eclipse.equinox.internal.p2.ui;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.engine.MetadataSnapshotCache;
 import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryManager;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.operations.RepositoryTracker;
+import org.eclipse.equinox.p2.query.IQueryable;
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
@@ -57,4 +62,16 @@ public class QueryableMetadataRepositoryManager extends QueryableRepositoryManag
 	protected int getRepositoryFlags(RepositoryTracker repositoryManipulator) {
 		return repositoryManipulator.getMetadataRepositoryFlags();
 	}
+
+	@Override
+	protected IQueryable<IInstallableUnit> getQueryable(List<IRepository<IInstallableUnit>> repositories) {
+		// query the snapshot which the provisioning contexts of the agent share
+		MetadataSnapshotCache snapshots = MetadataSnapshotCache.forAgent(getSession().getProvisioningAgent());
+		if (snapshots == null)
+			return super.getQueryable(repositories);
+		List<IMetadataRepository> metadataRepositories = new ArrayList<>(repositories.size());
+		for (IRepository<IInstallableUnit> repository : repositories)
+			metadataRepositories.add((IMetadataRepository) repository);
+		return snapshots.getMetadata(metadataRepositories);
+	}
 }
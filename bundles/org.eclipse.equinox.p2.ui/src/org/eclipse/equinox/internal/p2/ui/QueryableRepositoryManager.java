@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2018 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  * This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License 2.0
@@ -162,11 +162,21 @@ public abstract class QueryableRepositoryManager<T> implements IQueryable<T> {
 				loadedRepos.add(repo);
 		}
 		if (loadedRepos.size() > 0) {
-			return QueryUtil.compoundQueryable(loadedRepos).query(query, sub.newChild(100));
+			return getQueryable(loadedRepos).query(query, sub.newChild(100));
 		}
 		return Collector.emptyCollector();
 	}
 
+	/**
+	 * Returns a queryable over the given loaded repositories.
+	 *
+	 * @param repositories the loaded repositories
+	 * @return the queryable to run the queries on
+	 */
+	protected IQueryable<T> getQueryable(List<IRepository<T>> repositories) {
+		return QueryUtil.compoundQueryable(repositories);
+	}
+
 	public void setRespositoryFlags(int flags) {
 		this.repositoryFlags = flags;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2018 IBM Corporation and others.
+ *  Copyright (c) 2007, 2021 IBM Corporation and others.
  *
  *  This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License 2.0
@@ -15,9 +15,12 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.updatechecker;
 
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
@@ -29,38 +32,90 @@ import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.planner.IPlanner;
 import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 
 /**
  * Default implementation of {@link IUpdateChecker}.
  * <p>
- * This implementation is not optimized.  It doesn't optimize for multiple
- * polls on the same profile, nor does it cache any info about a profile from
- * poll to poll.
+ * All update checks of an agent run on one scheduler thread. Checks which are
+ * due at about the same time share one discovery round, in which the known
+ * metadata repositories are loaded once. The round only references the
+ * repositories weakly, so that it does not keep them loaded between checks.
+ * Each check remembers which of its
+ * installable units have updates in which repository, and only asks the
+ * planner again for repositories which changed since its last run, or for all
+ * of them if the profile changed.
+ * </p>
  */
 public class UpdateChecker implements IUpdateChecker {
 	public static boolean DEBUG = false;
 	public static boolean TRACE = false;
+	// checks starting within this time of a discovery round use its repositories
+	private static final long ROUND_REUSE_TIME = 30 * 1000L;
 	/**
-	 * Map of IUpdateListener->UpdateCheckThread.
+	 * Map of IUpdateListener->UpdateCheck.
 	 */
-	private HashMap<IUpdateListener, UpdateCheckThread> checkers = new HashMap<>();
+	private final Map<IUpdateListener, UpdateCheck> checkers = new HashMap<>();
 
 	private final IProvisioningAgent agent;
 	IProfileRegistry profileRegistry;
 	IPlanner planner;
+	private ScheduledThreadPoolExecutor scheduler;
+	// guards the last round, apart from the checks so that loading repositories does not block adding or removing them
+	private final Object roundLock = new Object();
+	private DiscoveryRound lastRound;
 
-	private class UpdateCheckThread extends Thread {
-		boolean done = false;
-		long poll, delay;
-		IUpdateListener listener;
-		String profileId;
-		IQuery<IInstallableUnit> query;
+	/**
+	 * The metadata repositories which were available at some point in time.
+	 */
+	private static class DiscoveryRound {
+		final long time = System.currentTimeMillis();
+		final List<URI> known;
+		final Map<URI, Reference<IMetadataRepository>> repositories = new LinkedHashMap<>();
+
+		DiscoveryRound(URI[] known) {
+			this.known = Arrays.asList(known);
+		}
+
+		boolean isReusable(URI[] current) {
+			return System.currentTimeMillis() - time < ROUND_REUSE_TIME && known.equals(Arrays.asList(current));
+		}
+	}
+
+	/**
+	 * The installable units of a profile which have updates in one repository,
+	 * and the state of the repository they were computed for.
+	 */
+	private static class RepositoryResult {
+		final Reference<IMetadataRepository> repository;
+		final String timestamp;
+		final Set<IInstallableUnit> withUpdates;
+
+		RepositoryResult(IMetadataRepository repository, Set<IInstallableUnit> withUpdates) {
+			this.repository = new WeakReference<>(repository);
+			this.timestamp = repository.getProperty(IRepository.PROP_TIMESTAMP);
+			this.withUpdates = withUpdates;
+		}
+
+		boolean isCurrent(IMetadataRepository current) {
+			return repository.get() == current && Objects.equals(timestamp, current.getProperty(IRepository.PROP_TIMESTAMP));
+		}
+	}
+
+	private class UpdateCheck implements Runnable {
+		volatile boolean done = false;
+		final IUpdateListener listener;
+		final String profileId;
+		final IQuery<IInstallableUnit> query;
+		Future<?> future;
+		// the results of the last run, only used on the scheduler thread
+		long profileTimestamp;
+		Map<URI, RepositoryResult> results = new HashMap<>();
 
-		UpdateCheckThread(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
-			this.poll = poll;
-			this.delay = delay;
+		UpdateCheck(String profileId, IQuery<IInstallableUnit> query, IUpdateListener listener) {
 			this.profileId = profileId;
 			this.query = query;
 			this.listener = listener;
@@ -68,32 +123,22 @@ public class UpdateChecker implements IUpdateChecker {
 
 		@Override
 		public void run() {
+			if (done)
+				return;
 			try {
-				if (delay != ONE_TIME_CHECK && delay > 0) {
-					Thread.sleep(delay);
-				}
-				while (!done) {
-					listener.checkingForUpdates();
-					trace("Checking for updates for " + profileId + " at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
-					Collection<IInstallableUnit> iusWithUpdates = checkForUpdates(profileId, query);
-					if (iusWithUpdates.size() > 0) {
-						trace("Notifying listener of available updates"); //$NON-NLS-1$
-						UpdateEvent event = new UpdateEvent(profileId, iusWithUpdates);
-						if (!done)
-							listener.updatesAvailable(event);
-					} else {
-						trace("No updates were available"); //$NON-NLS-1$
-					}
-					if (delay == ONE_TIME_CHECK || delay <= 0 || poll <= 0) {
-						done = true;
-					} else {
-						Thread.sleep(poll);
-					}
+				listener.checkingForUpdates();
+				trace("Checking for updates for " + profileId + " at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
+				Collection<IInstallableUnit> iusWithUpdates = checkForUpdates(this);
+				if (iusWithUpdates.size() > 0) {
+					trace("Notifying listener of available updates"); //$NON-NLS-1$
+					UpdateEvent event = new UpdateEvent(profileId, iusWithUpdates);
+					if (!done)
+						listener.updatesAvailable(event);
+				} else {
+					trace("No updates were available"); //$NON-NLS-1$
 				}
-			} catch (InterruptedException e) {
-				// nothing
 			} catch (Exception e) {
-				LogHelper.log(new Status(IStatus.ERROR, UpdateCheckerComponent.BUNDLE_ID, "Exception in update check thread", e)); //$NON-NLS-1$
+				LogHelper.log(new Status(IStatus.ERROR, UpdateCheckerComponent.BUNDLE_ID, "Exception in update check", e)); //$NON-NLS-1$
 			}
 		}
 	}
@@ -103,59 +148,135 @@ public class UpdateChecker implements IUpdateChecker {
 	}
 
 	@Override
-	public void addUpdateCheck(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
+	public synchronized void addUpdateCheck(String profileId, IQuery<IInstallableUnit> query, long delay, long poll, IUpdateListener listener) {
 		if (checkers.containsKey(listener))
 			return;
 		trace("Adding update checker for " + profileId + " at " + getTimeStamp()); //$NON-NLS-1$ //$NON-NLS-2$
-		UpdateCheckThread thread = new UpdateCheckThread(profileId, query, delay, poll, listener);
-		checkers.put(listener, thread);
-		thread.start();
+		UpdateCheck check = new UpdateCheck(profileId, query, listener);
+		checkers.put(listener, check);
+		if (delay == ONE_TIME_CHECK || delay <= 0)
+			check.future = getScheduler().schedule(check, 0, TimeUnit.MILLISECONDS);
+		else if (poll <= 0)
+			check.future = getScheduler().schedule(check, delay, TimeUnit.MILLISECONDS);
+		else
+			check.future = getScheduler().scheduleWithFixedDelay(check, delay, poll, TimeUnit.MILLISECONDS);
 	}
 
 	@Override
-	public void removeUpdateCheck(IUpdateListener listener) {
-		checkers.remove(listener);
+	public synchronized void removeUpdateCheck(IUpdateListener listener) {
+		UpdateCheck check = checkers.remove(listener);
+		if (check != null) {
+			check.done = true;
+			check.future.cancel(false);
+		}
+	}
+
+	private ScheduledThreadPoolExecutor getScheduler() {
+		if (scheduler == null) {
+			scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+				Thread thread = new Thread(runnable, "Update Checker"); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			});
+			// do not keep a thread while no check is due
+			scheduler.setKeepAliveTime(60, TimeUnit.SECONDS);
+			scheduler.allowCoreThreadTimeOut(true);
+			scheduler.setRemoveOnCancelPolicy(true);
+		}
+		return scheduler;
 	}
 
 	/*
 	 * Return the array of ius in the profile that have updates
 	 * available.
 	 */
-	Collection<IInstallableUnit> checkForUpdates(String profileId, IQuery<IInstallableUnit> query) {
-		IProfile profile = getProfileRegistry().getProfile(profileId);
-		ArrayList<IInstallableUnit> iusWithUpdates = new ArrayList<>();
+	Collection<IInstallableUnit> checkForUpdates(UpdateCheck check) {
+		IProfile profile = getProfileRegistry().getProfile(check.profileId);
 		if (profile == null)
 			return Collections.emptyList();
+		IQuery<IInstallableUnit> query = check.query == null ? QueryUtil.createIUAnyQuery() : check.query;
+		Set<IInstallableUnit> toCheck = profile.query(query, null).toUnmodifiableSet();
+		if (profile.getTimestamp() != check.profileTimestamp) {
+			check.profileTimestamp = profile.getTimestamp();
+			check.results.clear();
+		}
+
+		Map<URI, RepositoryResult> results = new HashMap<>();
+		Set<IInstallableUnit> withUpdates = new HashSet<>();
+		for (Map.Entry<URI, IMetadataRepository> entry : getRepositories().entrySet()) {
+			RepositoryResult result = check.results.get(entry.getKey());
+			if (result == null || !result.isCurrent(entry.getValue())) {
+				trace("Computing updates from " + entry.getKey()); //$NON-NLS-1$
+				result = new RepositoryResult(entry.getValue(), findUpdates(toCheck, entry.getKey()));
+			}
+			results.put(entry.getKey(), result);
+			withUpdates.addAll(result.withUpdates);
+		}
+		check.results = results;
+
+		ArrayList<IInstallableUnit> iusWithUpdates = new ArrayList<>();
+		for (IInstallableUnit iu : toCheck) {
+			if (withUpdates.contains(iu))
+				iusWithUpdates.add(iu);
+		}
+		return iusWithUpdates;
+	}
+
+	/*
+	 * Return the given ius that have updates in the given repository.
+	 */
+	private Set<IInstallableUnit> findUpdates(Collection<IInstallableUnit> ius, URI repository) {
 		ProvisioningContext context = new ProvisioningContext(agent);
-		context.setMetadataRepositories(getAvailableRepositories());
-		if (query == null)
-			query = QueryUtil.createIUAnyQuery();
-		Iterator<IInstallableUnit> iter = profile.query(query, null).iterator();
-		while (iter.hasNext()) {
-			IInstallableUnit iu = iter.next();
+		context.setMetadataRepositories(repository);
+		Set<IInstallableUnit> withUpdates = new HashSet<>();
+		for (IInstallableUnit iu : ius) {
 			IQueryResult<IInstallableUnit> replacements = getPlanner().updatesFor(iu, context, null);
 			if (!replacements.isEmpty())
-				iusWithUpdates.add(iu);
+				withUpdates.add(iu);
 		}
-		return iusWithUpdates;
+		return withUpdates;
 	}
 
 	/**
-	 * Returns the list of metadata repositories that are currently available.
+	 * Returns the metadata repositories that are currently available, loading them
+	 * only if no other check did so recently for the same repositories.
 	 */
-	private URI[] getAvailableRepositories() {
+	private Map<URI, IMetadataRepository> getRepositories() {
 		IMetadataRepositoryManager repoMgr = agent.getService(IMetadataRepositoryManager.class);
-		URI[] repositories = repoMgr.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL);
-		ArrayList<URI> available = new ArrayList<>();
-		for (URI repositorie : repositories) {
-			try {
-				repoMgr.loadRepository(repositorie, null);
-				available.add(repositorie);
-			} catch (ProvisionException e) {
-				LogHelper.log(e.getStatus());
+		URI[] known = repoMgr.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL);
+		Map<URI, IMetadataRepository> repositories = new LinkedHashMap<>();
+		synchronized (roundLock) {
+			if (lastRound != null && lastRound.isReusable(known)) {
+				for (Map.Entry<URI, Reference<IMetadataRepository>> entry : lastRound.repositories.entrySet()) {
+					IMetadataRepository repository = entry.getValue().get();
+					// a repository dropped meanwhile is loaded again
+					if (repository == null)
+						repository = loadRepository(repoMgr, entry.getKey());
+					if (repository != null)
+						repositories.put(entry.getKey(), repository);
+				}
+				return repositories;
 			}
+			DiscoveryRound round = new DiscoveryRound(known);
+			for (URI location : known) {
+				IMetadataRepository repository = loadRepository(repoMgr, location);
+				if (repository != null) {
+					repositories.put(location, repository);
+					round.repositories.put(location, new WeakReference<>(repository));
+				}
+			}
+			lastRound = round;
+			return repositories;
+		}
+	}
+
+	private IMetadataRepository loadRepository(IMetadataRepositoryManager repoMgr, URI location) {
+		try {
+			return repoMgr.loadRepository(location, null);
+		} catch (ProvisionException e) {
+			LogHelper.log(e.getStatus());
+			return null;
 		}
-		return available.toArray(new URI[available.size()]);
 	}
 
 	void trace(String message) {
@@ -17,12 +17,13 @@ package org.eclipse.equinox.internal.p2.updatesite;
 import java.io.*;
 import java.lang.ref.SoftReference;
 import java.net.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.zip.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.publisher.PublishingPipeline;
 import org.eclipse.equinox.internal.p2.publisher.eclipse.FeatureParser;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.publisher.eclipse.*;
@@ -45,6 +46,12 @@ public class UpdateSite {
 	private static final int RETRY_COUNT = 2;
 	private static final String DOT_XML = ".xml"; //$NON-NLS-1$
 	private static final String SITE = "site"; //$NON-NLS-1$
+	/**
+	 * System property for the number of features and bundles that are fetched
+	 * concurrently from a remote site.
+	 */
+	public static final String PROP_FETCH_THREADS = "eclipse.p2.updatesite.fetchThreads"; //$NON-NLS-1$
+	private static final int DEFAULT_FETCH_THREADS = 4;
 	private String checksum;
 	private URI location;
 	private URI rootLocation;
@@ -62,6 +69,8 @@ public class UpdateSite {
 	// map of String (bundleID_featureVersion) to BundleDescriptr
 	private Map<String, BundleDescription> bundleCache = new HashMap<>();
 	private Transport transport;
+	// optional, caches the remote feature jars between sessions
+	private CacheManager cacheManager;
 
 	/*
 	 * Return a URI based on the given URI, which points to a site.xml file.
@@ -138,6 +147,15 @@ public class UpdateSite {
 	 */
 	public static synchronized UpdateSite load(URI location, Transport transport, IProgressMonitor monitor)
 			throws ProvisionException {
+		return load(location, transport, null, monitor);
+	}
+
+	/*
+	 * Load and return an update site object from the given location. The remote
+	 * feature jars of the site are kept in the given cache, if there is one.
+	 */
+	public static synchronized UpdateSite load(URI location, Transport transport, CacheManager cacheManager,
+			IProgressMonitor monitor) throws ProvisionException {
 		if (location == null)
 			return null;
 
@@ -145,8 +163,11 @@ public class UpdateSite {
 		// only caching remote sites
 		if (!PROTOCOL_FILE.equals(location.getScheme()) && siteCache.containsKey(location.toString())) {
 			result = siteCache.get(location.toString()).get();
-			if (result != null)
+			if (result != null) {
+				if (result.cacheManager == null)
+					result.cacheManager = cacheManager;
 				return result;
+			}
 			// else soft reference has been cleared, take it out of the cache
 			siteCache.remove(location.toString());
 		}
@@ -160,6 +181,7 @@ public class UpdateSite {
 			SiteModel siteModel = siteParser.parse(input);
 			String checksumString = Long.toString(checksum.getValue());
 			result = new UpdateSite(siteModel, getSiteURI(location), transport, checksumString);
+			result.cacheManager = cacheManager;
 			if (!PROTOCOL_FILE.equals(location.getScheme()))
 				siteCache.put(location.toString(), new SoftReference<>(result));
 			return result;
@@ -267,14 +289,18 @@ public class UpdateSite {
 	/*
 	 * Parse the feature.xml specified by the given input stream and return the
 	 * feature object. In case of failure, the failure is logged and null is
-	 * returned
+	 * returned. This is called concurrently for the features of a site.
 	 */
-	private Feature parseFeature(FeatureParser featureParser, URI featureURI, IProgressMonitor monitor) {
+	private Feature parseFeature(URI featureURI, IProgressMonitor monitor) {
+		FeatureParser featureParser = new FeatureParser();
 		File featureFile = null;
 		if (PROTOCOL_FILE.equals(featureURI.getScheme())) {
 			featureFile = URIUtil.toFile(featureURI);
 			return featureParser.parse(featureFile);
 		}
+		File cacheFile = getCachedFeature(featureURI, monitor);
+		if (cacheFile != null)
+			return featureParser.parse(cacheFile);
 		try {
 			featureFile = File.createTempFile(FEATURE_TEMP_FILE, JAR_EXTENSION);
 			IStatus transferResult = null;
@@ -314,6 +340,46 @@ public class UpdateSite {
 		return null;
 	}
 
+	/*
+	 * Return the cached copy of the remote feature jar, downloading it if it is
+	 * missing or the remote jar has been modified since. Returns null if there is
+	 * no cache or the feature could not be cached, the feature is then downloaded
+	 * directly.
+	 */
+	private File getCachedFeature(URI featureURI, IProgressMonitor monitor) {
+		if (cacheManager == null)
+			return null;
+		try {
+			File cacheFile = cacheManager.createCacheFromFile(featureURI, JAR_EXTENSION, monitor);
+			return cacheFile.exists() ? cacheFile : null;
+		} catch (ProvisionException e) {
+			// fall through and let the direct download report the problem
+		} catch (IOException e) {
+			// fall through and let the direct download report the problem
+		}
+		return null;
+	}
+
+	/*
+	 * Return the number of features or bundles to fetch concurrently.
+	 */
+	private static int getFetchThreads() {
+		return Math.max(1, Integer.getInteger(PROP_FETCH_THREADS, DEFAULT_FETCH_THREADS));
+	}
+
+	/*
+	 * Return a monitor for the worker threads which only forwards cancellation,
+	 * progress monitors are not meant to be used by several threads.
+	 */
+	private static IProgressMonitor getWorkerMonitor(IProgressMonitor monitor) {
+		return new NullProgressMonitor() {
+			@Override
+			public boolean isCanceled() {
+				return monitor.isCanceled();
+			}
+		};
+	}
+
 	/*
 	 * Constructor for the class.
 	 */
@@ -579,67 +645,81 @@ public class UpdateSite {
 
 	/*
 	 * Load and return the features that are referenced by this update site. Note
-	 * this requires downloading and parsing the feature manifest locally.
+	 * this requires downloading and parsing the feature manifest locally. The
+	 * features are fetched concurrently, one level of included features at a
+	 * time.
 	 */
 	private Feature[] loadFeaturesFromSite(IProgressMonitor monitor) throws ProvisionException {
 		SiteFeature[] siteFeatures = site.getFeatures();
-		FeatureParser featureParser = new FeatureParser();
 		Map<String, Feature> tmpFeatureCache = new HashMap<>(siteFeatures.length);
+		IProgressMonitor workerMonitor = getWorkerMonitor(monitor);
 
-		for (SiteFeature siteFeature1 : siteFeatures) {
-			if (monitor.isCanceled()) {
-				throw new OperationCanceledException();
-			}
-			SiteFeature siteFeature = siteFeature1;
-			String key = null;
+		List<SiteFeature> toLoad = new ArrayList<>(siteFeatures.length);
+		Set<String> keys = new HashSet<>(siteFeatures.length);
+		for (SiteFeature siteFeature : siteFeatures) {
 			if (siteFeature.getFeatureIdentifier() != null && siteFeature.getFeatureVersion() != null) {
-				key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
-				if (tmpFeatureCache.containsKey(key))
+				String key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
+				if (!keys.add(key))
 					continue;
 			}
-			URI featureURI = getSiteFeatureURI(siteFeature);
-			Feature feature = parseFeature(featureParser, featureURI, new NullProgressMonitor());
-			if (feature == null) {
-				LogHelper.log(
-						new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ErrorReadingFeature, featureURI)));
-			} else {
-				if (key == null) {
-					siteFeature.setFeatureIdentifier(feature.getId());
-					siteFeature.setFeatureVersion(feature.getVersion());
-					key = siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion();
-				}
-				tmpFeatureCache.put(key, feature);
-				loadIncludedFeatures(feature, featureParser, tmpFeatureCache, monitor);
-			}
+			toLoad.add(siteFeature);
 		}
+
+		List<Feature> loaded = new ArrayList<>(toLoad.size());
+		PublishingPipeline.forEachOrdered(toLoad, getFetchThreads(),
+				siteFeature -> parseFeature(getSiteFeatureURI(siteFeature), workerMonitor), (siteFeature, feature) -> {
+					if (feature == null) {
+						LogHelper.log(new Status(IStatus.ERROR, Activator.ID,
+								NLS.bind(Messages.ErrorReadingFeature, getSiteFeatureURI(siteFeature))));
+						return;
+					}
+					if (siteFeature.getFeatureIdentifier() == null || siteFeature.getFeatureVersion() == null) {
+						siteFeature.setFeatureIdentifier(feature.getId());
+						siteFeature.setFeatureVersion(feature.getVersion());
+					}
+					tmpFeatureCache.put(
+							siteFeature.getFeatureIdentifier() + VERSION_SEPARATOR + siteFeature.getFeatureVersion(),
+							feature);
+					loaded.add(feature);
+				}, monitor);
+		loadIncludedFeatures(loaded, tmpFeatureCache, monitor);
 		featureCache = tmpFeatureCache;
 		return featureCache.values().toArray(new Feature[featureCache.size()]);
 	}
 
 	/*
-	 * Load the features that are included by the given feature.
+	 * Load the features that are included by the given features, and recursively
+	 * the features they include.
 	 */
-	private void loadIncludedFeatures(Feature feature, FeatureParser featureParser, Map<String, Feature> features,
-			IProgressMonitor monitor) throws ProvisionException {
-		FeatureEntry[] featureEntries = feature.getEntries();
-		for (FeatureEntry featureEntry : featureEntries) {
-			if (monitor.isCanceled())
-				throw new OperationCanceledException();
-			FeatureEntry entry = featureEntry;
-			if (entry.isRequires() || entry.isPlugin())
-				continue;
-			String key = entry.getId() + VERSION_SEPARATOR + entry.getVersion();
-			if (features.containsKey(key))
-				continue;
-			URI includedFeatureURI = getFeatureURI(entry.getId(), entry.getVersion());
-			Feature includedFeature = parseFeature(featureParser, includedFeatureURI, monitor);
-			if (includedFeature == null) {
-				LogHelper.log(new Status(IStatus.ERROR, Activator.ID,
-						NLS.bind(Messages.ErrorReadingFeature, includedFeatureURI)));
-			} else {
-				features.put(key, includedFeature);
-				loadIncludedFeatures(includedFeature, featureParser, features, monitor);
+	private void loadIncludedFeatures(List<Feature> parents, Map<String, Feature> features,
+			IProgressMonitor monitor) {
+		IProgressMonitor workerMonitor = getWorkerMonitor(monitor);
+		while (!parents.isEmpty()) {
+			Map<String, FeatureEntry> included = new LinkedHashMap<>();
+			for (Feature parent : parents) {
+				for (FeatureEntry entry : parent.getEntries()) {
+					if (entry.isRequires() || entry.isPlugin())
+						continue;
+					String key = entry.getId() + VERSION_SEPARATOR + entry.getVersion();
+					if (!features.containsKey(key))
+						included.putIfAbsent(key, entry);
+				}
 			}
+
+			List<Feature> loaded = new ArrayList<>(included.size());
+			PublishingPipeline.forEachOrdered(new ArrayList<>(included.entrySet()), getFetchThreads(),
+					entry -> parseFeature(getFeatureURI(entry.getValue().getId(), entry.getValue().getVersion()),
+							workerMonitor),
+					(entry, includedFeature) -> {
+						if (includedFeature == null) {
+							LogHelper.log(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ErrorReadingFeature,
+									getFeatureURI(entry.getValue().getId(), entry.getValue().getVersion()))));
+						} else {
+							features.put(entry.getKey(), includedFeature);
+							loaded.add(includedFeature);
+						}
+					}, monitor);
+			parents = loaded;
 		}
 	}
 
@@ -650,32 +730,34 @@ public class UpdateSite {
 	private BundleDescription[] loadBundlesFromSite(IProgressMonitor monitor) {
 		SiteBundle[] siteBundles = site.getBundles();
 		Map<String, BundleDescription> tmpBundleCache = new HashMap<>(siteBundles.length);
+		IProgressMonitor workerMonitor = getWorkerMonitor(monitor);
 
+		List<SiteBundle> toLoad = new ArrayList<>(siteBundles.length);
+		Set<String> keys = new HashSet<>(siteBundles.length);
 		for (SiteBundle siteBundle : siteBundles) {
-			if (monitor.isCanceled()) {
-				throw new OperationCanceledException();
-			}
-			String key = null;
 			if (siteBundle.getBundleIdentifier() != null && siteBundle.getBundleVersion() != null) {
-				key = siteBundle.getBundleIdentifier() + VERSION_SEPARATOR + siteBundle.getBundleVersion();
-				if (tmpBundleCache.containsKey(key))
+				String key = siteBundle.getBundleIdentifier() + VERSION_SEPARATOR + siteBundle.getBundleVersion();
+				if (!keys.add(key))
 					continue;
 			}
-			URI bundleURI = getSiteBundleURI(siteBundle);
-			BundleDescription bundle = parseBundleDescription(bundleURI, monitor);
-			if (bundle == null) {
-				LogHelper
-						.log(new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.ErrorReadingBundle, bundleURI)));
-			} else {
-				if (key == null) {
-					siteBundle.setBundleIdentifier(bundle.getSymbolicName());
-					siteBundle.setBundleVersion(bundle.getVersion().toString());
-					key = siteBundle.getBundleIdentifier() + VERSION_SEPARATOR
-							+ siteBundle.getBundleVersion().toString();
-				}
-				tmpBundleCache.put(key, bundle);
-			}
+			toLoad.add(siteBundle);
 		}
+
+		PublishingPipeline.forEachOrdered(toLoad, getFetchThreads(),
+				siteBundle -> parseBundleDescription(getSiteBundleURI(siteBundle), workerMonitor),
+				(siteBundle, bundle) -> {
+					if (bundle == null) {
+						LogHelper.log(new Status(IStatus.ERROR, Activator.ID,
+								NLS.bind(Messages.ErrorReadingBundle, getSiteBundleURI(siteBundle))));
+						return;
+					}
+					if (siteBundle.getBundleIdentifier() == null || siteBundle.getBundleVersion() == null) {
+						siteBundle.setBundleIdentifier(bundle.getSymbolicName());
+						siteBundle.setBundleVersion(bundle.getVersion().toString());
+					}
+					tmpBundleCache.put(siteBundle.getBundleIdentifier() + VERSION_SEPARATOR
+							+ siteBundle.getBundleVersion(), bundle);
+				}, monitor);
 		bundleCache = tmpBundleCache;
 		return bundleCache.values().toArray(new BundleDescription[bundleCache.size()]);
 	}
@@ -20,6 +20,7 @@ import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactDescriptor;
 import org.eclipse.equinox.internal.p2.artifact.repository.simple.SimpleArtifactRepositoryFactory;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.p2.updatesite.*;
 import org.eclipse.equinox.internal.p2.updatesite.metadata.UpdateSiteMetadataRepositoryFactory;
@@ -100,7 +101,8 @@ public class UpdateSiteArtifactRepositoryFactory extends ArtifactRepositoryFacto
 
 	public void initializeRepository(IArtifactRepository repository, URI location, IProgressMonitor monitor)
 			throws ProvisionException {
-		UpdateSite updateSite = UpdateSite.load(location, getAgent().getService(Transport.class), monitor);
+		UpdateSite updateSite = UpdateSite.load(location, getAgent().getService(Transport.class),
+				getAgent().getService(CacheManager.class), monitor);
 		String savedChecksum = repository.getProperties().get(PROP_SITE_CHECKSUM);
 		if (savedChecksum != null && savedChecksum.equals(updateSite.getChecksum()))
 			return;
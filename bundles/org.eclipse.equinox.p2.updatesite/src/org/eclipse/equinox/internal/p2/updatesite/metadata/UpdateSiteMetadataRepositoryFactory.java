@@ -23,6 +23,7 @@ import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.metadata.repository.LocalMetadataRepository;
 import org.eclipse.equinox.internal.p2.metadata.repository.SimpleMetadataRepositoryFactory;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.p2.updatesite.*;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -105,7 +106,8 @@ public class UpdateSiteMetadataRepositoryFactory extends MetadataRepositoryFacto
 
 	public void initializeRepository(IMetadataRepository repository, URI location, IProgressMonitor monitor)
 			throws ProvisionException {
-		UpdateSite updateSite = UpdateSite.load(location, getAgent().getService(Transport.class), monitor);
+		UpdateSite updateSite = UpdateSite.load(location, getAgent().getService(Transport.class),
+				getAgent().getService(CacheManager.class), monitor);
 		String savedChecksum = repository.getProperties().get(PROP_SITE_CHECKSUM);
 		if (savedChecksum != null && savedChecksum.equals(updateSite.getChecksum()))
 			return;
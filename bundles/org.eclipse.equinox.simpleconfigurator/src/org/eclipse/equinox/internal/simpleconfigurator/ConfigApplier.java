@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2020 IBM Corporation and others.
+ * Copyright (c) 2007, 2021 IBM Corporation and others.
  * All rights reserved.
  * This program and the accompanying materials are made available under the
  * terms of the Eclipse Public License 2.0 which accompanies this distribution,
@@ -24,12 +24,12 @@ import org.osgi.framework.*;
 import org.osgi.framework.namespace.*;
 import org.osgi.framework.startlevel.BundleStartLevel;
 import org.osgi.framework.wiring.*;
-import org.osgi.resource.Namespace;
 import org.osgi.resource.Requirement;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 class ConfigApplier {
 	private static final String LAST_BUNDLES_INFO = "last.bundles.info"; //$NON-NLS-1$
+	private static final String LAST_BUNDLES_SNAPSHOT = "last.bundles.snapshot"; //$NON-NLS-1$
 	private static final String PROP_DEVMODE = "osgi.dev"; //$NON-NLS-1$
 
 	private final BundleContext manipulatingContext;
@@ -40,6 +40,7 @@ class ConfigApplier {
 
 	private final Bundle callingBundle;
 	private final URI baseLocation;
+	private final WiringAnalyzer wiringAnalyzer = new WiringAnalyzer();
 
 	ConfigApplier(BundleContext context, Bundle callingBundle) {
 		manipulatingContext = context;
@@ -57,6 +58,18 @@ class ConfigApplier {
 	}
 
 	void install(URL url, boolean exclusiveMode) throws IOException {
+		byte[] digest = BundlesInfoSnapshot.computeDigest(url, baseLocation, exclusiveMode);
+		BundlesInfoSnapshot lastSnapshot = BundlesInfoSnapshot.read(getLastSnapshotFile());
+		// the snapshot can only be trusted if nobody else changed the installed bundles since it was taken
+		if (lastSnapshot != null && !lastSnapshot.hasFrameworkStamp(getFrameworkStamp()))
+			lastSnapshot = null;
+
+		if (lastSnapshot != null && lastSnapshot.hasDigest(digest) && startUnchanged(lastSnapshot)) {
+			if (Activator.DEBUG)
+				System.out.println("applyConfiguration() configuration unchanged since last applied"); //$NON-NLS-1$
+			return;
+		}
+
 		List<BundleInfo> bundleInfoList = SimpleConfiguratorUtils.readConfiguration(url, baseLocation);
 		if (Activator.DEBUG)
 			System.out.println("applyConfiguration() bundleInfoList.size()=" + bundleInfoList.size());
@@ -80,6 +93,98 @@ class ConfigApplier {
 			}
 		}
 
+		Map<BundleInfo, Bundle> installed = new HashMap<>();
+		if (lastSnapshot != null)
+			installDelta(url, exclusiveMode, expectedState, lastSnapshot, installed);
+		else
+			installAll(url, exclusiveMode, expectedState, installed);
+
+		long[] bundleIds = new long[expectedState.length];
+		for (int i = 0; i < expectedState.length; i++) {
+			Bundle bundle = installed.get(expectedState[i]);
+			bundleIds[i] = bundle == null ? BundlesInfoSnapshot.NO_BUNDLE : bundle.getBundleId();
+		}
+		new BundlesInfoSnapshot(digest == null ? new byte[0] : digest, getFrameworkStamp(), expectedState, bundleIds).write(getLastSnapshotFile());
+	}
+
+	/**
+	 * Starts the bundles of an unchanged configuration that are marked as started.
+	 *
+	 * @return false if the snapshot does not match the installed bundles or an
+	 *         entry failed to install last time, and the configuration has to be
+	 *         applied again.
+	 */
+	private boolean startUnchanged(BundlesInfoSnapshot snapshot) {
+		BundleInfo[] bundles = snapshot.getBundles();
+		List<Bundle> toStart = new ArrayList<>();
+		for (int i = 0; i < bundles.length; i++) {
+			long id = snapshot.getBundleId(i);
+			// retry the install, the bundle may be available by now
+			if (id == BundlesInfoSnapshot.NO_BUNDLE)
+				return false;
+			if (!bundles[i].isMarkedAsStarted())
+				continue;
+			Bundle bundle = manipulatingContext.getBundle(id);
+			if (bundle == null)
+				return false;
+			toStart.add(bundle);
+		}
+		startBundles(toStart.toArray(new Bundle[toStart.size()]));
+		return true;
+	}
+
+	/**
+	 * Applies only the difference between the last applied configuration and the
+	 * expected state. Must only be used when the installed bundles are known to be
+	 * unchanged since the snapshot was taken.
+	 */
+	private void installDelta(URL url, boolean exclusiveMode, BundleInfo[] expectedState, BundlesInfoSnapshot lastSnapshot, Map<BundleInfo, Bundle> installed) {
+		Map<BundleInfo, Integer> lastIndex = lastSnapshot.createIndex();
+		BundleInfo[] lastBundles = lastSnapshot.getBundles();
+
+		List<BundleInfo> changed = new ArrayList<>();
+		Collection<Bundle> toStart = new ArrayList<>();
+		for (BundleInfo element : expectedState) {
+			Integer index = lastIndex.get(element);
+			Bundle current = null;
+			if (index != null && BundlesInfoSnapshot.isSameEntry(lastBundles[index], element)) {
+				long id = lastSnapshot.getBundleId(index);
+				current = id == BundlesInfoSnapshot.NO_BUNDLE ? null : manipulatingContext.getBundle(id);
+			}
+			if (current == null) {
+				changed.add(element);
+				continue;
+			}
+			installed.put(element, current);
+			if (element.isMarkedAsStarted())
+				toStart.add(current);
+		}
+
+		// an entry that only moved to another location keeps its bundle
+		Set<String> expectedIds = new HashSet<>();
+		for (BundleInfo element : expectedState)
+			expectedIds.add(element.getSymbolicName() + '_' + element.getVersion());
+		HashSet<BundleInfo> toUninstall = new HashSet<>();
+		for (BundleInfo element : lastBundles) {
+			if (!expectedIds.contains(element.getSymbolicName() + '_' + element.getVersion()))
+				toUninstall.add(element);
+		}
+		if (!exclusiveMode)
+			saveStateAsLast(url);
+
+		if (Activator.DEBUG)
+			System.out.println("applyConfiguration() changed=" + changed.size() + " removed=" + toUninstall.size()); //$NON-NLS-1$ //$NON-NLS-2$
+
+		Set<Bundle> prevouslyResolved = getResolvedBundles();
+		Collection<Bundle> toRefresh = new ArrayList<>();
+		toRefresh.addAll(installBundles(changed.toArray(new BundleInfo[changed.size()]), toStart, installed));
+		toRefresh.addAll(uninstallBundles(toUninstall));
+		refresh(prevouslyResolved, toRefresh);
+
+		startBundles(toStart.toArray(new Bundle[toStart.size()]));
+	}
+
+	private void installAll(URL url, boolean exclusiveMode, BundleInfo[] expectedState, Map<BundleInfo, Bundle> installed) {
 		HashSet<BundleInfo> toUninstall = null;
 		if (!exclusiveMode) {
 			BundleInfo[] lastInstalledBundles = getLastState();
@@ -94,13 +199,19 @@ class ConfigApplier {
 		Collection<Bundle> toRefresh = new ArrayList<>();
 		Collection<Bundle> toStart = new ArrayList<>();
 		if (exclusiveMode) {
-			toRefresh.addAll(installBundles(expectedState, toStart));
+			toRefresh.addAll(installBundles(expectedState, toStart, installed));
 			toRefresh.addAll(uninstallBundles(expectedState, packageAdminService));
 		} else {
-			toRefresh.addAll(installBundles(expectedState, toStart));
+			toRefresh.addAll(installBundles(expectedState, toStart, installed));
 			if (toUninstall != null)
 				toRefresh.addAll(uninstallBundles(toUninstall));
 		}
+		refresh(prevouslyResolved, toRefresh);
+
+		startBundles(toStart.toArray(new Bundle[toStart.size()]));
+	}
+
+	private void refresh(Set<Bundle> prevouslyResolved, Collection<Bundle> toRefresh) {
 		if (!toRefresh.isEmpty()) {
 			if (manipulatingContext.getBundle().getState() == Bundle.STARTING) {
 				// This is the startup of simple configurator.
@@ -115,11 +226,8 @@ class ConfigApplier {
 					if (additionalRefresh.length > 0)
 						refreshPackages(additionalRefresh, manipulatingContext);
 				}
+			}
 		}
-
-		}
-
-		startBundles(toStart.toArray(new Bundle[toStart.size()]));
 	}
 
 	private Bundle[] getAdditionalRefresh(Set<Bundle> previouslyResolved, Collection<Bundle> toRefresh) {
@@ -155,69 +263,14 @@ class ConfigApplier {
 			}
 		}
 
-		for (Bundle bundle : previouslyResolved) {
-			BundleRevision revision = bundle.adapt(BundleRevision.class);
-			BundleWiring wiring = revision == null ? null : revision.getWiring();
-			if (wiring != null) {
-				Collection<BundleRequirement> reqs = revision.getDeclaredRequirements(null);
-				Set<BundleRequirement> optionalReqs = new HashSet<>();
-				for (BundleRequirement req : reqs) {
-					String namespace = req.getNamespace();
-					// only do this for package and bundle namespaces
-					if (PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) || BundleNamespace.BUNDLE_NAMESPACE.equals(namespace)) {
-						if (Namespace.RESOLUTION_OPTIONAL.equals(req.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE))) {
-							optionalReqs.add(req);
-						}
-					}
-				}
-				if (!optionalReqs.isEmpty()) {
-					wiring = getHostWiring(wiring);
-					// check that all optional requirements are wired
-					Collection<BundleWire> requiredWires = wiring.getRequiredWires(null);
-					for (BundleWire requiredWire : requiredWires) {
-						optionalReqs.remove(requiredWire.getRequirement());
-					}
-					if (!optionalReqs.isEmpty()) {
-						// there are a number of optional requirements not wired
-						for (BundleRequirement bundleRequirement : optionalReqs) {
-							Collection<BundleCapability> candidates = frameworkWiring.findProviders(bundleRequirement);
-							// Filter out candidates that were previously resolved or are currently not resolved.
-							// There is no need to refresh the resource if the candidate was previously available.
-							for (Iterator<BundleCapability> iCandidates = candidates.iterator(); iCandidates.hasNext();) {
-								BundleCapability candidate = iCandidates.next();
-								Bundle candidateBundle = candidate.getRevision().getBundle();
-								// The candidate is not from the original refresh set, but
-								// it could have just became resolved as a result of new bundles.
-								if (previouslyResolved.contains(candidateBundle) || candidateBundle.getState() == Bundle.INSTALLED) {
-									iCandidates.remove();
-								}
-							}
-							if (!candidates.isEmpty()) {
-								additionalRefresh.add(wiring.getBundle());
-								break;
-							}
-						}
-					}
-				}
-			}
-		}
+		// Only the bundles that just became resolved can satisfy optional requirements
+		// that were not wired before.
+		Set<Bundle> newlyResolved = getResolvedBundles();
+		newlyResolved.removeAll(previouslyResolved);
+		additionalRefresh.addAll(wiringAnalyzer.findAdditionalRefresh(previouslyResolved, newlyResolved));
 		return additionalRefresh.toArray(new Bundle[additionalRefresh.size()]);
 	}
 
-	private BundleWiring getHostWiring(BundleWiring wiring) {
-		if ((wiring.getRevision().getTypes() & BundleRevision.TYPE_FRAGMENT) == 0) {
-			// not a fragment
-			return wiring;
-		}
-		Collection<BundleWire> hostWires = wiring.getRequiredWires(HostNamespace.HOST_NAMESPACE);
-		// just use the first host wiring
-		if (hostWires.isEmpty()) {
-			return wiring;
-		}
-		BundleWire hostWire = hostWires.iterator().next();
-		return hostWire.getProviderWiring();
-	}
-
 	private Set<Bundle> getResolvedBundles() {
 		Set<Bundle> resolved = new HashSet<>();
 		Bundle[] allBundles = manipulatingContext.getBundles();
@@ -308,7 +361,27 @@ class ConfigApplier {
 		return manipulatingContext.getDataFile(LAST_BUNDLES_INFO);
 	}
 
+	private File getLastSnapshotFile() {
+		return manipulatingContext.getDataFile(LAST_BUNDLES_SNAPSHOT);
+	}
+
+	/**
+	 * Returns a cheap stamp of the installed bundles: their number and the latest
+	 * time one of them was installed, updated or uninstalled.
+	 */
+	private long[] getFrameworkStamp() {
+		Bundle[] bundles = manipulatingContext.getBundles();
+		long lastModified = 0;
+		for (Bundle bundle : bundles)
+			lastModified = Math.max(lastModified, bundle.getLastModified());
+		return new long[] {bundles.length, lastModified};
+	}
+
 	private BundleInfo[] getLastState() {
+		BundlesInfoSnapshot lastSnapshot = BundlesInfoSnapshot.read(getLastSnapshotFile());
+		if (lastSnapshot != null)
+			return lastSnapshot.getBundles();
+
 		File lastBundlesInfo = getLastBundleInfo();
 		if (!lastBundlesInfo.isFile())
 			return null;
@@ -319,7 +392,7 @@ class ConfigApplier {
 		}
 	}
 
-	private ArrayList<Bundle> installBundles(BundleInfo[] finalList, Collection<Bundle> toStart) {
+	private ArrayList<Bundle> installBundles(BundleInfo[] finalList, Collection<Bundle> toStart, Map<BundleInfo, Bundle> installed) {
 		ArrayList<Bundle> toRefresh = new ArrayList<>();
 
 		String useReferenceProperty = manipulatingContext.getProperty(SimpleConfiguratorConstants.PROP_KEY_USE_REFERENCE);
@@ -397,6 +470,8 @@ class ConfigApplier {
 				}
 			}
 
+			installed.put(element, current);
+
 			// Mark Started
 			if (element.isMarkedAsStarted()) {
 				toStart.add(current);
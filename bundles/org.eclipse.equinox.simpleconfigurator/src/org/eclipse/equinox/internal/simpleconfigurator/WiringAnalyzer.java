@@ -0,0 +1,217 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ * All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which accompanies this distribution,
+ * and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.simpleconfigurator;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.namespace.*;
+import org.osgi.framework.wiring.*;
+import org.osgi.resource.Namespace;
+
+/*
+ * Finds the resolved bundles that have to be refreshed because bundles that just
+ * became resolved can satisfy some of their optional package or bundle
+ * requirements that are currently not wired.
+ *
+ * Instead of asking the framework for the providers of every unwired optional
+ * requirement, the analyzer keeps a reverse map from the required package or
+ * bundle name to the unwired optional requirements on it. Only the capabilities
+ * of the newly resolved bundles are looked up in that map. The map is updated
+ * incrementally: the requirements of a bundle are analyzed again only when its
+ * wiring changed since the previous call.
+ */
+public class WiringAnalyzer {
+	/*
+	 * Key used for requirements whose filter does not name exactly one package or
+	 * bundle (e.g. wildcards). These are checked against every new capability in
+	 * their namespace.
+	 */
+	private static final String ANY = "*"; //$NON-NLS-1$
+
+	private static final Pattern PACKAGE_FILTER = filterPattern(PackageNamespace.PACKAGE_NAMESPACE);
+	private static final Pattern BUNDLE_FILTER = filterPattern(BundleNamespace.BUNDLE_NAMESPACE);
+
+	private static class Requirer {
+		final BundleWiring wiring;
+		final BundleWiring hostWiring;
+		final List<String> keys = new ArrayList<>();
+		final List<BundleRequirement> requirements = new ArrayList<>();
+
+		Requirer(BundleWiring wiring, BundleWiring hostWiring) {
+			this.wiring = wiring;
+			this.hostWiring = hostWiring;
+		}
+	}
+
+	private final Map<Bundle, Requirer> requirers = new HashMap<>();
+	private final Map<String, List<BundleRequirement>> requirementsByKey = new HashMap<>();
+	private final Map<BundleRequirement, Bundle> requirementHosts = new HashMap<>();
+
+	/**
+	 * @param previouslyResolved the bundles resolved before the change
+	 * @param newlyResolved the bundles that became resolved by the change
+	 * @return the previously resolved bundles that have an unwired optional
+	 * requirement that one of the newly resolved bundles can satisfy
+	 */
+	public Set<Bundle> findAdditionalRefresh(Collection<Bundle> previouslyResolved, Collection<Bundle> newlyResolved) {
+		List<BundleCapability> capabilities = new ArrayList<>();
+		for (Bundle bundle : newlyResolved) {
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			if (revision == null)
+				continue;
+			capabilities.addAll(revision.getDeclaredCapabilities(PackageNamespace.PACKAGE_NAMESPACE));
+			capabilities.addAll(revision.getDeclaredCapabilities(BundleNamespace.BUNDLE_NAMESPACE));
+		}
+		if (capabilities.isEmpty())
+			return Collections.emptySet();
+
+		update(previouslyResolved);
+
+		Set<Bundle> result = new HashSet<>();
+		for (BundleCapability capability : capabilities) {
+			Object name = capability.getAttributes().get(capability.getNamespace());
+			if (name != null)
+				match(requirementsByKey.get(key(capability.getNamespace(), name.toString())), capability, result);
+			match(requirementsByKey.get(key(capability.getNamespace(), ANY)), capability, result);
+		}
+		return result;
+	}
+
+	private void match(List<BundleRequirement> requirements, BundleCapability capability, Set<Bundle> result) {
+		if (requirements == null)
+			return;
+		for (BundleRequirement requirement : requirements) {
+			Bundle host = requirementHosts.get(requirement);
+			if (!result.contains(host) && requirement.matches(capability))
+				result.add(host);
+		}
+	}
+
+	/*
+	 * Brings the reverse map in line with the current wirings of the given bundles.
+	 */
+	private void update(Collection<Bundle> resolved) {
+		Set<Bundle> current = resolved instanceof Set ? (Set<Bundle>) resolved : new HashSet<>(resolved);
+		for (Iterator<Map.Entry<Bundle, Requirer>> iter = requirers.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry<Bundle, Requirer> entry = iter.next();
+			if (!current.contains(entry.getKey())) {
+				remove(entry.getValue());
+				iter.remove();
+			}
+		}
+
+		for (Bundle bundle : resolved) {
+			BundleRevision revision = bundle.adapt(BundleRevision.class);
+			BundleWiring wiring = revision == null ? null : revision.getWiring();
+			BundleWiring hostWiring = wiring == null ? null : getHostWiring(wiring);
+
+			Requirer requirer = requirers.get(bundle);
+			if (requirer != null) {
+				if (requirer.wiring == wiring && requirer.hostWiring == hostWiring)
+					continue;
+				remove(requirer);
+				requirers.remove(bundle);
+			}
+			if (wiring == null)
+				continue;
+
+			requirer = new Requirer(wiring, hostWiring);
+			add(requirer, revision);
+			requirers.put(bundle, requirer);
+		}
+	}
+
+	private void add(Requirer requirer, BundleRevision revision) {
+		Set<BundleRequirement> optionalReqs = new HashSet<>();
+		for (BundleRequirement req : revision.getDeclaredRequirements(null)) {
+			String namespace = req.getNamespace();
+			// only do this for package and bundle namespaces
+			if (PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) || BundleNamespace.BUNDLE_NAMESPACE.equals(namespace)) {
+				if (Namespace.RESOLUTION_OPTIONAL.equals(req.getDirectives().get(Namespace.REQUIREMENT_RESOLUTION_DIRECTIVE)))
+					optionalReqs.add(req);
+			}
+		}
+		if (optionalReqs.isEmpty())
+			return;
+
+		// check that all optional requirements are wired
+		for (BundleWire requiredWire : requirer.hostWiring.getRequiredWires(null))
+			optionalReqs.remove(requiredWire.getRequirement());
+
+		Bundle host = requirer.hostWiring.getBundle();
+		for (BundleRequirement req : optionalReqs) {
+			String key = key(req);
+			requirementsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(req);
+			requirementHosts.put(req, host);
+			requirer.keys.add(key);
+			requirer.requirements.add(req);
+		}
+	}
+
+	private void remove(Requirer requirer) {
+		for (int i = 0; i < requirer.keys.size(); i++) {
+			String key = requirer.keys.get(i);
+			BundleRequirement req = requirer.requirements.get(i);
+			List<BundleRequirement> requirements = requirementsByKey.get(key);
+			requirements.remove(req);
+			if (requirements.isEmpty())
+				requirementsByKey.remove(key);
+			requirementHosts.remove(req);
+		}
+	}
+
+	static BundleWiring getHostWiring(BundleWiring wiring) {
+		if ((wiring.getRevision().getTypes() & BundleRevision.TYPE_FRAGMENT) == 0) {
+			// not a fragment
+			return wiring;
+		}
+		Collection<BundleWire> hostWires = wiring.getRequiredWires(HostNamespace.HOST_NAMESPACE);
+		// just use the first host wiring
+		if (hostWires.isEmpty()) {
+			return wiring;
+		}
+		BundleWire hostWire = hostWires.iterator().next();
+		return hostWire.getProviderWiring();
+	}
+
+	/*
+	 * Extracts the name of the required package or bundle from the filter of the
+	 * requirement, e.g. "org.foo" from "(&(osgi.wiring.package=org.foo)(version>=1.0.0))".
+	 */
+	private static String key(BundleRequirement requirement) {
+		String namespace = requirement.getNamespace();
+		String filter = requirement.getDirectives().get(Namespace.REQUIREMENT_FILTER_DIRECTIVE);
+		if (filter == null)
+			return key(namespace, ANY);
+
+		Matcher matcher = (PackageNamespace.PACKAGE_NAMESPACE.equals(namespace) ? PACKAGE_FILTER : BUNDLE_FILTER).matcher(filter);
+		if (!matcher.find())
+			return key(namespace, ANY);
+		String name = matcher.group(1);
+		// wildcards, escapes or several alternatives can only be checked by matching
+		if (name.indexOf('*') >= 0 || name.indexOf('\\') >= 0 || matcher.find())
+			return key(namespace, ANY);
+		return key(namespace, name);
+	}
+
+	private static Pattern filterPattern(String namespace) {
+		return Pattern.compile("\\(" + Pattern.quote(namespace) + "=([^)]*)\\)"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private static String key(String namespace, String name) {
+		return namespace + ':' + name;
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2021 IBM Corporation and others.
+ * All rights reserved.
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which accompanies this distribution,
+ * and is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *
+ * Contributors:
+ * 		IBM Corporation - initial API and implementation
+ ******************************************************************************/
+package org.eclipse.equinox.internal.simpleconfigurator.utils;
+
+import java.io.*;
+import java.net.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import org.eclipse.equinox.internal.simpleconfigurator.Activator;
+
+/*
+ * A binary snapshot of the last configuration applied by the simple configurator.
+ *
+ * The snapshot remembers a digest of the configuration sources (bundles.info and
+ * any extension .info files), a stamp of the framework state right after the
+ * configuration was applied, and for every applied BundleInfo the id of the
+ * bundle that was installed for it. If at the next startup both the digest and
+ * the framework stamp are unchanged the configuration does not need to be read
+ * or applied again. If only the digest changed, the snapshot tells exactly
+ * which entries are new, changed or gone.
+ */
+public class BundlesInfoSnapshot {
+	public static final long NO_BUNDLE = -1;
+
+	private static final int MAGIC = 0x70325343; // "p2SC"
+	private static final int FORMAT_VERSION = 1;
+	private static final String DIGEST_ALGORITHM = "SHA-256"; //$NON-NLS-1$
+
+	private final byte[] digest;
+	private final long[] frameworkStamp;
+	private final BundleInfo[] bundles;
+	private final long[] bundleIds;
+
+	public BundlesInfoSnapshot(byte[] digest, long[] frameworkStamp, BundleInfo[] bundles, long[] bundleIds) {
+		if (bundles.length != bundleIds.length)
+			throw new IllegalArgumentException("Each bundle must have an id"); //$NON-NLS-1$
+		this.digest = digest;
+		this.frameworkStamp = frameworkStamp;
+		this.bundles = bundles;
+		this.bundleIds = bundleIds;
+	}
+
+	public BundleInfo[] getBundles() {
+		return bundles;
+	}
+
+	/**
+	 * @param index index of a bundle in {@link #getBundles()}
+	 * @return the id of the bundle installed for the entry, or {@link #NO_BUNDLE}
+	 */
+	public long getBundleId(int index) {
+		return bundleIds[index];
+	}
+
+	public boolean hasDigest(byte[] other) {
+		return MessageDigest.isEqual(digest, other);
+	}
+
+	public boolean hasFrameworkStamp(long[] other) {
+		return Arrays.equals(frameworkStamp, other);
+	}
+
+	/**
+	 * Builds a lookup from bundle info to entry index. The lookup uses
+	 * {@link BundleInfo#equals(Object)}, so candidates must still be checked with
+	 * {@link #isSameEntry(BundleInfo, BundleInfo)}.
+	 */
+	public Map<BundleInfo, Integer> createIndex() {
+		Map<BundleInfo, Integer> index = new HashMap<>(bundles.length * 2);
+		for (int i = 0; i < bundles.length; i++)
+			index.putIfAbsent(bundles[i], i);
+		return index;
+	}
+
+	public static boolean isSameEntry(BundleInfo a, BundleInfo b) {
+		return a.equals(b) && a.getStartLevel() == b.getStartLevel() && a.isMarkedAsStarted() == b.isMarkedAsStarted() && Objects.equals(a.getLocation(), b.getLocation()) && Objects.equals(a.getBaseLocation(), b.getBaseLocation());
+	}
+
+	/**
+	 * Computes a digest of the configuration read from the given URL together with
+	 * the extension .info files, the base location and the install mode.
+	 *
+	 * @return the digest or null if one of the sources can not be read
+	 */
+	public static byte[] computeDigest(URL url, URI base, boolean exclusiveMode) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+
+		md.update(String.valueOf(base).getBytes());
+		md.update((byte) (exclusiveMode ? 1 : 0));
+		try {
+			update(md, url);
+			if (Activator.EXTENDED) {
+				for (File info : SimpleConfiguratorUtils.getInfoFiles()) {
+					md.update(info.getAbsolutePath().getBytes());
+					update(md, info.toURI().toURL());
+				}
+			}
+		} catch (IOException | URISyntaxException e) {
+			return null;
+		}
+		return md.digest();
+	}
+
+	private static void update(MessageDigest md, URL url) throws IOException {
+		try (InputStream stream = url.openStream()) {
+			byte[] buffer = new byte[8192];
+			int bytesRead;
+			while ((bytesRead = stream.read(buffer)) != -1)
+				md.update(buffer, 0, bytesRead);
+		} catch (FileNotFoundException e) {
+			// a missing file is read as an empty configuration
+			md.update((byte) -1);
+		}
+	}
+
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @return the snapshot, or null if the file does not exist or can not be read
+	 */
+	public static BundlesInfoSnapshot read(File file) {
+		if (!file.isFile())
+			return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+				return null;
+
+			byte[] digest = new byte[in.readInt()];
+			in.readFully(digest);
+			long[] frameworkStamp = new long[in.readInt()];
+			for (int i = 0; i < frameworkStamp.length; i++)
+				frameworkStamp[i] = in.readLong();
+
+			int size = in.readInt();
+			BundleInfo[] bundles = new BundleInfo[size];
+			long[] bundleIds = new long[size];
+			for (int i = 0; i < size; i++) {
+				String symbolicName = readString(in);
+				String version = readString(in);
+				String location = readString(in);
+				String baseLocation = readString(in);
+				int startLevel = in.readInt();
+				boolean markedAsStarted = in.readBoolean();
+
+				bundles[i] = new BundleInfo(symbolicName, version, location == null ? null : new URI(location), startLevel, markedAsStarted);
+				if (baseLocation != null)
+					bundles[i].setBaseLocation(new URI(baseLocation));
+				bundleIds[i] = in.readLong();
+			}
+			return new BundlesInfoSnapshot(digest, frameworkStamp, bundles, bundleIds);
+		} catch (IOException | URISyntaxException e) {
+			if (Activator.DEBUG)
+				e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes this snapshot. Failures are ignored, as the snapshot can always be
+	 * computed again from the configuration.
+	 */
+	public void write(File file) {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+
+			out.writeInt(digest.length);
+			out.write(digest);
+			out.writeInt(frameworkStamp.length);
+			for (long stamp : frameworkStamp)
+				out.writeLong(stamp);
+
+			out.writeInt(bundles.length);
+			for (int i = 0; i < bundles.length; i++) {
+				BundleInfo info = bundles[i];
+				writeString(out, info.getSymbolicName());
+				writeString(out, info.getVersion());
+				writeString(out, info.getLocation() == null ? null : info.getLocation().toString());
+				writeString(out, info.getBaseLocation() == null ? null : info.getBaseLocation().toString());
+				out.writeInt(info.getStartLevel());
+				out.writeBoolean(info.isMarkedAsStarted());
+				out.writeLong(bundleIds[i]);
+			}
+		} catch (IOException e) {
+			if (Activator.DEBUG)
+				e.printStackTrace();
+			file.delete();
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+}